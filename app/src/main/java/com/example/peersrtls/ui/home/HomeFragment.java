@@ -4,6 +4,8 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.PointF;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,6 +18,8 @@ import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
 
 import com.example.peersrtls.R;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
 import com.onlylemi.mapview.library.MapView;
 import com.onlylemi.mapview.library.MapViewListener;
 import com.onlylemi.mapview.library.layer.GridLayer;
@@ -23,6 +27,7 @@ import com.onlylemi.mapview.library.layer.MotionLayer;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Random;
 
 public class HomeFragment extends Fragment {
 
@@ -32,6 +37,41 @@ public class HomeFragment extends Fragment {
     private MotionLayer motionLayer;
     private GridLayer gridLayer;
 
+    // demo tag walking to random targets, fixes in map coordinates every 100 ms
+    private static final long DEMO_FIX_INTERVAL_MS = 100;
+    private static final float DEMO_SPEED = 150; // map units per second
+    private static final float DEMO_NOISE = 8; // map units
+    private final TagKalmanFilter filter =
+            new TagKalmanFilter(TagKalmanFilter.Model.CONSTANT_VELOCITY, 1);
+    private final Handler handler = new Handler();
+    private final Random random = new Random();
+    private final Fix demoFix = new Fix();
+    private final float[] demoPosition = new float[2];
+    private final float[] demoTarget = new float[2];
+    private final Runnable demoFixes = new Runnable() {
+        @Override
+        public void run() {
+            float dx = demoTarget[0] - demoPosition[0];
+            float dy = demoTarget[1] - demoPosition[1];
+            float distance = (float) Math.sqrt(dx * dx + dy * dy);
+            float step = DEMO_SPEED * DEMO_FIX_INTERVAL_MS / 1000f;
+            if (distance <= step) {
+                demoTarget[0] = random.nextInt((int) mapView.getMapWidth());
+                demoTarget[1] = random.nextInt((int) mapView.getMapHeight());
+            } else {
+                demoPosition[0] += dx / distance * step;
+                demoPosition[1] += dy / distance * step;
+            }
+            demoFix.tagId = 1;
+            demoFix.x = demoPosition[0] + (float) random.nextGaussian() * DEMO_NOISE;
+            demoFix.y = demoPosition[1] + (float) random.nextGaussian() * DEMO_NOISE;
+            demoFix.timestampMicros = SystemClock.uptimeMillis() * 1000;
+            filter.onFix(demoFix);
+            mapView.refresh();
+            handler.postDelayed(this, DEMO_FIX_INTERVAL_MS);
+        }
+    };
+
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
@@ -57,11 +97,15 @@ public class HomeFragment extends Fragment {
         mapView.setMapViewListener(new MapViewListener() {
             @Override
             public void onMapLoadSuccess() {
-                motionLayer = new MotionLayer(mapView);
+                // the filter works in map coordinates here, its process noise scaled to them
+                filter.setMeasurementNoise(DEMO_NOISE);
+                filter.setProcessNoise(DEMO_SPEED * DEMO_SPEED);
+                motionLayer = new MotionLayer(mapView, filter);
                 gridLayer = new GridLayer(mapView);
                 mapView.addLayer(gridLayer);
                 mapView.addLayer(motionLayer);
                 mapView.refresh();
+                handler.post(demoFixes);
             }
 
             @Override
@@ -71,4 +115,10 @@ public class HomeFragment extends Fragment {
         });
         return root;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        handler.removeCallbacks(demoFixes);
+        super.onDestroyView();
+    }
+}
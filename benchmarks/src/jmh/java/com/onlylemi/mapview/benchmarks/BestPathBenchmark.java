@@ -0,0 +1,45 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.routing.RouteMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * BestPathBenchmark
+ * <p>
+ * Multi-stop route through waypoints ({@code MapUtils.getBestPathBetweenPoints}, which delegates
+ * to {@link RouteMath#getBestPath}). It builds a RoutingGraph, one Floyd pass, per route, so it
+ * is only measured on small graphs.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Benchmark)
+public class BestPathBenchmark {
+
+    @Param({"100", "200"})
+    public int nodes;
+
+    @Param({"2", "10", "25", "50"})
+    public int waypoints;
+
+    private BuildingGraph graph;
+    private int[] points;
+
+    @Setup
+    public void setUp() {
+        graph = new BuildingGraph(nodes, 42);
+        points = graph.pickNodes(waypoints, 7);
+    }
+
+    @Benchmark
+    public List<Integer> bestPath() {
+        return RouteMath.getBestPath(points, graph.nodes, graph.nodeCount, graph.edges,
+                graph.edgeCount);
+    }
+}
@@ -0,0 +1,114 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+import java.util.Random;
+
+/**
+ * BuildingGraph
+ * <p>
+ * Synthetic floor plan graph: nodes on a jittered square lattice (one node every ~5 m) linked
+ * by corridors. Every row is a corridor, rows are joined by the first column and by random
+ * cross corridors, so the graph is always connected. Generation is deterministic for a seed.
+ *
+ * @author: onlylemi
+ */
+final class BuildingGraph {
+
+    private static final float SPACING = 500; // map units between lattice nodes
+    private static final float JITTER = 0.3f; // of SPACING
+    private static final float CROSS_CORRIDOR_PROBABILITY = 0.3f;
+
+    final int nodeCount;
+    final float[] nodes; // x, y per node
+    int edgeCount;
+    int[] edges; // node pairs
+
+    private final float width;
+    private final float height;
+
+    BuildingGraph(int nodeCount, long seed) {
+        Random random = new Random(seed);
+        int columns = (int) Math.ceil(Math.sqrt(nodeCount));
+        this.nodeCount = nodeCount;
+        this.nodes = new float[nodeCount * 2];
+        this.edges = new int[nodeCount * 4];
+        for (int i = 0; i < nodeCount; i++) {
+            int row = i / columns;
+            int column = i % columns;
+            nodes[2 * i] = (column + (random.nextFloat() - 0.5f) * JITTER) * SPACING;
+            nodes[2 * i + 1] = (row + (random.nextFloat() - 0.5f) * JITTER) * SPACING;
+            if (column > 0) {
+                addEdge(i - 1, i);
+            }
+            if (row > 0 && (column == 0 || random.nextFloat() < CROSS_CORRIDOR_PROBABILITY)) {
+                addEdge(i - columns, i);
+            }
+        }
+        this.width = columns * SPACING;
+        this.height = ((nodeCount + columns - 1) / columns) * SPACING;
+    }
+
+    private void addEdge(int a, int b) {
+        edges[2 * edgeCount] = a;
+        edges[2 * edgeCount + 1] = b;
+        edgeCount++;
+    }
+
+    /**
+     * distinct random nodes
+     *
+     * @param count
+     * @param seed
+     * @return
+     */
+    int[] pickNodes(int count, long seed) {
+        Random random = new Random(seed);
+        int[] picked = new int[count];
+        boolean[] used = new boolean[nodeCount];
+        for (int i = 0; i < count; i++) {
+            int node;
+            do {
+                node = random.nextInt(nodeCount);
+            } while (used[node]);
+            used[node] = true;
+            picked[i] = node;
+        }
+        return picked;
+    }
+
+    /**
+     * random points inside the building, packed as x, y
+     *
+     * @param count
+     * @param seed
+     * @return
+     */
+    float[] randomPoints(int count, long seed) {
+        Random random = new Random(seed);
+        float[] points = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[2 * i] = random.nextFloat() * width;
+            points[2 * i + 1] = random.nextFloat() * height;
+        }
+        return points;
+    }
+
+    /**
+     * complete distance matrix between some nodes, INF on the diagonal as the TSP solvers expect
+     *
+     * @param picked
+     * @return
+     */
+    float[][] distanceMatrix(int[] picked) {
+        float[][] matrix = new float[picked.length][picked.length];
+        for (int i = 0; i < picked.length; i++) {
+            for (int j = 0; j < picked.length; j++) {
+                matrix[i][j] = i == j ? Float.MAX_VALUE : Geometry.distance(
+                        nodes[2 * picked[i]], nodes[2 * picked[i] + 1],
+                        nodes[2 * picked[j]], nodes[2 * picked[j] + 1]);
+            }
+        }
+        return matrix;
+    }
+}
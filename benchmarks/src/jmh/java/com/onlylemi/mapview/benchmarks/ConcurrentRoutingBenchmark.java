@@ -0,0 +1,59 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.routing.RoutingEngine;
+import com.onlylemi.mapview.core.routing.RoutingService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConcurrentRoutingBenchmark
+ * <p>
+ * Node to node paths on one RoutingService shared by four threads, each query between random
+ * nodes. The searches borrow their scratch from the service pool, compare with the single
+ * thread scores of SparseRoutingBenchmark.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Benchmark)
+public class ConcurrentRoutingBenchmark {
+
+    @Param({"20000"})
+    public int nodes;
+
+    @Param({"A_STAR", "CONTRACTION_HIERARCHY"})
+    public RoutingEngine engine;
+
+    private RoutingService service;
+    private int[] pairs;
+
+    @Setup
+    public void setUp() {
+        BuildingGraph building = new BuildingGraph(nodes, 42);
+        service = new RoutingService(building.nodes, building.nodeCount, building.edges,
+                building.edgeCount, engine);
+        pairs = building.pickNodes(1024, 7);
+    }
+
+    @State(Scope.Thread)
+    public static class Query {
+        final List<Integer> path = new ArrayList<>();
+        int next;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Integer> path(Query query) {
+        int i = query.next;
+        query.next = (i + 2) % pairs.length;
+        service.getPath(pairs[i], pairs[i + 1], query.path);
+        return query.path;
+    }
+}
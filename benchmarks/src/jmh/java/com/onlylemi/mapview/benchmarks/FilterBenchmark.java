@@ -0,0 +1,72 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * FilterBenchmark
+ * <p>
+ * Kalman filtering of noisy fixes of tags walking at 1 m/s, one fix per tag every 100 ms in
+ * round robin order, so the state of many tags does not stay in cache.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class FilterBenchmark {
+
+    private static final int STEPS = 64; // power of two
+    private static final float NOISE = 0.1f; // meters
+
+    @Param({"100", "10000"})
+    public int tags;
+
+    @Param({"CONSTANT_VELOCITY", "CONSTANT_ACCELERATION"})
+    public TagKalmanFilter.Model model;
+
+    private TagKalmanFilter filter;
+    private float[] xs; // STEPS x tags
+    private float[] ys;
+    private final Fix fix = new Fix();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        filter = new TagKalmanFilter(model, tags);
+        xs = new float[STEPS * tags];
+        ys = new float[STEPS * tags];
+        for (int t = 0; t < tags; t++) {
+            float x = random.nextFloat() * 100, y = random.nextFloat() * 100;
+            double heading = random.nextDouble() * 2 * Math.PI;
+            for (int s = 0; s < STEPS; s++) {
+                heading += random.nextGaussian() * 0.1;
+                x += 0.1f * (float) Math.cos(heading);
+                y += 0.1f * (float) Math.sin(heading);
+                xs[s * tags + t] = x + (float) random.nextGaussian() * NOISE;
+                ys[s * tags + t] = y + (float) random.nextGaussian() * NOISE;
+            }
+        }
+    }
+
+    @Benchmark
+    public long update() {
+        int i = next++;
+        int tag = i % tags;
+        int round = i / tags;
+        int sample = (round & (STEPS - 1)) * tags + tag;
+        fix.tagId = tag;
+        fix.x = xs[sample];
+        fix.y = ys[sample];
+        fix.timestampMicros = (round + 1) * 100000L;
+        filter.onFix(fix);
+        return filter.getTimestampMicros(tag);
+    }
+}
@@ -0,0 +1,76 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.coverage.GdopMap;
+import com.onlylemi.mapview.core.positioning.Anchors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * GdopBenchmark
+ * <p>
+ * DOP grid of a 100 x 60 m floor at 25 cm cells with 40 anchors on a 10 m raster: the full
+ * grid on a thread per processor and on one thread, and the incremental update after moving one
+ * anchor.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class GdopBenchmark {
+
+    private static final float CELL = 0.25f;
+    private static final int COLS = 400;
+    private static final int ROWS = 240;
+
+    @Param({"0", "1"})
+    public int parallel;
+
+    private Anchors anchors;
+    private GdopMap map;
+    private ExecutorService pool;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        anchors = new Anchors(64);
+        int id = 1;
+        for (int x = 5; x < 100; x += 10) {
+            for (int y = 8; y < 60; y += 15) {
+                anchors.set(id++, x, y, 3);
+            }
+        }
+        map = new GdopMap(anchors, 0, 0, CELL, COLS, ROWS);
+        map.setRange(20);
+        pool = parallel == 1
+                ? Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())
+                : null;
+        map.update(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int fullGrid() {
+        map.invalidate();
+        return map.update(pool);
+    }
+
+    @Benchmark
+    public int moveAnchor() {
+        // anchor 12 back and forth by half a meter
+        anchors.set(12, 15 + (step++ & 1) * 0.5f, 38, 3);
+        return map.update(pool);
+    }
+}
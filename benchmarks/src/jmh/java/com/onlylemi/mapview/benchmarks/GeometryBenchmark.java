@@ -0,0 +1,59 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.index.PointGridIndex;
+import com.onlylemi.mapview.core.routing.RouteMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * GeometryBenchmark
+ * <p>
+ * Point queries against a building: snapping to the nearest edge (linear scan) and the
+ * nearest node in the grid index. Each invocation uses the next of a fixed set of points.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class GeometryBenchmark {
+
+    private static final int QUERIES = 1024; // power of two
+
+    @Param({"100", "1000", "5000", "20000"})
+    public int nodes;
+
+    private BuildingGraph graph;
+    private PointGridIndex index;
+    private float[] queries;
+    private final float[] projection = new float[2];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        graph = new BuildingGraph(nodes, 42);
+        float[] xs = new float[graph.nodeCount];
+        float[] ys = new float[graph.nodeCount];
+        for (int i = 0; i < graph.nodeCount; i++) {
+            xs[i] = graph.nodes[2 * i];
+            ys[i] = graph.nodes[2 * i + 1];
+        }
+        index = new PointGridIndex(xs, ys, graph.nodeCount);
+        queries = graph.randomPoints(QUERIES, 7);
+    }
+
+    @Benchmark
+    public int findNearestEdge() {
+        int q = next++ & (QUERIES - 1);
+        return RouteMath.findNearestEdge(queries[2 * q], queries[2 * q + 1], graph.nodes,
+                graph.edges, graph.edgeCount, projection);
+    }
+
+    @Benchmark
+    public int gridIndexNearest() {
+        int q = next++ & (QUERIES - 1);
+        return index.nearest(queries[2 * q], queries[2 * q + 1], Float.MAX_VALUE);
+    }
+}
@@ -0,0 +1,80 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.ingest.FrameDecoder;
+import com.onlylemi.mapview.core.ingest.FrameEncoder;
+import com.onlylemi.mapview.core.ingest.FrameFormat;
+import com.onlylemi.mapview.core.ingest.IngestCounters;
+import com.onlylemi.mapview.core.ingest.MeasurementSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+
+/**
+ * IngestBenchmark
+ * <p>
+ * Decoding of a direct buffer of 1024 range frames, records per frame varying, into a sink
+ * consuming the primitives. Scores are per frame.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class IngestBenchmark {
+
+    private static final int FRAMES = 1024;
+
+    @Param({"1", "16", "64"})
+    public int recordsPerFrame;
+
+    private ByteBuffer frames;
+    private FrameDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FRAMES * (FrameFormat.HEADER_SIZE
+                + recordsPerFrame * FrameFormat.RANGE_SIZE + FrameFormat.TRAILER_SIZE));
+        FrameEncoder encoder = new FrameEncoder(buffer);
+        for (int f = 0; f < FRAMES; f++) {
+            encoder.begin(FrameFormat.TYPE_RANGE);
+            for (int r = 0; r < recordsPerFrame; r++) {
+                encoder.range(f * recordsPerFrame + r, r & 7, 3.5f + r, f * 100000L);
+            }
+            encoder.end();
+        }
+        buffer.flip();
+        frames = buffer;
+        decoder = new FrameDecoder(new IngestCounters());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int decode(final Blackhole blackhole) {
+        frames.rewind();
+        return decoder.decode(frames, new MeasurementSink() {
+            @Override
+            public boolean onRange(long tagId, int anchorId, float distance,
+                                   long timestampMicros) {
+                blackhole.consume(tagId);
+                blackhole.consume(distance);
+                return true;
+            }
+
+            @Override
+            public boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks,
+                                   long timestampMicros) {
+                return true;
+            }
+
+            @Override
+            public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.pipeline.PositioningPipeline;
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+
+/**
+ * PipelineBenchmark
+ * <p>
+ * Throughput of the sharded pipeline: one operation offers a complete TWR round of 6 ranges of
+ * the next of 4096 tags at 10 Hz, waiting while the shard ring is full, so the score is bounded
+ * by the workers once they saturate. Compare the shard counts against the cores of the machine.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    private static final int TAGS = 4096; // power of two
+    private static final int ANCHORS = 6;
+    private static final float NOISE = 0.1f; // meters
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private PositioningPipeline pipeline;
+    private PositioningPipeline.Producer producer;
+    private int[] anchorIds;
+    private float[] ranges; // TAGS x ANCHORS
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Anchors anchors = new Anchors(ANCHORS);
+        anchorIds = new int[ANCHORS];
+        for (int i = 0; i < ANCHORS; i++) {
+            double angle = 2 * Math.PI * i / ANCHORS;
+            anchorIds[i] = i + 1;
+            anchors.set(anchorIds[i], 15 + 15 * (float) Math.cos(angle),
+                    10 + 10 * (float) Math.sin(angle), 3);
+        }
+        ranges = new float[TAGS * ANCHORS];
+        for (int t = 0; t < TAGS; t++) {
+            float x = 1 + 28 * random.nextFloat(), y = 1 + 18 * random.nextFloat();
+            for (int i = 0; i < ANCHORS; i++) {
+                float dx = x - anchors.getX(i), dy = y - anchors.getY(i), dz = 1 - 3;
+                ranges[t * ANCHORS + i] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz)
+                        + (float) random.nextGaussian() * NOISE;
+            }
+        }
+
+        pipeline = new PositioningPipeline(anchors, shards, 1, 1 << 14, TAGS, ANCHORS);
+        pipeline.setFilterModel(TagKalmanFilter.Model.CONSTANT_VELOCITY);
+        for (int s = 0; s < shards; s++) {
+            pipeline.getTwrEngine(s).setFixedHeight(1);
+        }
+        pipeline.setPositionListener(new PositionListener() {
+            @Override
+            public void onFix(Fix fix) {
+            }
+        });
+        pipeline.start();
+        producer = pipeline.getProducer(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    @Benchmark
+    public int offerRound() {
+        int i = next++;
+        int tag = i & (TAGS - 1);
+        long timestampMicros = (long) (i / TAGS) * 100000 + tag;
+        for (int a = 0; a < ANCHORS; a++) {
+            while (!producer.range(tag, anchorIds[a], ranges[tag * ANCHORS + a],
+                    timestampMicros)) {
+                Thread.yield();
+            }
+        }
+        return tag;
+    }
+}
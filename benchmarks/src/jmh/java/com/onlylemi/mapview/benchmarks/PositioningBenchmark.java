@@ -0,0 +1,93 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.TwrPositioningEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * PositioningBenchmark
+ * <p>
+ * TWR multilateration of a tag walking through a 30 x 20 m room with noisy ranges. Warm solves
+ * start from the previous fix, cold solves from the anchors' centroid.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class PositioningBenchmark {
+
+    private static final int ROUNDS = 1024; // power of two
+    private static final float NOISE = 0.1f; // meters
+
+    @Param({"4", "6", "8"})
+    public int anchors;
+
+    @Param({"2", "3"})
+    public int dims;
+
+    private TwrPositioningEngine engine;
+    private int[] anchorIds;
+    private float[] ranges; // ROUNDS x anchors
+    private float[] round;
+    private int next;
+    private long timestampMicros;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Anchors table = new Anchors(anchors);
+        anchorIds = new int[anchors];
+        for (int i = 0; i < anchors; i++) {
+            // around the room walls, at ceiling height
+            double angle = 2 * Math.PI * i / anchors;
+            anchorIds[i] = i + 1;
+            table.set(anchorIds[i], 15 + 15 * (float) Math.cos(angle),
+                    10 + 10 * (float) Math.sin(angle), 3 + 0.3f * random.nextFloat());
+        }
+        engine = new TwrPositioningEngine(table, 1, anchors);
+        engine.setDimensions(dims);
+        engine.setFixedHeight(1);
+
+        ranges = new float[ROUNDS * anchors];
+        round = new float[anchors];
+        float x = 15, y = 10;
+        for (int r = 0; r < ROUNDS; r++) {
+            x = Math.max(1, Math.min(29, x + (random.nextFloat() - 0.5f) * 0.4f));
+            y = Math.max(1, Math.min(19, y + (random.nextFloat() - 0.5f) * 0.4f));
+            for (int i = 0; i < anchors; i++) {
+                double angle = 2 * Math.PI * i / anchors;
+                float dx = x - (15 + 15 * (float) Math.cos(angle));
+                float dy = y - (10 + 10 * (float) Math.sin(angle));
+                float dz = 1 - 3;
+                ranges[r * anchors + i] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz)
+                        + (float) random.nextGaussian() * NOISE;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean warmSolve() {
+        // 100 ms between rounds, within the warm start age
+        timestampMicros += 100000;
+        return solveNext();
+    }
+
+    @Benchmark
+    public boolean coldSolve() {
+        // 10 s between rounds, never warm
+        timestampMicros += 10000000;
+        return solveNext();
+    }
+
+    private boolean solveNext() {
+        int r = next++ & (ROUNDS - 1);
+        System.arraycopy(ranges, r * anchors, round, 0, anchors);
+        return engine.solve(1, anchorIds, round, anchors, timestampMicros);
+    }
+}
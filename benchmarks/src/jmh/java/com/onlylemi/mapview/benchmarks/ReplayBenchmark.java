@@ -0,0 +1,111 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.ingest.PipelineSink;
+import com.onlylemi.mapview.core.pipeline.PositioningPipeline;
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+import com.onlylemi.mapview.core.recording.ReplaySource;
+import com.onlylemi.mapview.core.recording.SessionFormat;
+import com.onlylemi.mapview.core.recording.SessionRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * ReplayBenchmark
+ * <p>
+ * End to end throughput: a recorded session of 1000 tags at 10 Hz, 6 ranges per round, replayed
+ * at max speed through the sharded pipeline and its filters until every measurement is
+ * handled. Scores are per measurement; measurements refused by full rings are dropped, as on
+ * a live feed, see getDropCount.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class ReplayBenchmark {
+
+    private static final int TAGS = 1000;
+    private static final int ROUNDS = 20;
+    private static final int ANCHORS = 6;
+    private static final int MEASUREMENTS = TAGS * ROUNDS * ANCHORS;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private File file;
+    private ReplaySource replay;
+    private PositioningPipeline pipeline;
+    private PipelineSink sink;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        Anchors anchors = new Anchors(ANCHORS);
+        for (int i = 0; i < ANCHORS; i++) {
+            double angle = 2 * Math.PI * i / ANCHORS;
+            anchors.set(i + 1, 15 + 15 * (float) Math.cos(angle),
+                    10 + 10 * (float) Math.sin(angle), 3);
+        }
+
+        file = File.createTempFile("replay", ".rtls");
+        SessionRecorder recorder = new SessionRecorder(file);
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int t = 0; t < TAGS; t++) {
+                float x = 1 + 28 * random.nextFloat(), y = 1 + 18 * random.nextFloat();
+                for (int i = 0; i < ANCHORS; i++) {
+                    float dx = x - anchors.getX(i), dy = y - anchors.getY(i), dz = 1 - 3;
+                    recorder.onRange(t, i + 1, (float) Math.sqrt(dx * dx + dy * dy + dz * dz)
+                            + (float) random.nextGaussian() * 0.1f, r * 100000L + t * 100);
+                }
+            }
+        }
+        recorder.close();
+        replay = new ReplaySource(file);
+        replay.setSpeed(ReplaySource.MAX_SPEED);
+
+        pipeline = new PositioningPipeline(anchors, shards, 1, 1 << 14, TAGS, ANCHORS);
+        pipeline.setFilterModel(TagKalmanFilter.Model.CONSTANT_VELOCITY);
+        for (int s = 0; s < shards; s++) {
+            pipeline.getTwrEngine(s).setFixedHeight(1);
+        }
+        pipeline.setPositionListener(new PositionListener() {
+            @Override
+            public void onFix(Fix fix) {
+            }
+        });
+        pipeline.start();
+        sink = new PipelineSink(pipeline.getProducer(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        pipeline.stop();
+        replay.close();
+        file.delete();
+        new File(file.getPath() + SessionFormat.INDEX_SUFFIX).delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEASUREMENTS)
+    public long replayMaxSpeed() throws IOException {
+        replay.seek(0);
+        replay.run(sink);
+        // measurements refused by full rings are counted as drops, like on a live feed
+        while (pipeline.getBacklog() > 0) {
+            Thread.yield();
+        }
+        return replay.getDropCount();
+    }
+}
@@ -0,0 +1,80 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.TwrPositioningEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * RobustPositioningBenchmark
+ * <p>
+ * Cost of outlier rejection per fix: 2D TWR rounds of 8 anchors around a 30 x 20 m room where
+ * some ranges of every round are NLOS, 1.5 to 4.5 m too long.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class RobustPositioningBenchmark {
+
+    private static final int ANCHORS = 8;
+    private static final int ROUNDS = 1024; // power of two
+    private static final float NOISE = 0.05f; // meters
+
+    @Param({"0", "1", "2"})
+    public int outliers;
+
+    @Param({"false", "true"})
+    public boolean rejection;
+
+    private TwrPositioningEngine engine;
+    private int[] anchorIds;
+    private float[] ranges; // ROUNDS x ANCHORS
+    private float[] round;
+    private int next;
+    private long timestampMicros;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Anchors table = new Anchors(ANCHORS);
+        anchorIds = new int[ANCHORS];
+        for (int i = 0; i < ANCHORS; i++) {
+            double angle = 2 * Math.PI * i / ANCHORS;
+            anchorIds[i] = i + 1;
+            table.set(anchorIds[i], 15 + 15 * (float) Math.cos(angle),
+                    10 + 10 * (float) Math.sin(angle), 3);
+        }
+        engine = new TwrPositioningEngine(table, 1, ANCHORS);
+        engine.setFixedHeight(1);
+        engine.setOutlierRejection(rejection);
+
+        ranges = new float[ROUNDS * ANCHORS];
+        round = new float[ANCHORS];
+        for (int r = 0; r < ROUNDS; r++) {
+            float x = 3 + 24 * random.nextFloat(), y = 3 + 14 * random.nextFloat();
+            for (int i = 0; i < ANCHORS; i++) {
+                float dx = x - table.getX(i), dy = y - table.getY(i), dz = 1 - 3;
+                ranges[r * ANCHORS + i] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz)
+                        + (float) random.nextGaussian() * NOISE;
+            }
+            for (int o = 0; o < outliers; o++) {
+                ranges[r * ANCHORS + (r + o * 3) % ANCHORS] += 1.5f + 3 * random.nextFloat();
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean solve() {
+        // rounds jump across the room, every solve is cold
+        timestampMicros += 10000000;
+        int r = next++ & (ROUNDS - 1);
+        System.arraycopy(ranges, r * ANCHORS, round, 0, ANCHORS);
+        return engine.solve(1, anchorIds, round, ANCHORS, timestampMicros);
+    }
+}
@@ -0,0 +1,59 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.math.FloydAlgorithm;
+import com.onlylemi.mapview.core.routing.RouteMath;
+import com.onlylemi.mapview.core.routing.RoutingGraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RoutingBenchmark
+ * <p>
+ * Shortest path between two far apart nodes with FloydAlgorithm, which recomputes the tables
+ * per query, and with a RoutingGraph, which keeps them. The dense all pairs tables grow with
+ * n^2 and the run time with n^3, which bounds the graph sizes.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+    @Param({"100", "500", "1000", "2000"})
+    public int nodes;
+
+    private float[][] matrix;
+    private RoutingGraph graph;
+    private final List<Integer> path = new ArrayList<>();
+    private int begin;
+    private int end;
+
+    @Setup
+    public void setUp() {
+        BuildingGraph building = new BuildingGraph(nodes, 42);
+        matrix = RouteMath.getAdjacencyMatrix(building.nodes, building.nodeCount, building.edges,
+                building.edgeCount);
+        graph = new RoutingGraph(building.nodes, building.nodeCount, building.edges,
+                building.edgeCount);
+        graph.getDistance(0, 0); // build the tables
+        begin = 0;
+        end = building.nodeCount - 1;
+    }
+
+    @Benchmark
+    public List<Integer> floydFindCheapestPath() {
+        return new FloydAlgorithm().findCheapestPath(begin, end, matrix);
+    }
+
+    @Benchmark
+    public List<Integer> routingGraphPath() {
+        graph.getPath(begin, end, path);
+        return path;
+    }
+}
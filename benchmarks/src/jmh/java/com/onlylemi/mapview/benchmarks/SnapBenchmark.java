@@ -0,0 +1,72 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.routing.EdgeIndex;
+import com.onlylemi.mapview.core.routing.RouteMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * SnapBenchmark
+ * <p>
+ * Snapping positions near the network onto the nearest edge of building graphs, the scan of all
+ * edges of {@code RouteMath.findNearestEdge} against the grid of an EdgeIndex, for the nearest
+ * edge and for the 4 nearest.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Benchmark)
+public class SnapBenchmark {
+
+    private static final int POSITIONS = 512;
+
+    @Param({"1000", "20000", "100000"})
+    public int nodes;
+
+    private BuildingGraph building;
+    private EdgeIndex index;
+    private final float[] positions = new float[POSITIONS * 2];
+    private final float[] projection = new float[2];
+    private final int[] nearestEdges = new int[4];
+    private final float[] distances = new float[4];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        building = new BuildingGraph(nodes, 42);
+        index = new EdgeIndex(building.nodes, building.nodeCount, building.edges,
+                building.edgeCount);
+        // a few meters around random nodes, like tag positions
+        Random random = new Random(7);
+        int[] picked = building.pickNodes(POSITIONS, 7);
+        for (int i = 0; i < POSITIONS; i++) {
+            positions[2 * i] = building.nodes[2 * picked[i]] + (random.nextFloat() - 0.5f) * 400;
+            positions[2 * i + 1] = building.nodes[2 * picked[i] + 1]
+                    + (random.nextFloat() - 0.5f) * 400;
+        }
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int i = next++ & (POSITIONS - 1);
+        return RouteMath.findNearestEdge(positions[2 * i], positions[2 * i + 1], building.nodes,
+                building.edges, building.edgeCount, projection);
+    }
+
+    @Benchmark
+    public int gridNearest() {
+        int i = next++ & (POSITIONS - 1);
+        return index.nearest(positions[2 * i], positions[2 * i + 1], projection, 0);
+    }
+
+    @Benchmark
+    public int gridNearest4() {
+        int i = next++ & (POSITIONS - 1);
+        return index.nearest(positions[2 * i], positions[2 * i + 1], 4, nearestEdges, distances);
+    }
+}
@@ -0,0 +1,53 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.routing.RoutingEngine;
+import com.onlylemi.mapview.core.routing.RoutingGraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SparseRoutingBenchmark
+ * <p>
+ * Shortest path between opposite corners of building graphs too large for the Floyd tables,
+ * with the Dijkstra, A* and contraction hierarchy engines of RoutingGraph. The hierarchy is
+ * built in the setup, not measured.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Benchmark)
+public class SparseRoutingBenchmark {
+
+    @Param({"1000", "20000", "100000"})
+    public int nodes;
+
+    @Param({"DIJKSTRA", "A_STAR", "CONTRACTION_HIERARCHY"})
+    public RoutingEngine engine;
+
+    private RoutingGraph graph;
+    private final List<Integer> path = new ArrayList<>();
+    private int begin;
+    private int end;
+
+    @Setup
+    public void setUp() {
+        BuildingGraph building = new BuildingGraph(nodes, 42);
+        graph = new RoutingGraph(building.nodes, building.nodeCount, building.edges,
+                building.edgeCount, engine);
+        begin = 0;
+        end = building.nodeCount - 1;
+        graph.getDistance(begin, begin); // build the adjacency or the hierarchy
+    }
+
+    @Benchmark
+    public List<Integer> path() {
+        graph.getPath(begin, end, path);
+        return path;
+    }
+}
@@ -0,0 +1,129 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.positioning.AnchorClockTracker;
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.TdoaPositioningEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * TdoaBenchmark
+ * <p>
+ * TDoA fixes of a tag walking through a 30 x 20 m room, seen by anchors with offset and
+ * drifting DW1000 clocks synchronized by two sync frames; arrival times have 10 cm of noise.
+ * Warm solves start from the previous fix, cold solves from the anchors' centroid.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Thread)
+public class TdoaBenchmark {
+
+    private static final int BLINKS = 1024; // power of two
+    private static final double NOISE = 0.1; // meters
+    private static final long MASK = (1L << AnchorClockTracker.DW1000_TIMESTAMP_BITS) - 1;
+
+    @Param({"5", "6", "8"})
+    public int anchors;
+
+    @Param({"2", "3"})
+    public int dims;
+
+    private TdoaPositioningEngine engine;
+    private int[] anchorIds;
+    private long[] rxTicks; // BLINKS x anchors
+    private long[] blink;
+    private int next;
+    private long timestampMicros;
+
+    private double[] offsets;
+    private double[] drifts;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Anchors table = new Anchors(anchors);
+        anchorIds = new int[anchors];
+        float[][] positions = new float[anchors][];
+        offsets = new double[anchors];
+        drifts = new double[anchors];
+        for (int i = 0; i < anchors; i++) {
+            // around the room walls, at ceiling height
+            double angle = 2 * Math.PI * i / anchors;
+            anchorIds[i] = i + 1;
+            positions[i] = new float[]{15 + 15 * (float) Math.cos(angle),
+                    10 + 10 * (float) Math.sin(angle), 3 + 0.3f * random.nextFloat()};
+            table.set(anchorIds[i], positions[i][0], positions[i][1], positions[i][2]);
+            if (i > 0) {
+                offsets[i] = random.nextDouble() * MASK;
+                drifts[i] = (random.nextDouble() - 0.5) * 40e-6;
+            }
+        }
+        AnchorClockTracker clocks = new AnchorClockTracker(table, anchorIds[0],
+                AnchorClockTracker.DW1000_TICKS_PER_SECOND, AnchorClockTracker.DW1000_TIMESTAMP_BITS);
+        engine = new TdoaPositioningEngine(table, clocks, 1, anchors);
+        engine.setDimensions(dims);
+        engine.setFixedHeight(1);
+
+        // two sync frames, 100 ms apart
+        for (int s = 0; s < 2; s++) {
+            double tx = 0.1 * s;
+            for (int i = 1; i < anchors; i++) {
+                double d = distance(positions[i], positions[0][0], positions[0][1],
+                        positions[0][2]);
+                engine.onSync(anchorIds[i], localTicks(0, tx), localTicks(i, tx + d / C));
+            }
+        }
+
+        // all blinks right after the last sync frame, only the solve is measured
+        rxTicks = new long[BLINKS * anchors];
+        blink = new long[anchors];
+        float x = 15, y = 10;
+        for (int b = 0; b < BLINKS; b++) {
+            x = Math.max(1, Math.min(29, x + (random.nextFloat() - 0.5f) * 0.4f));
+            y = Math.max(1, Math.min(19, y + (random.nextFloat() - 0.5f) * 0.4f));
+            for (int i = 0; i < anchors; i++) {
+                double d = distance(positions[i], x, y, 1) + random.nextGaussian() * NOISE;
+                rxTicks[b * anchors + i] = localTicks(i, 0.15 + d / C);
+            }
+        }
+    }
+
+    private static final double C = AnchorClockTracker.SPEED_OF_LIGHT;
+
+    private static double distance(float[] anchor, float x, float y, float z) {
+        double dx = x - anchor[0], dy = y - anchor[1], dz = z - anchor[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private long localTicks(int anchor, double seconds) {
+        double ticks = offsets[anchor]
+                + seconds * AnchorClockTracker.DW1000_TICKS_PER_SECOND * (1 + drifts[anchor]);
+        return (long) ticks & MASK;
+    }
+
+    @Benchmark
+    public boolean warmSolve() {
+        // 100 ms between blinks, within the warm start age
+        timestampMicros += 100000;
+        return solveNext();
+    }
+
+    @Benchmark
+    public boolean coldSolve() {
+        // 10 s between blinks, never warm
+        timestampMicros += 10000000;
+        return solveNext();
+    }
+
+    private boolean solveNext() {
+        int b = next++ & (BLINKS - 1);
+        System.arraycopy(rxTicks, b * anchors, blink, 0, anchors);
+        return engine.solve(1, anchorIds, blink, anchors, timestampMicros);
+    }
+}
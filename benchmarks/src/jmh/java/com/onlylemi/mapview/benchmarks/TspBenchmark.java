@@ -0,0 +1,48 @@
+package com.onlylemi.mapview.benchmarks;
+
+import com.onlylemi.mapview.core.math.GeneticAlgorithm;
+import com.onlylemi.mapview.core.math.TSPNearestNeighbour;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * TspBenchmark
+ * <p>
+ * Visiting order of waypoints of a large building with both TSP solvers.
+ *
+ * @author: onlylemi
+ */
+@State(Scope.Benchmark)
+public class TspBenchmark {
+
+    @Param({"2", "10", "25", "50"})
+    public int waypoints;
+
+    private float[][] matrix;
+
+    @Setup
+    public void setUp() {
+        BuildingGraph graph = new BuildingGraph(20000, 42);
+        matrix = graph.distanceMatrix(graph.pickNodes(waypoints, 7));
+    }
+
+    @Benchmark
+    public int[] geneticAlgorithm() {
+        GeneticAlgorithm ga = new GeneticAlgorithm();
+        ga.setAutoNextGeneration(true);
+        ga.setMaxGeneration(200);
+        return ga.tsp(matrix);
+    }
+
+    @Benchmark
+    public List<Integer> nearestNeighbour() {
+        // the shared instance keeps appending to its result, use a fresh one per run
+        return new TSPNearestNeighbour().tsp(matrix);
+    }
+}
@@ -0,0 +1,354 @@
+package com.onlylemi.mapview.core.coverage;
+
+import com.onlylemi.mapview.core.positioning.Anchors;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GdopMap
+ * <p>
+ * Geometric dilution of precision of ranging over a grid of cells in meters, for planning anchor
+ * placements. The value of a cell is the horizontal DOP of a tag at the cell center and at a
+ * fixed height, from the anchors within range of it: sqrt(trace((H^T H)^-1)) with the x, y
+ * components of the unit vectors to the anchors as rows of H. Cells in range of fewer than
+ * {@link #setMinAnchors min anchors} are NaN, cells with collinear anchors infinite.
+ * <p>
+ * {@link #update} computes chunks of rows in parallel on an executor. It compares the anchors to
+ * the positions of the last update and recomputes only the cells in range of an anchor that was
+ * added or moved, at its old and at its new position. Configure and update from one thread at a
+ * time; the values are stable between updates.
+ *
+ * @author: onlylemi
+ */
+public final class GdopMap {
+
+    // cells of a chunk of rows computed by one thread
+    private static final int SEQUENTIAL_CELLS = 2048;
+    // anchors closer than this are skipped, the direction to them is undefined
+    private static final float MIN_DISTANCE_SQUARED = 1e-6f;
+    private static final double MIN_DETERMINANT = 1e-9;
+
+    private final Anchors anchors;
+    private final float originX, originY;
+    private final float cellSize;
+    private final int cols, rows;
+    private final float[] values;
+
+    private float range = 30;
+    private float tagHeight = 1;
+    private int minAnchors = 3;
+
+    // anchor positions of the last update, read by the tasks
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private int count;
+
+    // cells to recompute, right and bottom exclusive, empty when left >= right
+    private int dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+    // cells recomputed by the last update
+    private int updatedLeft, updatedTop, updatedRight, updatedBottom;
+
+    /**
+     * @param anchors  positions in meters
+     * @param originX  meters, left edge of column 0
+     * @param originY  meters, bottom edge of row 0, rows grow up like y
+     * @param cellSize meters
+     * @param cols
+     * @param rows
+     */
+    public GdopMap(Anchors anchors, float originX, float originY, float cellSize, int cols,
+                   int rows) {
+        if (cellSize <= 0 || cols <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("empty grid");
+        }
+        this.anchors = anchors;
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.cols = cols;
+        this.rows = rows;
+        this.values = new float[cols * rows];
+        this.xs = new float[anchors.getCapacity()];
+        this.ys = new float[anchors.getCapacity()];
+        this.zs = new float[anchors.getCapacity()];
+        invalidate();
+    }
+
+    /**
+     * anchors farther than the range from a cell do not contribute to it, it also bounds the
+     * cells recomputed when an anchor moves
+     *
+     * @param range meters
+     */
+    public void setRange(float range) {
+        if (!(range > 0)) {
+            throw new IllegalArgumentException("range must be positive: " + range);
+        }
+        this.range = range;
+        invalidate();
+    }
+
+    /**
+     * @param tagHeight meters
+     */
+    public void setTagHeight(float tagHeight) {
+        this.tagHeight = tagHeight;
+        invalidate();
+    }
+
+    /**
+     * @param minAnchors anchors in range a cell needs for a value, at least 2
+     */
+    public void setMinAnchors(int minAnchors) {
+        this.minAnchors = Math.max(2, minAnchors);
+        invalidate();
+    }
+
+    /**
+     * recompute every cell on the next update
+     */
+    public void invalidate() {
+        dirtyLeft = 0;
+        dirtyTop = 0;
+        dirtyRight = cols;
+        dirtyBottom = rows;
+    }
+
+    /**
+     * recompute the cells affected by the anchors added or moved since the last update
+     *
+     * @param executor computes chunks of rows with the calling thread, null to compute on the
+     *                 calling thread only; may be called from a task of the executor
+     * @return number of cells computed
+     */
+    public int update(Executor executor) {
+        int size = anchors.size();
+        for (int i = 0; i < size; i++) {
+            float x = anchors.getX(i);
+            float y = anchors.getY(i);
+            float z = anchors.getZ(i);
+            if (i < count && x == xs[i] && y == ys[i] && z == zs[i]) {
+                continue;
+            }
+            if (i < count) {
+                markDirty(xs[i], ys[i]);
+            }
+            markDirty(x, y);
+            xs[i] = x;
+            ys[i] = y;
+            zs[i] = z;
+        }
+        count = size;
+
+        updatedLeft = dirtyLeft;
+        updatedTop = dirtyTop;
+        updatedRight = dirtyRight;
+        updatedBottom = dirtyBottom;
+        dirtyLeft = dirtyTop = Integer.MAX_VALUE;
+        dirtyRight = dirtyBottom = Integer.MIN_VALUE;
+        if (updatedLeft >= updatedRight || updatedTop >= updatedBottom) {
+            updatedLeft = updatedTop = updatedRight = updatedBottom = 0;
+            return 0;
+        }
+
+        int rowCells = updatedRight - updatedLeft;
+        int chunkRows = Math.max(1, SEQUENTIAL_CELLS / rowCells);
+        int chunks = (updatedBottom - updatedTop + chunkRows - 1) / chunkRows;
+        if (executor == null || chunks == 1) {
+            computeRows(updatedTop, updatedBottom);
+        } else {
+            new RowChunks(chunkRows, chunks).run(executor);
+        }
+        return (updatedRight - updatedLeft) * (updatedBottom - updatedTop);
+    }
+
+    /**
+     * @param col
+     * @param row
+     * @return DOP of the cell, NaN with too few anchors in range
+     */
+    public float get(int col, int row) {
+        return values[row * cols + col];
+    }
+
+    /**
+     * @return values by row, row * cols + col
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return first column recomputed by the last update
+     */
+    public int getUpdatedLeft() {
+        return updatedLeft;
+    }
+
+    /**
+     * @return first row recomputed by the last update
+     */
+    public int getUpdatedTop() {
+        return updatedTop;
+    }
+
+    /**
+     * @return column after the last one recomputed by the last update
+     */
+    public int getUpdatedRight() {
+        return updatedRight;
+    }
+
+    /**
+     * @return row after the last one recomputed by the last update
+     */
+    public int getUpdatedBottom() {
+        return updatedBottom;
+    }
+
+    /**
+     * add the cells in range of a position to the dirty region
+     */
+    private void markDirty(float x, float y) {
+        int left = Math.max(0, (int) Math.floor((x - range - originX) / cellSize));
+        int right = Math.min(cols, (int) Math.ceil((x + range - originX) / cellSize));
+        int top = Math.max(0, (int) Math.floor((y - range - originY) / cellSize));
+        int bottom = Math.min(rows, (int) Math.ceil((y + range - originY) / cellSize));
+        if (left >= right || top >= bottom) {
+            // out of the grid
+            return;
+        }
+        dirtyLeft = Math.min(dirtyLeft, left);
+        dirtyTop = Math.min(dirtyTop, top);
+        dirtyRight = Math.max(dirtyRight, right);
+        dirtyBottom = Math.max(dirtyBottom, bottom);
+    }
+
+    private void computeRows(int from, int to) {
+        float range2 = range * range;
+        int[] candidates = new int[count];
+        for (int row = from; row < to; row++) {
+            float cy = originY + (row + 0.5f) * cellSize;
+            // anchors in range of some cell of the row
+            int candidateCount = 0;
+            for (int i = 0; i < count; i++) {
+                float dy = cy - ys[i];
+                if (dy * dy <= range2) {
+                    candidates[candidateCount++] = i;
+                }
+            }
+            int offset = row * cols;
+            for (int col = updatedLeft; col < updatedRight; col++) {
+                float cx = originX + (col + 0.5f) * cellSize;
+                double a = 0, b = 0, c = 0;
+                int n = 0;
+                for (int k = 0; k < candidateCount; k++) {
+                    int i = candidates[k];
+                    float dx = cx - xs[i];
+                    float dy = cy - ys[i];
+                    float dz = tagHeight - zs[i];
+                    float d2 = dx * dx + dy * dy + dz * dz;
+                    if (d2 > range2 || d2 < MIN_DISTANCE_SQUARED) {
+                        continue;
+                    }
+                    // H^T H of the unit vectors, 1 / d^2 normalizes both components
+                    double inv = 1.0 / d2;
+                    a += dx * dx * inv;
+                    b += dx * dy * inv;
+                    c += dy * dy * inv;
+                    n++;
+                }
+                float value;
+                if (n < minAnchors) {
+                    value = Float.NaN;
+                } else {
+                    double det = a * c - b * b;
+                    value = det < MIN_DETERMINANT ? Float.POSITIVE_INFINITY
+                            : (float) Math.sqrt((a + c) / det);
+                }
+                values[offset + col] = value;
+            }
+        }
+    }
+
+    /**
+     * chunks of the updated rows taken by the threads of the executor and the calling thread;
+     * the calling thread computes every chunk no other thread has started, so it never waits
+     * for a task queued behind itself
+     */
+    private final class RowChunks implements Runnable {
+
+        private final int chunkRows;
+        private final int chunks;
+        private final AtomicInteger next = new AtomicInteger();
+        private final CountDownLatch done;
+
+        RowChunks(int chunkRows, int chunks) {
+            this.chunkRows = chunkRows;
+            this.chunks = chunks;
+            this.done = new CountDownLatch(chunks);
+        }
+
+        void run(Executor executor) {
+            int helpers = Math.min(chunks, Runtime.getRuntime().availableProcessors()) - 1;
+            try {
+                for (int i = 0; i < helpers; i++) {
+                    executor.execute(this);
+                }
+            } catch (RejectedExecutionException e) {
+                // the calling thread computes the rest
+            }
+            run();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // the chunks in progress finish anyway
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            int chunk;
+            while ((chunk = next.getAndIncrement()) < chunks) {
+                int from = updatedTop + chunk * chunkRows;
+                try {
+                    computeRows(from, Math.min(from + chunkRows, updatedBottom));
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.onlylemi.mapview.core.geometry;
+
+/**
+ * Geometry
+ * <p>
+ * Plane geometry on primitive coordinates. Functions returning a point write it to an
+ * {@code out} array at {@code out[offset]}, {@code out[offset + 1]}.
+ *
+ * @author: onlylemi
+ */
+public final class Geometry {
+
+    private Geometry() {}
+
+    /**
+     * the distance between two points
+     *
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public static float distance(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * the squared distance between two points
+     *
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public static float distanceSquared(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * get the angle between two points and the horizontal plane
+     *
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @return
+     */
+    public static float degreeWithHorizontal(float startX, float startY, float endX, float endY) {
+        float angle = 90.0f;
+        if (startX != endX) {
+            angle = (float) Math.toDegrees(Math.atan((endY - startY) / (endX - startX)));
+            if (endX < startX && endY >= startY) {
+                angle = angle + 180.0f;
+            } else if (endX < startX && endY > startY) {
+                angle = angle - 180.f;
+            }
+        } else {
+            if (startY < endY) {
+                angle = 90.0f;
+            } else if (startY > endY) {
+                angle = -90.0f;
+            }
+        }
+        return angle;
+    }
+
+    /**
+     * get the angle between two points and the vertical plane
+     *
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @return
+     */
+    public static float degreeWithVertical(float startX, float startY, float endX, float endY) {
+        float angle = 90.0f;
+        if (startY != endY) {
+            angle = -(float) Math.toDegrees(Math.atan((endX - startX) / (endY - startY)));
+            if (endY > startY && endX >= startX) {
+                angle = angle + 180.0f;
+            } else if (endY > startY && endX > startX) {
+                angle = angle - 180.f;
+            }
+        } else {
+            if (startX < endX) {
+                angle = 90.0f;
+            } else if (startX > endX) {
+                angle = -90.0f;
+            }
+        }
+        return angle;
+    }
+
+    /**
+     * get degree between two points
+     *
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public static float degree(float x1, float y1, float x2, float y2) {
+        return (float) Math.toDegrees(Math.atan2(y1 - y2, x1 - x2));
+    }
+
+    /**
+     * the point at {@code value} (0 - 1) of the way from start to end
+     *
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @param value
+     * @param out
+     * @param offset
+     */
+    public static void interpolate(float startX, float startY, float endX, float endY,
+                                   float value, float[] out, int offset) {
+        out[offset] = startX + (endX - startX) * value;
+        out[offset + 1] = startY + (endY - startY) * value;
+    }
+
+    /**
+     * shortest distance from a point to the line through two points
+     *
+     * @param px
+     * @param py
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public static float distanceFromPointToLine(float px, float py, float x1, float y1,
+                                                float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) {
+            return distance(px, py, x1, y1);
+        }
+        // |cross product| / base
+        return Math.abs(dx * (py - y1) - dy * (px - x1)) / length;
+    }
+
+    /**
+     * projection of a point to the line through two points
+     *
+     * @param px
+     * @param py
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @param out    receives the projection
+     * @param offset
+     * @return position of the projection along the line, 0 at the first and 1 at the second
+     * point
+     */
+    public static float projectPointToLine(float px, float py, float x1, float y1,
+                                           float x2, float y2, float[] out, int offset) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length2 = dx * dx + dy * dy;
+        float t = length2 == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / length2;
+        out[offset] = x1 + dx * t;
+        out[offset + 1] = y1 + dy * t;
+        return t;
+    }
+
+    /**
+     * projection of a point to a segment, clamped to its end points
+     *
+     * @param px
+     * @param py
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @param out    receives the projection
+     * @param offset
+     * @return squared distance between the point and its projection
+     */
+    public static float projectPointToSegment(float px, float py, float x1, float y1,
+                                              float x2, float y2, float[] out, int offset) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length2 = dx * dx + dy * dy;
+        float t = length2 == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        float x = x1 + dx * t;
+        float y = y1 + dy * t;
+        out[offset] = x;
+        out[offset + 1] = y;
+        return distanceSquared(px, py, x, y);
+    }
+
+    /**
+     * squared distance between a point and a segment
+     *
+     * @param px
+     * @param py
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public static float distanceSquaredToSegment(float px, float py, float x1, float y1,
+                                                 float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length2 = dx * dx + dy * dy;
+        float t = length2 == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        return distanceSquared(px, py, x1 + dx * t, y1 + dy * t);
+    }
+
+    /**
+     * is/not obtuse angle between a point and a line, i.e. the projection of the point falls
+     * outside the segment
+     *
+     * @param px
+     * @param py
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public static boolean isObtuseAnglePointAndLine(float px, float py, float x1, float y1,
+                                                    float x2, float y2) {
+        // A*A + B*B < C*C
+        float pl1 = distanceSquared(px, py, x1, y1);
+        float pl2 = distanceSquared(px, py, x2, y2);
+        float l1l2 = distanceSquared(x1, y1, x2, y2);
+        return (pl1 + l1l2 < pl2) || (pl2 + l1l2 < pl1);
+    }
+}
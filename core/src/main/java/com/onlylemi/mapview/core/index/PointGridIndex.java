@@ -0,0 +1,185 @@
+package com.onlylemi.mapview.core.index;
+
+/**
+ * PointGridIndex
+ * <p>
+ * Immutable uniform grid over a set of points, for range queries and nearest neighbour lookup.
+ * The cell size is chosen so that a cell holds about {@link #POINTS_PER_CELL} points on
+ * average. Points are kept in flat arrays grouped by cell, queries do not allocate.
+ *
+ * @author: onlylemi
+ */
+public final class PointGridIndex {
+
+    private static final int POINTS_PER_CELL = 4;
+
+    private final int count;
+    private final float[] xs;
+    private final float[] ys;
+
+    private final float minX, minY;
+    private final float cellSize;
+    private final int cellsX, cellsY;
+    // points of cell c are items[cellStart[c]] .. items[cellStart[c + 1] - 1]
+    private final int[] cellStart;
+    private final int[] items;
+
+    /**
+     * @param xs    x of the points
+     * @param ys    y of the points
+     * @param count number of points, the arrays are copied
+     */
+    public PointGridIndex(float[] xs, float[] ys, int count) {
+        this.count = count;
+        this.xs = new float[count];
+        this.ys = new float[count];
+        System.arraycopy(xs, 0, this.xs, 0, count);
+        System.arraycopy(ys, 0, this.ys, 0, count);
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minX = minX;
+        this.minY = minY;
+
+        // bounded by the number of target cells for both square and degenerate (line) sets
+        float width = Math.max(maxX - minX, 1e-3f);
+        float height = Math.max(maxY - minY, 1e-3f);
+        int targetCells = Math.max(1, count / POINTS_PER_CELL);
+        this.cellSize = Math.max((float) Math.sqrt(width * height / targetCells),
+                Math.max(width, height) / targetCells);
+        this.cellsX = (int) (width / cellSize) + 1;
+        this.cellsY = (int) (height / cellSize) + 1;
+
+        // counting sort of the points into their cells
+        int cells = cellsX * cellsY;
+        int[] cellOf = new int[count];
+        cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cellIndex(cellX(xs[i]), cellY(ys[i]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        items = new int[count];
+        int[] fill = new int[cells];
+        for (int i = 0; i < count; i++) {
+            int c = cellOf[i];
+            items[cellStart[c] + fill[c]++] = i;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * indexes of the points inside the rect (bounds included)
+     *
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @param out    receives the indexes, must hold at least {@link #size()} elements
+     * @return number of indexes written to out
+     */
+    public int query(float left, float top, float right, float bottom, int[] out) {
+        if (count == 0 || right < left || bottom < top) {
+            return 0;
+        }
+        int x0 = cellX(left), x1 = cellX(right);
+        int y0 = cellY(top), y1 = cellY(bottom);
+        int n = 0;
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int c = cellIndex(cx, cy);
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = items[k];
+                    if (xs[i] >= left && xs[i] <= right && ys[i] >= top && ys[i] <= bottom) {
+                        out[n++] = i;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * the point nearest to (x, y)
+     *
+     * @param x
+     * @param y
+     * @param maxDistance points further away are ignored
+     * @return index of the point, -1 if there is none within maxDistance
+     */
+    public int nearest(float x, float y, float maxDistance) {
+        if (count == 0) {
+            return -1;
+        }
+        int cx0 = cellX(x), cy0 = cellY(y);
+        int best = -1;
+        float bestDist2 = maxDistance * maxDistance;
+        int maxRing = Math.max(Math.max(cx0, cellsX - 1 - cx0), Math.max(cy0, cellsY - 1 - cy0));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // every point of this ring is at least (ring - 1) cells away on some axis
+            float ringDist = (ring - 1) * cellSize;
+            if (ring > 0 && (ringDist > maxDistance
+                    || (best != -1 && ringDist * ringDist >= bestDist2))) {
+                break;
+            }
+            for (int cy = cy0 - ring; cy <= cy0 + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) {
+                    continue;
+                }
+                // full row on the top and bottom edge, only both ends on the others
+                boolean edgeRow = cy == cy0 - ring || cy == cy0 + ring;
+                int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+                for (int cx = cx0 - ring; cx <= cx0 + ring; cx += step) {
+                    if (cx < 0 || cx >= cellsX) {
+                        continue;
+                    }
+                    int c = cellIndex(cx, cy);
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int i = items[k];
+                        float dx = xs[i] - x, dy = ys[i] - y;
+                        float dist2 = dx * dx + dy * dy;
+                        if (dist2 <= bestDist2) {
+                            bestDist2 = dist2;
+                            best = i;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private int cellX(float x) {
+        return Math.min(cellsX - 1, Math.max(0, (int) ((x - minX) / cellSize)));
+    }
+
+    private int cellY(float y) {
+        return Math.min(cellsY - 1, Math.max(0, (int) ((y - minY) / cellSize)));
+    }
+
+    private int cellIndex(int cx, int cy) {
+        return cy * cellsX + cx;
+    }
+}
@@ -0,0 +1,49 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * ChannelSource
+ * <p>
+ * Frames from a byte stream: a file, a pipe, a serial port or TCP stream exposed as a channel.
+ * Frames may be split across reads, the incomplete tail is kept for the next read.
+ *
+ * @author: onlylemi
+ */
+public class ChannelSource extends MeasurementSource {
+
+    private final ReadableByteChannel channel;
+
+    public ChannelSource(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelSource(ReadableByteChannel channel, int bufferSize) {
+        super(bufferSize);
+        this.channel = channel;
+    }
+
+    @Override
+    public int poll(MeasurementSink sink) throws IOException {
+        // the buffer is kept in fill mode between polls
+        int read = channel.read(buffer);
+        if (read < 0) {
+            buffer.flip();
+            decoder.decode(buffer, sink);
+            decoder.discard(buffer);
+            buffer.clear();
+            return -1;
+        }
+        counters.addBytes(read);
+        buffer.flip();
+        int frames = decoder.decode(buffer, sink);
+        buffer.compact();
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
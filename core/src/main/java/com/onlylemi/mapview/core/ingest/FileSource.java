@@ -0,0 +1,19 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * FileSource
+ * <p>
+ * Frames from a file of concatenated frames, as fast as they can be decoded.
+ *
+ * @author: onlylemi
+ */
+public class FileSource extends ChannelSource {
+
+    public FileSource(File file) throws IOException {
+        super(new FileInputStream(file).getChannel());
+    }
+}
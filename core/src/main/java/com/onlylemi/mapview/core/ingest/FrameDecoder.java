@@ -0,0 +1,116 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * FrameDecoder
+ * <p>
+ * Decodes {@link FrameFormat} frames in place, with absolute reads on the buffer, and hands every
+ * record to a {@link MeasurementSink} as primitives, so decoding does not allocate. In a stream
+ * a corrupted frame is skipped by scanning for the next valid header; one parse error is
+ * counted per corrupted run, not per skipped byte. Not thread safe.
+ *
+ * @author: onlylemi
+ */
+public final class FrameDecoder {
+
+    private final IngestCounters counters;
+    private boolean resyncing;
+
+    public FrameDecoder(IngestCounters counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * decode the complete frames between the position and the limit of a buffer; the position
+     * is left at the first byte not consumed, the start of an incomplete frame
+     *
+     * @param buffer set to little endian
+     * @param sink
+     * @return number of frames decoded
+     */
+    public int decode(ByteBuffer buffer, MeasurementSink sink) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        int frames = 0;
+        while (limit - pos >= FrameFormat.HEADER_SIZE) {
+            int type = buffer.get(pos + 3);
+            int recordSize = FrameFormat.recordSize(type);
+            int count = buffer.getShort(pos + 4) & 0xFFFF;
+            if ((buffer.getShort(pos) & 0xFFFF) != FrameFormat.MAGIC
+                    || buffer.get(pos + 2) != FrameFormat.VERSION
+                    || recordSize < 0 || count > FrameFormat.MAX_RECORDS) {
+                skip();
+                pos++;
+                continue;
+            }
+            int crcOffset = pos + FrameFormat.HEADER_SIZE + count * recordSize;
+            if (limit - crcOffset < FrameFormat.TRAILER_SIZE) {
+                // incomplete, wait for more bytes
+                break;
+            }
+            if ((buffer.getShort(crcOffset) & 0xFFFF) != FrameFormat.crc16(buffer, pos, crcOffset)) {
+                skip();
+                pos++;
+                continue;
+            }
+            resyncing = false;
+            decodeRecords(buffer, pos + FrameFormat.HEADER_SIZE, type, count, sink);
+            counters.addFrame(count);
+            frames++;
+            pos = crcOffset + FrameFormat.TRAILER_SIZE;
+        }
+        buffer.position(pos);
+        return frames;
+    }
+
+    /**
+     * count the bytes left in a buffer as a truncated frame, e.g. at the end of a datagram
+     *
+     * @param buffer
+     */
+    public void discard(ByteBuffer buffer) {
+        if (buffer.hasRemaining()) {
+            skip();
+            buffer.position(buffer.limit());
+        }
+        resyncing = false;
+    }
+
+    private void skip() {
+        if (!resyncing) {
+            counters.addParseError();
+            resyncing = true;
+        }
+    }
+
+    private void decodeRecords(ByteBuffer buffer, int offset, int type, int count,
+                               MeasurementSink sink) {
+        boolean accepted;
+        for (int i = 0; i < count; i++) {
+            switch (type) {
+                case FrameFormat.TYPE_RANGE:
+                    accepted = sink.onRange(buffer.getLong(offset), buffer.getInt(offset + 8),
+                            buffer.getFloat(offset + 12), buffer.getLong(offset + 16));
+                    offset += FrameFormat.RANGE_SIZE;
+                    break;
+                case FrameFormat.TYPE_BLINK:
+                    accepted = sink.onBlink(buffer.getLong(offset), buffer.getInt(offset + 12),
+                            buffer.getInt(offset + 8), buffer.getLong(offset + 16),
+                            buffer.getLong(offset + 24));
+                    offset += FrameFormat.BLINK_SIZE;
+                    break;
+                default:
+                    accepted = sink.onSync(buffer.getInt(offset), buffer.getLong(offset + 8),
+                            buffer.getLong(offset + 16));
+                    offset += FrameFormat.SYNC_SIZE;
+                    break;
+            }
+            if (!accepted) {
+                counters.addDrop();
+            }
+        }
+    }
+}
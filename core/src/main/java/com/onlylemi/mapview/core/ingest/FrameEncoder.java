@@ -0,0 +1,109 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * FrameEncoder
+ * <p>
+ * Writes {@link FrameFormat} frames into a buffer, for gateway simulators, the loopback source
+ * and recordings. Records are appended to the open frame, {@link #end()} fills in the count and
+ * the CRC. Does not allocate.
+ *
+ * @author: onlylemi
+ */
+public final class FrameEncoder {
+
+    private final ByteBuffer out;
+    private int frameStart = -1;
+    private int type;
+    private int count;
+    private int sequence;
+
+    /**
+     * @param out receives the frames at its position, set to little endian
+     */
+    public FrameEncoder(ByteBuffer out) {
+        this.out = out;
+        out.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public ByteBuffer getBuffer() {
+        return out;
+    }
+
+    /**
+     * open a frame
+     *
+     * @param type one of the FrameFormat types
+     */
+    public void begin(int type) {
+        if (frameStart >= 0) {
+            throw new IllegalStateException("frame not ended");
+        }
+        if (FrameFormat.recordSize(type) < 0) {
+            throw new IllegalArgumentException("unknown record type: " + type);
+        }
+        this.type = type;
+        this.count = 0;
+        frameStart = out.position();
+        out.putShort((short) FrameFormat.MAGIC);
+        out.put((byte) FrameFormat.VERSION);
+        out.put((byte) type);
+        out.putShort((short) 0); // count, set by end
+        out.putShort((short) sequence);
+    }
+
+    public void range(long tagId, int anchorId, float distance, long timestampMicros) {
+        checkRecord(FrameFormat.TYPE_RANGE);
+        out.putLong(tagId);
+        out.putInt(anchorId);
+        out.putFloat(distance);
+        out.putLong(timestampMicros);
+    }
+
+    public void blink(long tagId, int sequence, int anchorId, long rxTicks,
+                      long timestampMicros) {
+        checkRecord(FrameFormat.TYPE_BLINK);
+        out.putLong(tagId);
+        out.putInt(anchorId);
+        out.putInt(sequence);
+        out.putLong(rxTicks);
+        out.putLong(timestampMicros);
+    }
+
+    public void sync(int anchorId, long referenceTxTicks, long rxTicks) {
+        checkRecord(FrameFormat.TYPE_SYNC);
+        out.putInt(anchorId);
+        out.putInt(0);
+        out.putLong(referenceTxTicks);
+        out.putLong(rxTicks);
+    }
+
+    /**
+     * close the frame
+     *
+     * @return size of the frame, bytes
+     */
+    public int end() {
+        if (frameStart < 0) {
+            throw new IllegalStateException("no frame");
+        }
+        out.putShort(frameStart + 4, (short) count);
+        out.putShort((short) FrameFormat.crc16(out, frameStart, out.position()));
+        int size = out.position() - frameStart;
+        frameStart = -1;
+        sequence = (sequence + 1) & 0xFFFF;
+        return size;
+    }
+
+    private void checkRecord(int recordType) {
+        if (frameStart < 0 || type != recordType) {
+            throw new IllegalStateException("no open frame of type " + recordType);
+        }
+        if (count == FrameFormat.MAX_RECORDS) {
+            throw new IllegalStateException("frame full");
+        }
+        count++;
+    }
+}
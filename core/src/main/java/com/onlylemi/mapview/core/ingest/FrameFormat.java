@@ -0,0 +1,103 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * FrameFormat
+ * <p>
+ * Binary frames of the gateways, little endian. A frame carries records of one type:
+ * <pre>
+ * offset  size
+ *  0      2     magic 0x5452 ("RT")
+ *  2      1     version 1
+ *  3      1     record type
+ *  4      2     record count
+ *  6      2     frame sequence number of the gateway
+ *  8      n     records, count * record size
+ *  8 + n  2     CRC-16/CCITT-FALSE of bytes 0 .. 8 + n - 1
+ *
+ * range  (24): tag id u64, anchor id u32, distance f32 meters, timestamp u64 micros
+ * blink  (32): tag id u64, anchor id u32, blink sequence u32, rx ticks u64, timestamp u64 micros
+ * sync   (24): anchor id u32, reserved u32, reference tx ticks u64, rx ticks u64
+ * </pre>
+ *
+ * @author: onlylemi
+ */
+public final class FrameFormat {
+
+    public static final int MAGIC = 0x5452;
+    public static final int VERSION = 1;
+
+    public static final int TYPE_RANGE = 1;
+    public static final int TYPE_BLINK = 2;
+    public static final int TYPE_SYNC = 3;
+
+    public static final int HEADER_SIZE = 8;
+    public static final int TRAILER_SIZE = 2;
+    public static final int RANGE_SIZE = 24;
+    public static final int BLINK_SIZE = 32;
+    public static final int SYNC_SIZE = 24;
+    // records of one frame, keeps frames below the 64 KiB of a datagram
+    public static final int MAX_RECORDS = 1024;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_RECORDS * BLINK_SIZE
+            + TRAILER_SIZE;
+
+    private static final short[] CRC_TABLE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = (short) crc;
+        }
+    }
+
+    private FrameFormat() {}
+
+    /**
+     * @param type
+     * @return size of a record of the type, -1 for an unknown type
+     */
+    public static int recordSize(int type) {
+        switch (type) {
+            case TYPE_RANGE:
+                return RANGE_SIZE;
+            case TYPE_BLINK:
+                return BLINK_SIZE;
+            case TYPE_SYNC:
+                return SYNC_SIZE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * CRC-16/CCITT-FALSE of a range of a buffer, absolute, the buffer position is not changed
+     *
+     * @param buffer
+     * @param from
+     * @param to     exclusive
+     * @return
+     */
+    public static int crc16(ByteBuffer buffer, int from, int to) {
+        int crc = 0xFFFF;
+        int i = from;
+        if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+            // one bounds checked read per 8 bytes, lowest byte first
+            for (; i + 8 <= to; i += 8) {
+                long word = buffer.getLong(i);
+                for (int shift = 0; shift < 64; shift += 8) {
+                    crc = (crc << 8) ^ (CRC_TABLE[((crc >>> 8) ^ (int) (word >>> shift)) & 0xFF]
+                            & 0xFFFF);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            crc = (crc << 8) ^ (CRC_TABLE[((crc >>> 8) ^ buffer.get(i)) & 0xFF] & 0xFFFF);
+        }
+        return crc & 0xFFFF;
+    }
+}
@@ -0,0 +1,81 @@
+package com.onlylemi.mapview.core.ingest;
+
+/**
+ * IngestCounters
+ * <p>
+ * Counters of a measurement source. Written by the thread reading the source only, readable
+ * from any thread.
+ *
+ * @author: onlylemi
+ */
+public final class IngestCounters {
+
+    private volatile long frames;
+    private volatile long records;
+    private volatile long bytes;
+    private volatile long parseErrors;
+    private volatile long drops;
+
+    void addFrame(int recordCount) {
+        frames++;
+        records += recordCount;
+    }
+
+    void addBytes(long count) {
+        bytes += count;
+    }
+
+    void addParseError() {
+        parseErrors++;
+    }
+
+    void addDrop() {
+        drops++;
+    }
+
+    /**
+     * @return valid frames decoded
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return measurements decoded
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return bytes read
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return corrupted, truncated or unknown frames
+     */
+    public long getParseErrors() {
+        return parseErrors;
+    }
+
+    /**
+     * @return measurements refused by the sink
+     */
+    public long getDrops() {
+        return drops;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestCounters{" +
+                "frames=" + frames +
+                ", records=" + records +
+                ", bytes=" + bytes +
+                ", parseErrors=" + parseErrors +
+                ", drops=" + drops +
+                '}';
+    }
+}
@@ -0,0 +1,48 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+
+/**
+ * LoopbackSource
+ * <p>
+ * In-memory source for tests and simulators: frames written with {@link #send} come out of
+ * {@link #poll}. The read side does not block, a poll without data returns 0.
+ *
+ * @author: onlylemi
+ */
+public class LoopbackSource extends ChannelSource {
+
+    private final Pipe.SinkChannel writer;
+
+    public static LoopbackSource open() throws IOException {
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        return new LoopbackSource(pipe);
+    }
+
+    private LoopbackSource(Pipe pipe) {
+        super(pipe.source());
+        this.writer = pipe.sink();
+    }
+
+    /**
+     * write frames, e.g. the flipped buffer of a {@link FrameEncoder}; blocks while the pipe is
+     * full
+     *
+     * @param frames consumed
+     * @throws IOException
+     */
+    public void send(ByteBuffer frames) throws IOException {
+        while (frames.hasRemaining()) {
+            writer.write(frames);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        super.close();
+    }
+}
@@ -0,0 +1,26 @@
+package com.onlylemi.mapview.core.ingest;
+
+/**
+ * MeasurementSink
+ * <p>
+ * Receives the measurements decoded from frames as primitives, one call per record.
+ *
+ * @author: onlylemi
+ */
+public interface MeasurementSink {
+
+    /**
+     * @return false if the measurement was dropped (e.g. a full ring)
+     */
+    boolean onRange(long tagId, int anchorId, float distance, long timestampMicros);
+
+    /**
+     * @return false if the reception was dropped
+     */
+    boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks, long timestampMicros);
+
+    /**
+     * @return false if the sync frame was dropped
+     */
+    boolean onSync(int anchorId, long referenceTxTicks, long rxTicks);
+}
@@ -0,0 +1,56 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * MeasurementSource
+ * <p>
+ * Reads gateway frames into a direct buffer and decodes them in place to a
+ * {@link MeasurementSink}. Subclasses provide the transport. A source is read by one thread,
+ * its {@link IngestCounters} may be read from any thread.
+ *
+ * @author: onlylemi
+ */
+public abstract class MeasurementSource implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    protected final ByteBuffer buffer;
+    protected final IngestCounters counters = new IngestCounters();
+    protected final FrameDecoder decoder = new FrameDecoder(counters);
+
+    /**
+     * @param bufferSize bytes, at least one frame of the largest size
+     */
+    protected MeasurementSource(int bufferSize) {
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, FrameFormat.MAX_FRAME_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * read what the transport has and decode it, blocking if the transport blocks
+     *
+     * @param sink
+     * @return number of frames decoded, -1 at the end of the source
+     * @throws IOException
+     */
+    public abstract int poll(MeasurementSink sink) throws IOException;
+
+    /**
+     * decode until the end of the source or until it is closed
+     *
+     * @param sink
+     * @throws IOException
+     */
+    public void run(MeasurementSink sink) throws IOException {
+        while (poll(sink) >= 0) {
+        }
+    }
+
+    public IngestCounters getCounters() {
+        return counters;
+    }
+}
@@ -0,0 +1,36 @@
+package com.onlylemi.mapview.core.ingest;
+
+import com.onlylemi.mapview.core.pipeline.PositioningPipeline;
+
+/**
+ * PipelineSink
+ * <p>
+ * Feeds decoded measurements to a {@link PositioningPipeline}, through the producer of the
+ * thread reading the source.
+ *
+ * @author: onlylemi
+ */
+public final class PipelineSink implements MeasurementSink {
+
+    private final PositioningPipeline.Producer producer;
+
+    public PipelineSink(PositioningPipeline.Producer producer) {
+        this.producer = producer;
+    }
+
+    @Override
+    public boolean onRange(long tagId, int anchorId, float distance, long timestampMicros) {
+        return producer.range(tagId, anchorId, distance, timestampMicros);
+    }
+
+    @Override
+    public boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks,
+                           long timestampMicros) {
+        return producer.blink(tagId, sequence, anchorId, rxTicks, timestampMicros);
+    }
+
+    @Override
+    public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+        return producer.sync(anchorId, referenceTxTicks, rxTicks);
+    }
+}
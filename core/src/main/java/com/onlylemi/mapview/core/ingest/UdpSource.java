@@ -0,0 +1,69 @@
+package com.onlylemi.mapview.core.ingest;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * UdpSource
+ * <p>
+ * Frames from UDP datagrams, each datagram holding whole frames. A datagram ending in an
+ * incomplete frame counts a parse error. Receiving blocks until a datagram arrives; the JDK
+ * caches the sender address of consecutive datagrams from one gateway, so steady traffic does
+ * not allocate.
+ *
+ * @author: onlylemi
+ */
+public class UdpSource extends MeasurementSource {
+
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final DatagramChannel channel;
+
+    /**
+     * @param local address to listen on
+     * @throws IOException
+     */
+    public UdpSource(SocketAddress local) throws IOException {
+        this(local, DEFAULT_RECEIVE_BUFFER_SIZE);
+    }
+
+    /**
+     * @param local             address to listen on
+     * @param receiveBufferSize socket receive buffer, absorbs bursts while the reader is busy
+     * @throws IOException
+     */
+    public UdpSource(SocketAddress local, int receiveBufferSize) throws IOException {
+        // one datagram at most
+        super(FrameFormat.MAX_FRAME_SIZE);
+        channel = DatagramChannel.open();
+        channel.socket().setReceiveBufferSize(receiveBufferSize);
+        channel.socket().bind(local);
+    }
+
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public int poll(MeasurementSink sink) throws IOException {
+        if (!channel.isOpen()) {
+            return -1;
+        }
+        buffer.clear();
+        if (channel.receive(buffer) == null) {
+            // non blocking channel without datagram
+            return 0;
+        }
+        counters.addBytes(buffer.position());
+        buffer.flip();
+        int frames = decoder.decode(buffer, sink);
+        decoder.discard(buffer);
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,10 +1,12 @@
-package com.onlylemi.mapview.library.utils.math;
+package com.onlylemi.mapview.core.math;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * FloydAlgorithm
+ * <p>
+ * Holds the tables of one search, create one per query or per thread.
  *
  * @author: onlylemi
  */
@@ -17,12 +19,13 @@ public final class FloydAlgorithm {
     private int[][] path;
     private List<Integer> result;
 
+    /**
+     * @return a new instance, the shared instance let concurrent searches overwrite each other
+     * @deprecated use {@code new FloydAlgorithm()}
+     */
+    @Deprecated
     public static FloydAlgorithm getInstance() {
-        return FloydAlgorithmHolder.instance;
-    }
-
-    private static class FloydAlgorithmHolder {
-        private static FloydAlgorithm instance = new FloydAlgorithm();
+        return new FloydAlgorithm();
     }
 
     private void init(float[][] matrix) {
@@ -1,10 +1,12 @@
-package com.onlylemi.mapview.library.utils.math;
+package com.onlylemi.mapview.core.math;
 
 import java.util.Arrays;
 import java.util.Random;
 
 /**
  * GeneticAlgorithm
+ * <p>
+ * Holds the population of one run, create one per query or per thread.
  *
  * @author: onlylemi
  */
@@ -40,14 +42,15 @@ public class GeneticAlgorithm {
 
     private boolean isAutoNextGeneration = false;
 
-    private static Random rd;
+    private final Random rd = new Random();
 
+    /**
+     * @return a new instance, the shared instance let concurrent runs overwrite each other
+     * @deprecated use {@code new GeneticAlgorithm()}
+     */
+    @Deprecated
     public static GeneticAlgorithm getInstance() {
-        return GeneticAlgorithmHolder.instance;
-    }
-
-    private static class GeneticAlgorithmHolder {
-        private static GeneticAlgorithm instance = new GeneticAlgorithm();
+        return new GeneticAlgorithm();
     }
 
     /**
@@ -57,6 +60,15 @@ public class GeneticAlgorithm {
      * @return
      */
     public int[] tsp(float[][] matrix) {
+        if (matrix.length < 3) {
+            // a single tour, the mutations need at least 3 points
+            isAutoNextGeneration = false;
+            int[] order = new int[matrix.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
         this.dist = matrix;
         pointNum = matrix.length;
         init();
@@ -378,11 +390,7 @@ public class GeneticAlgorithm {
     }
 
     private int random(int n) {
-        Random ran = rd;
-        if (ran == null) {
-            ran = new Random();
-        }
-        return ran.nextInt(n);
+        return rd.nextInt(n);
     }
 
     private int[] concatAllArray(int[] first, int[]... rest) {
@@ -1,33 +1,37 @@
-package com.onlylemi.mapview.library.utils.math;
+package com.onlylemi.mapview.core.math;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 
+/**
+ * TSPNearestNeighbour
+ * <p>
+ * Stateless, the tour is built in locals of each call.
+ *
+ * @author: onlylemi
+ */
 public class TSPNearestNeighbour {
 
     private static final float INF = Float.MAX_VALUE;
 
-    private int numberOfNodes;
-    private Deque<Integer> stack;
-    private List<Integer> list;
-
     public TSPNearestNeighbour() {
-        stack = new ArrayDeque<>();
-        list = new ArrayList<>();
     }
 
+    /**
+     * @return a new instance
+     * @deprecated use {@code new TSPNearestNeighbour()}
+     */
+    @Deprecated
     public static TSPNearestNeighbour getInstance() {
-        return TSPNearestNeighbourHolder.instance;
-    }
-    private static class TSPNearestNeighbourHolder {
-        private static TSPNearestNeighbour instance = new TSPNearestNeighbour();
-
+        return new TSPNearestNeighbour();
     }
 
     public List<Integer> tsp(float[][] matrix) {
-        numberOfNodes = matrix[0].length;
+        int numberOfNodes = matrix[0].length;
+        Deque<Integer> stack = new ArrayDeque<>();
+        List<Integer> list = new ArrayList<>();
         int[] visited = new int[numberOfNodes];
         visited[0] = 1;
         stack.push(0);
@@ -0,0 +1,169 @@
+package com.onlylemi.mapview.core.pipeline;
+
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+import com.onlylemi.mapview.core.positioning.TdoaPositioningEngine;
+import com.onlylemi.mapview.core.positioning.TwrPositioningEngine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PipelineShard
+ * <p>
+ * Worker of one shard of a {@link PositioningPipeline}: drains the rings of all producers in
+ * turn and feeds the records to the engines of the shard, whose fixes go through the optional
+ * filter to the pipeline listener. Everything a shard touches is owned by its thread.
+ *
+ * @author: onlylemi
+ */
+final class PipelineShard implements Runnable, SpscRecordRing.RecordHandler, PositionListener {
+
+    static final int KIND_RANGE = 1;
+    static final int KIND_BLINK = 2;
+    static final int KIND_SYNC = 3;
+
+    private static final int DRAIN_BATCH = 256;
+    // idle back off: spin, then yield, then park
+    private static final int SPIN_TRIES = 64;
+    private static final int YIELD_TRIES = 64;
+    private static final long PARK_NANOS = 100000; // 0.1 ms
+    // pending rounds are checked for expiry this often, measurement time
+    private static final long FLUSH_INTERVAL_MICROS = 10000;
+
+    final SpscRecordRing[] rings; // by producer
+    final TwrPositioningEngine twr;
+    TdoaPositioningEngine tdoa;
+    TagKalmanFilter filter;
+    private final PositioningPipeline pipeline;
+
+    volatile Thread thread;
+    private volatile long processed;
+    // newest measurement time seen
+    private long latestMicros;
+    private long nextFlushMicros;
+
+    PipelineShard(PositioningPipeline pipeline, TwrPositioningEngine twr, int producers,
+                  int ringCapacity) {
+        this.pipeline = pipeline;
+        this.twr = twr;
+        this.rings = new SpscRecordRing[producers];
+        for (int i = 0; i < producers; i++) {
+            rings[i] = new SpscRecordRing(ringCapacity);
+        }
+        twr.setPositionListener(this);
+    }
+
+    void setTdoa(TdoaPositioningEngine tdoa) {
+        this.tdoa = tdoa;
+        tdoa.setPositionListener(this);
+    }
+
+    void setFilter(TagKalmanFilter filter) {
+        this.filter = filter;
+        if (filter != null) {
+            filter.setPositionListener(pipeline.downstream);
+        }
+    }
+
+    long getProcessedCount() {
+        return processed;
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        long idleSinceNanos = 0;
+        while (pipeline.running) {
+            if (drainAll() > 0) {
+                idle = 0;
+                continue;
+            }
+            if (idle == 0) {
+                idleSinceNanos = System.nanoTime();
+            }
+            if (idle <= SPIN_TRIES + YIELD_TRIES) {
+                idle++;
+            }
+            if (idle <= SPIN_TRIES) {
+                continue;
+            }
+            // no measurements, let the rounds of the last ones expire in real time
+            long nowMicros = latestMicros + (System.nanoTime() - idleSinceNanos) / 1000;
+            if (nowMicros >= nextFlushMicros) {
+                flushExpired(nowMicros);
+            }
+            if (idle <= SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+        // stopped, finish what was offered
+        while (drainAll() > 0) {
+        }
+        twr.flushExpired(Long.MAX_VALUE);
+        if (tdoa != null) {
+            tdoa.flushExpired(Long.MAX_VALUE);
+        }
+    }
+
+    private int drainAll() {
+        int drained = 0;
+        for (SpscRecordRing ring : rings) {
+            drained += ring.drain(this, DRAIN_BATCH);
+        }
+        if (drained > 0) {
+            processed += drained;
+            if (latestMicros >= nextFlushMicros) {
+                flushExpired(latestMicros);
+            }
+        }
+        return drained;
+    }
+
+    private void flushExpired(long nowMicros) {
+        twr.flushExpired(nowMicros);
+        if (tdoa != null) {
+            tdoa.flushExpired(nowMicros);
+        }
+        nextFlushMicros = nowMicros + FLUSH_INTERVAL_MICROS;
+    }
+
+    @Override
+    public void onRecord(long w0, long w1, long w2, long w3) {
+        int kind = (int) (w0 >>> 56);
+        int anchorId = (int) w0;
+        switch (kind) {
+            case KIND_RANGE:
+                twr.onRange(w1, anchorId, Float.intBitsToFloat((int) w2), w3);
+                latestMicros = Math.max(latestMicros, w3);
+                break;
+            case KIND_BLINK:
+                if (tdoa != null) {
+                    tdoa.onBlink(w1, (int) (w0 >>> 32) & 0xFFFFFF, anchorId, w2, w3);
+                }
+                latestMicros = Math.max(latestMicros, w3);
+                break;
+            case KIND_SYNC:
+                if (tdoa != null) {
+                    tdoa.onSync(anchorId, w1, w2);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onFix(Fix fix) {
+        if (filter != null) {
+            filter.onFix(fix);
+        } else {
+            PositionListener l = pipeline.downstream;
+            if (l != null) {
+                l.onFix(fix);
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.onlylemi.mapview.core.pipeline;
+
+import com.onlylemi.mapview.core.positioning.AnchorClockTracker;
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+import com.onlylemi.mapview.core.positioning.TdoaPositioningEngine;
+import com.onlylemi.mapview.core.positioning.TwrPositioningEngine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PositioningPipeline
+ * <p>
+ * Ingest, solve, filter and publish sharded by tag id over a fixed set of worker threads. Each
+ * shard owns its engines and filter, so the measurements of a tag are always handled by the same
+ * thread and shards share nothing. Every ingest thread gets a {@link Producer} with one
+ * single-producer single-consumer {@link SpscRecordRing} per shard: offering a measurement takes
+ * no lock and does not allocate, a full ring drops it and counts the drop.
+ * <p>
+ * Fixes are published from the worker threads to one listener, which must accept concurrent
+ * calls and should be a snapshot the render thread reads without blocking, such as a
+ * TagPositionStore behind a MapPositionListener. Configure the shard engines and filters before
+ * {@link #start()}.
+ *
+ * @author: onlylemi
+ */
+public final class PositioningPipeline {
+
+    private static final String TAG = "PositioningPipeline";
+
+    private final PipelineShard[] shards;
+    private final Producer[] producers;
+    private final Anchors anchors;
+    private final int maxTagsPerShard;
+    private final int maxAnchorsPerRound;
+
+    volatile boolean running;
+    volatile PositionListener downstream;
+
+    /**
+     * @param anchors            anchor positions, shared read only by the shards
+     * @param shardCount         worker threads, usually the number of cores left to positioning
+     * @param producerCount      ingest threads
+     * @param ringCapacity       records per ring
+     * @param maxTagsPerShard    tag capacity of the engines of a shard
+     * @param maxAnchorsPerRound max ranges of a TWR round, receptions of a TDoA blink
+     */
+    public PositioningPipeline(Anchors anchors, int shardCount, int producerCount,
+                               int ringCapacity, int maxTagsPerShard, int maxAnchorsPerRound) {
+        if (shardCount <= 0 || producerCount <= 0) {
+            throw new IllegalArgumentException("shards and producers must be positive: "
+                    + shardCount + ", " + producerCount);
+        }
+        this.anchors = anchors;
+        this.maxTagsPerShard = maxTagsPerShard;
+        this.maxAnchorsPerRound = maxAnchorsPerRound;
+        this.shards = new PipelineShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new PipelineShard(this,
+                    new TwrPositioningEngine(anchors, maxTagsPerShard, maxAnchorsPerRound),
+                    producerCount, ringCapacity);
+        }
+        this.producers = new Producer[producerCount];
+        for (int i = 0; i < producerCount; i++) {
+            SpscRecordRing[] rings = new SpscRecordRing[shardCount];
+            for (int s = 0; s < shardCount; s++) {
+                rings[s] = shards[s].rings[i];
+            }
+            producers[i] = new Producer(rings);
+        }
+    }
+
+    /**
+     * give every shard a TDoA engine with its own clock tracker, sync frames are broadcast to
+     * all shards
+     *
+     * @param referenceAnchorId
+     * @param ticksPerSecond
+     * @param timestampBits
+     */
+    public void enableTdoa(int referenceAnchorId, double ticksPerSecond, int timestampBits) {
+        checkNotRunning();
+        for (PipelineShard shard : shards) {
+            AnchorClockTracker clocks = new AnchorClockTracker(anchors, referenceAnchorId,
+                    ticksPerSecond, timestampBits);
+            shard.setTdoa(new TdoaPositioningEngine(anchors, clocks, maxTagsPerShard,
+                    maxAnchorsPerRound));
+        }
+    }
+
+    /**
+     * filter the fixes of every shard
+     *
+     * @param model null for no filter
+     */
+    public void setFilterModel(TagKalmanFilter.Model model) {
+        checkNotRunning();
+        for (PipelineShard shard : shards) {
+            shard.setFilter(model == null ? null : new TagKalmanFilter(model, maxTagsPerShard));
+        }
+    }
+
+    /**
+     * receives the fixes of all shards, called concurrently from the worker threads
+     *
+     * @param listener
+     */
+    public void setPositionListener(PositionListener listener) {
+        this.downstream = listener;
+        for (PipelineShard shard : shards) {
+            if (shard.filter != null) {
+                shard.filter.setPositionListener(listener);
+            }
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param tagId
+     * @return shard handling the tag
+     */
+    public int shardOf(long tagId) {
+        return shardOf(tagId, shards.length);
+    }
+
+    static int shardOf(long tagId, int shardCount) {
+        // fibonacci hash, ids are often sequential
+        long h = tagId * 0x9E3779B97F4A7C15L;
+        return (int) (((h >>> 32) * shardCount) >>> 32);
+    }
+
+    /**
+     * TWR engine of a shard, to configure before start
+     */
+    public TwrPositioningEngine getTwrEngine(int shard) {
+        return shards[shard].twr;
+    }
+
+    /**
+     * TDoA engine of a shard, to configure before start
+     *
+     * @return null unless {@link #enableTdoa} was called
+     */
+    public TdoaPositioningEngine getTdoaEngine(int shard) {
+        return shards[shard].tdoa;
+    }
+
+    /**
+     * filter of a shard, to configure before start
+     *
+     * @return null unless a filter model was set
+     */
+    public TagKalmanFilter getFilter(int shard) {
+        return shards[shard].filter;
+    }
+
+    /**
+     * @param index 0 .. producerCount - 1, each used by one ingest thread
+     */
+    public Producer getProducer(int index) {
+        return producers[index];
+    }
+
+    public synchronized void start() {
+        checkNotRunning();
+        running = true;
+        for (int i = 0; i < shards.length; i++) {
+            Thread thread = new Thread(shards[i], TAG + "-shard-" + i);
+            thread.setDaemon(true);
+            shards[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * stop the workers once they handled what was offered so far
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (PipelineShard shard : shards) {
+            Thread thread = shard.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+                thread.join();
+                shard.thread = null;
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return measurements handled by the workers
+     */
+    public long getProcessedCount() {
+        long count = 0;
+        for (PipelineShard shard : shards) {
+            count += shard.getProcessedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return measurements dropped on full rings
+     */
+    public long getDroppedCount() {
+        long count = 0;
+        for (Producer producer : producers) {
+            count += producer.getDroppedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return measurements waiting in the rings
+     */
+    public int getBacklog() {
+        int count = 0;
+        for (PipelineShard shard : shards) {
+            for (SpscRecordRing ring : shard.rings) {
+                count += ring.size();
+            }
+        }
+        return count;
+    }
+
+    private void checkNotRunning() {
+        if (running) {
+            throw new IllegalStateException("pipeline is running");
+        }
+    }
+
+    /**
+     * Producer
+     * <p>
+     * Entry of one ingest thread into the pipeline, not thread safe.
+     */
+    public static final class Producer {
+
+        private final SpscRecordRing[] rings; // by shard
+        private volatile long dropped; // written by the producer thread only
+
+        Producer(SpscRecordRing[] rings) {
+            this.rings = rings;
+        }
+
+        /**
+         * a TWR range report
+         *
+         * @return false if the shard ring was full and the report dropped
+         */
+        public boolean range(long tagId, int anchorId, float distance, long timestampMicros) {
+            return offer(rings[shardOf(tagId, rings.length)],
+                    (long) PipelineShard.KIND_RANGE << 56 | (anchorId & 0xFFFFFFFFL),
+                    tagId, Float.floatToRawIntBits(distance), timestampMicros);
+        }
+
+        /**
+         * a TDoA blink reception
+         *
+         * @param sequence blink sequence number, the low 24 bits are kept
+         * @return false if the shard ring was full and the reception dropped
+         */
+        public boolean blink(long tagId, int sequence, int anchorId, long rxTicks,
+                             long timestampMicros) {
+            return offer(rings[shardOf(tagId, rings.length)],
+                    (long) PipelineShard.KIND_BLINK << 56 | (sequence & 0xFFFFFFL) << 32
+                            | (anchorId & 0xFFFFFFFFL),
+                    tagId, rxTicks, timestampMicros);
+        }
+
+        /**
+         * a TDoA sync frame, for the clock trackers of all shards
+         *
+         * @return false if a shard ring was full and the frame dropped for that shard
+         */
+        public boolean sync(int anchorId, long referenceTxTicks, long rxTicks) {
+            boolean all = true;
+            for (SpscRecordRing ring : rings) {
+                all &= offer(ring, (long) PipelineShard.KIND_SYNC << 56
+                        | (anchorId & 0xFFFFFFFFL), referenceTxTicks, rxTicks, 0);
+            }
+            return all;
+        }
+
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        private boolean offer(SpscRecordRing ring, long w0, long w1, long w2, long w3) {
+            if (ring.offer(w0, w1, w2, w3)) {
+                return true;
+            }
+            dropped++;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.onlylemi.mapview.core.pipeline;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * SpscRecordRing
+ * <p>
+ * Bounded single-producer single-consumer ring of fixed size records of four longs, stored
+ * inline in one long array. Offering and draining take no locks and do not allocate: the
+ * producer publishes its tail and the consumer its head with ordered writes, each side caches
+ * the other's index and only re-reads it when the ring looks full or empty.
+ * <p>
+ * Exactly one thread may offer and exactly one thread may drain.
+ *
+ * @author: onlylemi
+ */
+public final class SpscRecordRing {
+
+    public static final int RECORD_LONGS = 4;
+
+    /**
+     * consumer of drained records
+     */
+    public interface RecordHandler {
+        void onRecord(long w0, long w1, long w2, long w3);
+    }
+
+    // tail and head on their own cache lines, 8 longs apart
+    private static final int TAIL = 7;
+    private static final int HEAD = 15;
+
+    private final long[] buffer;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray indexes = new AtomicLongArray(23);
+
+    // producer side
+    private long tail;
+    private long cachedHead;
+    // consumer side
+    private long head;
+    private long cachedTail;
+
+    /**
+     * @param capacity records, rounded up to a power of two
+     */
+    public SpscRecordRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = this.capacity - 1;
+        this.buffer = new long[this.capacity * RECORD_LONGS];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * add a record, producer thread only
+     *
+     * @return false if the ring is full
+     */
+    public boolean offer(long w0, long w1, long w2, long w3) {
+        if (tail - cachedHead >= capacity) {
+            cachedHead = indexes.get(HEAD);
+            if (tail - cachedHead >= capacity) {
+                return false;
+            }
+        }
+        int i = (int) (tail & mask) * RECORD_LONGS;
+        buffer[i] = w0;
+        buffer[i + 1] = w1;
+        buffer[i + 2] = w2;
+        buffer[i + 3] = w3;
+        tail++;
+        // the record is visible before the new tail
+        indexes.lazySet(TAIL, tail);
+        return true;
+    }
+
+    /**
+     * hand up to max records to the handler, consumer thread only
+     *
+     * @param handler
+     * @param max
+     * @return number of records drained
+     */
+    public int drain(RecordHandler handler, int max) {
+        long available = cachedTail - head;
+        if (available <= 0) {
+            cachedTail = indexes.get(TAIL);
+            available = cachedTail - head;
+            if (available <= 0) {
+                return 0;
+            }
+        }
+        int count = (int) Math.min(available, max);
+        for (int k = 0; k < count; k++) {
+            int i = (int) ((head + k) & mask) * RECORD_LONGS;
+            handler.onRecord(buffer[i], buffer[i + 1], buffer[i + 2], buffer[i + 3]);
+        }
+        head += count;
+        // the slots are free for the producer once read
+        indexes.lazySet(HEAD, head);
+        return count;
+    }
+
+    /**
+     * @return approximate number of records in the ring, any thread
+     */
+    public int size() {
+        return (int) Math.max(0, indexes.get(TAIL) - indexes.get(HEAD));
+    }
+}
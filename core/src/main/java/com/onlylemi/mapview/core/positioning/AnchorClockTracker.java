@@ -0,0 +1,251 @@
+package com.onlylemi.mapview.core.positioning;
+
+/**
+ * AnchorClockTracker
+ * <p>
+ * Maps the receive timestamps of the anchors to the clock of a reference anchor, for TDoA. The
+ * reference anchor broadcasts sync frames stamped with its transmit time; an anchor receiving
+ * one at its local time {@code rx} learns that {@code rx} is the reference time
+ * {@code tx + tof}, tof being the flight time over the known anchor to anchor distance.
+ * Consecutive sync frames give the drift of the anchor clock, which is smoothed, and a
+ * timestamp is converted by extrapolating from the last sync point of its anchor.
+ * <p>
+ * Timestamps are free running counters of {@code timestampBits} bits that wrap around, as the
+ * 40 bit DW1000 timestamps. State is kept in flat per anchor arrays; not thread safe, feed it
+ * from the thread of its positioning engine.
+ *
+ * @author: onlylemi
+ */
+public final class AnchorClockTracker {
+
+    // radio waves in air, m/s
+    public static final double SPEED_OF_LIGHT = 299702547;
+
+    // DW1000: 499.2 MHz * 128, 40 bit counter
+    public static final double DW1000_TICKS_PER_SECOND = 499.2e6 * 128;
+    public static final int DW1000_TIMESTAMP_BITS = 40;
+
+    public static final double DEFAULT_DRIFT_GAIN = 0.25;
+    public static final double DEFAULT_MAX_DRIFT = 100e-6; // 100 ppm
+    public static final double DEFAULT_MAX_SYNC_INTERVAL_SECONDS = 1;
+    // consecutive rejected sync frames after which the last sync point is distrusted
+    private static final int MAX_REJECTED_SYNCS = 3;
+
+    private final Anchors anchors;
+    private final int referenceAnchorId;
+    private final double ticksPerSecond;
+    private final long mask;
+    private final double period;
+
+    private double driftGain = DEFAULT_DRIFT_GAIN;
+    private double maxDrift = DEFAULT_MAX_DRIFT;
+    private double maxSyncIntervalTicks;
+
+    // per anchor state, by anchor index
+    private final int[] syncCount;
+    private final int[] rejectedSyncs;
+    private final long[] syncLocalTicks;
+    private final double[] syncReferenceTicks;
+    private final double[] drift;
+
+    /**
+     * @param anchors           anchor positions, for the flight times of the sync frames
+     * @param referenceAnchorId anchor sending the sync frames
+     * @param ticksPerSecond    timestamp resolution
+     * @param timestampBits     timestamp width, timestamps wrap at 2^timestampBits
+     */
+    public AnchorClockTracker(Anchors anchors, int referenceAnchorId, double ticksPerSecond,
+                              int timestampBits) {
+        if (timestampBits < 8 || timestampBits > 62) {
+            throw new IllegalArgumentException("timestampBits must be in [8, 62]: "
+                    + timestampBits);
+        }
+        this.anchors = anchors;
+        this.referenceAnchorId = referenceAnchorId;
+        this.ticksPerSecond = ticksPerSecond;
+        this.mask = (1L << timestampBits) - 1;
+        this.period = 1L << timestampBits;
+        this.maxSyncIntervalTicks = DEFAULT_MAX_SYNC_INTERVAL_SECONDS * ticksPerSecond;
+        int capacity = anchors.getCapacity();
+        this.syncCount = new int[capacity];
+        this.rejectedSyncs = new int[capacity];
+        this.syncLocalTicks = new long[capacity];
+        this.syncReferenceTicks = new double[capacity];
+        this.drift = new double[capacity];
+    }
+
+    /**
+     * weight of a new drift measurement in the smoothed drift
+     *
+     * @param driftGain in (0, 1]
+     */
+    public void setDriftGain(double driftGain) {
+        this.driftGain = driftGain;
+    }
+
+    /**
+     * sync frames implying a larger drift are dropped as corrupted
+     *
+     * @param maxDrift fraction, 100e-6 for 100 ppm
+     */
+    public void setMaxDrift(double maxDrift) {
+        this.maxDrift = maxDrift;
+    }
+
+    /**
+     * max time to extrapolate a clock from its last sync point; longer gaps between sync frames
+     * restart the tracking of the anchor
+     *
+     * @param seconds
+     */
+    public void setMaxSyncIntervalSeconds(double seconds) {
+        this.maxSyncIntervalTicks = seconds * ticksPerSecond;
+    }
+
+    public int getReferenceAnchorId() {
+        return referenceAnchorId;
+    }
+
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * a sync frame of the reference anchor received by an anchor
+     *
+     * @param anchorId           receiving anchor
+     * @param referenceTxTicks   transmit time, reference clock
+     * @param rxTicks            receive time, anchor clock
+     * @return false if the frame was dropped (unknown anchors, outlier)
+     */
+    public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+        int anchor = anchors.indexOf(anchorId);
+        int reference = anchors.indexOf(referenceAnchorId);
+        if (anchor < 0 || reference < 0 || anchor == reference) {
+            return false;
+        }
+        double dx = anchors.getX(anchor) - anchors.getX(reference);
+        double dy = anchors.getY(anchor) - anchors.getY(reference);
+        double dz = anchors.getZ(anchor) - anchors.getZ(reference);
+        double tof = Math.sqrt(dx * dx + dy * dy + dz * dz) / SPEED_OF_LIGHT * ticksPerSecond;
+        double referenceTicks = wrap((referenceTxTicks & mask) + tof);
+        long localTicks = rxTicks & mask;
+
+        if (syncCount[anchor] > 0) {
+            double referenceElapsed = wrapDifference(referenceTicks, syncReferenceTicks[anchor]);
+            if (referenceElapsed > 0 && referenceElapsed <= maxSyncIntervalTicks) {
+                double localElapsed = wrapDifference(localTicks, syncLocalTicks[anchor]);
+                double measured = localElapsed / referenceElapsed - 1;
+                if (Math.abs(measured) > maxDrift
+                        && ++rejectedSyncs[anchor] <= MAX_REJECTED_SYNCS) {
+                    return false;
+                }
+                if (rejectedSyncs[anchor] <= MAX_REJECTED_SYNCS) {
+                    drift[anchor] = syncCount[anchor] == 1
+                            ? measured : drift[anchor] + driftGain * (measured - drift[anchor]);
+                    syncCount[anchor]++;
+                } else {
+                    // the previous sync point was the outlier, start over from this one
+                    syncCount[anchor] = 1;
+                }
+            } else {
+                // stale or out of order, start over
+                syncCount[anchor] = 1;
+            }
+        } else {
+            syncCount[anchor] = 1;
+        }
+        rejectedSyncs[anchor] = 0;
+        syncLocalTicks[anchor] = localTicks;
+        syncReferenceTicks[anchor] = referenceTicks;
+        return true;
+    }
+
+    /**
+     * forget the sync state of all anchors
+     */
+    public void reset() {
+        for (int i = 0; i < syncCount.length; i++) {
+            syncCount[i] = 0;
+            rejectedSyncs[i] = 0;
+            drift[i] = 0;
+        }
+    }
+
+    /**
+     * @param anchor anchor index
+     * @return true if timestamps of the anchor can be converted
+     */
+    public boolean isSynced(int anchor) {
+        return anchors.getId(anchor) == referenceAnchorId || syncCount[anchor] >= 2;
+    }
+
+    /**
+     * @param anchor anchor index
+     * @return drift of the anchor clock against the reference, fraction
+     */
+    public double getDrift(int anchor) {
+        return drift[anchor];
+    }
+
+    /**
+     * @param anchor anchor index
+     * @return anchor clock minus reference clock at the last sync point, ticks
+     */
+    public double getOffsetTicks(int anchor) {
+        return wrapDifference(syncLocalTicks[anchor], syncReferenceTicks[anchor]);
+    }
+
+    /**
+     * convert a receive timestamp to the reference clock
+     *
+     * @param anchor  anchor index
+     * @param rxTicks anchor clock
+     * @return reference clock ticks in [0, 2^timestampBits), NaN if the anchor is not synced or
+     * its last sync point is too old
+     */
+    public double toReferenceTicks(int anchor, long rxTicks) {
+        long localTicks = rxTicks & mask;
+        if (anchors.getId(anchor) == referenceAnchorId) {
+            return localTicks;
+        }
+        if (syncCount[anchor] < 2) {
+            return Double.NaN;
+        }
+        double localElapsed = wrapDifference(localTicks, syncLocalTicks[anchor]);
+        if (Math.abs(localElapsed) > maxSyncIntervalTicks) {
+            return Double.NaN;
+        }
+        return wrap(syncReferenceTicks[anchor] + localElapsed / (1 + drift[anchor]));
+    }
+
+    /**
+     * distance the signal travels between two reference clock times
+     *
+     * @param fromTicks
+     * @param toTicks
+     * @return meters, negative if toTicks is before fromTicks
+     */
+    public double elapsedMeters(double fromTicks, double toTicks) {
+        return wrapDifference(toTicks, fromTicks) / ticksPerSecond * SPEED_OF_LIGHT;
+    }
+
+    private double wrap(double ticks) {
+        ticks %= period;
+        return ticks < 0 ? ticks + period : ticks;
+    }
+
+    /**
+     * a - b of two wrapped times, in [-period / 2, period / 2)
+     */
+    private double wrapDifference(double a, double b) {
+        double d = a - b;
+        double half = period / 2;
+        if (d >= half) {
+            d -= period;
+        } else if (d < -half) {
+            d += period;
+        }
+        return d;
+    }
+}
@@ -0,0 +1,81 @@
+package com.onlylemi.mapview.core.positioning;
+
+import com.onlylemi.mapview.core.util.LongIndexMap;
+
+/**
+ * Anchors
+ * <p>
+ * Positions of the anchors in meters, by anchor id. Configure before ranging starts, the
+ * positioning engines read it without locking.
+ *
+ * @author: onlylemi
+ */
+public final class Anchors {
+
+    private final LongIndexMap ids;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+
+    /**
+     * @param capacity max number of anchors
+     */
+    public Anchors(int capacity) {
+        this.ids = new LongIndexMap(capacity);
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.zs = new float[capacity];
+    }
+
+    /**
+     * add or move an anchor
+     *
+     * @param anchorId
+     * @param x        meters
+     * @param y        meters
+     * @param z        meters
+     * @return index of the anchor
+     */
+    public int set(int anchorId, float x, float y, float z) {
+        int index = ids.getOrAdd(anchorId);
+        if (index < 0) {
+            throw new IllegalStateException("too many anchors, capacity: " + ids.getCapacity());
+        }
+        xs[index] = x;
+        ys[index] = y;
+        zs[index] = z;
+        return index;
+    }
+
+    /**
+     * @param anchorId
+     * @return index of the anchor, -1 if unknown
+     */
+    public int indexOf(int anchorId) {
+        return ids.get(anchorId);
+    }
+
+    public int getId(int index) {
+        return (int) ids.keyAt(index);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public int getCapacity() {
+        return ids.getCapacity();
+    }
+
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    public float getZ(int index) {
+        return zs[index];
+    }
+}
@@ -0,0 +1,56 @@
+package com.onlylemi.mapview.core.positioning;
+
+/**
+ * Fix
+ * <p>
+ * Position of a tag computed by a positioning engine. Engines reuse one instance for all fixes,
+ * listeners must copy what they keep.
+ *
+ * @author: onlylemi
+ */
+public final class Fix {
+
+    // tag id
+    public long tagId;
+    // position in meters
+    public float x;
+    public float y;
+    public float z;
+    // time of the measurements, microseconds
+    public long timestampMicros;
+    // number of anchors used
+    public int anchorCount;
+    // ranges consistent with the fix, anchorCount unless outliers were rejected
+    public int inlierCount;
+    // root mean square of the range residuals, meters
+    public float residualRms;
+    // solver iterations
+    public int iterations;
+
+    public void set(Fix other) {
+        tagId = other.tagId;
+        x = other.x;
+        y = other.y;
+        z = other.z;
+        timestampMicros = other.timestampMicros;
+        anchorCount = other.anchorCount;
+        inlierCount = other.inlierCount;
+        residualRms = other.residualRms;
+        iterations = other.iterations;
+    }
+
+    @Override
+    public String toString() {
+        return "Fix{" +
+                "tagId=" + tagId +
+                ", x=" + x +
+                ", y=" + y +
+                ", z=" + z +
+                ", timestampMicros=" + timestampMicros +
+                ", anchorCount=" + anchorCount +
+                ", inlierCount=" + inlierCount +
+                ", residualRms=" + residualRms +
+                ", iterations=" + iterations +
+                '}';
+    }
+}
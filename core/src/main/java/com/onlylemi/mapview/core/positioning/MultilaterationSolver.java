@@ -0,0 +1,201 @@
+package com.onlylemi.mapview.core.positioning;
+
+import com.onlylemi.mapview.core.util.Cholesky;
+
+/**
+ * MultilaterationSolver
+ * <p>
+ * Levenberg-Marquardt least squares fit of a position to ranges from anchors, minimizing
+ * {@code sum (|p - a_i| - d_i)^2}. Solves in 2D (z fixed) or 3D on primitive arrays; the normal
+ * equations are at most 3 x 3 and solved by Cholesky decomposition. An instance keeps its scratch
+ * state, so solving does not allocate; it is not thread safe.
+ *
+ * @author: onlylemi
+ */
+public final class MultilaterationSolver {
+
+    public static final int DEFAULT_MAX_ITERATIONS = 15;
+
+    private static final double CONVERGENCE_STEP = 1e-4; // meters
+    private static final double INITIAL_LAMBDA = 1e-3;
+    private static final double MIN_LAMBDA = 1e-9;
+    private static final double MAX_LAMBDA = 1e9;
+    private static final double DIAGONAL_EPSILON = 1e-12;
+
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    // normal equations J^T J (row major, dims x dims) and J^T r
+    private final double[] jtj = new double[9];
+    private final double[] jtr = new double[3];
+    private final double[] system = new double[9];
+    private final double[] delta = new double[3];
+    private final double[] trial = new double[3];
+
+    // result of the last solve
+    private double residualRms;
+    private int iterations;
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * fit a position to the ranges
+     *
+     * @param ax        anchor x, meters
+     * @param ay        anchor y, meters
+     * @param az        anchor z, meters
+     * @param distances measured ranges, meters
+     * @param count     number of ranges
+     * @param dims      2 to keep {@code position[2]} fixed, 3 to solve it too
+     * @param position  in: start point x, y, z; out: solution
+     * @return false if the geometry is degenerate (less than dims + 1 or aligned anchors)
+     */
+    public boolean solve(float[] ax, float[] ay, float[] az, float[] distances, int count,
+                         int dims, double[] position) {
+        iterations = 0;
+        residualRms = Double.NaN;
+        if (count < dims + 1) {
+            return false;
+        }
+        double lambda = INITIAL_LAMBDA;
+        double cost = buildNormalEquations(ax, ay, az, distances, count, dims, position);
+        while (iterations < maxIterations) {
+            iterations++;
+            // increase damping until the step lowers the cost
+            boolean improved = false;
+            double step = 0;
+            while (lambda <= MAX_LAMBDA) {
+                if (solveDamped(dims, lambda)) {
+                    step = 0;
+                    for (int k = 0; k < 3; k++) {
+                        trial[k] = position[k] + (k < dims ? delta[k] : 0);
+                        step += k < dims ? delta[k] * delta[k] : 0;
+                    }
+                    double trialCost = cost(ax, ay, az, distances, count, trial);
+                    if (trialCost < cost) {
+                        System.arraycopy(trial, 0, position, 0, 3);
+                        cost = buildNormalEquations(ax, ay, az, distances, count, dims, position);
+                        lambda = Math.max(MIN_LAMBDA, lambda / 10);
+                        improved = true;
+                        break;
+                    }
+                }
+                lambda *= 10;
+            }
+            if (!improved || Math.sqrt(step) < CONVERGENCE_STEP) {
+                break;
+            }
+        }
+        residualRms = Math.sqrt(cost / count);
+        if (Double.isNaN(residualRms) || Double.isInfinite(residualRms)) {
+            return false;
+        }
+        // aligned anchors leave a direction unconstrained
+        return isWellConditioned(dims);
+    }
+
+    /**
+     * @return root mean square of the residuals of the last solve, meters
+     */
+    public double getResidualRms() {
+        return residualRms;
+    }
+
+    /**
+     * @return iterations of the last solve
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * fill jtj and jtr at the position
+     *
+     * @return sum of the squared residuals
+     */
+    private double buildNormalEquations(float[] ax, float[] ay, float[] az, float[] distances,
+                                        int count, int dims, double[] position) {
+        for (int k = 0; k < 9; k++) {
+            jtj[k] = 0;
+        }
+        jtr[0] = jtr[1] = jtr[2] = 0;
+        double cost = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = position[0] - ax[i];
+            double dy = position[1] - ay[i];
+            double dz = position[2] - az[i];
+            double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double r = range - distances[i];
+            cost += r * r;
+            if (range < 1e-9) {
+                // on the anchor, the gradient is undefined
+                continue;
+            }
+            // jacobian row: unit vector from the anchor
+            double jx = dx / range, jy = dy / range, jz = dz / range;
+            jtr[0] += jx * r;
+            jtr[1] += jy * r;
+            jtj[0] += jx * jx;
+            jtj[1] += jx * jy;
+            jtj[4] += jy * jy;
+            if (dims == 3) {
+                jtr[2] += jz * r;
+                jtj[2] += jx * jz;
+                jtj[5] += jy * jz;
+                jtj[8] += jz * jz;
+            }
+        }
+        // mirror the upper triangle
+        jtj[3] = jtj[1];
+        jtj[6] = jtj[2];
+        jtj[7] = jtj[5];
+        return cost;
+    }
+
+    private static double cost(float[] ax, float[] ay, float[] az, float[] distances, int count,
+                               double[] position) {
+        double cost = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = position[0] - ax[i];
+            double dy = position[1] - ay[i];
+            double dz = position[2] - az[i];
+            double r = Math.sqrt(dx * dx + dy * dy + dz * dz) - distances[i];
+            cost += r * r;
+        }
+        return cost;
+    }
+
+    /**
+     * solve (J^T J + lambda diag(J^T J)) delta = -J^T r
+     *
+     * @return false if the system is not positive definite
+     */
+    private boolean solveDamped(int dims, double lambda) {
+        for (int row = 0; row < dims; row++) {
+            for (int col = 0; col < dims; col++) {
+                system[row * 3 + col] = jtj[row * 3 + col];
+            }
+            system[row * 3 + row] += lambda * jtj[row * 3 + row] + DIAGONAL_EPSILON;
+            delta[row] = -jtr[row];
+        }
+        return Cholesky.solve(system, delta, dims, 3);
+    }
+
+    /**
+     * the smallest eigenvalue of J^T J must not vanish, checked through the determinant
+     * against the trace
+     */
+    private boolean isWellConditioned(int dims) {
+        double trace = jtj[0] + jtj[4] + (dims == 3 ? jtj[8] : 0);
+        double det;
+        if (dims == 2) {
+            det = jtj[0] * jtj[4] - jtj[1] * jtj[1];
+            return det > 1e-6 * trace * trace;
+        }
+        det = jtj[0] * (jtj[4] * jtj[8] - jtj[5] * jtj[7])
+                - jtj[1] * (jtj[3] * jtj[8] - jtj[5] * jtj[6])
+                + jtj[2] * (jtj[3] * jtj[7] - jtj[4] * jtj[6]);
+        return det > 1e-9 * trace * trace * trace;
+    }
+}
@@ -0,0 +1,16 @@
+package com.onlylemi.mapview.core.positioning;
+
+/**
+ * PositionListener
+ *
+ * @author: onlylemi
+ */
+public interface PositionListener {
+
+    /**
+     * a new fix, called on the engine thread
+     *
+     * @param fix reused by the engine, valid during the call only
+     */
+    void onFix(Fix fix);
+}
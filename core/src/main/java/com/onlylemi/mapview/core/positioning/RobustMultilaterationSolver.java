@@ -0,0 +1,292 @@
+package com.onlylemi.mapview.core.positioning;
+
+/**
+ * RobustMultilaterationSolver
+ * <p>
+ * Multilateration that rejects inconsistent ranges (NLOS, multipath spikes) by RANSAC over
+ * anchor subsets. A least squares fit of all ranges is tried first and kept when every range
+ * agrees with it. Otherwise minimal subsets of dims + 1 ranges are fitted, each hypothesis is
+ * scored by the ranges within the inlier threshold of it, and the best consensus, which must be
+ * a majority of the ranges, is refitted with {@link MultilaterationSolver}. The number of
+ * hypotheses is bounded, and sampling stops early once the consensus found makes a better one
+ * unlikely, so the cost of a fix has a fixed upper bound. Does not allocate after construction;
+ * not thread safe.
+ *
+ * @author: onlylemi
+ */
+public final class RobustMultilaterationSolver {
+
+    public static final int DEFAULT_MAX_HYPOTHESES = 24;
+    public static final float DEFAULT_INLIER_THRESHOLD = 0.35f; // meters
+    // probability of drawing at least one outlier free subset, for the early stop
+    private static final double CONFIDENCE = 0.99;
+
+    private final MultilaterationSolver solver = new MultilaterationSolver();
+    private int maxHypotheses = DEFAULT_MAX_HYPOTHESES;
+    private float inlierThreshold = DEFAULT_INLIER_THRESHOLD;
+    private int seed = 0x2545F491;
+
+    // inliers of the result and of the hypothesis being scored
+    private final boolean[] inliers;
+    private final boolean[] candidate;
+    // residuals of the last score and the squared sum of its inliers
+    private final double[] residuals;
+    private double cost;
+    // subset and consensus input
+    private final int[] indexes;
+    private final float[] subX;
+    private final float[] subY;
+    private final float[] subZ;
+    private final float[] subDistances;
+    private final double[] start = new double[3];
+    private final double[] hypothesis = new double[3];
+    private final double[] best = new double[3];
+
+    // result of the last solve
+    private int inlierCount;
+    private double residualRms;
+    private int iterations;
+    private int hypotheses;
+
+    /**
+     * @param maxRanges max ranges of one solve
+     */
+    public RobustMultilaterationSolver(int maxRanges) {
+        this.inliers = new boolean[maxRanges];
+        this.candidate = new boolean[maxRanges];
+        this.residuals = new double[maxRanges];
+        this.indexes = new int[maxRanges];
+        this.subX = new float[maxRanges];
+        this.subY = new float[maxRanges];
+        this.subZ = new float[maxRanges];
+        this.subDistances = new float[maxRanges];
+    }
+
+    /**
+     * @param maxHypotheses subsets fitted at most per solve
+     */
+    public void setMaxHypotheses(int maxHypotheses) {
+        this.maxHypotheses = Math.max(1, maxHypotheses);
+    }
+
+    /**
+     * @param inlierThreshold max range residual of an inlier, meters
+     */
+    public void setInlierThreshold(float inlierThreshold) {
+        if (!(inlierThreshold > 0)) {
+            throw new IllegalArgumentException("threshold must be positive: " + inlierThreshold);
+        }
+        this.inlierThreshold = inlierThreshold;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        solver.setMaxIterations(maxIterations);
+    }
+
+    /**
+     * fit a position to the consistent ranges
+     *
+     * @param ax        anchor x, meters
+     * @param ay        anchor y, meters
+     * @param az        anchor z, meters
+     * @param distances measured ranges, meters
+     * @param count     number of ranges
+     * @param dims      2 to keep {@code position[2]} fixed, 3 to solve it too
+     * @param position  in: start point x, y, z; out: solution
+     * @return false if no majority of at least dims + 1 ranges fits a regular geometry
+     */
+    public boolean solve(float[] ax, float[] ay, float[] az, float[] distances, int count,
+                         int dims, double[] position) {
+        inlierCount = 0;
+        iterations = 0;
+        hypotheses = 0;
+        residualRms = Double.NaN;
+        int sampleSize = dims + 1;
+        if (count < sampleSize) {
+            return false;
+        }
+        System.arraycopy(position, 0, start, 0, 3);
+
+        // the usual case: all ranges agree
+        boolean fitted = solver.solve(ax, ay, az, distances, count, dims, position);
+        iterations += solver.getIterations();
+        int bestCount = 0;
+        double bestCost = Double.MAX_VALUE;
+        if (fitted) {
+            bestCount = score(ax, ay, az, distances, count, position, inliers);
+            bestCost = cost;
+            System.arraycopy(position, 0, best, 0, 3);
+            if (bestCount == count || count == sampleSize) {
+                return finish(count, bestCount);
+            }
+        } else if (count == sampleSize) {
+            return false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        // a consensus must be a majority, a subset fitting a few ranges by chance is not a fix
+        int minConsensus = Math.max(sampleSize, count / 2 + 1);
+        int needed = bestCount < minConsensus ? maxHypotheses
+                : Math.min(maxHypotheses, requiredHypotheses(bestCount, count, sampleSize));
+        while (hypotheses < needed) {
+            hypotheses++;
+            // partial Fisher-Yates shuffle, the subset is indexes[0 .. sampleSize - 1]
+            for (int i = 0; i < sampleSize; i++) {
+                int j = i + nextInt(count - i);
+                int swap = indexes[i];
+                indexes[i] = indexes[j];
+                indexes[j] = swap;
+                subX[i] = ax[indexes[i]];
+                subY[i] = ay[indexes[i]];
+                subZ[i] = az[indexes[i]];
+                subDistances[i] = distances[indexes[i]];
+            }
+            System.arraycopy(start, 0, hypothesis, 0, 3);
+            boolean ok = solver.solve(subX, subY, subZ, subDistances, sampleSize, dims,
+                    hypothesis);
+            iterations += solver.getIterations();
+            if (!ok) {
+                continue;
+            }
+            int n = score(ax, ay, az, distances, count, hypothesis, candidate);
+            if (n > bestCount || n == bestCount && cost < bestCost) {
+                bestCount = n;
+                bestCost = cost;
+                System.arraycopy(hypothesis, 0, best, 0, 3);
+                System.arraycopy(candidate, 0, inliers, 0, count);
+                if (n == count) {
+                    break;
+                }
+                if (n >= minConsensus) {
+                    needed = Math.min(maxHypotheses, requiredHypotheses(n, count, sampleSize));
+                }
+            }
+        }
+        if (bestCount < minConsensus) {
+            return false;
+        }
+
+        // refit the consensus from the best hypothesis
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (inliers[i]) {
+                subX[n] = ax[i];
+                subY[n] = ay[i];
+                subZ[n] = az[i];
+                subDistances[n] = distances[i];
+                n++;
+            }
+        }
+        System.arraycopy(best, 0, position, 0, 3);
+        if (!solver.solve(subX, subY, subZ, subDistances, n, dims, position)) {
+            return false;
+        }
+        iterations += solver.getIterations();
+        score(ax, ay, az, distances, count, position, candidate);
+        return finish(count, n);
+    }
+
+    /**
+     * @return ranges kept by the last solve
+     */
+    public int getInlierCount() {
+        return inlierCount;
+    }
+
+    /**
+     * @param i range index of the last solve
+     * @return true if the range was kept
+     */
+    public boolean isInlier(int i) {
+        return inliers[i];
+    }
+
+    /**
+     * @return root mean square of the residuals of the kept ranges, meters
+     */
+    public double getResidualRms() {
+        return residualRms;
+    }
+
+    /**
+     * @return least squares iterations of the last solve, over all hypotheses
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return subsets fitted by the last solve, 0 if all ranges agreed
+     */
+    public int getHypotheses() {
+        return hypotheses;
+    }
+
+    private boolean finish(int count, int kept) {
+        inlierCount = kept;
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (inliers[i]) {
+                sum += residuals[i] * residuals[i];
+                n++;
+            }
+        }
+        residualRms = n == 0 ? Double.NaN : Math.sqrt(sum / n);
+        return true;
+    }
+
+    /**
+     * mark the ranges within the threshold of a position
+     *
+     * @return number of inliers, their squared residuals summed in cost
+     */
+    private int score(float[] ax, float[] ay, float[] az, float[] distances, int count,
+                      double[] p, boolean[] out) {
+        int n = 0;
+        cost = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = p[0] - ax[i];
+            double dy = p[1] - ay[i];
+            double dz = p[2] - az[i];
+            double r = Math.sqrt(dx * dx + dy * dy + dz * dz) - distances[i];
+            residuals[i] = r;
+            out[i] = Math.abs(r) <= inlierThreshold;
+            if (out[i]) {
+                cost += r * r;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * hypotheses after which an outlier free subset was drawn with {@link #CONFIDENCE}, for the
+     * inlier ratio of the best consensus
+     */
+    private static int requiredHypotheses(int inliers, int count, int sampleSize) {
+        double clean = Math.pow((double) inliers / count, sampleSize);
+        if (clean >= 1) {
+            return 1;
+        }
+        if (clean <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        double k = Math.log(1 - CONFIDENCE) / Math.log(1 - clean);
+        return k >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.ceil(k);
+    }
+
+    /**
+     * xorshift, uniform in 0 .. bound - 1
+     */
+    private int nextInt(int bound) {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return (int) (((x & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+}
@@ -0,0 +1,405 @@
+package com.onlylemi.mapview.core.positioning;
+
+import com.onlylemi.mapview.core.util.LongIndexMap;
+
+/**
+ * TagKalmanFilter
+ * <p>
+ * Smoothing stage between a positioning engine and its listeners: a Kalman filter per tag with a
+ * constant velocity (white noise acceleration) or constant acceleration (white noise jerk)
+ * motion model. The axes are filtered independently, each with its own 2 or 3 state vector and
+ * covariance. Every fix is forwarded downstream with the filtered position; the filtered
+ * position, velocity and covariance of all tags can be read by index, extrapolated to any time,
+ * for the rendering layers.
+ * <p>
+ * State is kept in struct-of-arrays primitive buffers indexed by {@code tag * 3 + axis}, sized
+ * at construction, so fixes do not allocate and tens of thousands of tags need no per tag
+ * objects. Fixes must come from one thread; readers on other threads may see the components
+ * of two consecutive updates of a tag mixed for one frame.
+ *
+ * @author: onlylemi
+ */
+public final class TagKalmanFilter implements PositionListener {
+
+    public enum Model {
+        CONSTANT_VELOCITY,
+        CONSTANT_ACCELERATION
+    }
+
+    public static final float DEFAULT_PROCESS_NOISE = 1f; // m^2/s^3 (m^2/s^5 for acceleration)
+    public static final float DEFAULT_MEASUREMENT_NOISE = 0.1f; // meters
+    public static final float DEFAULT_INITIAL_VELOCITY_STD = 2f; // m/s
+    public static final float DEFAULT_INITIAL_ACCELERATION_STD = 2f; // m/s^2
+    // chi-square, 3 degrees of freedom, 99.9 %
+    public static final float DEFAULT_GATE = 16.27f;
+    public static final long DEFAULT_MAX_GAP_MICROS = 5000000; // 5 s
+    // consecutive gated fixes after which the track restarts at the fix
+    private static final int MAX_REJECTED_FIXES = 3;
+    private static final int AXES = 3;
+
+    private final Model model;
+    private final LongIndexMap tags;
+
+    private float processNoise = DEFAULT_PROCESS_NOISE;
+    private float measurementNoise = DEFAULT_MEASUREMENT_NOISE;
+    private float initialVelocityStd = DEFAULT_INITIAL_VELOCITY_STD;
+    private float initialAccelerationStd = DEFAULT_INITIAL_ACCELERATION_STD;
+    private float gate = DEFAULT_GATE;
+    private long maxGapMicros = DEFAULT_MAX_GAP_MICROS;
+    private PositionListener listener;
+
+    // per tag and axis state, by tag * 3 + axis
+    private final double[] p; // position
+    private final double[] v; // velocity
+    private final double[] a; // acceleration, 0 for constant velocity
+    // symmetric covariance of (p, v, a)
+    private final double[] c00;
+    private final double[] c01;
+    private final double[] c02;
+    private final double[] c11;
+    private final double[] c12;
+    private final double[] c22;
+    // per tag
+    private final long[] timestamps; // micros of the last fix, 0 before the first one
+    private final int[] rejectedFixes;
+
+    // published to readers
+    private volatile int size;
+    private volatile long latestMicros;
+
+    private final Fix filtered = new Fix();
+
+    /**
+     * @param model   motion model
+     * @param maxTags max number of tags, fixes of further tags are forwarded unfiltered
+     */
+    public TagKalmanFilter(Model model, int maxTags) {
+        this.model = model;
+        this.tags = new LongIndexMap(maxTags);
+        int n = maxTags * AXES;
+        this.p = new double[n];
+        this.v = new double[n];
+        this.a = new double[n];
+        this.c00 = new double[n];
+        this.c01 = new double[n];
+        this.c02 = new double[n];
+        this.c11 = new double[n];
+        this.c12 = new double[n];
+        this.c22 = new double[n];
+        this.timestamps = new long[maxTags];
+        this.rejectedFixes = new int[maxTags];
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * spectral density of the white noise acceleration (jerk for constant acceleration)
+     *
+     * @param processNoise
+     */
+    public void setProcessNoise(float processNoise) {
+        this.processNoise = processNoise;
+    }
+
+    /**
+     * standard deviation of a fix, meters; fixes with a larger residual count with their
+     * residual instead
+     *
+     * @param measurementNoise
+     */
+    public void setMeasurementNoise(float measurementNoise) {
+        this.measurementNoise = measurementNoise;
+    }
+
+    /**
+     * standard deviations of the velocity and acceleration of a new track
+     *
+     * @param velocityStd     m/s
+     * @param accelerationStd m/s^2, constant acceleration only
+     */
+    public void setInitialStd(float velocityStd, float accelerationStd) {
+        this.initialVelocityStd = velocityStd;
+        this.initialAccelerationStd = accelerationStd;
+    }
+
+    /**
+     * fixes whose normalized innovation squared exceeds the gate are dropped as outliers
+     *
+     * @param gate chi-square bound for 3 degrees of freedom, 0 to accept all fixes
+     */
+    public void setGate(float gate) {
+        this.gate = gate;
+    }
+
+    /**
+     * a tag without fix for longer restarts its track at the next fix
+     *
+     * @param maxGapMicros
+     */
+    public void setMaxGapMicros(long maxGapMicros) {
+        this.maxGapMicros = maxGapMicros;
+    }
+
+    /**
+     * downstream of the filter, receives the filtered fixes
+     *
+     * @param listener
+     */
+    public void setPositionListener(PositionListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onFix(Fix fix) {
+        PositionListener l = listener;
+        int tag = tags.getOrAdd(fix.tagId);
+        if (tag < 0) {
+            if (l != null) {
+                l.onFix(fix);
+            }
+            return;
+        }
+        if (!update(tag, fix)) {
+            return;
+        }
+        if (tag >= size) {
+            size = tag + 1;
+        }
+        if (fix.timestampMicros > latestMicros) {
+            latestMicros = fix.timestampMicros;
+        }
+        if (l != null) {
+            filtered.set(fix);
+            int i = tag * AXES;
+            filtered.x = (float) p[i];
+            filtered.y = (float) p[i + 1];
+            filtered.z = (float) p[i + 2];
+            l.onFix(filtered);
+        }
+    }
+
+    /**
+     * @return number of tags, readers iterate {@code 0 .. size() - 1}
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return tags.getCapacity();
+    }
+
+    /**
+     * @param tagId
+     * @return index of the tag, -1 if unknown
+     */
+    public int indexOf(long tagId) {
+        return tags.get(tagId);
+    }
+
+    public long getId(int index) {
+        return tags.keyAt(index);
+    }
+
+    /**
+     * @return newest fix timestamp of all tags, micros
+     */
+    public long getLatestMicros() {
+        return latestMicros;
+    }
+
+    /**
+     * @param index
+     * @return timestamp of the last fix of the tag, micros
+     */
+    public long getTimestampMicros(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * position of a tag extrapolated by the motion model
+     *
+     * @param index
+     * @param atMicros time to extrapolate to, the last fix time for the filtered position
+     * @param out      receives x, y, z
+     * @param offset   into out
+     */
+    public void getPosition(int index, long atMicros, float[] out, int offset) {
+        double dt = (atMicros - timestamps[index]) * 1e-6;
+        double h = dt * dt / 2;
+        int i = index * AXES;
+        for (int k = 0; k < AXES; k++) {
+            out[offset + k] = (float) (p[i + k] + v[i + k] * dt + a[i + k] * h);
+        }
+    }
+
+    /**
+     * @param index
+     * @param out    receives vx, vy, vz, m/s
+     * @param offset into out
+     */
+    public void getVelocity(int index, float[] out, int offset) {
+        int i = index * AXES;
+        for (int k = 0; k < AXES; k++) {
+            out[offset + k] = (float) v[i + k];
+        }
+    }
+
+    /**
+     * @param index
+     * @param out    receives the position variances of x, y, z, m^2 (the axes are independent)
+     * @param offset into out
+     */
+    public void getPositionVariance(int index, float[] out, int offset) {
+        int i = index * AXES;
+        for (int k = 0; k < AXES; k++) {
+            out[offset + k] = (float) c00[i + k];
+        }
+    }
+
+    /**
+     * @param index
+     * @param out    receives the velocity variances of x, y, z, (m/s)^2
+     * @param offset into out
+     */
+    public void getVelocityVariance(int index, float[] out, int offset) {
+        int i = index * AXES;
+        for (int k = 0; k < AXES; k++) {
+            out[offset + k] = (float) c11[i + k];
+        }
+    }
+
+    /**
+     * predict and correct the track of a tag with a fix
+     *
+     * @return false if the fix was gated out
+     */
+    private boolean update(int tag, Fix fix) {
+        double r = Math.max(measurementNoise, fix.residualRms);
+        r *= r;
+        long last = timestamps[tag];
+        if (last == 0 || fix.timestampMicros - last > maxGapMicros
+                || fix.timestampMicros < last) {
+            start(tag, fix, r);
+            return true;
+        }
+        double dt = (fix.timestampMicros - last) * 1e-6;
+        int i = tag * AXES;
+        for (int k = 0; k < AXES; k++) {
+            predict(i + k, dt);
+        }
+        if (gate > 0) {
+            double d2 = innovation(i, fix.x, r) + innovation(i + 1, fix.y, r)
+                    + innovation(i + 2, fix.z, r);
+            if (d2 > gate) {
+                if (++rejectedFixes[tag] > MAX_REJECTED_FIXES) {
+                    // the track is lost rather than the fixes wrong
+                    start(tag, fix, r);
+                    return true;
+                }
+                // keep the prediction, so the next fix is gated against the right time
+                timestamps[tag] = fix.timestampMicros;
+                return false;
+            }
+        }
+        rejectedFixes[tag] = 0;
+        correct(i, fix.x, r);
+        correct(i + 1, fix.y, r);
+        correct(i + 2, fix.z, r);
+        timestamps[tag] = Math.max(1, fix.timestampMicros);
+        return true;
+    }
+
+    private void start(int tag, Fix fix, double r) {
+        int i = tag * AXES;
+        double vv = initialVelocityStd * initialVelocityStd;
+        double aa = model == Model.CONSTANT_ACCELERATION
+                ? initialAccelerationStd * initialAccelerationStd : 0;
+        for (int k = 0; k < AXES; k++) {
+            v[i + k] = 0;
+            a[i + k] = 0;
+            c00[i + k] = r;
+            c01[i + k] = 0;
+            c02[i + k] = 0;
+            c11[i + k] = vv;
+            c12[i + k] = 0;
+            c22[i + k] = aa;
+        }
+        p[i] = fix.x;
+        p[i + 1] = fix.y;
+        p[i + 2] = fix.z;
+        rejectedFixes[tag] = 0;
+        timestamps[tag] = Math.max(1, fix.timestampMicros);
+    }
+
+    /**
+     * x = F x, P = F P F^T + Q with F = [1 dt dt^2/2; 0 1 dt; 0 0 1]; for constant velocity the
+     * acceleration and its covariance stay 0
+     */
+    private void predict(int i, double dt) {
+        double h = dt * dt / 2;
+        p[i] += v[i] * dt + a[i] * h;
+        v[i] += a[i] * dt;
+
+        // rows of F P
+        double r00 = c00[i] + dt * c01[i] + h * c02[i];
+        double r01 = c01[i] + dt * c11[i] + h * c12[i];
+        double r02 = c02[i] + dt * c12[i] + h * c22[i];
+        double r11 = c11[i] + dt * c12[i];
+        double r12 = c12[i] + dt * c22[i];
+        // (F P) F^T, upper triangle
+        c00[i] = r00 + dt * r01 + h * r02;
+        c01[i] = r01 + dt * r02;
+        c02[i] = r02;
+        c11[i] = r11 + dt * r12;
+        c12[i] = r12;
+
+        double q = processNoise;
+        double dt2 = dt * dt;
+        double dt3 = dt2 * dt;
+        if (model == Model.CONSTANT_VELOCITY) {
+            c00[i] += q * dt3 / 3;
+            c01[i] += q * dt2 / 2;
+            c11[i] += q * dt;
+        } else {
+            c00[i] += q * dt3 * dt2 / 20;
+            c01[i] += q * dt2 * dt2 / 8;
+            c02[i] += q * dt3 / 6;
+            c11[i] += q * dt3 / 3;
+            c12[i] += q * dt2 / 2;
+            c22[i] += q * dt;
+        }
+    }
+
+    /**
+     * @return squared innovation over its variance
+     */
+    private double innovation(int i, float z, double r) {
+        double y = z - p[i];
+        return y * y / (c00[i] + r);
+    }
+
+    /**
+     * correct with a position measurement, H = [1 0 0]
+     */
+    private void correct(int i, float z, double r) {
+        double s = c00[i] + r;
+        double k0 = c00[i] / s;
+        double k1 = c01[i] / s;
+        double k2 = c02[i] / s;
+        double y = z - p[i];
+        p[i] += k0 * y;
+        v[i] += k1 * y;
+        a[i] += k2 * y;
+        // P = (I - K H) P, the first row is read before it is overwritten
+        double p00 = c00[i], p01 = c01[i], p02 = c02[i];
+        c00[i] = p00 - k0 * p00;
+        c01[i] = p01 - k0 * p01;
+        c02[i] = p02 - k0 * p02;
+        c11[i] -= k1 * p01;
+        c12[i] -= k1 * p02;
+        c22[i] -= k2 * p02;
+    }
+}
@@ -0,0 +1,342 @@
+package com.onlylemi.mapview.core.positioning;
+
+import com.onlylemi.mapview.core.util.LongIndexMap;
+
+/**
+ * TdoaPositioningEngine
+ * <p>
+ * Turns the receptions of tag blinks at synchronized anchors into fixes. Receive timestamps are
+ * converted to the reference clock by an {@link AnchorClockTracker}, the receptions of a blink
+ * are collected by tag and sequence number and solved with {@link TdoaSolver} once the blink is
+ * complete: when a reception has another sequence number, falls outside the blink window,
+ * repeats an anchor, or the blink is full. The solver starts from the last fix of the tag when
+ * it is recent enough, from below the anchors' centroid otherwise.
+ * <p>
+ * State is kept in flat per tag arrays sized at construction and the {@link Fix} passed to the
+ * listener is reused, so blinks do not allocate. Not thread safe, feed an engine and its clock
+ * tracker from one thread.
+ *
+ * @author: onlylemi
+ */
+public final class TdoaPositioningEngine {
+
+    public static final long DEFAULT_BLINK_WINDOW_MICROS = 20000; // 20 ms
+    public static final long DEFAULT_WARM_START_MAX_AGE_MICROS = 2000000; // 2 s
+    // a cold start from the anchors' plane leaves z without gradient, start this much below
+    private static final float COLD_START_Z_OFFSET = 1f;
+
+    private final Anchors anchors;
+    private final AnchorClockTracker clocks;
+    private final TdoaSolver solver = new TdoaSolver();
+    private final int maxAnchorsPerBlink;
+
+    private int dims = 2;
+    private float fixedHeight = 0;
+    private long blinkWindowMicros = DEFAULT_BLINK_WINDOW_MICROS;
+    private long warmStartMaxAgeMicros = DEFAULT_WARM_START_MAX_AGE_MICROS;
+    private PositionListener listener;
+
+    // per tag state, by tag index
+    private final LongIndexMap tags;
+    private final float[] lastX;
+    private final float[] lastY;
+    private final float[] lastZ;
+    private final long[] lastFixMicros; // 0 without fix
+    private final int[] blinkSequence;
+    private final int[] blinkCount;
+    private final long[] blinkStartMicros;
+    private final long[] blinkEndMicros;
+    // pending receptions, maxAnchorsPerBlink per tag
+    private final int[] blinkAnchors; // anchor indexes
+    private final double[] blinkTicks; // reference clock
+
+    // solver input scratch
+    private final float[] ax;
+    private final float[] ay;
+    private final float[] az;
+    private final double[] pseudoranges;
+    private final double[] position = new double[3];
+    private final Fix fix = new Fix();
+
+    /**
+     * @param anchors            anchor positions
+     * @param clocks             clock tracker of the anchors
+     * @param maxTags            max number of tags, blinks of further tags are dropped
+     * @param maxAnchorsPerBlink max receptions of a blink
+     */
+    public TdoaPositioningEngine(Anchors anchors, AnchorClockTracker clocks, int maxTags,
+                                 int maxAnchorsPerBlink) {
+        this.anchors = anchors;
+        this.clocks = clocks;
+        this.maxAnchorsPerBlink = maxAnchorsPerBlink;
+        this.tags = new LongIndexMap(maxTags);
+        this.lastX = new float[maxTags];
+        this.lastY = new float[maxTags];
+        this.lastZ = new float[maxTags];
+        this.lastFixMicros = new long[maxTags];
+        this.blinkSequence = new int[maxTags];
+        this.blinkCount = new int[maxTags];
+        this.blinkStartMicros = new long[maxTags];
+        this.blinkEndMicros = new long[maxTags];
+        this.blinkAnchors = new int[maxTags * maxAnchorsPerBlink];
+        this.blinkTicks = new double[maxTags * maxAnchorsPerBlink];
+        this.ax = new float[maxAnchorsPerBlink];
+        this.ay = new float[maxAnchorsPerBlink];
+        this.az = new float[maxAnchorsPerBlink];
+        this.pseudoranges = new double[maxAnchorsPerBlink];
+    }
+
+    /**
+     * solve 2D positions at a fixed tag height (default), or 3D
+     *
+     * @param dims 2 or 3
+     */
+    public void setDimensions(int dims) {
+        if (dims != 2 && dims != 3) {
+            throw new IllegalArgumentException("dims must be 2 or 3: " + dims);
+        }
+        this.dims = dims;
+    }
+
+    /**
+     * height of the tags in 2D mode, meters
+     *
+     * @param fixedHeight
+     */
+    public void setFixedHeight(float fixedHeight) {
+        this.fixedHeight = fixedHeight;
+    }
+
+    /**
+     * max time between the first and the last reception of a blink
+     *
+     * @param blinkWindowMicros
+     */
+    public void setBlinkWindowMicros(long blinkWindowMicros) {
+        this.blinkWindowMicros = blinkWindowMicros;
+    }
+
+    /**
+     * max age of the last fix to start the solver from
+     *
+     * @param warmStartMaxAgeMicros
+     */
+    public void setWarmStartMaxAgeMicros(long warmStartMaxAgeMicros) {
+        this.warmStartMaxAgeMicros = warmStartMaxAgeMicros;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        solver.setMaxIterations(maxIterations);
+    }
+
+    public void setPositionListener(PositionListener listener) {
+        this.listener = listener;
+    }
+
+    public AnchorClockTracker getClocks() {
+        return clocks;
+    }
+
+    /**
+     * a sync frame of the reference anchor, see {@link AnchorClockTracker#onSync}
+     */
+    public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+        return clocks.onSync(anchorId, referenceTxTicks, rxTicks);
+    }
+
+    /**
+     * a blink reception, solves the pending blink of the tag when the reception does not
+     * belong to it
+     *
+     * @param tagId
+     * @param sequence        blink sequence number
+     * @param anchorId
+     * @param rxTicks         receive time, anchor clock
+     * @param timestampMicros
+     * @return false if the reception was dropped (unknown or unsynced anchor, too many tags)
+     */
+    public boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks,
+                           long timestampMicros) {
+        int anchor = anchors.indexOf(anchorId);
+        if (anchor < 0) {
+            return false;
+        }
+        int tag = tags.getOrAdd(tagId);
+        if (tag < 0) {
+            return false;
+        }
+        int count = blinkCount[tag];
+        if (count > 0 && (sequence != blinkSequence[tag]
+                || timestampMicros - blinkStartMicros[tag] > blinkWindowMicros
+                || count == maxAnchorsPerBlink
+                || hasAnchor(tag, anchor))) {
+            solveBlink(tag);
+            count = 0;
+        }
+        double ticks = clocks.toReferenceTicks(anchor, rxTicks);
+        if (Double.isNaN(ticks)) {
+            return false;
+        }
+        if (count == 0) {
+            blinkSequence[tag] = sequence;
+            blinkStartMicros[tag] = timestampMicros;
+        }
+        int base = tag * maxAnchorsPerBlink;
+        blinkAnchors[base + count] = anchor;
+        blinkTicks[base + count] = ticks;
+        blinkEndMicros[tag] = Math.max(blinkEndMicros[tag], timestampMicros);
+        blinkCount[tag] = count + 1;
+        return true;
+    }
+
+    /**
+     * solve the pending blink of a tag now
+     *
+     * @param tagId
+     * @return true if a fix was published
+     */
+    public boolean flush(long tagId) {
+        int tag = tags.get(tagId);
+        return tag >= 0 && blinkCount[tag] > 0 && solveBlink(tag);
+    }
+
+    /**
+     * solve the pending blinks of all tags whose window elapsed
+     *
+     * @param nowMicros
+     */
+    public void flushExpired(long nowMicros) {
+        for (int tag = 0; tag < tags.size(); tag++) {
+            if (blinkCount[tag] > 0 && nowMicros - blinkStartMicros[tag] > blinkWindowMicros) {
+                solveBlink(tag);
+            }
+        }
+    }
+
+    /**
+     * solve a complete blink at once
+     *
+     * @param tagId
+     * @param anchorIds
+     * @param rxTicks         receive times, anchor clocks
+     * @param count
+     * @param timestampMicros
+     * @return true if a fix was published
+     */
+    public boolean solve(long tagId, int[] anchorIds, long[] rxTicks, int count,
+                         long timestampMicros) {
+        int tag = tags.getOrAdd(tagId);
+        if (tag < 0) {
+            return false;
+        }
+        int n = 0;
+        double epoch = 0;
+        for (int i = 0; i < count && n < maxAnchorsPerBlink; i++) {
+            int anchor = anchors.indexOf(anchorIds[i]);
+            double ticks = anchor < 0 ? Double.NaN : clocks.toReferenceTicks(anchor, rxTicks[i]);
+            if (!Double.isNaN(ticks)) {
+                if (n == 0) {
+                    epoch = ticks;
+                }
+                setInput(n++, anchor, clocks.elapsedMeters(epoch, ticks));
+            }
+        }
+        return solveInput(tag, n, timestampMicros);
+    }
+
+    /**
+     * last fix of a tag
+     *
+     * @param tagId
+     * @param out   receives the fix
+     * @return false if the tag has no fix
+     */
+    public boolean getLastFix(long tagId, Fix out) {
+        int tag = tags.get(tagId);
+        if (tag < 0 || lastFixMicros[tag] == 0) {
+            return false;
+        }
+        out.tagId = tagId;
+        out.x = lastX[tag];
+        out.y = lastY[tag];
+        out.z = lastZ[tag];
+        out.timestampMicros = lastFixMicros[tag];
+        return true;
+    }
+
+    private boolean hasAnchor(int tag, int anchor) {
+        int base = tag * maxAnchorsPerBlink;
+        for (int i = 0; i < blinkCount[tag]; i++) {
+            if (blinkAnchors[base + i] == anchor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean solveBlink(int tag) {
+        int base = tag * maxAnchorsPerBlink;
+        int count = blinkCount[tag];
+        // pseudoranges from the first arrival, small enough for float anchors and double math
+        double epoch = blinkTicks[base];
+        for (int i = 0; i < count; i++) {
+            setInput(i, blinkAnchors[base + i], clocks.elapsedMeters(epoch, blinkTicks[base + i]));
+        }
+        blinkCount[tag] = 0;
+        long timestampMicros = blinkEndMicros[tag];
+        blinkEndMicros[tag] = 0;
+        return solveInput(tag, count, timestampMicros);
+    }
+
+    private void setInput(int i, int anchor, double pseudorange) {
+        ax[i] = anchors.getX(anchor);
+        ay[i] = anchors.getY(anchor);
+        az[i] = anchors.getZ(anchor);
+        pseudoranges[i] = pseudorange;
+    }
+
+    private boolean solveInput(int tag, int count, long timestampMicros) {
+        if (count < dims + 2) {
+            return false;
+        }
+        boolean warm = lastFixMicros[tag] != 0
+                && timestampMicros - lastFixMicros[tag] <= warmStartMaxAgeMicros;
+        if (warm) {
+            position[0] = lastX[tag];
+            position[1] = lastY[tag];
+            position[2] = dims == 2 ? fixedHeight : lastZ[tag];
+        } else {
+            double x = 0, y = 0, z = 0;
+            for (int i = 0; i < count; i++) {
+                x += ax[i];
+                y += ay[i];
+                z += az[i];
+            }
+            position[0] = x / count;
+            position[1] = y / count;
+            position[2] = dims == 2 ? fixedHeight : z / count - COLD_START_Z_OFFSET;
+        }
+        if (!solver.solve(ax, ay, az, pseudoranges, count, dims, position)) {
+            return false;
+        }
+        lastX[tag] = (float) position[0];
+        lastY[tag] = (float) position[1];
+        lastZ[tag] = (float) position[2];
+        lastFixMicros[tag] = Math.max(1, timestampMicros);
+
+        PositionListener l = listener;
+        if (l != null) {
+            fix.tagId = tags.keyAt(tag);
+            fix.x = lastX[tag];
+            fix.y = lastY[tag];
+            fix.z = lastZ[tag];
+            fix.timestampMicros = timestampMicros;
+            fix.anchorCount = count;
+            fix.inlierCount = count;
+            fix.residualRms = (float) solver.getResidualRms();
+            fix.iterations = solver.getIterations();
+            l.onFix(fix);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,246 @@
+package com.onlylemi.mapview.core.positioning;
+
+import com.onlylemi.mapview.core.util.Cholesky;
+
+/**
+ * TdoaSolver
+ * <p>
+ * Levenberg-Marquardt least squares fit of a position to the arrival times of one blink at
+ * synchronized anchors. Arrival times are given as pseudoranges {@code rho_i}, the distances the
+ * signal traveled since an arbitrary common epoch, and the unknown emission time as a bias
+ * {@code b}: the solver minimizes {@code sum (|p - a_i| + b - rho_i)^2}, which is the hyperbolic
+ * (range difference) problem with the differences taken implicitly against b. Unknowns are x, y
+ * (and z in 3D) plus b, so at least dims + 2 anchors are needed for a unique fit; the normal
+ * equations are at most 4 x 4.
+ * <p>
+ * An instance keeps its scratch state, so solving does not allocate; it is not thread safe.
+ *
+ * @author: onlylemi
+ */
+public final class TdoaSolver {
+
+    public static final int DEFAULT_MAX_ITERATIONS = 20;
+
+    private static final double CONVERGENCE_STEP = 1e-4; // meters
+    private static final double INITIAL_LAMBDA = 1e-3;
+    private static final double MIN_LAMBDA = 1e-9;
+    private static final double MAX_LAMBDA = 1e9;
+    private static final double DIAGONAL_EPSILON = 1e-12;
+    private static final int STRIDE = 4;
+
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    // unknowns: x, y, z, b; the bias is last, at index dims
+    private final double[] unknowns = new double[4];
+    private final double[] trial = new double[4];
+    // normal equations J^T J (row major, stride 4) and J^T r
+    private final double[] jtj = new double[16];
+    private final double[] jtr = new double[4];
+    private final double[] system = new double[16];
+    private final double[] delta = new double[4];
+
+    // result of the last solve
+    private double residualRms;
+    private double bias;
+    private int iterations;
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * fit a position to the pseudoranges
+     *
+     * @param ax           anchor x, meters
+     * @param ay           anchor y, meters
+     * @param az           anchor z, meters
+     * @param pseudoranges arrival times times the speed of light, meters from a common epoch
+     * @param count        number of arrivals
+     * @param dims         2 to keep {@code position[2]} fixed, 3 to solve it too
+     * @param position     in: start point x, y, z; out: solution
+     * @return false if the geometry is degenerate (less than dims + 2 or aligned anchors)
+     */
+    public boolean solve(float[] ax, float[] ay, float[] az, double[] pseudoranges, int count,
+                         int dims, double[] position) {
+        iterations = 0;
+        residualRms = Double.NaN;
+        bias = Double.NaN;
+        if (count < dims + 2) {
+            return false;
+        }
+        int n = dims + 1;
+        System.arraycopy(position, 0, unknowns, 0, 3);
+        // the bias that best fits the start point
+        double b = 0;
+        for (int i = 0; i < count; i++) {
+            b += pseudoranges[i] - range(ax[i], ay[i], az[i], unknowns);
+        }
+        unknowns[3] = b / count;
+
+        double lambda = INITIAL_LAMBDA;
+        double cost = buildNormalEquations(ax, ay, az, pseudoranges, count, dims);
+        while (iterations < maxIterations) {
+            iterations++;
+            // increase damping until the step lowers the cost
+            boolean improved = false;
+            double step = 0;
+            while (lambda <= MAX_LAMBDA) {
+                if (solveDamped(n, lambda)) {
+                    System.arraycopy(unknowns, 0, trial, 0, 4);
+                    step = 0;
+                    for (int k = 0; k < dims; k++) {
+                        trial[k] += delta[k];
+                        step += delta[k] * delta[k];
+                    }
+                    trial[3] += delta[dims];
+                    double trialCost = cost(ax, ay, az, pseudoranges, count, trial);
+                    if (trialCost < cost) {
+                        System.arraycopy(trial, 0, unknowns, 0, 4);
+                        cost = buildNormalEquations(ax, ay, az, pseudoranges, count, dims);
+                        lambda = Math.max(MIN_LAMBDA, lambda / 10);
+                        improved = true;
+                        break;
+                    }
+                }
+                lambda *= 10;
+            }
+            if (!improved || Math.sqrt(step) < CONVERGENCE_STEP) {
+                break;
+            }
+        }
+        residualRms = Math.sqrt(cost / count);
+        if (Double.isNaN(residualRms) || Double.isInfinite(residualRms)
+                || !isWellConditioned(n)) {
+            return false;
+        }
+        System.arraycopy(unknowns, 0, position, 0, 3);
+        bias = unknowns[3];
+        return true;
+    }
+
+    /**
+     * @return root mean square of the residuals of the last solve, meters
+     */
+    public double getResidualRms() {
+        return residualRms;
+    }
+
+    /**
+     * @return emission time of the last solve as a pseudorange, meters
+     */
+    public double getBias() {
+        return bias;
+    }
+
+    /**
+     * @return iterations of the last solve
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static double range(float ax, float ay, float az, double[] p) {
+        double dx = p[0] - ax;
+        double dy = p[1] - ay;
+        double dz = p[2] - az;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * fill jtj and jtr at the unknowns
+     *
+     * @return sum of the squared residuals
+     */
+    private double buildNormalEquations(float[] ax, float[] ay, float[] az,
+                                        double[] pseudoranges, int count, int dims) {
+        for (int k = 0; k < 16; k++) {
+            jtj[k] = 0;
+        }
+        jtr[0] = jtr[1] = jtr[2] = jtr[3] = 0;
+        int n = dims + 1;
+        double[] row = delta; // scratch, overwritten by solveDamped
+        double cost = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = unknowns[0] - ax[i];
+            double dy = unknowns[1] - ay[i];
+            double dz = unknowns[2] - az[i];
+            double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double r = range + unknowns[3] - pseudoranges[i];
+            cost += r * r;
+            // jacobian row: unit vector from the anchor, 1 for the bias
+            if (range < 1e-9) {
+                // on the anchor, the gradient is undefined
+                row[0] = row[1] = row[2] = 0;
+            } else {
+                row[0] = dx / range;
+                row[1] = dy / range;
+                row[2] = dz / range;
+            }
+            row[dims] = 1;
+            for (int a = 0; a < n; a++) {
+                jtr[a] += row[a] * r;
+                for (int c = a; c < n; c++) {
+                    jtj[a * STRIDE + c] += row[a] * row[c];
+                }
+            }
+        }
+        // mirror the upper triangle
+        for (int a = 1; a < n; a++) {
+            for (int c = 0; c < a; c++) {
+                jtj[a * STRIDE + c] = jtj[c * STRIDE + a];
+            }
+        }
+        return cost;
+    }
+
+    private static double cost(float[] ax, float[] ay, float[] az, double[] pseudoranges,
+                               int count, double[] unknowns) {
+        double cost = 0;
+        for (int i = 0; i < count; i++) {
+            double r = range(ax[i], ay[i], az[i], unknowns) + unknowns[3] - pseudoranges[i];
+            cost += r * r;
+        }
+        return cost;
+    }
+
+    /**
+     * solve (J^T J + lambda diag(J^T J)) delta = -J^T r
+     *
+     * @return false if the system is not positive definite
+     */
+    private boolean solveDamped(int n, double lambda) {
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                system[row * STRIDE + col] = jtj[row * STRIDE + col];
+            }
+            system[row * STRIDE + row] += lambda * jtj[row * STRIDE + row] + DIAGONAL_EPSILON;
+            delta[row] = -jtr[row];
+        }
+        return Cholesky.solve(system, delta, n, STRIDE);
+    }
+
+    /**
+     * the smallest eigenvalue of J^T J must not vanish, checked through the determinant (the
+     * squared product of the Cholesky pivots) against the trace
+     */
+    private boolean isWellConditioned(int n) {
+        double trace = 0;
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                system[row * STRIDE + col] = jtj[row * STRIDE + col];
+            }
+            delta[row] = 0;
+            trace += jtj[row * STRIDE + row];
+        }
+        if (!Cholesky.solve(system, delta, n, STRIDE)) {
+            return false;
+        }
+        double det = 1;
+        double bound = 1e-9;
+        for (int k = 0; k < n; k++) {
+            det *= system[k * STRIDE + k] * system[k * STRIDE + k];
+            bound *= trace;
+        }
+        return det > bound;
+    }
+}
@@ -0,0 +1,360 @@
+package com.onlylemi.mapview.core.positioning;
+
+import com.onlylemi.mapview.core.util.LongIndexMap;
+
+/**
+ * TwrPositioningEngine
+ * <p>
+ * Turns two-way-ranging reports into fixes. Reports of a tag are collected into a ranging round
+ * that is solved with {@link MultilaterationSolver} once it is complete: when a report falls
+ * outside the round window, repeats an anchor of the round, or the round is full. The solver
+ * starts from the last fix of the tag when it is recent enough, from below the anchors'
+ * centroid otherwise.
+ * <p>
+ * With {@link #setOutlierRejection outlier rejection} rounds are solved by
+ * {@link RobustMultilaterationSolver} instead, which drops ranges inconsistent with the others
+ * (NLOS, multipath) at a bounded cost per fix; {@link Fix#inlierCount} reports the ranges kept.
+ * <p>
+ * State is kept in flat per tag arrays sized at construction and the {@link Fix} passed to the
+ * listener is reused, so ranging does not allocate. Not thread safe, feed an engine from one
+ * thread.
+ *
+ * @author: onlylemi
+ */
+public final class TwrPositioningEngine {
+
+    public static final long DEFAULT_ROUND_WINDOW_MICROS = 50000; // 50 ms
+    public static final long DEFAULT_WARM_START_MAX_AGE_MICROS = 2000000; // 2 s
+    // a cold start from the anchors' plane leaves z without gradient, start this much below
+    private static final float COLD_START_Z_OFFSET = 1f;
+
+    private final Anchors anchors;
+    private final MultilaterationSolver solver = new MultilaterationSolver();
+    private final RobustMultilaterationSolver robustSolver;
+    private final int maxAnchorsPerRound;
+
+    private int dims = 2;
+    private boolean outlierRejection;
+    private float fixedHeight = 0;
+    private long roundWindowMicros = DEFAULT_ROUND_WINDOW_MICROS;
+    private long warmStartMaxAgeMicros = DEFAULT_WARM_START_MAX_AGE_MICROS;
+    private PositionListener listener;
+
+    // per tag state, by tag index
+    private final LongIndexMap tags;
+    private final float[] lastX;
+    private final float[] lastY;
+    private final float[] lastZ;
+    private final long[] lastFixMicros; // 0 without fix
+    private final int[] roundCount;
+    private final long[] roundStartMicros;
+    private final long[] roundEndMicros;
+    // pending ranges, maxAnchorsPerRound per tag
+    private final int[] roundAnchors; // anchor indexes
+    private final float[] roundDistances;
+
+    // solver input scratch
+    private final float[] ax;
+    private final float[] ay;
+    private final float[] az;
+    private final float[] distances;
+    private final double[] position = new double[3];
+    private final Fix fix = new Fix();
+
+    /**
+     * @param anchors            anchor positions
+     * @param maxTags            max number of tags, reports of further tags are dropped
+     * @param maxAnchorsPerRound max ranges in a round
+     */
+    public TwrPositioningEngine(Anchors anchors, int maxTags, int maxAnchorsPerRound) {
+        this.anchors = anchors;
+        this.maxAnchorsPerRound = maxAnchorsPerRound;
+        this.robustSolver = new RobustMultilaterationSolver(maxAnchorsPerRound);
+        this.tags = new LongIndexMap(maxTags);
+        this.lastX = new float[maxTags];
+        this.lastY = new float[maxTags];
+        this.lastZ = new float[maxTags];
+        this.lastFixMicros = new long[maxTags];
+        this.roundCount = new int[maxTags];
+        this.roundStartMicros = new long[maxTags];
+        this.roundEndMicros = new long[maxTags];
+        this.roundAnchors = new int[maxTags * maxAnchorsPerRound];
+        this.roundDistances = new float[maxTags * maxAnchorsPerRound];
+        this.ax = new float[maxAnchorsPerRound];
+        this.ay = new float[maxAnchorsPerRound];
+        this.az = new float[maxAnchorsPerRound];
+        this.distances = new float[maxAnchorsPerRound];
+    }
+
+    /**
+     * solve 2D positions at a fixed tag height (default), or 3D
+     *
+     * @param dims 2 or 3
+     */
+    public void setDimensions(int dims) {
+        if (dims != 2 && dims != 3) {
+            throw new IllegalArgumentException("dims must be 2 or 3: " + dims);
+        }
+        this.dims = dims;
+    }
+
+    /**
+     * height of the tags in 2D mode, meters
+     *
+     * @param fixedHeight
+     */
+    public void setFixedHeight(float fixedHeight) {
+        this.fixedHeight = fixedHeight;
+    }
+
+    /**
+     * max time between the first and the last report of a round
+     *
+     * @param roundWindowMicros
+     */
+    public void setRoundWindowMicros(long roundWindowMicros) {
+        this.roundWindowMicros = roundWindowMicros;
+    }
+
+    /**
+     * max age of the last fix to start the solver from
+     *
+     * @param warmStartMaxAgeMicros
+     */
+    public void setWarmStartMaxAgeMicros(long warmStartMaxAgeMicros) {
+        this.warmStartMaxAgeMicros = warmStartMaxAgeMicros;
+    }
+
+    /**
+     * max least squares iterations of a solve, of each hypothesis with outlier rejection
+     *
+     * @param maxIterations
+     */
+    public void setMaxIterations(int maxIterations) {
+        solver.setMaxIterations(maxIterations);
+        robustSolver.setMaxIterations(maxIterations);
+    }
+
+    /**
+     * reject ranges inconsistent with the rest of their round, off by default
+     *
+     * @param outlierRejection
+     */
+    public void setOutlierRejection(boolean outlierRejection) {
+        this.outlierRejection = outlierRejection;
+    }
+
+    /**
+     * @param inlierThreshold max range residual kept with outlier rejection, meters
+     */
+    public void setInlierThreshold(float inlierThreshold) {
+        robustSolver.setInlierThreshold(inlierThreshold);
+    }
+
+    /**
+     * @param maxHypotheses anchor subsets fitted at most per fix with outlier rejection, bounds
+     *                      the cost of a fix to about maxHypotheses + 2 solves
+     */
+    public void setMaxHypotheses(int maxHypotheses) {
+        robustSolver.setMaxHypotheses(maxHypotheses);
+    }
+
+    public void setPositionListener(PositionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * a range report, solves the pending round of the tag when the report does not belong to it
+     *
+     * @param tagId
+     * @param anchorId
+     * @param distance        meters
+     * @param timestampMicros
+     * @return false if the report was dropped (unknown anchor, too many tags)
+     */
+    public boolean onRange(long tagId, int anchorId, float distance, long timestampMicros) {
+        int anchor = anchors.indexOf(anchorId);
+        if (anchor < 0) {
+            return false;
+        }
+        int tag = tags.getOrAdd(tagId);
+        if (tag < 0) {
+            return false;
+        }
+        int count = roundCount[tag];
+        if (count > 0 && (timestampMicros - roundStartMicros[tag] > roundWindowMicros
+                || count == maxAnchorsPerRound
+                || hasAnchor(tag, anchor))) {
+            solveRound(tag);
+            count = 0;
+        }
+        if (count == 0) {
+            roundStartMicros[tag] = timestampMicros;
+        }
+        int base = tag * maxAnchorsPerRound;
+        roundAnchors[base + count] = anchor;
+        roundDistances[base + count] = distance;
+        roundEndMicros[tag] = Math.max(roundEndMicros[tag], timestampMicros);
+        roundCount[tag] = count + 1;
+        return true;
+    }
+
+    /**
+     * solve the pending round of a tag now, e.g. when the ranging source signals its end
+     *
+     * @param tagId
+     * @return true if a fix was published
+     */
+    public boolean flush(long tagId) {
+        int tag = tags.get(tagId);
+        return tag >= 0 && roundCount[tag] > 0 && solveRound(tag);
+    }
+
+    /**
+     * solve the pending rounds of all tags whose window elapsed
+     *
+     * @param nowMicros
+     */
+    public void flushExpired(long nowMicros) {
+        for (int tag = 0; tag < tags.size(); tag++) {
+            if (roundCount[tag] > 0 && nowMicros - roundStartMicros[tag] > roundWindowMicros) {
+                solveRound(tag);
+            }
+        }
+    }
+
+    /**
+     * solve a complete round at once
+     *
+     * @param tagId
+     * @param anchorIds
+     * @param ranges          meters
+     * @param count
+     * @param timestampMicros
+     * @return true if a fix was published
+     */
+    public boolean solve(long tagId, int[] anchorIds, float[] ranges, int count,
+                         long timestampMicros) {
+        int tag = tags.getOrAdd(tagId);
+        if (tag < 0) {
+            return false;
+        }
+        int n = 0;
+        for (int i = 0; i < count && n < maxAnchorsPerRound; i++) {
+            int anchor = anchors.indexOf(anchorIds[i]);
+            if (anchor >= 0) {
+                setInput(n++, anchor, ranges[i]);
+            }
+        }
+        return solveInput(tag, n, timestampMicros);
+    }
+
+    /**
+     * last fix of a tag
+     *
+     * @param tagId
+     * @param out   receives the fix
+     * @return false if the tag has no fix
+     */
+    public boolean getLastFix(long tagId, Fix out) {
+        int tag = tags.get(tagId);
+        if (tag < 0 || lastFixMicros[tag] == 0) {
+            return false;
+        }
+        out.tagId = tagId;
+        out.x = lastX[tag];
+        out.y = lastY[tag];
+        out.z = lastZ[tag];
+        out.timestampMicros = lastFixMicros[tag];
+        return true;
+    }
+
+    private boolean hasAnchor(int tag, int anchor) {
+        int base = tag * maxAnchorsPerRound;
+        for (int i = 0; i < roundCount[tag]; i++) {
+            if (roundAnchors[base + i] == anchor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean solveRound(int tag) {
+        int base = tag * maxAnchorsPerRound;
+        int count = roundCount[tag];
+        for (int i = 0; i < count; i++) {
+            setInput(i, roundAnchors[base + i], roundDistances[base + i]);
+        }
+        roundCount[tag] = 0;
+        long timestampMicros = roundEndMicros[tag];
+        roundEndMicros[tag] = 0;
+        return solveInput(tag, count, timestampMicros);
+    }
+
+    private void setInput(int i, int anchor, float distance) {
+        ax[i] = anchors.getX(anchor);
+        ay[i] = anchors.getY(anchor);
+        az[i] = anchors.getZ(anchor);
+        distances[i] = distance;
+    }
+
+    private boolean solveInput(int tag, int count, long timestampMicros) {
+        if (count < dims + 1) {
+            return false;
+        }
+        boolean warm = lastFixMicros[tag] != 0
+                && timestampMicros - lastFixMicros[tag] <= warmStartMaxAgeMicros;
+        if (warm) {
+            position[0] = lastX[tag];
+            position[1] = lastY[tag];
+            position[2] = dims == 2 ? fixedHeight : lastZ[tag];
+        } else {
+            double x = 0, y = 0, z = 0;
+            for (int i = 0; i < count; i++) {
+                x += ax[i];
+                y += ay[i];
+                z += az[i];
+            }
+            position[0] = x / count;
+            position[1] = y / count;
+            position[2] = dims == 2 ? fixedHeight : z / count - COLD_START_Z_OFFSET;
+        }
+        int inliers;
+        double residualRms;
+        int iterations;
+        if (outlierRejection) {
+            if (!robustSolver.solve(ax, ay, az, distances, count, dims, position)) {
+                return false;
+            }
+            inliers = robustSolver.getInlierCount();
+            residualRms = robustSolver.getResidualRms();
+            iterations = robustSolver.getIterations();
+        } else {
+            if (!solver.solve(ax, ay, az, distances, count, dims, position)) {
+                return false;
+            }
+            inliers = count;
+            residualRms = solver.getResidualRms();
+            iterations = solver.getIterations();
+        }
+        lastX[tag] = (float) position[0];
+        lastY[tag] = (float) position[1];
+        lastZ[tag] = (float) position[2];
+        lastFixMicros[tag] = Math.max(1, timestampMicros);
+
+        PositionListener l = listener;
+        if (l != null) {
+            fix.tagId = tags.keyAt(tag);
+            fix.x = lastX[tag];
+            fix.y = lastY[tag];
+            fix.z = lastZ[tag];
+            fix.timestampMicros = timestampMicros;
+            fix.anchorCount = count;
+            fix.inlierCount = inliers;
+            fix.residualRms = (float) residualRms;
+            fix.iterations = iterations;
+            l.onFix(fix);
+        }
+        return true;
+    }
+}
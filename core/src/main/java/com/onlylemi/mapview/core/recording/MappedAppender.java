@@ -0,0 +1,94 @@
+package com.onlylemi.mapview.core.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedAppender
+ * <p>
+ * Append-only file of fixed size slots written through memory mapped chunks; the next chunk is
+ * mapped, growing the file, when the current one is full. Closing truncates the file to the
+ * slots written. Not thread safe.
+ *
+ * @author: onlylemi
+ */
+final class MappedAppender implements Closeable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int slotSize;
+    private final int chunkSize;
+
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long length; // bytes written
+
+    /**
+     * @param path      created or truncated
+     * @param slotSize
+     * @param chunkSize multiple of slotSize
+     * @throws IOException
+     */
+    MappedAppender(File path, int slotSize, int chunkSize) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        this.file.setLength(0);
+        this.channel = file.getChannel();
+        this.slotSize = slotSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return buffer to write the next slot at {@link #slotOffset()}, absolute
+     * @throws IOException
+     */
+    MappedByteBuffer next() throws IOException {
+        if (chunk == null || length - chunkStart == chunkSize) {
+            if (chunk != null) {
+                chunkStart += chunkSize;
+            }
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkSize);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunk;
+    }
+
+    /**
+     * @return offset of the next slot in the buffer returned by {@link #next()}
+     */
+    int slotOffset() {
+        return (int) (length - chunkStart);
+    }
+
+    /**
+     * the slot was written
+     */
+    void commit() {
+        length += slotSize;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * write the mapped pages to the file
+     */
+    void force() {
+        if (chunk != null) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        chunk = null;
+        channel.truncate(length);
+        file.close();
+    }
+}
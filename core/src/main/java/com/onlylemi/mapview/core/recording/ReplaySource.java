@@ -0,0 +1,306 @@
+package com.onlylemi.mapview.core.recording;
+
+import com.onlylemi.mapview.core.ingest.MeasurementSink;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ReplaySource
+ * <p>
+ * Plays a session recorded by {@link SessionRecorder} back: the measurements to a
+ * {@link MeasurementSink}, e.g. a PipelineSink so they are solved again, and the recorded fixes
+ * to an optional {@link PositionListener}. Entries are paced by their record time at 1x, any
+ * factor, or {@link #MAX_SPEED}, which makes a replay an end-to-end throughput benchmark. The
+ * log is read through read-only mapped chunks and replay does not allocate. Read by one thread.
+ *
+ * @author: onlylemi
+ */
+public final class ReplaySource implements Closeable {
+
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private static final int BATCH = 1024;
+    // waits shorter than this are spun
+    private static final long MIN_PARK_NANOS = 50000;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long entryCount;
+    private final long startWallMillis;
+    // sparse time index
+    private final long[] indexTimes;
+    private final long[] indexEntries;
+
+    private MappedByteBuffer chunk;
+    private long chunkStart = -1;
+    private long next; // entry number
+
+    private double speed = 1;
+    private long paceWallNanos;
+    private long paceRecordMicros = -1;
+
+    private PositionListener listener;
+    private final Fix fix = new Fix();
+    private long replayed;
+    private long drops;
+
+    /**
+     * @param path log written by a SessionRecorder, its index next to it is optional
+     * @throws IOException if the file is not a session log
+     */
+    public ReplaySource(File path) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+        long length = channel.size();
+        if (length < SessionFormat.HEADER_SIZE) {
+            close();
+            throw new IOException("not a session log: " + path);
+        }
+        MappedByteBuffer header = map(0);
+        if (header.getLong(0) != SessionFormat.MAGIC
+                || header.getInt(8) != SessionFormat.VERSION
+                || header.getInt(12) != SessionFormat.ENTRY_SIZE) {
+            close();
+            throw new IOException("not a session log: " + path);
+        }
+        this.startWallMillis = header.getLong(16);
+        this.entryCount = (length - SessionFormat.HEADER_SIZE) / SessionFormat.ENTRY_SIZE;
+
+        File indexPath = new File(path.getPath() + SessionFormat.INDEX_SUFFIX);
+        int indexCount = 0;
+        long[] times = new long[0];
+        long[] entries = new long[0];
+        if (indexPath.isFile()) {
+            RandomAccessFile indexFile = new RandomAccessFile(indexPath, "r");
+            try {
+                MappedByteBuffer buffer = indexFile.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, 0, indexFile.length());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                indexCount = (int) (indexFile.length() / SessionFormat.INDEX_ENTRY_SIZE);
+                times = new long[indexCount];
+                entries = new long[indexCount];
+                for (int i = 0; i < indexCount; i++) {
+                    times[i] = buffer.getLong(i * SessionFormat.INDEX_ENTRY_SIZE);
+                    entries[i] = buffer.getLong(i * SessionFormat.INDEX_ENTRY_SIZE + 8);
+                }
+            } finally {
+                indexFile.close();
+            }
+        }
+        this.indexTimes = times;
+        this.indexEntries = entries;
+    }
+
+    /**
+     * @param speed 1 for real time, {@link #MAX_SPEED} for as fast as the sink takes them
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        this.speed = speed;
+        paceRecordMicros = -1;
+    }
+
+    /**
+     * receives the recorded fixes
+     *
+     * @param listener null to skip them
+     */
+    public void setPositionListener(PositionListener listener) {
+        this.listener = listener;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getStartWallMillis() {
+        return startWallMillis;
+    }
+
+    /**
+     * @return record time of the last entry, micros
+     * @throws IOException
+     */
+    public long getDurationMicros() throws IOException {
+        return entryCount == 0 ? 0 : recordMicros(entryCount - 1);
+    }
+
+    public long getReplayedCount() {
+        return replayed;
+    }
+
+    /**
+     * @return measurements refused by the sink
+     */
+    public long getDropCount() {
+        return drops;
+    }
+
+    /**
+     * continue the replay at the first entry recorded at or after a time
+     *
+     * @param recordMicros micros since the start of the session
+     * @throws IOException
+     */
+    public void seek(long recordMicros) throws IOException {
+        // last index point before the time, then scan at most one index interval
+        int low = 0, high = indexTimes.length - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] <= recordMicros) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long entry = found < 0 ? 0 : indexEntries[found];
+        while (entry < entryCount && recordMicros(entry) < recordMicros) {
+            entry++;
+        }
+        next = entry;
+        paceRecordMicros = -1;
+    }
+
+    /**
+     * replay the next entries, waiting for their time at the replay speed
+     *
+     * @param sink
+     * @return entries replayed, -1 at the end of the session
+     * @throws IOException
+     */
+    public int poll(MeasurementSink sink) throws IOException {
+        int count = 0;
+        while (count < BATCH && next < entryCount) {
+            MappedByteBuffer buffer = chunkOf(next);
+            int offset = (int) (entryOffset(next) - chunkStart);
+            long recordMicros = buffer.getLong(offset);
+            int kind = buffer.getInt(offset + 8);
+            if (kind == 0) {
+                // never written, the recorder did not close
+                next = entryCount;
+                break;
+            }
+            pace(recordMicros);
+            replay(buffer, offset, kind, sink);
+            next++;
+            count++;
+        }
+        replayed += count;
+        return count == 0 && next >= entryCount ? -1 : count;
+    }
+
+    /**
+     * replay to the end of the session
+     *
+     * @param sink
+     * @throws IOException
+     */
+    public void run(MeasurementSink sink) throws IOException {
+        while (poll(sink) >= 0) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunk = null;
+        file.close();
+    }
+
+    private void replay(MappedByteBuffer buffer, int offset, int kind, MeasurementSink sink) {
+        int anchorId = buffer.getInt(offset + 12);
+        long id = buffer.getLong(offset + 16);
+        long a = buffer.getLong(offset + 24);
+        long timestamp = buffer.getLong(offset + 32);
+        long b = buffer.getLong(offset + 40);
+        boolean accepted = true;
+        switch (kind & 0xFF) {
+            case SessionFormat.KIND_RANGE:
+                accepted = sink.onRange(id, anchorId, Float.intBitsToFloat((int) a), timestamp);
+                break;
+            case SessionFormat.KIND_BLINK:
+                accepted = sink.onBlink(id, (int) b, anchorId, a, timestamp);
+                break;
+            case SessionFormat.KIND_SYNC:
+                accepted = sink.onSync(anchorId, id, a);
+                break;
+            case SessionFormat.KIND_FIX:
+                PositionListener l = listener;
+                if (l != null) {
+                    fix.tagId = id;
+                    fix.x = Float.intBitsToFloat((int) (a >>> 32));
+                    fix.y = Float.intBitsToFloat((int) a);
+                    fix.z = Float.intBitsToFloat((int) (b >>> 32));
+                    fix.residualRms = Float.intBitsToFloat((int) b);
+                    fix.timestampMicros = timestamp;
+                    fix.anchorCount = anchorId & 0xFFFF;
+                    fix.inlierCount = anchorId >>> 16;
+                    fix.iterations = kind >>> 8;
+                    l.onFix(fix);
+                }
+                break;
+            default:
+                break;
+        }
+        if (!accepted) {
+            drops++;
+        }
+    }
+
+    /**
+     * wait until an entry is due at the replay speed
+     */
+    private void pace(long recordMicros) {
+        if (speed == MAX_SPEED) {
+            return;
+        }
+        if (paceRecordMicros < 0) {
+            paceRecordMicros = recordMicros;
+            paceWallNanos = System.nanoTime();
+            return;
+        }
+        long due = paceWallNanos + (long) ((recordMicros - paceRecordMicros) * 1000 / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            if (wait > MIN_PARK_NANOS) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    private long recordMicros(long entry) throws IOException {
+        return chunkOf(entry).getLong((int) (entryOffset(entry) - chunkStart));
+    }
+
+    private static long entryOffset(long entry) {
+        return SessionFormat.HEADER_SIZE + entry * SessionFormat.ENTRY_SIZE;
+    }
+
+    private MappedByteBuffer chunkOf(long entry) throws IOException {
+        long start = entryOffset(entry) / SessionFormat.LOG_CHUNK_SIZE
+                * SessionFormat.LOG_CHUNK_SIZE;
+        if (start != chunkStart) {
+            chunk = map(start);
+            chunkStart = start;
+        }
+        return chunk;
+    }
+
+    private MappedByteBuffer map(long start) throws IOException {
+        long size = Math.min(SessionFormat.LOG_CHUNK_SIZE, channel.size() - start);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+}
@@ -0,0 +1,46 @@
+package com.onlylemi.mapview.core.recording;
+
+/**
+ * SessionFormat
+ * <p>
+ * Layout of a recorded session, little endian. The log is a header slot followed by fixed size
+ * entries in recording order:
+ * <pre>
+ * header: magic u64, version u32, entry size u32, start wall clock u64 millis
+ *
+ * entry (48):
+ *  0  u64  record time, micros since the start of the session
+ *  8  u32  kind in the low byte; solver iterations above it for fixes
+ * 12  u32  anchor id; fixes: inlier count &lt;&lt; 16 | anchor count
+ * 16  u64  tag id; reference tx ticks for sync frames
+ * 24  u64  range: distance f32; blink, sync: rx ticks; fix: x f32 &lt;&lt; 32 | y f32
+ * 32  u64  measurement timestamp, micros
+ * 40  u64  blink: sequence; fix: z f32 &lt;&lt; 32 | residual f32
+ * </pre>
+ * The index file next to the log holds (record time u64, entry number u64) pairs, one per
+ * {@link #INDEX_INTERVAL_MICROS} of recording, for seeking.
+ *
+ * @author: onlylemi
+ */
+public final class SessionFormat {
+
+    public static final long MAGIC = 0x474F4C534C545252L; // "RRTLSLOG"
+    public static final int VERSION = 1;
+
+    public static final int KIND_RANGE = 1;
+    public static final int KIND_BLINK = 2;
+    public static final int KIND_SYNC = 3;
+    public static final int KIND_FIX = 4;
+
+    public static final int ENTRY_SIZE = 48;
+    public static final int HEADER_SIZE = ENTRY_SIZE;
+    public static final int INDEX_ENTRY_SIZE = 16;
+    public static final long INDEX_INTERVAL_MICROS = 1000000; // 1 s
+    public static final String INDEX_SUFFIX = ".idx";
+
+    // files are mapped in chunks of whole entries
+    static final int LOG_CHUNK_SIZE = ENTRY_SIZE * (1 << 20); // 48 MiB
+    static final int INDEX_CHUNK_SIZE = INDEX_ENTRY_SIZE * (1 << 12); // 64 KiB
+
+    private SessionFormat() {}
+}
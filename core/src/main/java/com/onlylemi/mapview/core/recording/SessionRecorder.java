@@ -0,0 +1,166 @@
+package com.onlylemi.mapview.core.recording;
+
+import com.onlylemi.mapview.core.ingest.MeasurementSink;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * SessionRecorder
+ * <p>
+ * Records a ranging session to an append-only memory mapped log, see {@link SessionFormat}: put
+ * it between a source and its sink to record the raw measurements, and between the pipeline and
+ * its listener to record the fixes. Everything recorded is passed on to the downstream sink and
+ * listener. Appending writes one 48 byte entry to mapped memory and does not allocate; entries
+ * are appended under the recorder lock, as measurements and fixes come from different threads.
+ *
+ * @author: onlylemi
+ */
+public final class SessionRecorder implements MeasurementSink, PositionListener, Closeable {
+
+    private final MappedAppender log;
+    private final MappedAppender index;
+    private final long startNanos;
+    private long nextIndexMicros;
+    private boolean closed;
+
+    private volatile MeasurementSink sink;
+    private volatile PositionListener listener;
+
+    /**
+     * @param file log, created or truncated; the index is written next to it
+     * @throws IOException
+     */
+    public SessionRecorder(File file) throws IOException {
+        this.log = new MappedAppender(file, SessionFormat.ENTRY_SIZE,
+                SessionFormat.LOG_CHUNK_SIZE);
+        this.index = new MappedAppender(new File(file.getPath() + SessionFormat.INDEX_SUFFIX),
+                SessionFormat.INDEX_ENTRY_SIZE, SessionFormat.INDEX_CHUNK_SIZE);
+        this.startNanos = System.nanoTime();
+
+        MappedByteBuffer buffer = log.next();
+        int offset = log.slotOffset();
+        buffer.putLong(offset, SessionFormat.MAGIC);
+        buffer.putInt(offset + 8, SessionFormat.VERSION);
+        buffer.putInt(offset + 12, SessionFormat.ENTRY_SIZE);
+        buffer.putLong(offset + 16, System.currentTimeMillis());
+        log.commit();
+    }
+
+    /**
+     * downstream of the recorded measurements
+     *
+     * @param sink
+     */
+    public void setMeasurementSink(MeasurementSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * downstream of the recorded fixes
+     *
+     * @param listener
+     */
+    public void setPositionListener(PositionListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean onRange(long tagId, int anchorId, float distance, long timestampMicros) {
+        append(SessionFormat.KIND_RANGE, anchorId, tagId, Float.floatToRawIntBits(distance),
+                timestampMicros, 0);
+        MeasurementSink s = sink;
+        return s == null || s.onRange(tagId, anchorId, distance, timestampMicros);
+    }
+
+    @Override
+    public boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks,
+                           long timestampMicros) {
+        append(SessionFormat.KIND_BLINK, anchorId, tagId, rxTicks, timestampMicros, sequence);
+        MeasurementSink s = sink;
+        return s == null || s.onBlink(tagId, sequence, anchorId, rxTicks, timestampMicros);
+    }
+
+    @Override
+    public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+        append(SessionFormat.KIND_SYNC, anchorId, referenceTxTicks, rxTicks, 0, 0);
+        MeasurementSink s = sink;
+        return s == null || s.onSync(anchorId, referenceTxTicks, rxTicks);
+    }
+
+    @Override
+    public void onFix(Fix fix) {
+        append(SessionFormat.KIND_FIX | fix.iterations << 8,
+                fix.inlierCount << 16 | fix.anchorCount & 0xFFFF, fix.tagId,
+                (long) Float.floatToRawIntBits(fix.x) << 32
+                        | (Float.floatToRawIntBits(fix.y) & 0xFFFFFFFFL),
+                fix.timestampMicros,
+                (long) Float.floatToRawIntBits(fix.z) << 32
+                        | (Float.floatToRawIntBits(fix.residualRms) & 0xFFFFFFFFL));
+        PositionListener l = listener;
+        if (l != null) {
+            l.onFix(fix);
+        }
+    }
+
+    /**
+     * @return entries recorded
+     */
+    public synchronized long getEntryCount() {
+        return log.getLength() / SessionFormat.ENTRY_SIZE - 1;
+    }
+
+    /**
+     * write the mapped pages to the file, e.g. periodically against power loss
+     */
+    public synchronized void force() {
+        log.force();
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        log.close();
+        index.close();
+    }
+
+    private synchronized void append(int kind, int anchorId, long tagId, long a, long timestamp,
+                                     long b) {
+        if (closed) {
+            return;
+        }
+        long recordMicros = (System.nanoTime() - startNanos) / 1000;
+        try {
+            long entry = log.getLength() / SessionFormat.ENTRY_SIZE - 1;
+            if (recordMicros >= nextIndexMicros) {
+                MappedByteBuffer buffer = index.next();
+                int offset = index.slotOffset();
+                buffer.putLong(offset, recordMicros);
+                buffer.putLong(offset + 8, entry);
+                index.commit();
+                nextIndexMicros = recordMicros + SessionFormat.INDEX_INTERVAL_MICROS;
+            }
+            MappedByteBuffer buffer = log.next();
+            int offset = log.slotOffset();
+            buffer.putLong(offset, recordMicros);
+            buffer.putInt(offset + 8, kind);
+            buffer.putInt(offset + 12, anchorId);
+            buffer.putLong(offset + 16, tagId);
+            buffer.putLong(offset + 24, a);
+            buffer.putLong(offset + 32, timestamp);
+            buffer.putLong(offset + 40, b);
+            log.commit();
+        } catch (IOException e) {
+            // the disk is full, stop recording rather than failing the live pipeline
+            closed = true;
+        }
+    }
+}
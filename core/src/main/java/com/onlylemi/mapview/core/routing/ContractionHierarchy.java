@@ -0,0 +1,305 @@
+package com.onlylemi.mapview.core.routing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * ContractionHierarchy
+ * <p>
+ * Contraction hierarchy of a routing graph, preprocessing for shortest path queries that settle
+ * only a few hundred nodes on graphs of hundreds of thousands. The nodes are contracted one by
+ * one, least important first, and shortcuts keep the distances between the remaining nodes;
+ * a query then searches from both ends only upwards, towards more important nodes, and meets in
+ * the middle (see {@link HierarchySearch}). Every arc is stored once, at its less important
+ * end, with its middle node if it is a shortcut, from which the path is unpacked.
+ * <p>
+ * Building takes seconds on large graphs, so the hierarchy can be saved to a file and loaded
+ * at startup instead; the file records a checksum of the graph it was built for, see
+ * {@link RoutingGraph#setHierarchy}. Immutable.
+ * <p>
+ * File layout, little endian:
+ * <pre>
+ * header: magic u64, version u32, node count u32, arc count u32, graph checksum u64
+ * per node in index order: arc count varint, then per arc
+ *         target - node zigzag varint, weight f32, middle + 1 varint (0: no shortcut)
+ * </pre>
+ *
+ * @author: onlylemi
+ */
+public final class ContractionHierarchy {
+
+    public static final long MAGIC = 0x48435F534C545252L; // "RRTLS_CH"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    // smallest encoding of a node (its arc count) and of an arc (target, weight, middle)
+    private static final int MIN_NODE_SIZE = 1;
+    private static final int MIN_ARC_SIZE = 1 + 4 + 1;
+
+    private final int nodeCount;
+    private final int[] offsets; // nodeCount + 1
+    private final int[] targets;
+    private final float[] weights;
+    private final int[] middles; // -1 for an edge of the graph
+    private final long checksum;
+
+    ContractionHierarchy(int nodeCount, int[] offsets, int[] targets, float[] weights,
+                         int[] middles, long checksum) {
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.middles = middles;
+        this.checksum = checksum;
+    }
+
+    /**
+     * contract a graph
+     *
+     * @param nodes     x, y per node
+     * @param nodeCount
+     * @param edges     node index pairs
+     * @param edgeCount
+     * @return
+     */
+    public static ContractionHierarchy build(float[] nodes, int nodeCount, int[] edges,
+                                             int edgeCount) {
+        return new HierarchyBuilder(nodes, nodeCount, edges, edgeCount)
+                .build(checksum(nodes, nodeCount, edges, edgeCount));
+    }
+
+    /**
+     * FNV-1a of the node coordinates and the edges, identifies the graph a hierarchy was built
+     * for
+     *
+     * @param nodes
+     * @param nodeCount
+     * @param edges
+     * @param edgeCount
+     * @return
+     */
+    public static long checksum(float[] nodes, int nodeCount, int[] edges, int edgeCount) {
+        long hash = 0xCBF29CE484222325L;
+        hash = mix(hash, nodeCount);
+        for (int i = 0; i < nodeCount * 2; i++) {
+            hash = mix(hash, Float.floatToIntBits(nodes[i]));
+        }
+        hash = mix(hash, edgeCount);
+        for (int i = 0; i < edgeCount * 2; i++) {
+            hash = mix(hash, edges[i]);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return arcs of the hierarchy, edges and shortcuts
+     */
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return checksum of the graph the hierarchy was built for
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @param node
+     * @return first upward arc of the node, they end at {@code firstArc(node + 1)}
+     */
+    int firstArc(int node) {
+        return offsets[node];
+    }
+
+    int getTarget(int arc) {
+        return targets[arc];
+    }
+
+    float getWeight(int arc) {
+        return weights[arc];
+    }
+
+    /**
+     * @param arc
+     * @return node the shortcut bypasses, -1 if the arc is an edge
+     */
+    int getMiddle(int arc) {
+        return middles[arc];
+    }
+
+    /**
+     * @param from less important end
+     * @param to   more important end
+     * @return the arc between them, stored at {@code from}, -1 if none
+     */
+    int findArc(int from, int to) {
+        for (int arc = offsets[from], end = offsets[from + 1]; arc < end; arc++) {
+            if (targets[arc] == to) {
+                return arc;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        int size = HEADER_SIZE;
+        for (int v = 0; v < nodeCount; v++) {
+            size += varintSize(offsets[v + 1] - offsets[v]);
+            for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                size += varintSize(zigzag(targets[arc] - v)) + 4 + varintSize(middles[arc] + 1);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(nodeCount);
+        buffer.putInt(targets.length);
+        buffer.putLong(checksum);
+        for (int v = 0; v < nodeCount; v++) {
+            putVarint(buffer, offsets[v + 1] - offsets[v]);
+            for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                putVarint(buffer, zigzag(targets[arc] - v));
+                buffer.putFloat(weights[arc]);
+                putVarint(buffer, middles[arc] + 1);
+            }
+        }
+        buffer.flip();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param file written by {@link #save}
+     * @return
+     * @throws IOException if the file is not a hierarchy of this version
+     */
+    public static ContractionHierarchy load(File file) throws IOException {
+        ByteBuffer buffer;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("not a contraction hierarchy: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getLong() != MAGIC
+                || buffer.getInt() != VERSION) {
+            throw new IOException("not a contraction hierarchy: " + file);
+        }
+        int nodeCount = buffer.getInt();
+        int arcCount = buffer.getInt();
+        long checksum = buffer.getLong();
+        // reject counts the file cannot hold before allocating for them
+        if (nodeCount < 0 || arcCount < 0 || (long) nodeCount * MIN_NODE_SIZE
+                + (long) arcCount * MIN_ARC_SIZE > buffer.remaining()) {
+            throw new IOException("corrupt contraction hierarchy: " + file);
+        }
+        int[] offsets = new int[nodeCount + 1];
+        int[] targets = new int[arcCount];
+        float[] weights = new float[arcCount];
+        int[] middles = new int[arcCount];
+        int arc = 0;
+        try {
+            for (int v = 0; v < nodeCount; v++) {
+                int count = getVarint(buffer);
+                if (count < 0 || count > arcCount - arc) {
+                    throw new IOException("corrupt contraction hierarchy: " + file);
+                }
+                for (int end = arc + count; arc < end; arc++) {
+                    targets[arc] = v + unzigzag(getVarint(buffer));
+                    weights[arc] = buffer.getFloat();
+                    middles[arc] = getVarint(buffer) - 1;
+                    if (targets[arc] < 0 || targets[arc] >= nodeCount
+                            || middles[arc] < -1 || middles[arc] >= nodeCount) {
+                        throw new IOException("corrupt contraction hierarchy: " + file);
+                    }
+                }
+                offsets[v + 1] = arc;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated contraction hierarchy: " + file);
+        }
+        if (arc != arcCount) {
+            throw new IOException("corrupt contraction hierarchy: " + file);
+        }
+        return new ContractionHierarchy(nodeCount, offsets, targets, weights, middles, checksum);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -0,0 +1,96 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+/**
+ * CsrGraph
+ * <p>
+ * Immutable adjacency of an undirected routing graph in compressed sparse row form: the arcs
+ * leaving node i are {@code firstArc(i) .. firstArc(i + 1) - 1}, each with its target node and
+ * its length. Every edge is stored as two arcs. Memory is linear in the nodes and edges.
+ *
+ * @author: onlylemi
+ */
+public final class CsrGraph {
+
+    private final int nodeCount;
+    private final float[] xs;
+    private final float[] ys;
+    private final int[] offsets; // nodeCount + 1
+    private final int[] targets;
+    private final float[] weights;
+
+    /**
+     * @param nodes     x, y per node
+     * @param nodeCount
+     * @param edges     node index pairs
+     * @param edgeCount
+     */
+    public CsrGraph(float[] nodes, int nodeCount, int[] edges, int edgeCount) {
+        this.nodeCount = nodeCount;
+        this.xs = new float[nodeCount];
+        this.ys = new float[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            xs[i] = nodes[2 * i];
+            ys[i] = nodes[2 * i + 1];
+        }
+        // counting sort of the arcs by their source
+        offsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edges[2 * e] + 1]++;
+            offsets[edges[2 * e + 1] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        targets = new int[edgeCount * 2];
+        weights = new float[edgeCount * 2];
+        int[] fill = new int[nodeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edges[2 * e];
+            int b = edges[2 * e + 1];
+            float length = Geometry.distance(xs[a], ys[a], xs[b], ys[b]);
+            int arc = offsets[a] + fill[a]++;
+            targets[arc] = b;
+            weights[arc] = length;
+            arc = offsets[b] + fill[b]++;
+            targets[arc] = a;
+            weights[arc] = length;
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return number of arcs, two per edge
+     */
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    public float getX(int node) {
+        return xs[node];
+    }
+
+    public float getY(int node) {
+        return ys[node];
+    }
+
+    /**
+     * @param node
+     * @return first arc of the node, the arcs of node end at {@code firstArc(node + 1)}
+     */
+    public int firstArc(int node) {
+        return offsets[node];
+    }
+
+    public int getTarget(int arc) {
+        return targets[arc];
+    }
+
+    public float getWeight(int arc) {
+        return weights[arc];
+    }
+}
@@ -0,0 +1,277 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+/**
+ * EdgeIndex
+ * <p>
+ * Uniform grid over the edges of a routing graph (see {@link RouteMath} for the array layout)
+ * for nearest edge queries, e.g. snapping live tag positions onto the route network. The cell
+ * size is chosen for about one edge per cell over the bounding box of the nodes, and an edge is
+ * listed in every cell it may pass through. A query visits rings of cells around the point,
+ * nearest first, and stops as soon as no edge outside the rings can be closer than the k found,
+ * so it costs a few cells near the network instead of a scan of all edges. Distances are to the
+ * segments, projections are clamped to the end nodes.
+ * <p>
+ * The arrays are referenced, not copied, and must not change while the index is used.
+ * Immutable, queries may run on several threads.
+ *
+ * @author: onlylemi
+ */
+public final class EdgeIndex {
+
+    private static final int MAX_CELLS = 1 << 22;
+    // the cells an edge is listed in: those whose center is within half a diagonal of it
+    private static final float HALF_DIAGONAL = 0.7072f;
+
+    private final float[] nodes;
+    private final int[] edges;
+    private final int edgeCount;
+
+    private final float minX, minY;
+    private final float cellSize;
+    private final int cols, rows;
+    private final int[] cellStart; // cols * rows + 1
+    private final int[] cellEdges;
+
+    /**
+     * @param nodes     x, y per node
+     * @param nodeCount
+     * @param edges     node index pairs
+     * @param edgeCount
+     */
+    public EdgeIndex(float[] nodes, int nodeCount, int[] edges, int edgeCount) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.edgeCount = edgeCount;
+
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < edgeCount * 2; i++) {
+            int node = edges[i];
+            left = Math.min(left, nodes[2 * node]);
+            right = Math.max(right, nodes[2 * node]);
+            top = Math.min(top, nodes[2 * node + 1]);
+            bottom = Math.max(bottom, nodes[2 * node + 1]);
+        }
+        if (edgeCount == 0) {
+            left = top = right = bottom = 0;
+        }
+        float width = right - left;
+        float height = bottom - top;
+        float size;
+        if (width > 0 && height > 0) {
+            size = (float) Math.sqrt((double) width * height / edgeCount);
+        } else {
+            // all edges on one line
+            size = Math.max(width, height) / Math.max(1, edgeCount);
+        }
+        if (!(size > 0)) {
+            size = 1;
+        }
+        while ((long) ((int) (width / size) + 1) * ((int) (height / size) + 1) > MAX_CELLS) {
+            size *= 2;
+        }
+        this.minX = left;
+        this.minY = top;
+        this.cellSize = size;
+        this.cols = (int) (width / size) + 1;
+        this.rows = (int) (height / size) + 1;
+
+        // two passes over the cells of every edge: count, then fill
+        cellStart = new int[cols * rows + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            addToCells(e, null);
+        }
+        for (int i = 0; i < cols * rows; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        cellEdges = new int[cellStart[cols * rows]];
+        int[] fill = new int[cols * rows];
+        for (int e = 0; e < edgeCount; e++) {
+            addToCells(e, fill);
+        }
+    }
+
+    /**
+     * count the edge in its cells, or with fill, store it
+     */
+    private void addToCells(int e, int[] fill) {
+        int a = edges[2 * e];
+        int b = edges[2 * e + 1];
+        float x1 = nodes[2 * a], y1 = nodes[2 * a + 1];
+        float x2 = nodes[2 * b], y2 = nodes[2 * b + 1];
+        int left = col(Math.min(x1, x2));
+        int right = col(Math.max(x1, x2));
+        int top = row(Math.min(y1, y2));
+        int bottom = row(Math.max(y1, y2));
+        float reach = cellSize * HALF_DIAGONAL;
+        float reach2 = reach * reach;
+        for (int row = top; row <= bottom; row++) {
+            float cy = minY + (row + 0.5f) * cellSize;
+            for (int col = left; col <= right; col++) {
+                float cx = minX + (col + 0.5f) * cellSize;
+                if (left != right && top != bottom
+                        && Geometry.distanceSquaredToSegment(cx, cy, x1, y1, x2, y2) > reach2) {
+                    // a cell of the bounding box the diagonal edge misses
+                    continue;
+                }
+                int cell = row * cols + col;
+                if (fill == null) {
+                    cellStart[cell + 1]++;
+                } else {
+                    cellEdges[cellStart[cell] + fill[cell]++] = e;
+                }
+            }
+        }
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * the nearest edge to a point and the projection on it
+     *
+     * @param x
+     * @param y
+     * @param out    receives the projection x, y
+     * @param offset
+     * @return edge index, -1 without edges
+     */
+    public int nearest(float x, float y, float[] out, int offset) {
+        int[] edge = new int[1];
+        float[] distance = new float[1];
+        if (nearest(x, y, 1, edge, distance) == 0) {
+            return -1;
+        }
+        project(edge[0], x, y, out, offset);
+        return edge[0];
+    }
+
+    /**
+     * the k nearest edges to a point, does not allocate
+     *
+     * @param x
+     * @param y
+     * @param k            max edges to find
+     * @param edgesOut     receives the edge indexes, nearest first, at least k long
+     * @param distancesOut receives their distances to the point, at least k long
+     * @return number of edges found, less than k only if the graph has fewer edges
+     */
+    public int nearest(float x, float y, int k, int[] edgesOut, float[] distancesOut) {
+        if (edgeCount == 0 || k <= 0) {
+            return 0;
+        }
+        int count = 0;
+        int cx = col(x);
+        int cy = row(y);
+        for (int r = 0; ; r++) {
+            int left = cx - r, right = cx + r, top = cy - r, bottom = cy + r;
+            for (int row = Math.max(0, top), lastRow = Math.min(rows - 1, bottom);
+                 row <= lastRow; row++) {
+                if (row == top || row == bottom) {
+                    for (int col = Math.max(0, left), lastCol = Math.min(cols - 1, right);
+                         col <= lastCol; col++) {
+                        count = visit(row * cols + col, x, y, k, edgesOut, distancesOut, count);
+                    }
+                } else {
+                    if (left >= 0) {
+                        count = visit(row * cols + left, x, y, k, edgesOut, distancesOut, count);
+                    }
+                    if (right < cols) {
+                        count = visit(row * cols + right, x, y, k, edgesOut, distancesOut, count);
+                    }
+                }
+            }
+            if (left <= 0 && top <= 0 && right >= cols - 1 && bottom >= rows - 1) {
+                break;
+            }
+            if (count == k) {
+                // distance to the nearest cell not visited yet, cells exist only in the grid
+                float bound = Float.MAX_VALUE;
+                if (left > 0) {
+                    bound = Math.min(bound, x - (minX + left * cellSize));
+                }
+                if (right < cols - 1) {
+                    bound = Math.min(bound, minX + (right + 1) * cellSize - x);
+                }
+                if (top > 0) {
+                    bound = Math.min(bound, y - (minY + top * cellSize));
+                }
+                if (bottom < rows - 1) {
+                    bound = Math.min(bound, minY + (bottom + 1) * cellSize - y);
+                }
+                if (bound * bound >= distancesOut[k - 1]) {
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            distancesOut[i] = (float) Math.sqrt(distancesOut[i]);
+        }
+        return count;
+    }
+
+    /**
+     * projection of a point on an edge, clamped to the edge
+     *
+     * @param edge
+     * @param x
+     * @param y
+     * @param out    receives the projection x, y
+     * @param offset
+     * @return squared distance between the point and its projection
+     */
+    public float project(int edge, float x, float y, float[] out, int offset) {
+        int a = edges[2 * edge];
+        int b = edges[2 * edge + 1];
+        return Geometry.projectPointToSegment(x, y, nodes[2 * a], nodes[2 * a + 1],
+                nodes[2 * b], nodes[2 * b + 1], out, offset);
+    }
+
+    /**
+     * merge the edges of a cell into the k best, kept sorted by squared distance
+     */
+    private int visit(int cell, float x, float y, int k, int[] edgesOut, float[] distancesOut,
+                      int count) {
+        for (int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++) {
+            int e = cellEdges[i];
+            int a = edges[2 * e];
+            int b = edges[2 * e + 1];
+            float d = Geometry.distanceSquaredToSegment(x, y, nodes[2 * a], nodes[2 * a + 1],
+                    nodes[2 * b], nodes[2 * b + 1]);
+            if (count == k && d >= distancesOut[k - 1]) {
+                continue;
+            }
+            // an edge listed in several cells is found again with the same distance
+            boolean known = false;
+            for (int j = 0; j < count; j++) {
+                if (edgesOut[j] == e) {
+                    known = true;
+                    break;
+                }
+            }
+            if (known) {
+                continue;
+            }
+            int j = count < k ? count++ : k - 1;
+            while (j > 0 && distancesOut[j - 1] > d) {
+                edgesOut[j] = edgesOut[j - 1];
+                distancesOut[j] = distancesOut[j - 1];
+                j--;
+            }
+            edgesOut[j] = e;
+            distancesOut[j] = d;
+        }
+        return count;
+    }
+
+    private int col(float x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - minX) / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+    }
+}
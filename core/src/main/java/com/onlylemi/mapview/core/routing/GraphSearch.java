@@ -0,0 +1,132 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GraphSearch
+ * <p>
+ * Dijkstra or A* {@link PathSearch} over a {@link CsrGraph}. The A* heuristic is the straight line distance to a goal point,
+ * which never overestimates as edges are straight lines. Holds the scratch state of one
+ * search; per node arrays are reset lazily by a generation stamp, so a search costs only what
+ * it visits and does not allocate. Not thread safe.
+ *
+ * @author: onlylemi
+ */
+final class GraphSearch implements PathSearch {
+
+    private final CsrGraph graph;
+    private final boolean heuristic;
+    private final NodeHeap heap;
+    private final float[] cost;
+    private final int[] parent;
+    private final int[] stamp; // cost and parent are valid when stamp == generation
+    private int generation;
+
+    private final int[] targets = new int[2];
+    private final float[] tails = new float[2];
+    private int targetCount;
+    private float goalX, goalY;
+    private int found;
+    private int settled;
+
+    /**
+     * @param graph
+     * @param heuristic true for A*, false for Dijkstra
+     */
+    GraphSearch(CsrGraph graph, boolean heuristic) {
+        this.graph = graph;
+        this.heuristic = heuristic;
+        int n = graph.getNodeCount();
+        this.heap = new NodeHeap(n);
+        this.cost = new float[n];
+        this.parent = new int[n];
+        this.stamp = new int[n];
+    }
+
+    @Override
+    public void begin(float goalX, float goalY) {
+        if (++generation == Integer.MAX_VALUE) {
+            generation = 1;
+            for (int i = 0; i < stamp.length; i++) {
+                stamp[i] = 0;
+            }
+        }
+        heap.clear();
+        targetCount = 0;
+        this.goalX = goalX;
+        this.goalY = goalY;
+    }
+
+    @Override
+    public void addSource(int node, float length) {
+        if (stamp[node] == generation && cost[node] <= length) {
+            return;
+        }
+        stamp[node] = generation;
+        cost[node] = length;
+        parent[node] = -1;
+        heap.offer(node, length + estimate(node));
+    }
+
+    @Override
+    public void addTarget(int node, float length) {
+        targets[targetCount] = node;
+        tails[targetCount] = length;
+        targetCount++;
+    }
+
+    @Override
+    public float run(float direct) {
+        float best = direct;
+        found = -1;
+        settled = 0;
+        while (!heap.isEmpty() && heap.peekKey() < best) {
+            int u = heap.poll();
+            float g = cost[u];
+            settled++;
+            for (int t = 0; t < targetCount; t++) {
+                if (targets[t] == u && g + tails[t] < best) {
+                    best = g + tails[t];
+                    found = u;
+                }
+            }
+            for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+                int v = graph.getTarget(arc);
+                float length = g + graph.getWeight(arc);
+                if (stamp[v] != generation || length < cost[v]) {
+                    stamp[v] = generation;
+                    cost[v] = length;
+                    parent[v] = u;
+                    heap.offer(v, length + estimate(v));
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public boolean appendPath(List<Integer> out) {
+        if (found < 0) {
+            return false;
+        }
+        int start = out.size();
+        for (int node = found; node >= 0; node = parent[node]) {
+            out.add(node);
+        }
+        Collections.reverse(out.subList(start, out.size()));
+        return true;
+    }
+
+    @Override
+    public int getSettledCount() {
+        return settled;
+    }
+
+    private float estimate(int node) {
+        return heuristic ? Geometry.distance(graph.getX(node), graph.getY(node), goalX, goalY)
+                : 0;
+    }
+}
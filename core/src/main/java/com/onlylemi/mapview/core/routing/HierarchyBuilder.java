@@ -0,0 +1,290 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+/**
+ * HierarchyBuilder
+ * <p>
+ * Contracts the nodes of a graph one by one, least important first, into a
+ * {@link ContractionHierarchy}. The importance of a node is its edge difference (shortcuts its
+ * contraction adds minus edges it removes) plus the number of its contracted neighbours, which
+ * spreads the contraction evenly over the graph; priorities are updated lazily. A shortcut
+ * between two neighbours is skipped when a witness search, a Dijkstra limited to
+ * {@link #WITNESS_SETTLED_LIMIT} nodes that avoids the contracted node, finds a path no longer
+ * than the one through it.
+ *
+ * @author: onlylemi
+ */
+final class HierarchyBuilder {
+
+    private static final int WITNESS_SETTLED_LIMIT = 64;
+
+    private final int n;
+    // remaining graph, growable adjacency per node, arcs to contracted nodes are skipped
+    private final int[][] adjTargets;
+    private final float[][] adjWeights;
+    private final int[][] adjMiddles;
+    private final int[] adjSizes;
+    private final boolean[] contracted;
+    private final int[] contractedNeighbours;
+
+    // upward arcs in contraction order, node v owns upStart[v] .. upStart[v] + upCount[v] - 1
+    private int[] upTargets;
+    private float[] upWeights;
+    private int[] upMiddles;
+    private int upSize;
+    private final int[] upStart;
+    private final int[] upCount;
+
+    // witness search scratch
+    private final NodeHeap witnessHeap;
+    private final float[] witnessDist;
+    private final int[] witnessStamp;
+    private int witnessGeneration;
+
+    HierarchyBuilder(float[] nodes, int nodeCount, int[] edges, int edgeCount) {
+        this.n = nodeCount;
+        adjTargets = new int[n][];
+        adjWeights = new float[n][];
+        adjMiddles = new int[n][];
+        adjSizes = new int[n];
+        int[] degree = new int[n];
+        for (int e = 0; e < edgeCount; e++) {
+            degree[edges[2 * e]]++;
+            degree[edges[2 * e + 1]]++;
+        }
+        for (int i = 0; i < n; i++) {
+            int capacity = Math.max(2, degree[i]);
+            adjTargets[i] = new int[capacity];
+            adjWeights[i] = new float[capacity];
+            adjMiddles[i] = new int[capacity];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edges[2 * e];
+            int b = edges[2 * e + 1];
+            if (a == b) {
+                continue;
+            }
+            float length = Geometry.distance(nodes[2 * a], nodes[2 * a + 1],
+                    nodes[2 * b], nodes[2 * b + 1]);
+            addArc(a, b, length, -1);
+            addArc(b, a, length, -1);
+        }
+        contracted = new boolean[n];
+        contractedNeighbours = new int[n];
+        upTargets = new int[Math.max(16, edgeCount * 2)];
+        upWeights = new float[upTargets.length];
+        upMiddles = new int[upTargets.length];
+        upStart = new int[n];
+        upCount = new int[n];
+        witnessHeap = new NodeHeap(n);
+        witnessDist = new float[n];
+        witnessStamp = new int[n];
+    }
+
+    ContractionHierarchy build(long checksum) {
+        NodeHeap queue = new NodeHeap(n);
+        for (int v = 0; v < n; v++) {
+            queue.offer(v, priority(v));
+        }
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            // lazy update: contract only if the node is still the least important
+            float p = priority(v);
+            if (!queue.isEmpty() && p > queue.peekKey()) {
+                queue.offer(v, p);
+                continue;
+            }
+            contract(v);
+        }
+
+        // upward graph in node order
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + upCount[v];
+        }
+        int[] targets = new int[upSize];
+        float[] weights = new float[upSize];
+        int[] middles = new int[upSize];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(upTargets, upStart[v], targets, offsets[v], upCount[v]);
+            System.arraycopy(upWeights, upStart[v], weights, offsets[v], upCount[v]);
+            System.arraycopy(upMiddles, upStart[v], middles, offsets[v], upCount[v]);
+        }
+        return new ContractionHierarchy(n, offsets, targets, weights, middles, checksum);
+    }
+
+    /**
+     * edge difference plus contracted neighbours
+     */
+    private float priority(int v) {
+        int shortcuts = contract(v, false);
+        int degree = 0;
+        for (int i = 0; i < adjSizes[v]; i++) {
+            if (!contracted[adjTargets[v][i]]) {
+                degree++;
+            }
+        }
+        return shortcuts - degree + contractedNeighbours[v];
+    }
+
+    private void contract(int v) {
+        contract(v, true);
+        // the remaining arcs lead to more important nodes: the upward arcs of v
+        upStart[v] = upSize;
+        for (int i = 0; i < adjSizes[v]; i++) {
+            int u = adjTargets[v][i];
+            if (contracted[u]) {
+                continue;
+            }
+            if (upSize == upTargets.length) {
+                growUp();
+            }
+            upTargets[upSize] = u;
+            upWeights[upSize] = adjWeights[v][i];
+            upMiddles[upSize] = adjMiddles[v][i];
+            upSize++;
+            contractedNeighbours[u]++;
+        }
+        upCount[v] = upSize - upStart[v];
+        contracted[v] = true;
+    }
+
+    /**
+     * shortcuts needed to contract a node
+     *
+     * @param add true to add them, false to count them
+     */
+    private int contract(int v, boolean add) {
+        int shortcuts = 0;
+        int[] targets = adjTargets[v];
+        float[] weights = adjWeights[v];
+        int size = adjSizes[v];
+        for (int i = 0; i < size; i++) {
+            int u = targets[i];
+            if (contracted[u]) {
+                continue;
+            }
+            float maxVia = 0;
+            for (int j = 0; j < size; j++) {
+                if (j != i && !contracted[targets[j]]) {
+                    maxVia = Math.max(maxVia, weights[i] + weights[j]);
+                }
+            }
+            witnessSearch(u, v, maxVia);
+            // each pair once, from the lower index
+            for (int j = i + 1; j < size; j++) {
+                int w = targets[j];
+                if (contracted[w] || w == u) {
+                    continue;
+                }
+                float via = weights[i] + weights[j];
+                if (witnessStamp[w] == witnessGeneration && witnessDist[w] <= via) {
+                    continue;
+                }
+                shortcuts++;
+                if (add) {
+                    setArc(u, w, via, v);
+                    setArc(w, u, via, v);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * bounded Dijkstra from a node avoiding the node being contracted
+     */
+    private void witnessSearch(int source, int avoid, float maxDistance) {
+        if (++witnessGeneration == Integer.MAX_VALUE) {
+            witnessGeneration = 1;
+            for (int i = 0; i < n; i++) {
+                witnessStamp[i] = 0;
+            }
+        }
+        witnessHeap.clear();
+        witnessStamp[source] = witnessGeneration;
+        witnessDist[source] = 0;
+        witnessHeap.offer(source, 0);
+        int settled = 0;
+        while (!witnessHeap.isEmpty() && settled < WITNESS_SETTLED_LIMIT) {
+            if (witnessHeap.peekKey() > maxDistance) {
+                break;
+            }
+            int x = witnessHeap.poll();
+            settled++;
+            float d = witnessDist[x];
+            for (int i = 0; i < adjSizes[x]; i++) {
+                int y = adjTargets[x][i];
+                if (y == avoid || contracted[y]) {
+                    continue;
+                }
+                float length = d + adjWeights[x][i];
+                if (witnessStamp[y] != witnessGeneration || length < witnessDist[y]) {
+                    witnessStamp[y] = witnessGeneration;
+                    witnessDist[y] = length;
+                    witnessHeap.offer(y, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * add an arc or lower the weight of the existing one
+     */
+    private void setArc(int from, int to, float weight, int middle) {
+        int[] targets = adjTargets[from];
+        for (int i = 0; i < adjSizes[from]; i++) {
+            if (targets[i] == to) {
+                if (weight < adjWeights[from][i]) {
+                    adjWeights[from][i] = weight;
+                    adjMiddles[from][i] = middle;
+                }
+                return;
+            }
+        }
+        addArc(from, to, weight, middle);
+    }
+
+    private void addArc(int from, int to, float weight, int middle) {
+        int size = adjSizes[from];
+        if (middle < 0) {
+            // parallel input edges, keep the shortest
+            for (int i = 0; i < size; i++) {
+                if (adjTargets[from][i] == to) {
+                    adjWeights[from][i] = Math.min(adjWeights[from][i], weight);
+                    return;
+                }
+            }
+        }
+        if (size == adjTargets[from].length) {
+            int capacity = size * 2;
+            int[] targets = new int[capacity];
+            float[] weights = new float[capacity];
+            int[] middles = new int[capacity];
+            System.arraycopy(adjTargets[from], 0, targets, 0, size);
+            System.arraycopy(adjWeights[from], 0, weights, 0, size);
+            System.arraycopy(adjMiddles[from], 0, middles, 0, size);
+            adjTargets[from] = targets;
+            adjWeights[from] = weights;
+            adjMiddles[from] = middles;
+        }
+        adjTargets[from][size] = to;
+        adjWeights[from][size] = weight;
+        adjMiddles[from][size] = middle;
+        adjSizes[from] = size + 1;
+    }
+
+    private void growUp() {
+        int capacity = upTargets.length * 2;
+        int[] targets = new int[capacity];
+        float[] weights = new float[capacity];
+        int[] middles = new int[capacity];
+        System.arraycopy(upTargets, 0, targets, 0, upSize);
+        System.arraycopy(upWeights, 0, weights, 0, upSize);
+        System.arraycopy(upMiddles, 0, middles, 0, upSize);
+        upTargets = targets;
+        upWeights = weights;
+        upMiddles = middles;
+    }
+}
@@ -0,0 +1,201 @@
+package com.onlylemi.mapview.core.routing;
+
+import java.util.List;
+
+/**
+ * HierarchySearch
+ * <p>
+ * Bidirectional upward {@link PathSearch} over a {@link ContractionHierarchy}: a forward
+ * Dijkstra from the sources and a backward one from the targets, both following only arcs to
+ * more important nodes, alternate by the smaller key. Each side stops once its minimum key
+ * reaches the shortest route met so far. Stall on demand skips relaxing a node that is reached
+ * shorter downwards from a more important node, which prunes most of the search space. The
+ * route is unpacked from its shortcuts into graph nodes afterwards. Per node arrays are reset
+ * lazily by a generation stamp; does not allocate except to grow the chain the route is
+ * unpacked from. Not thread safe.
+ *
+ * @author: onlylemi
+ */
+final class HierarchySearch implements PathSearch {
+
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+
+    private final ContractionHierarchy hierarchy;
+    private final NodeHeap[] heaps = new NodeHeap[2];
+    private final float[][] cost = new float[2][];
+    private final int[][] parent = new int[2][]; // previous node, -1 for a source
+    private final int[][] stamp = new int[2][]; // cost and parent are valid when == generation
+    private int generation;
+
+    private int meeting;
+    private int settled;
+    // nodes of the route from the meeting node down to one end
+    private int[] chain = new int[64];
+
+    HierarchySearch(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        int n = hierarchy.getNodeCount();
+        for (int side = 0; side < 2; side++) {
+            heaps[side] = new NodeHeap(n);
+            cost[side] = new float[n];
+            parent[side] = new int[n];
+            stamp[side] = new int[n];
+        }
+    }
+
+    @Override
+    public void begin(float goalX, float goalY) {
+        if (++generation == Integer.MAX_VALUE) {
+            generation = 1;
+            for (int side = 0; side < 2; side++) {
+                for (int i = 0; i < stamp[side].length; i++) {
+                    stamp[side][i] = 0;
+                }
+            }
+        }
+        heaps[FORWARD].clear();
+        heaps[BACKWARD].clear();
+    }
+
+    @Override
+    public void addSource(int node, float length) {
+        add(FORWARD, node, length);
+    }
+
+    @Override
+    public void addTarget(int node, float length) {
+        add(BACKWARD, node, length);
+    }
+
+    private void add(int side, int node, float length) {
+        if (stamp[side][node] == generation && cost[side][node] <= length) {
+            return;
+        }
+        stamp[side][node] = generation;
+        cost[side][node] = length;
+        parent[side][node] = -1;
+        heaps[side].offer(node, length);
+    }
+
+    @Override
+    public float run(float direct) {
+        float best = direct;
+        meeting = -1;
+        settled = 0;
+        NodeHeap forward = heaps[FORWARD];
+        NodeHeap backward = heaps[BACKWARD];
+        while (true) {
+            boolean forwardOpen = !forward.isEmpty() && forward.peekKey() < best;
+            boolean backwardOpen = !backward.isEmpty() && backward.peekKey() < best;
+            int side;
+            if (forwardOpen && (!backwardOpen || forward.peekKey() <= backward.peekKey())) {
+                side = FORWARD;
+            } else if (backwardOpen) {
+                side = BACKWARD;
+            } else {
+                break;
+            }
+            int other = 1 - side;
+            int u = heaps[side].poll();
+            float g = cost[side][u];
+            settled++;
+            if (stamp[other][u] == generation && g + cost[other][u] < best) {
+                best = g + cost[other][u];
+                meeting = u;
+            }
+            if (stalled(side, u, g)) {
+                continue;
+            }
+            float[] c = cost[side];
+            int[] s = stamp[side];
+            for (int arc = hierarchy.firstArc(u), end = hierarchy.firstArc(u + 1); arc < end;
+                 arc++) {
+                int v = hierarchy.getTarget(arc);
+                float length = g + hierarchy.getWeight(arc);
+                if (s[v] != generation || length < c[v]) {
+                    s[v] = generation;
+                    c[v] = length;
+                    parent[side][v] = u;
+                    heaps[side].offer(v, length);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return true if a more important node reached by this side leads down to u shorter
+     */
+    private boolean stalled(int side, int u, float g) {
+        float[] c = cost[side];
+        int[] s = stamp[side];
+        for (int arc = hierarchy.firstArc(u), end = hierarchy.firstArc(u + 1); arc < end; arc++) {
+            int v = hierarchy.getTarget(arc);
+            if (s[v] == generation && c[v] + hierarchy.getWeight(arc) < g) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean appendPath(List<Integer> out) {
+        if (meeting < 0) {
+            return false;
+        }
+        // up from the source to the meeting node, walked down and replayed upwards
+        int length = walk(FORWARD);
+        out.add(chain[length - 1]);
+        for (int i = length - 1; i > 0; i--) {
+            unpack(chain[i], chain[i - 1], out);
+        }
+        // down from the meeting node to the target
+        length = walk(BACKWARD);
+        for (int i = 0; i < length - 1; i++) {
+            unpack(chain[i], chain[i + 1], out);
+        }
+        return true;
+    }
+
+    @Override
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /**
+     * the parents of one side from the meeting node into the chain
+     *
+     * @return chain length
+     */
+    private int walk(int side) {
+        int length = 0;
+        for (int node = meeting; node >= 0; node = parent[side][node]) {
+            if (length == chain.length) {
+                int[] grown = new int[length * 2];
+                System.arraycopy(chain, 0, grown, 0, length);
+                chain = grown;
+            }
+            chain[length++] = node;
+        }
+        return length;
+    }
+
+    /**
+     * append the graph nodes after {@code from} up to {@code to}, expanding shortcuts
+     */
+    private void unpack(int from, int to, List<Integer> out) {
+        int arc = hierarchy.findArc(from, to);
+        if (arc < 0) {
+            arc = hierarchy.findArc(to, from);
+        }
+        int middle = hierarchy.getMiddle(arc);
+        if (middle < 0) {
+            out.add(to);
+            return;
+        }
+        // the middle node was contracted before both ends
+        unpack(from, middle, out);
+        unpack(middle, to, out);
+    }
+}
@@ -0,0 +1,113 @@
+package com.onlylemi.mapview.core.routing;
+
+/**
+ * NodeHeap
+ * <p>
+ * Binary min heap of node indexes by float key with decrease key, for the graph searches. Keys
+ * are kept next to the nodes in heap order and every node knows its heap position, so no
+ * objects are allocated.
+ *
+ * @author: onlylemi
+ */
+final class NodeHeap {
+
+    private final int[] nodes;
+    private final float[] keys;
+    private final int[] positions; // by node, -1 if not in the heap
+    private int size;
+
+    NodeHeap(int capacity) {
+        this.nodes = new int[capacity];
+        this.keys = new float[capacity];
+        this.positions = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            positions[i] = -1;
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return key of the minimum, the heap must not be empty
+     */
+    float peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * insert a node or lower its key, a higher key is ignored
+     *
+     * @param node
+     * @param key
+     */
+    void offer(int node, float key) {
+        int i = positions[node];
+        if (i < 0) {
+            i = size++;
+        } else if (key >= keys[i]) {
+            return;
+        }
+        siftUp(i, node, key);
+    }
+
+    /**
+     * @return node with the minimum key, removed
+     */
+    int poll() {
+        int min = nodes[0];
+        positions[min] = -1;
+        int last = --size;
+        if (last > 0) {
+            siftDown(nodes[last], keys[last]);
+        }
+        return min;
+    }
+
+    /**
+     * empty the heap in O(size)
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[nodes[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int i, int node, float key) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            move(i, nodes[parent], keys[parent]);
+            i = parent;
+        }
+        move(i, node, key);
+    }
+
+    private void siftDown(int node, float key) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            move(i, nodes[child], keys[child]);
+            i = child;
+        }
+        move(i, node, key);
+    }
+
+    private void move(int i, int node, float key) {
+        nodes[i] = node;
+        keys[i] = key;
+        positions[node] = i;
+    }
+}
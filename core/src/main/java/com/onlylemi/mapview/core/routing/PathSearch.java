@@ -0,0 +1,54 @@
+package com.onlylemi.mapview.core.routing;
+
+import java.util.List;
+
+/**
+ * PathSearch
+ * <p>
+ * One shortest path search of the sparse engines with up to two sources and two targets, each
+ * with an extra length: the sources and targets of a point off the graph are the two ends of
+ * the edge it projects on. Holds the scratch state of the search. Not thread safe.
+ *
+ * @author: onlylemi
+ */
+interface PathSearch {
+
+    /**
+     * start a search
+     *
+     * @param goalX point the targets lead to, for a heuristic
+     * @param goalY
+     */
+    void begin(float goalX, float goalY);
+
+    /**
+     * @param node
+     * @param length from the start of the route to the node
+     */
+    void addSource(int node, float length);
+
+    /**
+     * @param node
+     * @param length from the node to the end of the route
+     */
+    void addTarget(int node, float length);
+
+    /**
+     * @param direct length of a route not using the graph, INF if there is none
+     * @return length of the shortest route, INF if no target is reachable
+     */
+    float run(float direct);
+
+    /**
+     * append the nodes of the route found by the last run, from its source to its target
+     *
+     * @param out
+     * @return false if the route found does not use the graph or nothing was found
+     */
+    boolean appendPath(List<Integer> out);
+
+    /**
+     * @return nodes settled by the last run
+     */
+    int getSettledCount();
+}
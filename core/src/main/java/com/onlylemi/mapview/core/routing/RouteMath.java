@@ -0,0 +1,207 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+import com.onlylemi.mapview.core.math.FloydAlgorithm;
+import com.onlylemi.mapview.core.math.GeneticAlgorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RouteMath
+ * <p>
+ * Routing on a graph of nodes and edges in primitive arrays: node i is at
+ * {@code nodes[2 * i]}, {@code nodes[2 * i + 1]}, edge e connects nodes {@code edges[2 * e]} and
+ * {@code edges[2 * e + 1]}.
+ *
+ * @author: onlylemi
+ */
+public final class RouteMath {
+
+    public static final float INF = Float.MAX_VALUE;
+
+    private RouteMath() {}
+
+    /**
+     * adjacency matrix of the graph, INF between nodes without an edge
+     *
+     * @param nodes
+     * @param nodeCount
+     * @param edges
+     * @param edgeCount
+     * @return
+     */
+    public static float[][] getAdjacencyMatrix(float[] nodes, int nodeCount, int[] edges,
+                                               int edgeCount) {
+        float[][] matrix = new float[nodeCount][nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            for (int j = 0; j < nodeCount; j++) {
+                matrix[i][j] = INF;
+            }
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edges[2 * e];
+            int b = edges[2 * e + 1];
+            float length = Geometry.distance(nodes[2 * a], nodes[2 * a + 1],
+                    nodes[2 * b], nodes[2 * b + 1]);
+            matrix[a][b] = length;
+            matrix[b][a] = length;
+        }
+        return matrix;
+    }
+
+    /**
+     * length of a route through the nodes
+     *
+     * @param nodes
+     * @param route node indexes
+     * @return
+     */
+    public static float getRouteLength(float[] nodes, List<Integer> route) {
+        float distance = 0;
+        for (int i = 0; i < route.size() - 1; i++) {
+            int a = route.get(i);
+            int b = route.get(i + 1);
+            distance += Geometry.distance(nodes[2 * a], nodes[2 * a + 1],
+                    nodes[2 * b], nodes[2 * b + 1]);
+        }
+        return distance;
+    }
+
+    /**
+     * the shortest path between two nodes (FloydAlgorithm)
+     *
+     * @param begin
+     * @param end
+     * @param matrix adjacency matrix
+     * @return
+     */
+    public static List<Integer> getShortestPath(int begin, int end, float[][] matrix) {
+        return new FloydAlgorithm().findCheapestPath(begin, end, matrix);
+    }
+
+    /**
+     * the edge nearest to a point among the edges its projection falls on
+     *
+     * @param px
+     * @param py
+     * @param nodes
+     * @param edges
+     * @param edgeCount
+     * @param out       receives the projection of the point to the edge
+     * @return edge index, -1 if the point projects on no edge
+     */
+    public static int findNearestEdge(float px, float py, float[] nodes, int[] edges,
+                                      int edgeCount, float[] out) {
+        int nearest = -1;
+        float min = INF;
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edges[2 * e];
+            int b = edges[2 * e + 1];
+            float x1 = nodes[2 * a], y1 = nodes[2 * a + 1];
+            float x2 = nodes[2 * b], y2 = nodes[2 * b + 1];
+            if (!Geometry.isObtuseAnglePointAndLine(px, py, x1, y1, x2, y2)) {
+                float distance = Geometry.distanceFromPointToLine(px, py, x1, y1, x2, y2);
+                if (min > distance) {
+                    min = distance;
+                    nearest = e;
+                }
+            }
+        }
+        if (nearest != -1) {
+            int a = edges[2 * nearest];
+            int b = edges[2 * nearest + 1];
+            Geometry.projectPointToLine(px, py, nodes[2 * a], nodes[2 * a + 1],
+                    nodes[2 * b], nodes[2 * b + 1], out, 0);
+        }
+        return nearest;
+    }
+
+    /**
+     * the best route visiting all points: the visiting order is solved as a TSP
+     * (GeneticAlgorithm) over the shortest path distances, then the shortest paths between
+     * consecutive points are joined
+     *
+     * @param points    node indexes to visit
+     * @param nodes
+     * @param nodeCount
+     * @param edges
+     * @param edgeCount
+     * @return node indexes of the route
+     */
+    public static List<Integer> getBestPath(int[] points, float[] nodes, int nodeCount,
+                                            int[] edges, int edgeCount) {
+        return getBestPath(points, new RoutingGraph(nodes, nodeCount, edges, edgeCount));
+    }
+
+    /**
+     * the best route visiting all points of a routing graph, see
+     * {@link #getBestPath(int[], float[], int, int[], int)}; consecutive points without a path
+     * between them are joined directly
+     *
+     * @param points node indexes to visit
+     * @param graph
+     * @return node indexes of the route
+     */
+    public static List<Integer> getBestPath(int[] points, RoutingGraph graph) {
+        return getBestPath(points, graph.getService());
+    }
+
+    /**
+     * the best route visiting all points of a routing service, see
+     * {@link #getBestPath(int[], RoutingGraph)}; safe to call from several threads
+     *
+     * @param points node indexes to visit
+     * @param graph
+     * @return node indexes of the route
+     */
+    public static List<Integer> getBestPath(int[] points, RoutingService graph) {
+        // distance matrix between the points
+        float[][] matrix = new float[points.length][points.length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = i; j < matrix[i].length; j++) {
+                if (i == j) {
+                    matrix[i][j] = INF;
+                } else {
+                    matrix[i][j] = graph.getDistance(points[i], points[j]);
+                    matrix[j][i] = matrix[i][j];
+                }
+            }
+        }
+
+        // TSP to get best path
+        List<Integer> order = getBestOrderByGeneticAlgorithm(matrix);
+        List<Integer> route = new ArrayList<>();
+        List<Integer> path = new ArrayList<>();
+        for (int i = 0; i < order.size() - 1; i++) {
+            int from = points[order.get(i)];
+            int to = points[order.get(i + 1)];
+            if (!graph.getPath(from, to, path)) {
+                path.add(from);
+                path.add(to);
+            }
+            // the joint is already the end of the previous path
+            route.addAll(i == 0 ? path : path.subList(1, path.size()));
+        }
+        return route;
+    }
+
+    /**
+     * the best order to visit some points (GeneticAlgorithm tsp)
+     *
+     * @param matrix
+     * @return
+     */
+    public static List<Integer> getBestOrderByGeneticAlgorithm(float[][] matrix) {
+        GeneticAlgorithm ga = new GeneticAlgorithm();
+        ga.setAutoNextGeneration(true);
+        ga.setMaxGeneration(200);
+        int[] best = ga.tsp(matrix);
+
+        List<Integer> result = new ArrayList<>(best.length);
+        for (int i = 0; i < best.length; i++) {
+            result.add(best[i]);
+        }
+        return result;
+    }
+}
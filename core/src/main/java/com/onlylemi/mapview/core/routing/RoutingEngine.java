@@ -0,0 +1,35 @@
+package com.onlylemi.mapview.core.routing;
+
+/**
+ * RoutingEngine
+ * <p>
+ * How a {@link RoutingGraph} answers shortest path queries.
+ *
+ * @author: onlylemi
+ */
+public enum RoutingEngine {
+
+    /**
+     * all pairs distance and next hop tables, n^2 memory and one n^3 pass, then every query is
+     * a lookup; for small graphs
+     */
+    FLOYD,
+
+    /**
+     * Dijkstra search per query over the compressed adjacency, memory linear in the edges
+     */
+    DIJKSTRA,
+
+    /**
+     * A* search per query with the straight line distance to the target as heuristic, memory
+     * linear in the edges; usually settles far fewer nodes than Dijkstra
+     */
+    A_STAR,
+
+    /**
+     * bidirectional upward search over a {@link ContractionHierarchy}, settles a few hundred
+     * nodes even on very large graphs; the hierarchy is built on the first query, which takes
+     * seconds, or loaded from a file with {@link RoutingGraph#setHierarchy}
+     */
+    CONTRACTION_HIERARCHY
+}
@@ -0,0 +1,295 @@
+package com.onlylemi.mapview.core.routing;
+
+import java.util.List;
+
+/**
+ * RoutingGraph
+ * <p>
+ * Routing graph built from the nodes and edges (see {@link RouteMath} for the array layout)
+ * that can be edited at runtime. Queries go to a {@link RoutingService} of the current graph,
+ * created with the preprocessing of the engine on the first query after the graph was built or
+ * changed: with the {@link RoutingEngine#FLOYD} engine the all pairs distance and next hop
+ * tables, after which a distance is a lookup and a path is walked hop by hop in O(path length).
+ * The tables take n^2 memory, large building graphs use the {@link RoutingEngine#DIJKSTRA} or
+ * {@link RoutingEngine#A_STAR} engine instead, which search a {@link CsrGraph} per query with
+ * memory linear in the edges, or the {@link RoutingEngine#CONTRACTION_HIERARCHY} engine, which
+ * preprocesses the graph into a {@link ContractionHierarchy} for much faster searches.
+ * <p>
+ * Points off the graph (a tag position, a touched point) are joined to it virtually at their
+ * projection on the nearest edge, without adding nodes. Change the graph from one thread while
+ * no query runs; queries may run on several threads at once, or take the immutable
+ * {@link #getService() service} to a worker pool.
+ *
+ * @author: onlylemi
+ */
+public final class RoutingGraph {
+
+    public static final float INF = RouteMath.INF;
+
+    private final RoutingEngine engine;
+    private float[] nodes;
+    private int nodeCount;
+    private int[] edges;
+    private int edgeCount;
+
+    // service of the current graph, null when the graph changed
+    private volatile RoutingService service;
+    private ContractionHierarchy hierarchy;
+
+    /**
+     * graph routed with {@link RoutingEngine#FLOYD}
+     *
+     * @param nodes     x, y per node, copied
+     * @param nodeCount
+     * @param edges     node index pairs, copied
+     * @param edgeCount
+     */
+    public RoutingGraph(float[] nodes, int nodeCount, int[] edges, int edgeCount) {
+        this(nodes, nodeCount, edges, edgeCount, RoutingEngine.FLOYD);
+    }
+
+    /**
+     * @param nodes     x, y per node, copied
+     * @param nodeCount
+     * @param edges     node index pairs, copied
+     * @param edgeCount
+     * @param engine
+     */
+    public RoutingGraph(float[] nodes, int nodeCount, int[] edges, int edgeCount,
+                        RoutingEngine engine) {
+        this.engine = engine;
+        this.nodes = new float[Math.max(2, nodeCount * 2)];
+        this.edges = new int[Math.max(2, edgeCount * 2)];
+        System.arraycopy(nodes, 0, this.nodes, 0, nodeCount * 2);
+        System.arraycopy(edges, 0, this.edges, 0, edgeCount * 2);
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        for (int i = 0; i < edgeCount * 2; i++) {
+            checkNode(edges[i]);
+        }
+    }
+
+    public RoutingEngine getEngine() {
+        return engine;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public float getNodeX(int node) {
+        return nodes[2 * node];
+    }
+
+    public float getNodeY(int node) {
+        return nodes[2 * node + 1];
+    }
+
+    public int getEdgeStart(int edge) {
+        return edges[2 * edge];
+    }
+
+    public int getEdgeEnd(int edge) {
+        return edges[2 * edge + 1];
+    }
+
+    /**
+     * the contraction hierarchy of the graph, built if there is none yet; save it to load it
+     * with {@link #setHierarchy} next time
+     *
+     * @return
+     */
+    public synchronized ContractionHierarchy getHierarchy() {
+        if (hierarchy == null) {
+            hierarchy = ContractionHierarchy.build(nodes, nodeCount, edges, edgeCount);
+        }
+        return hierarchy;
+    }
+
+    /**
+     * use a prebuilt hierarchy with the {@link RoutingEngine#CONTRACTION_HIERARCHY} engine
+     *
+     * @param hierarchy loaded from a file, must be built for this graph
+     * @throws IllegalArgumentException if it was built for another graph
+     */
+    public synchronized void setHierarchy(ContractionHierarchy hierarchy) {
+        if (hierarchy.getNodeCount() != nodeCount || hierarchy.getChecksum()
+                != ContractionHierarchy.checksum(nodes, nodeCount, edges, edgeCount)) {
+            throw new IllegalArgumentException("hierarchy of another graph");
+        }
+        this.hierarchy = hierarchy;
+        service = null;
+    }
+
+    /**
+     * the immutable service of the current graph, created with the preprocessing of the engine
+     * if the graph changed since the last query; later changes do not affect it
+     *
+     * @return
+     */
+    public RoutingService getService() {
+        RoutingService current = service;
+        return current != null ? current : createService();
+    }
+
+    private synchronized RoutingService createService() {
+        if (service == null) {
+            service = engine == RoutingEngine.CONTRACTION_HIERARCHY
+                    ? new RoutingService(nodes, nodeCount, edges, edgeCount, getHierarchy())
+                    : new RoutingService(nodes, nodeCount, edges, edgeCount, engine);
+        }
+        return service;
+    }
+
+    /**
+     * add a node, invalidates the service
+     *
+     * @param x
+     * @param y
+     * @return index of the node
+     */
+    public synchronized int addNode(float x, float y) {
+        if (nodeCount * 2 == nodes.length) {
+            float[] grown = new float[nodes.length * 2];
+            System.arraycopy(nodes, 0, grown, 0, nodes.length);
+            nodes = grown;
+        }
+        nodes[2 * nodeCount] = x;
+        nodes[2 * nodeCount + 1] = y;
+        invalidate();
+        return nodeCount++;
+    }
+
+    /**
+     * move a node, invalidates the service
+     *
+     * @param node
+     * @param x
+     * @param y
+     */
+    public synchronized void setNode(int node, float x, float y) {
+        checkNode(node);
+        nodes[2 * node] = x;
+        nodes[2 * node + 1] = y;
+        invalidate();
+    }
+
+    /**
+     * add an edge, invalidates the service
+     *
+     * @param a node index
+     * @param b node index
+     * @return index of the edge
+     */
+    public synchronized int addEdge(int a, int b) {
+        checkNode(a);
+        checkNode(b);
+        if (edgeCount * 2 == edges.length) {
+            int[] grown = new int[edges.length * 2];
+            System.arraycopy(edges, 0, grown, 0, edges.length);
+            edges = grown;
+        }
+        edges[2 * edgeCount] = a;
+        edges[2 * edgeCount + 1] = b;
+        invalidate();
+        return edgeCount++;
+    }
+
+    /**
+     * length of the shortest path between two nodes
+     *
+     * @param from
+     * @param to
+     * @return INF if unreachable
+     */
+    public float getDistance(int from, int to) {
+        return getService().getDistance(from, to);
+    }
+
+    /**
+     * the shortest path between two nodes
+     *
+     * @param from
+     * @param to
+     * @param out  cleared, receives the node indexes from {@code from} to {@code to}
+     * @return false if {@code to} is unreachable, out is empty then
+     */
+    public boolean getPath(int from, int to, List<Integer> out) {
+        return getService().getPath(from, to, out);
+    }
+
+    /**
+     * the shortest path between two nodes
+     *
+     * @param from
+     * @param to
+     * @return node indexes, empty if unreachable
+     */
+    public List<Integer> getPath(int from, int to) {
+        return getService().getPath(from, to);
+    }
+
+    /**
+     * the shortest path from a point off the graph to a node, the point joins the graph at its
+     * projection on the nearest edge
+     *
+     * @param x
+     * @param y
+     * @param to
+     * @param out        cleared, receives the node indexes after the projection
+     * @param projection receives the projection x, y
+     * @return length from the projection to the node, INF if unreachable
+     */
+    public float getPath(float x, float y, int to, List<Integer> out, float[] projection) {
+        return getService().getPath(x, y, to, out, projection);
+    }
+
+    /**
+     * the shortest path between two points off the graph, each joins the graph at its
+     * projection on the nearest edge
+     *
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     * @param out         cleared, receives the node indexes between the projections, empty if
+     *                    both project on the same edge and the direct way is the shortest
+     * @param projections receives the projection x, y of the start, then of the end
+     * @return length between the projections, INF if unreachable
+     */
+    public float getPath(float fromX, float fromY, float toX, float toY, List<Integer> out,
+                         float[] projections) {
+        return getService().getPath(fromX, fromY, toX, toY, out, projections);
+    }
+
+    /**
+     * projection of a point on the nearest edge, clamped to the edge
+     *
+     * @param x
+     * @param y
+     * @param out    receives the projection x, y
+     * @param offset
+     * @return edge index, -1 without edges
+     */
+    public int project(float x, float y, float[] out, int offset) {
+        return getService().project(x, y, out, offset);
+    }
+
+    /**
+     * drop the service and the hierarchy, they are recreated by the next query
+     */
+    private void invalidate() {
+        service = null;
+        hierarchy = null;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= nodeCount) {
+            throw new IndexOutOfBoundsException("node " + node + ", count " + nodeCount);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * RoutingService
+ * <p>
+ * Shortest path queries over an immutable routing graph (see {@link RouteMath} for the array
+ * layout), safe to call from many threads at once, e.g. navigation requests on a worker pool.
+ * The graph and the preprocessing of its engine are fixed at construction: the all pairs tables
+ * of {@link RoutingEngine#FLOYD}, the adjacency of {@link RoutingEngine#DIJKSTRA} and
+ * {@link RoutingEngine#A_STAR} or the {@link ContractionHierarchy}. The tables are only read by
+ * queries; a sparse search borrows its scratch state from a lock free pool for the duration of
+ * the query, so concurrent queries never share mutable state and the pool grows to the number
+ * of queries that ran at the same time.
+ * <p>
+ * Points off the graph (a tag position, a touched point) are joined to it virtually at their
+ * projection on the nearest edge, found through an {@link EdgeIndex}. For a graph edited at
+ * runtime use a {@link RoutingGraph}, which keeps a service of its current state.
+ *
+ * @author: onlylemi
+ */
+public final class RoutingService {
+
+    public static final float INF = RouteMath.INF;
+
+    private final RoutingEngine engine;
+    private final float[] nodes;
+    private final int nodeCount;
+    private final int[] edges;
+    private final int edgeCount;
+    private final EdgeIndex index;
+
+    // FLOYD: all pairs tables, row major n x n
+    private final float[] dist;
+    private final int[] next; // first node after i on the way to j, -1 if unreachable
+    // sparse engines
+    private final CsrGraph csr;
+    private final ContractionHierarchy hierarchy;
+    private final ConcurrentLinkedQueue<PathSearch> searches =
+            new ConcurrentLinkedQueue<PathSearch>();
+
+    /**
+     * @param nodes     x, y per node, copied
+     * @param nodeCount
+     * @param edges     node index pairs, copied
+     * @param edgeCount
+     * @param engine    its preprocessing runs here: the Floyd tables in O(n^3), the contraction
+     *                  hierarchy in seconds on large graphs
+     */
+    public RoutingService(float[] nodes, int nodeCount, int[] edges, int edgeCount,
+                          RoutingEngine engine) {
+        this(nodes, nodeCount, edges, edgeCount, engine, null);
+    }
+
+    /**
+     * service of the {@link RoutingEngine#CONTRACTION_HIERARCHY} engine with a prebuilt
+     * hierarchy
+     *
+     * @param nodes     x, y per node, copied
+     * @param nodeCount
+     * @param edges     node index pairs, copied
+     * @param edgeCount
+     * @param hierarchy built for this graph, e.g. loaded from a file
+     * @throws IllegalArgumentException if the hierarchy was built for another graph
+     */
+    public RoutingService(float[] nodes, int nodeCount, int[] edges, int edgeCount,
+                          ContractionHierarchy hierarchy) {
+        this(nodes, nodeCount, edges, edgeCount, RoutingEngine.CONTRACTION_HIERARCHY,
+                hierarchy);
+        if (hierarchy.getNodeCount() != nodeCount || hierarchy.getChecksum()
+                != ContractionHierarchy.checksum(nodes, nodeCount, edges, edgeCount)) {
+            throw new IllegalArgumentException("hierarchy of another graph");
+        }
+    }
+
+    private RoutingService(float[] nodes, int nodeCount, int[] edges, int edgeCount,
+                           RoutingEngine engine, ContractionHierarchy hierarchy) {
+        this.engine = engine;
+        this.nodes = new float[nodeCount * 2];
+        this.edges = new int[edgeCount * 2];
+        System.arraycopy(nodes, 0, this.nodes, 0, nodeCount * 2);
+        System.arraycopy(edges, 0, this.edges, 0, edgeCount * 2);
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        for (int i = 0; i < edgeCount * 2; i++) {
+            int node = edges[i];
+            if (node < 0 || node >= nodeCount) {
+                throw new IndexOutOfBoundsException("node " + node + ", count " + nodeCount);
+            }
+        }
+        index = new EdgeIndex(this.nodes, nodeCount, this.edges, edgeCount);
+        if (engine == RoutingEngine.FLOYD) {
+            dist = new float[nodeCount * nodeCount];
+            next = new int[nodeCount * nodeCount];
+            computeTables();
+            csr = null;
+            this.hierarchy = null;
+        } else if (engine == RoutingEngine.CONTRACTION_HIERARCHY) {
+            dist = null;
+            next = null;
+            csr = null;
+            this.hierarchy = hierarchy != null ? hierarchy
+                    : ContractionHierarchy.build(this.nodes, nodeCount, this.edges, edgeCount);
+        } else {
+            dist = null;
+            next = null;
+            csr = new CsrGraph(this.nodes, nodeCount, this.edges, edgeCount);
+            this.hierarchy = null;
+        }
+    }
+
+    public RoutingEngine getEngine() {
+        return engine;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public float getNodeX(int node) {
+        return nodes[2 * node];
+    }
+
+    public float getNodeY(int node) {
+        return nodes[2 * node + 1];
+    }
+
+    public int getEdgeStart(int edge) {
+        return edges[2 * edge];
+    }
+
+    public int getEdgeEnd(int edge) {
+        return edges[2 * edge + 1];
+    }
+
+    /**
+     * @return the hierarchy of the {@link RoutingEngine#CONTRACTION_HIERARCHY} engine, null for
+     * the other engines
+     */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * length of the shortest path between two nodes
+     *
+     * @param from
+     * @param to
+     * @return INF if unreachable
+     */
+    public float getDistance(int from, int to) {
+        if (engine == RoutingEngine.FLOYD) {
+            return dist[from * nodeCount + to];
+        }
+        PathSearch s = acquire();
+        try {
+            s.begin(nodes[2 * to], nodes[2 * to + 1]);
+            s.addSource(from, 0);
+            s.addTarget(to, 0);
+            return s.run(INF);
+        } finally {
+            release(s);
+        }
+    }
+
+    /**
+     * the shortest path between two nodes
+     *
+     * @param from
+     * @param to
+     * @param out  cleared, receives the node indexes from {@code from} to {@code to}
+     * @return false if {@code to} is unreachable, out is empty then
+     */
+    public boolean getPath(int from, int to, List<Integer> out) {
+        out.clear();
+        if (engine == RoutingEngine.FLOYD) {
+            if (from != to && next[from * nodeCount + to] < 0) {
+                return false;
+            }
+            appendPath(from, to, out);
+            return true;
+        }
+        PathSearch s = acquire();
+        try {
+            s.begin(nodes[2 * to], nodes[2 * to + 1]);
+            s.addSource(from, 0);
+            s.addTarget(to, 0);
+            float length = s.run(INF);
+            s.appendPath(out);
+            return length != INF;
+        } finally {
+            release(s);
+        }
+    }
+
+    /**
+     * the shortest path between two nodes
+     *
+     * @param from
+     * @param to
+     * @return node indexes, empty if unreachable
+     */
+    public List<Integer> getPath(int from, int to) {
+        List<Integer> path = new ArrayList<>();
+        getPath(from, to, path);
+        return path;
+    }
+
+    /**
+     * the shortest path from a point off the graph to a node, the point joins the graph at its
+     * projection on the nearest edge
+     *
+     * @param x
+     * @param y
+     * @param to
+     * @param out        cleared, receives the node indexes after the projection
+     * @param projection receives the projection x, y
+     * @return length from the projection to the node, INF if unreachable
+     */
+    public float getPath(float x, float y, int to, List<Integer> out, float[] projection) {
+        out.clear();
+        int edge = project(x, y, projection, 0);
+        if (edge < 0) {
+            return INF;
+        }
+        float px = projection[0], py = projection[1];
+        if (engine != RoutingEngine.FLOYD) {
+            PathSearch s = acquire();
+            try {
+                s.begin(nodes[2 * to], nodes[2 * to + 1]);
+                for (int k = 0; k < 2; k++) {
+                    int node = edges[2 * edge + k];
+                    s.addSource(node, distanceToNode(px, py, node));
+                }
+                s.addTarget(to, 0);
+                float length = s.run(INF);
+                s.appendPath(out);
+                return length;
+            } finally {
+                release(s);
+            }
+        }
+        int best = -1;
+        float min = INF;
+        for (int k = 0; k < 2; k++) {
+            int node = edges[2 * edge + k];
+            float d = dist[node * nodeCount + to];
+            if (d == INF) {
+                continue;
+            }
+            d += distanceToNode(px, py, node);
+            if (d < min) {
+                min = d;
+                best = node;
+            }
+        }
+        if (best >= 0) {
+            appendPath(best, to, out);
+        }
+        return min;
+    }
+
+    /**
+     * the shortest path between two points off the graph, each joins the graph at its
+     * projection on the nearest edge
+     *
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     * @param out         cleared, receives the node indexes between the projections, empty if
+     *                    both project on the same edge and the direct way is the shortest
+     * @param projections receives the projection x, y of the start, then of the end
+     * @return length between the projections, INF if unreachable
+     */
+    public float getPath(float fromX, float fromY, float toX, float toY, List<Integer> out,
+                         float[] projections) {
+        out.clear();
+        int fromEdge = project(fromX, fromY, projections, 0);
+        int toEdge = project(toX, toY, projections, 2);
+        if (fromEdge < 0 || toEdge < 0) {
+            return INF;
+        }
+        float px = projections[0], py = projections[1];
+        float qx = projections[2], qy = projections[3];
+        float direct = fromEdge == toEdge ? Geometry.distance(px, py, qx, qy) : INF;
+        if (engine != RoutingEngine.FLOYD) {
+            PathSearch s = acquire();
+            try {
+                s.begin(qx, qy);
+                for (int k = 0; k < 2; k++) {
+                    int node = edges[2 * fromEdge + k];
+                    s.addSource(node, distanceToNode(px, py, node));
+                    node = edges[2 * toEdge + k];
+                    s.addTarget(node, distanceToNode(qx, qy, node));
+                }
+                float length = s.run(direct);
+                s.appendPath(out);
+                return length;
+            } finally {
+                release(s);
+            }
+        }
+        float min = direct;
+        int bestFrom = -1, bestTo = -1;
+        for (int i = 0; i < 2; i++) {
+            int a = edges[2 * fromEdge + i];
+            for (int j = 0; j < 2; j++) {
+                int b = edges[2 * toEdge + j];
+                float d = dist[a * nodeCount + b];
+                if (d == INF) {
+                    continue;
+                }
+                d += distanceToNode(px, py, a) + distanceToNode(qx, qy, b);
+                if (d < min) {
+                    min = d;
+                    bestFrom = a;
+                    bestTo = b;
+                }
+            }
+        }
+        if (bestFrom >= 0) {
+            appendPath(bestFrom, bestTo, out);
+        }
+        return min;
+    }
+
+    /**
+     * projection of a point on the nearest edge, clamped to the edge
+     *
+     * @param x
+     * @param y
+     * @param out    receives the projection x, y
+     * @param offset
+     * @return edge index, -1 without edges
+     */
+    public int project(float x, float y, float[] out, int offset) {
+        return index.nearest(x, y, out, offset);
+    }
+
+    /**
+     * the k nearest edges to a point, e.g. to snap a position to one of several corridors;
+     * does not allocate
+     *
+     * @param x
+     * @param y
+     * @param k            max edges to find
+     * @param edgesOut     receives the edge indexes, nearest first, at least k long
+     * @param distancesOut receives their distances to the point, at least k long
+     * @return number of edges found
+     */
+    public int getNearestEdges(float x, float y, int k, int[] edgesOut, float[] distancesOut) {
+        return index.nearest(x, y, k, edgesOut, distancesOut);
+    }
+
+    /**
+     * scratch of a sparse search, taken from the pool or created
+     */
+    private PathSearch acquire() {
+        PathSearch s = searches.poll();
+        if (s != null) {
+            return s;
+        }
+        return hierarchy != null ? new HierarchySearch(hierarchy)
+                : new GraphSearch(csr, engine == RoutingEngine.A_STAR);
+    }
+
+    private void release(PathSearch s) {
+        searches.offer(s);
+    }
+
+    private void computeTables() {
+        int n = nodeCount;
+        float[] d = dist;
+        int[] hop = next;
+        for (int i = 0; i < n * n; i++) {
+            d[i] = INF;
+            hop[i] = -1;
+        }
+        for (int i = 0; i < n; i++) {
+            d[i * n + i] = 0;
+            hop[i * n + i] = i;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edges[2 * e];
+            int b = edges[2 * e + 1];
+            float length = Geometry.distance(nodes[2 * a], nodes[2 * a + 1],
+                    nodes[2 * b], nodes[2 * b + 1]);
+            if (length < d[a * n + b]) {
+                d[a * n + b] = length;
+                d[b * n + a] = length;
+                hop[a * n + b] = b;
+                hop[b * n + a] = a;
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            int rowK = k * n;
+            for (int i = 0; i < n; i++) {
+                int rowI = i * n;
+                float dik = d[rowI + k];
+                if (dik == INF) {
+                    continue;
+                }
+                int hopIK = hop[rowI + k];
+                for (int j = 0; j < n; j++) {
+                    float through = dik + d[rowK + j];
+                    if (through < d[rowI + j]) {
+                        d[rowI + j] = through;
+                        hop[rowI + j] = hopIK;
+                    }
+                }
+            }
+        }
+    }
+
+    private void appendPath(int from, int to, List<Integer> out) {
+        int node = from;
+        out.add(node);
+        while (node != to) {
+            node = next[node * nodeCount + to];
+            out.add(node);
+        }
+    }
+
+    private float distanceToNode(float x, float y, int node) {
+        return Geometry.distance(x, y, nodes[2 * node], nodes[2 * node + 1]);
+    }
+}
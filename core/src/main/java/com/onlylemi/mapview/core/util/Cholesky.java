@@ -0,0 +1,62 @@
+package com.onlylemi.mapview.core.util;
+
+/**
+ * Cholesky
+ * <p>
+ * In place solver of small symmetric positive definite systems, for the normal equations of the
+ * least squares solvers. Matrices are row major in a flat array with a fixed row stride.
+ *
+ * @author: onlylemi
+ */
+public final class Cholesky {
+
+    private Cholesky() {}
+
+    /**
+     * solve a x = b
+     *
+     * @param a      n x n matrix, destroyed: receives the decomposition in its lower triangle
+     * @param b      receives x
+     * @param n
+     * @param stride row stride of a
+     * @return false if a is not positive definite
+     */
+    public static boolean solve(double[] a, double[] b, int n, int stride) {
+        // a = L L^T
+        for (int j = 0; j < n; j++) {
+            double d = a[j * stride + j];
+            for (int k = 0; k < j; k++) {
+                d -= a[j * stride + k] * a[j * stride + k];
+            }
+            if (!(d > 0)) {
+                return false;
+            }
+            d = Math.sqrt(d);
+            a[j * stride + j] = d;
+            for (int i = j + 1; i < n; i++) {
+                double s = a[i * stride + j];
+                for (int k = 0; k < j; k++) {
+                    s -= a[i * stride + k] * a[j * stride + k];
+                }
+                a[i * stride + j] = s / d;
+            }
+        }
+        // forward L y = b
+        for (int i = 0; i < n; i++) {
+            double s = b[i];
+            for (int k = 0; k < i; k++) {
+                s -= a[i * stride + k] * b[k];
+            }
+            b[i] = s / a[i * stride + i];
+        }
+        // backward L^T x = y
+        for (int i = n - 1; i >= 0; i--) {
+            double s = b[i];
+            for (int k = i + 1; k < n; k++) {
+                s -= a[k * stride + i] * b[k];
+            }
+            b[i] = s / a[i * stride + i];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.onlylemi.mapview.core.util;
+
+/**
+ * LongIndexMap
+ * <p>
+ * Assigns dense indexes {@code 0 .. capacity - 1} to long keys in the order they are added,
+ * so per key state can be kept in plain arrays. Open addressing on primitive arrays, lookups
+ * do not allocate. Keys cannot be removed. Not thread safe.
+ *
+ * @author: onlylemi
+ */
+public final class LongIndexMap {
+
+    private final int capacity;
+    private final int mask;
+    private final long[] keys;
+    private final int[] indexes; // index + 1, 0 for a free slot
+    private final long[] keysByIndex;
+    private int size;
+
+    /**
+     * @param capacity max number of keys
+     */
+    public LongIndexMap(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        // keep the table at most half full
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.keys = new long[tableSize];
+        this.indexes = new int[tableSize];
+        this.keysByIndex = new long[capacity];
+    }
+
+    /**
+     * @param key
+     * @return index of the key, -1 if it was never added
+     */
+    public int get(long key) {
+        int slot = hash(key) & mask;
+        while (indexes[slot] != 0) {
+            if (keys[slot] == key) {
+                return indexes[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param key
+     * @return index of the key, added if needed; -1 if the map is full
+     */
+    public int getOrAdd(long key) {
+        int slot = hash(key) & mask;
+        while (indexes[slot] != 0) {
+            if (keys[slot] == key) {
+                return indexes[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == capacity) {
+            return -1;
+        }
+        keys[slot] = key;
+        keysByIndex[size] = key;
+        indexes[slot] = ++size;
+        return size - 1;
+    }
+
+    /**
+     * @param index
+     * @return key of an index below {@link #size()}
+     */
+    public long keyAt(int index) {
+        return keysByIndex[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
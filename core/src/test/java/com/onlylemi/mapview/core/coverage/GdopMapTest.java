@@ -0,0 +1,110 @@
+package com.onlylemi.mapview.core.coverage;
+
+import com.onlylemi.mapview.core.positioning.Anchors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * GdopMapTest
+ *
+ * @author: onlylemi
+ */
+public class GdopMapTest {
+
+    private Anchors anchors;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        // a 10 x 10 m square in the middle of a 20 x 20 m map of 1 m cells
+        anchors = new Anchors(8);
+        anchors.set(1, 0, 0, 1);
+        anchors.set(2, 10, 0, 1);
+        anchors.set(3, 10, 10, 1);
+        anchors.set(4, 0, 10, 1);
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void bestInsideTheAnchors() {
+        GdopMap map = new GdopMap(anchors, -5, -5, 1, 20, 20);
+        assertEquals(400, map.update(pool));
+        assertEquals(1, map.get(9, 9), 0.01);
+        assertTrue(map.get(0, 19) > 1.5f);
+        assertEquals(0, map.update(pool));
+    }
+
+    @Test
+    public void parallelUpdateMatchesSerial() {
+        GdopMap map = new GdopMap(anchors, -5, -5, 1, 20, 20);
+        map.update(pool);
+        anchors.set(2, 12, 1, 1);
+        assertTrue(map.update(pool) > 0);
+
+        GdopMap serial = new GdopMap(anchors, -5, -5, 1, 20, 20);
+        serial.update(null);
+        float[] values = map.getValues();
+        float[] expected = serial.getValues();
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Float.floatToIntBits(expected[i]), Float.floatToIntBits(values[i]));
+        }
+    }
+
+    @Test
+    public void uncoveredCellsAreNaN() {
+        GdopMap map = new GdopMap(anchors, -5, -5, 1, 20, 20);
+        map.setRange(8);
+        map.update(pool);
+        int uncovered = 0;
+        for (float value : map.getValues()) {
+            if (Float.isNaN(value)) {
+                uncovered++;
+            }
+        }
+        // only the center is within 8 m of all four anchors
+        assertTrue(uncovered > 300 && uncovered < 400);
+        assertTrue(!Float.isNaN(map.get(10, 10)));
+    }
+
+    /**
+     * an update running on the only thread of its executor computes the chunks itself instead of
+     * waiting for them
+     */
+    @Test(timeout = 10000)
+    public void updateFromATaskOfTheExecutor() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final GdopMap map = new GdopMap(anchors, -5, -5, 0.1f, 200, 200);
+            int cells = single.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return map.update(single);
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertEquals(40000, cells);
+
+            GdopMap serial = new GdopMap(anchors, -5, -5, 0.1f, 200, 200);
+            serial.update(null);
+            for (int i = 0; i < cells; i++) {
+                assertEquals(serial.getValues()[i], map.getValues()[i], 0);
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.onlylemi.mapview.core.ingest;
+
+/**
+ * CountingSink
+ * <p>
+ * Sums the fields of every record, so two record streams can be compared, and refuses every
+ * n-th record if asked to.
+ *
+ * @author: onlylemi
+ */
+final class CountingSink implements MeasurementSink {
+
+    private final int refuseEvery;
+    long sum;
+    int records;
+
+    CountingSink() {
+        this(0);
+    }
+
+    /**
+     * @param refuseEvery refuse every n-th record, 0 to take all
+     */
+    CountingSink(int refuseEvery) {
+        this.refuseEvery = refuseEvery;
+    }
+
+    @Override
+    public boolean onRange(long tagId, int anchorId, float distance, long timestampMicros) {
+        sum += tagId + anchorId + Float.floatToIntBits(distance) + timestampMicros;
+        return take();
+    }
+
+    @Override
+    public boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks,
+                           long timestampMicros) {
+        sum += tagId + sequence + anchorId + rxTicks + timestampMicros;
+        return take();
+    }
+
+    @Override
+    public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+        sum += anchorId + referenceTxTicks + rxTicks;
+        return take();
+    }
+
+    private boolean take() {
+        records++;
+        return refuseEvery == 0 || records % refuseEvery != 0;
+    }
+}
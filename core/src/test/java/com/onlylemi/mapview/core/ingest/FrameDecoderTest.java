@@ -0,0 +1,190 @@
+package com.onlylemi.mapview.core.ingest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FrameDecoderTest
+ * <p>
+ * Streams through a {@link LoopbackSource}, frames are compared by the sums of their records.
+ *
+ * @author: onlylemi
+ */
+public class FrameDecoderTest {
+
+    private LoopbackSource source;
+    private ByteBuffer buffer;
+    private FrameEncoder encoder;
+
+    @Before
+    public void setUp() throws IOException {
+        source = LoopbackSource.open();
+        buffer = ByteBuffer.allocate(1 << 20);
+        encoder = new FrameEncoder(buffer);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        source.close();
+    }
+
+    @Test
+    public void framesSplitAcrossReads() throws IOException {
+        CountingSink expected = new CountingSink();
+        for (int f = 0; f < 300; f++) {
+            encodeFrame(f % 3 + 1, f, 10, expected);
+        }
+        byte[] stream = drain();
+
+        // chunks from 1 byte, so headers, records and trailers are split too
+        CountingSink sink = new CountingSink();
+        int frames = 0;
+        int chunk = 1;
+        for (int offset = 0; offset < stream.length; offset += chunk, chunk = chunk * 3 % 997) {
+            source.send(ByteBuffer.wrap(stream, offset, Math.min(chunk, stream.length - offset)));
+            frames += source.poll(sink);
+        }
+        frames += source.poll(sink);
+
+        assertEquals(300, frames);
+        assertEquals(expected.records, sink.records);
+        assertEquals(expected.sum, sink.sum);
+        IngestCounters counters = source.getCounters();
+        assertEquals(300, counters.getFrames());
+        assertEquals(stream.length, counters.getBytes());
+        assertEquals(0, counters.getParseErrors());
+    }
+
+    @Test
+    public void corruptedRunCountsOneParseError() throws IOException {
+        CountingSink expected = new CountingSink();
+        encodeFrame(FrameFormat.TYPE_RANGE, 1, 5, expected);
+        // two adjacent corrupted frames, a record and a checksum, are one run
+        int second = buffer.position();
+        encodeFrame(FrameFormat.TYPE_RANGE, 2, 5, null);
+        buffer.put(second + FrameFormat.HEADER_SIZE + 3, (byte) 0x7F);
+        encodeFrame(FrameFormat.TYPE_BLINK, 3, 5, null);
+        buffer.put(buffer.position() - 1, (byte) (buffer.get(buffer.position() - 1) ^ 1));
+        encodeFrame(FrameFormat.TYPE_SYNC, 4, 5, expected);
+        // a second run
+        int fifth = buffer.position();
+        encodeFrame(FrameFormat.TYPE_BLINK, 5, 5, null);
+        buffer.put(fifth + FrameFormat.HEADER_SIZE + 40, (byte) 0x11);
+        encodeFrame(FrameFormat.TYPE_RANGE, 6, 5, expected);
+
+        CountingSink sink = new CountingSink();
+        source.send(ByteBuffer.wrap(drain()));
+        assertEquals(3, source.poll(sink));
+
+        assertEquals(expected.records, sink.records);
+        assertEquals(expected.sum, sink.sum);
+        assertEquals(2, source.getCounters().getParseErrors());
+    }
+
+    @Test
+    public void falseHeaderFollowedByValidFrame() throws IOException {
+        CountingSink expected = new CountingSink();
+        encodeFrame(FrameFormat.TYPE_RANGE, 1, 3, expected);
+        // a header that fits, claiming a record that runs into the next frame
+        buffer.putShort((short) FrameFormat.MAGIC);
+        buffer.put((byte) FrameFormat.VERSION);
+        buffer.put((byte) FrameFormat.TYPE_RANGE);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putInt(0x01020304);
+        encodeFrame(FrameFormat.TYPE_SYNC, 2, 3, expected);
+
+        CountingSink sink = new CountingSink();
+        source.send(ByteBuffer.wrap(drain()));
+        assertEquals(2, source.poll(sink));
+
+        assertEquals(expected.sum, sink.sum);
+        assertEquals(1, source.getCounters().getParseErrors());
+    }
+
+    @Test
+    public void discardCountsATruncatedFrame() {
+        CountingSink expected = new CountingSink();
+        encodeFrame(FrameFormat.TYPE_RANGE, 1, 3, expected);
+        int truncated = buffer.position();
+        encodeFrame(FrameFormat.TYPE_RANGE, 2, 3, null);
+        buffer.position(truncated + 20);
+        buffer.flip();
+
+        IngestCounters counters = new IngestCounters();
+        FrameDecoder decoder = new FrameDecoder(counters);
+        CountingSink sink = new CountingSink();
+        assertEquals(1, decoder.decode(buffer, sink));
+        // the decoder waits for the rest of the frame
+        assertEquals(truncated, buffer.position());
+        assertEquals(0, counters.getParseErrors());
+
+        decoder.discard(buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(1, counters.getParseErrors());
+        assertEquals(expected.sum, sink.sum);
+        // nothing left, nothing counted
+        decoder.discard(buffer);
+        assertEquals(1, counters.getParseErrors());
+    }
+
+    @Test
+    public void refusedRecordsAreCountedAsDrops() throws IOException {
+        for (int f = 0; f < 30; f++) {
+            encodeFrame(f % 3 + 1, f, 10, null);
+        }
+        CountingSink sink = new CountingSink(7);
+        source.send(ByteBuffer.wrap(drain()));
+        assertEquals(30, source.poll(sink));
+
+        IngestCounters counters = source.getCounters();
+        assertEquals(300, counters.getRecords());
+        assertEquals(300 / 7, counters.getDrops());
+        assertEquals(0, counters.getParseErrors());
+    }
+
+    /**
+     * a frame of records derived from its number, added to the expected sink if not null
+     */
+    private void encodeFrame(int type, int frame, int count, CountingSink expected) {
+        encoder.begin(type);
+        for (int i = 0; i < count; i++) {
+            if (type == FrameFormat.TYPE_RANGE) {
+                encoder.range(frame, i, i * 1.5f, frame * 100 + i);
+                if (expected != null) {
+                    expected.onRange(frame, i, i * 1.5f, frame * 100 + i);
+                }
+            } else if (type == FrameFormat.TYPE_BLINK) {
+                encoder.blink(frame, i + 7, i, 123456789L * i, frame);
+                if (expected != null) {
+                    expected.onBlink(frame, i + 7, i, 123456789L * i, frame);
+                }
+            } else {
+                encoder.sync(i, 5L * frame, 6L * i);
+                if (expected != null) {
+                    expected.onSync(i, 5L * frame, 6L * i);
+                }
+            }
+        }
+        encoder.end();
+    }
+
+    /**
+     * the frames encoded so far
+     */
+    private byte[] drain() {
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return bytes;
+    }
+}
@@ -0,0 +1,70 @@
+package com.onlylemi.mapview.core.ingest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * UdpSourceTest
+ *
+ * @author: onlylemi
+ */
+public class UdpSourceTest {
+
+    private UdpSource source;
+    private DatagramChannel gateway;
+    private InetSocketAddress address;
+
+    @Before
+    public void setUp() throws IOException {
+        source = new UdpSource(new InetSocketAddress("127.0.0.1", 0));
+        address = new InetSocketAddress("127.0.0.1",
+                source.getChannel().socket().getLocalPort());
+        gateway = DatagramChannel.open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        gateway.close();
+        source.close();
+    }
+
+    /**
+     * the tail of a datagram cannot continue in the next one, it is a parse error
+     */
+    @Test
+    public void truncatedDatagramIsDiscarded() throws IOException {
+        ByteBuffer datagram = ByteBuffer.allocate(4096);
+        FrameEncoder encoder = new FrameEncoder(datagram);
+        CountingSink sink = new CountingSink();
+        for (int k = 0; k < 20; k++) {
+            datagram.clear();
+            encoder.begin(FrameFormat.TYPE_RANGE);
+            for (int i = 0; i < 5; i++) {
+                encoder.range(k, i, 1f, k);
+            }
+            encoder.end();
+            if (k == 5 || k == 6) {
+                // the header of a frame that did not fit
+                datagram.putShort((short) FrameFormat.MAGIC);
+                datagram.put((byte) FrameFormat.VERSION);
+            }
+            datagram.flip();
+            gateway.send(datagram, address);
+            assertEquals(1, source.poll(sink));
+        }
+
+        IngestCounters counters = source.getCounters();
+        assertEquals(20, counters.getFrames());
+        assertEquals(100, sink.records);
+        // one per datagram, the decoder resyncs at every datagram
+        assertEquals(2, counters.getParseErrors());
+    }
+}
@@ -0,0 +1,107 @@
+package com.onlylemi.mapview.core.pipeline;
+
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * PositioningPipelineTest
+ *
+ * @author: onlylemi
+ */
+public class PositioningPipelineTest {
+
+    private static final int SHARDS = 4;
+    private static final int PRODUCERS = 2;
+    private static final int TAGS = 2000;
+    private static final int ROUNDS = 20;
+    private static final float[][] ANCHORS = {{0, 0, 3}, {30, 0, 3}, {30, 20, 3}, {0, 20, 3}};
+
+    /**
+     * two ingest threads interleave the rounds of all tags, every round gives one fix of its tag
+     */
+    @Test
+    public void everyRoundIsSolvedOnce() throws Exception {
+        Anchors anchors = new Anchors(8);
+        for (int i = 0; i < ANCHORS.length; i++) {
+            anchors.set(i + 1, ANCHORS[i][0], ANCHORS[i][1], ANCHORS[i][2]);
+        }
+        PositioningPipeline pipeline = new PositioningPipeline(anchors, SHARDS, PRODUCERS,
+                1 << 14, TAGS, 4);
+        for (int s = 0; s < SHARDS; s++) {
+            pipeline.getTwrEngine(s).setFixedHeight(1);
+            // rounds close on the next round of their tag, not on the skew between producers
+            pipeline.getTwrEngine(s).setRoundWindowMicros(Long.MAX_VALUE / 2);
+        }
+        final AtomicIntegerArray fixes = new AtomicIntegerArray(TAGS);
+        final AtomicInteger misplaced = new AtomicInteger();
+        pipeline.setPositionListener(new PositionListener() {
+            @Override
+            public void onFix(Fix fix) {
+                int tag = (int) fix.tagId;
+                fixes.incrementAndGet(tag);
+                if (Math.abs(fix.x - x(tag)) > 0.01f || Math.abs(fix.y - y(tag)) > 0.01f) {
+                    misplaced.incrementAndGet();
+                }
+            }
+        });
+        pipeline.start();
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final PositioningPipeline.Producer producer = pipeline.getProducer(p);
+            final int first = p;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    produce(producer, first);
+                }
+            };
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        pipeline.stop();
+
+        assertEquals(TAGS * ROUNDS * ANCHORS.length, pipeline.getProcessedCount());
+        for (int tag = 0; tag < TAGS; tag++) {
+            assertEquals("tag " + tag, ROUNDS, fixes.get(tag));
+        }
+        assertEquals(0, misplaced.get());
+    }
+
+    /**
+     * the rounds of every PRODUCERS-th tag from first, retried while the ring is full
+     */
+    private static void produce(PositioningPipeline.Producer producer, int first) {
+        for (int k = 0; k < ROUNDS; k++) {
+            for (int tag = first; tag < TAGS; tag += PRODUCERS) {
+                long timestamp = 100000L * (k + 1) + tag;
+                for (int i = 0; i < ANCHORS.length; i++) {
+                    float dx = x(tag) - ANCHORS[i][0];
+                    float dy = y(tag) - ANCHORS[i][1];
+                    float dz = 1 - ANCHORS[i][2];
+                    float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    while (!producer.range(tag, i + 1, distance, timestamp)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        }
+    }
+
+    private static float x(int tag) {
+        return 5 + tag % 20;
+    }
+
+    private static float y(int tag) {
+        return 5 + tag / 20 % 10;
+    }
+}
@@ -0,0 +1,92 @@
+package com.onlylemi.mapview.core.positioning;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TagKalmanFilterTest
+ *
+ * @author: onlylemi
+ */
+public class TagKalmanFilterTest {
+
+    private static final int FIXES = 2000;
+    private static final long PERIOD_MICROS = 100000;
+    private static final double NOISE = 0.1;
+
+    /**
+     * a tag walking at a speed that changes every 30 s, measured with 10 cm noise
+     */
+    @Test
+    public void filteringReducesTheError() {
+        for (TagKalmanFilter.Model model : TagKalmanFilter.Model.values()) {
+            TagKalmanFilter filter = new TagKalmanFilter(model, 4);
+            final double[] truth = new double[2];
+            final double[] filtered = new double[2]; // squared error sum, count
+            filter.setPositionListener(new PositionListener() {
+                @Override
+                public void onFix(Fix fix) {
+                    double dx = fix.x - truth[0];
+                    double dy = fix.y - truth[1];
+                    filtered[0] += dx * dx + dy * dy;
+                    filtered[1]++;
+                }
+            });
+            Random random = new Random(3);
+            Fix fix = new Fix();
+            fix.tagId = 5;
+            double vx = 0;
+            double vy = 0;
+            double raw = 0;
+            for (int k = 0; k < FIXES; k++) {
+                if (k % 300 == 0) {
+                    vx = random.nextGaussian();
+                    vy = random.nextGaussian();
+                }
+                truth[0] += vx * PERIOD_MICROS / 1e6;
+                truth[1] += vy * PERIOD_MICROS / 1e6;
+                fix.x = (float) (truth[0] + random.nextGaussian() * NOISE);
+                fix.y = (float) (truth[1] + random.nextGaussian() * NOISE);
+                fix.timestampMicros = PERIOD_MICROS * (k + 1);
+                double dx = fix.x - truth[0];
+                double dy = fix.y - truth[1];
+                raw += dx * dx + dy * dy;
+                filter.onFix(fix);
+            }
+
+            assertTrue(model.name(), filtered[1] >= FIXES - 1);
+            double rawRms = Math.sqrt(raw / FIXES);
+            double filteredRms = Math.sqrt(filtered[0] / filtered[1]);
+            assertTrue(model + " raw " + rawRms + " filtered " + filteredRms,
+                    filteredRms < rawRms * 0.8);
+        }
+    }
+
+    @Test
+    public void estimatesAConstantVelocity() {
+        for (TagKalmanFilter.Model model : TagKalmanFilter.Model.values()) {
+            TagKalmanFilter filter = new TagKalmanFilter(model, 4);
+            // a steady walk
+            filter.setProcessNoise(0.01f);
+            Random random = new Random(3);
+            Fix fix = new Fix();
+            fix.tagId = 5;
+            for (int k = 0; k < 300; k++) {
+                double t = k * PERIOD_MICROS / 1e6;
+                fix.x = (float) (1.2 * t + random.nextGaussian() * NOISE);
+                fix.y = (float) (-0.5 * t + random.nextGaussian() * NOISE);
+                fix.timestampMicros = PERIOD_MICROS * k;
+                filter.onFix(fix);
+            }
+
+            float[] velocity = new float[3];
+            filter.getVelocity(filter.indexOf(5), velocity, 0);
+            assertEquals(model.name(), 1.2, velocity[0], 0.2);
+            assertEquals(model.name(), -0.5, velocity[1], 0.2);
+        }
+    }
+}
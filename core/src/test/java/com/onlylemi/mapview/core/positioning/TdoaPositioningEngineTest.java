@@ -0,0 +1,105 @@
+package com.onlylemi.mapview.core.positioning;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TdoaPositioningEngineTest
+ *
+ * @author: onlylemi
+ */
+public class TdoaPositioningEngineTest {
+
+    private static final double[][] ANCHORS = {{0, 0, 3}, {30, 0, 3}, {30, 20, 3}, {0, 20, 3},
+            {15, 0, 3.2}, {15, 20, 2.8}};
+    private static final double TICKS_PER_SECOND = AnchorClockTracker.DW1000_TICKS_PER_SECOND;
+    private static final long PERIOD = 1L << AnchorClockTracker.DW1000_TIMESTAMP_BITS;
+    private static final double C = AnchorClockTracker.SPEED_OF_LIGHT;
+
+    /**
+     * blinks every 10 ms, syncs from the first anchor every 100 ms, free running anchor clocks
+     * with random offsets and drifts up to 20 ppm, 10 cm of timestamp noise
+     */
+    @Test
+    public void tracksClocksAndSolvesBlinks() {
+        Random random = new Random(1);
+        int n = ANCHORS.length;
+        Anchors anchors = new Anchors(8);
+        for (int i = 0; i < n; i++) {
+            anchors.set(i + 1, (float) ANCHORS[i][0], (float) ANCHORS[i][1],
+                    (float) ANCHORS[i][2]);
+        }
+        AnchorClockTracker clocks = new AnchorClockTracker(anchors, 1, TICKS_PER_SECOND,
+                AnchorClockTracker.DW1000_TIMESTAMP_BITS);
+        double[] offsets = new double[n];
+        double[] drifts = new double[n];
+        for (int i = 1; i < n; i++) {
+            offsets[i] = random.nextDouble() * PERIOD;
+            drifts[i] = (random.nextDouble() - 0.5) * 40e-6;
+        }
+        TdoaPositioningEngine engine = new TdoaPositioningEngine(anchors, clocks, 4, n);
+        engine.setFixedHeight(1);
+        final double[] truth = new double[]{0, 0, 1};
+        final double[] errors = new double[2]; // squared error sum, count
+        engine.setPositionListener(new PositionListener() {
+            @Override
+            public void onFix(Fix fix) {
+                double dx = fix.x - truth[0];
+                double dy = fix.y - truth[1];
+                errors[0] += dx * dx + dy * dy;
+                errors[1]++;
+            }
+        });
+
+        double noise = 0.1 / C;
+        double time = 0.5;
+        int sequence = 0;
+        for (int k = 0; k < 3000; k++) {
+            time += 0.01;
+            if (k % 10 == 0) {
+                long tx = (long) (time * TICKS_PER_SECOND) & (PERIOD - 1);
+                for (int i = 1; i < n; i++) {
+                    double arrival = time + distance(ANCHORS[0], ANCHORS[i]) / C
+                            + random.nextGaussian() * noise * 0.1;
+                    engine.onSync(i + 1, tx, local(arrival, offsets[i], drifts[i]));
+                }
+            }
+            truth[0] = 2 + random.nextDouble() * 26;
+            truth[1] = 2 + random.nextDouble() * 16;
+            sequence = (sequence + 1) & 255;
+            for (int i = 0; i < n; i++) {
+                double arrival = time + 0.003 + distance(truth, ANCHORS[i]) / C
+                        + random.nextGaussian() * noise;
+                engine.onBlink(7, sequence, i + 1, local(arrival, offsets[i], drifts[i]),
+                        (long) (time * 1e6));
+            }
+            engine.flush(7);
+        }
+
+        // all but the blinks before the clocks are synced
+        assertTrue("fixes " + errors[1], errors[1] > 2950);
+        double rms = Math.sqrt(errors[0] / errors[1]);
+        assertTrue("rms " + rms, rms < 0.2);
+        for (int i = 1; i < n; i++) {
+            assertEquals(drifts[i], clocks.getDrift(i), 0.01e-6);
+        }
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * timestamp of the anchor clock, wrapping at 40 bits
+     */
+    private static long local(double time, double offset, double drift) {
+        return ((long) (offset + time * TICKS_PER_SECOND * (1 + drift))) & (PERIOD - 1);
+    }
+}
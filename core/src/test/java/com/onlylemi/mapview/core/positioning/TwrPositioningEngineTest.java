@@ -0,0 +1,159 @@
+package com.onlylemi.mapview.core.positioning;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TwrPositioningEngineTest
+ *
+ * @author: onlylemi
+ */
+public class TwrPositioningEngineTest {
+
+    private static final float TAG_HEIGHT = 1;
+    private static final float[][] ROOM = {{0, 0, 3}, {20, 0, 3.2f}, {20, 15, 2.8f}, {0, 15, 3},
+            {10, -2, 3.1f}, {10, 17, 2.9f}, {-2, 7, 3}, {22, 7, 3.3f}};
+
+    @Test
+    public void solvesWithFourToEightAnchors() {
+        for (int dims = 2; dims <= 3; dims++) {
+            TwrPositioningEngine engine = new TwrPositioningEngine(room(), 100, 8);
+            engine.setDimensions(dims);
+            engine.setFixedHeight(TAG_HEIGHT);
+            ErrorListener errors = new ErrorListener();
+            engine.setPositionListener(errors);
+            Random random = new Random(3);
+            long time = 1000;
+            for (int k = 0; k < 2000; k++) {
+                errors.set(random.nextFloat() * 20, random.nextFloat() * 15, TAG_HEIGHT);
+                int count = 4 + random.nextInt(5);
+                int[] ids = new int[count];
+                float[] ranges = new float[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = 100 + i;
+                    ranges[i] = range(errors.truth, ROOM[i]) + (float) random.nextGaussian()
+                            * 0.05f;
+                }
+                engine.solve(k % 10, ids, ranges, count, time += 100000);
+            }
+
+            assertEquals(2000, errors.fixes);
+            // the height is the worst conditioned axis with all anchors near the ceiling
+            assertTrue("dims " + dims + " mean " + errors.getMean(),
+                    errors.getMean() < (dims == 2 ? 0.06 : 0.2));
+        }
+    }
+
+    @Test
+    public void rangesOfARoundAreSolvedOnce() {
+        TwrPositioningEngine engine = new TwrPositioningEngine(room(), 100, 8);
+        engine.setFixedHeight(TAG_HEIGHT);
+        ErrorListener errors = new ErrorListener();
+        engine.setPositionListener(errors);
+        errors.set(5, 5, TAG_HEIGHT);
+        long time = 1000;
+        for (int i = 0; i < 5; i++) {
+            engine.onRange(77, 100 + i, range(errors.truth, ROOM[i]), time + i * 1000);
+        }
+        assertEquals(0, errors.fixes);
+
+        // the first range after the window closes the round
+        engine.onRange(77, 100, 1, time + TwrPositioningEngine.DEFAULT_ROUND_WINDOW_MICROS * 4);
+        assertEquals(1, errors.fixes);
+        assertTrue(errors.getMean() < 0.01);
+    }
+
+    /**
+     * anchors on a circle, one to three of the eight ranges biased by a blocked line of sight
+     */
+    @Test
+    public void outlierRejectionDropsBiasedRanges() {
+        int n = 8;
+        Anchors anchors = new Anchors(n);
+        float[][] positions = new float[n][];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            positions[i] = new float[]{15 + 14 * (float) Math.cos(angle),
+                    10 + 9 * (float) Math.sin(angle), 2.5f};
+            anchors.set(i + 1, positions[i][0], positions[i][1], positions[i][2]);
+        }
+        for (int outliers = 1; outliers <= 2; outliers++) {
+            double[] mean = new double[2];
+            for (int robust = 0; robust < 2; robust++) {
+                TwrPositioningEngine engine = new TwrPositioningEngine(anchors, 10, n);
+                engine.setFixedHeight(TAG_HEIGHT);
+                engine.setOutlierRejection(robust == 1);
+                ErrorListener errors = new ErrorListener();
+                engine.setPositionListener(errors);
+                Random random = new Random(1);
+                int[] ids = new int[n];
+                float[] ranges = new float[n];
+                for (int k = 0; k < 2000; k++) {
+                    errors.set(3 + 24 * random.nextFloat(), 3 + 14 * random.nextFloat(),
+                            TAG_HEIGHT);
+                    for (int i = 0; i < n; i++) {
+                        ids[i] = i + 1;
+                        ranges[i] = range(errors.truth, positions[i])
+                                + (float) random.nextGaussian() * 0.05f;
+                    }
+                    for (int o = 0; o < outliers; o++) {
+                        ranges[(k + o * 3) % n] += 1.5f + 3 * random.nextFloat();
+                    }
+                    engine.solve(7, ids, ranges, n, 1 + k * 100000L);
+                }
+                assertTrue(errors.fixes > 1990);
+                mean[robust] = errors.getMean();
+            }
+            assertTrue(outliers + " outliers, plain " + mean[0], mean[0] > 0.5);
+            assertTrue(outliers + " outliers, robust " + mean[1], mean[1] < 0.1);
+        }
+    }
+
+    private static Anchors room() {
+        Anchors anchors = new Anchors(16);
+        for (int i = 0; i < ROOM.length; i++) {
+            anchors.set(100 + i, ROOM[i][0], ROOM[i][1], ROOM[i][2]);
+        }
+        return anchors;
+    }
+
+    private static float range(float[] tag, float[] anchor) {
+        float dx = tag[0] - anchor[0];
+        float dy = tag[1] - anchor[1];
+        float dz = tag[2] - anchor[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * error of the fixes against the true position
+     */
+    private static final class ErrorListener implements PositionListener {
+
+        final float[] truth = new float[3];
+        int fixes;
+        double sum;
+
+        void set(float x, float y, float z) {
+            truth[0] = x;
+            truth[1] = y;
+            truth[2] = z;
+        }
+
+        double getMean() {
+            return sum / fixes;
+        }
+
+        @Override
+        public void onFix(Fix fix) {
+            double dx = fix.x - truth[0];
+            double dy = fix.y - truth[1];
+            double dz = fix.z - truth[2];
+            sum += Math.sqrt(dx * dx + dy * dy + dz * dz);
+            fixes++;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.onlylemi.mapview.core.recording;
+
+import com.onlylemi.mapview.core.ingest.MeasurementSink;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ReplaySourceTest
+ *
+ * @author: onlylemi
+ */
+public class ReplaySourceTest {
+
+    private static final int ROUNDS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysWhatWasRecorded() throws Exception {
+        File file = folder.newFile("session.rtl");
+        ChecksumSink recorded = new ChecksumSink();
+        SessionRecorder recorder = new SessionRecorder(file);
+        recorder.setMeasurementSink(recorded);
+        Fix fix = new Fix();
+        for (int k = 0; k < ROUNDS; k++) {
+            recorder.onRange(k, 3, 1.25f * k, k * 10);
+            recorder.onBlink(k, k & 255, 4, (1L << 39) + k, k);
+            recorder.onSync(5, 99L * k, 77L * k);
+            fix.tagId = k;
+            fix.x = k;
+            fix.y = -k;
+            fix.z = 0.5f;
+            fix.iterations = 3;
+            fix.anchorCount = 4;
+            fix.timestampMicros = k;
+            recorder.onFix(fix);
+        }
+        assertEquals(ROUNDS * 4, recorder.getEntryCount());
+        recorder.close();
+
+        ReplaySource replay = new ReplaySource(file);
+        replay.setSpeed(ReplaySource.MAX_SPEED);
+        final int[] fixes = new int[1];
+        replay.setPositionListener(new PositionListener() {
+            @Override
+            public void onFix(Fix fix) {
+                assertEquals(fixes[0], fix.tagId);
+                assertEquals(fix.x, -fix.y, 0);
+                assertEquals(3, fix.iterations);
+                fixes[0]++;
+            }
+        });
+        ChecksumSink replayed = new ChecksumSink();
+        replay.run(replayed);
+        assertEquals(ROUNDS, fixes[0]);
+        assertEquals(recorded.count, replayed.count);
+        assertEquals(recorded.sum, replayed.sum);
+        assertEquals(0, replay.getDropCount());
+
+        // again from the start, then nothing past the end
+        replay.seek(0);
+        fixes[0] = 0;
+        replayed = new ChecksumSink();
+        replay.run(replayed);
+        assertEquals(ROUNDS, fixes[0]);
+        assertEquals(recorded.sum, replayed.sum);
+        replay.seek(replay.getDurationMicros() + 1);
+        assertEquals(-1, replay.poll(replayed));
+        replay.close();
+    }
+
+    private static final class ChecksumSink implements MeasurementSink {
+
+        long sum;
+        int count;
+
+        @Override
+        public boolean onRange(long tagId, int anchorId, float distance, long timestampMicros) {
+            sum += tagId + anchorId + (long) (distance * 1000) + timestampMicros;
+            count++;
+            return true;
+        }
+
+        @Override
+        public boolean onBlink(long tagId, int sequence, int anchorId, long rxTicks,
+                               long timestampMicros) {
+            sum += tagId + sequence + anchorId + rxTicks + timestampMicros;
+            count++;
+            return true;
+        }
+
+        @Override
+        public boolean onSync(int anchorId, long referenceTxTicks, long rxTicks) {
+            sum += anchorId + referenceTxTicks + rxTicks;
+            count++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.onlylemi.mapview.core.routing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ContractionHierarchyTest
+ *
+ * @author: onlylemi
+ */
+public class ContractionHierarchyTest {
+
+    private static final float EPSILON = 1e-2f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void matchesDijkstraOnALargeGrid() {
+        Random random = new Random(3);
+        TestGraph g = TestGraph.grid(random, 2500, 50);
+        RoutingGraph dijkstra = new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount,
+                RoutingEngine.DIJKSTRA);
+        RoutingGraph hierarchy = new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount,
+                RoutingEngine.CONTRACTION_HIERARCHY);
+        List<Integer> out = new ArrayList<>();
+        for (int q = 0; q < 500; q++) {
+            int from = random.nextInt(g.nodeCount);
+            int to = random.nextInt(g.nodeCount);
+            float distance = dijkstra.getDistance(from, to);
+            assertEquals(distance, hierarchy.getDistance(from, to), EPSILON);
+            if (hierarchy.getPath(from, to, out)) {
+                assertEquals(distance, RouteMath.getRouteLength(g.nodes, out), EPSILON);
+                assertTrue(g.isWalk(out));
+            } else {
+                assertEquals(RoutingGraph.INF, distance, 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hierarchyOfAnotherGraphIsRejected() {
+        TestGraph g = TestGraph.grid(new Random(3), 100, 10);
+        RoutingGraph graph = new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount,
+                RoutingEngine.CONTRACTION_HIERARCHY);
+        ContractionHierarchy hierarchy = graph.getHierarchy();
+        new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount - 1,
+                RoutingEngine.CONTRACTION_HIERARCHY).setHierarchy(hierarchy);
+    }
+
+    @Test
+    public void savedAndLoaded() throws IOException {
+        ContractionHierarchy hierarchy = build(new Random(3));
+        File file = folder.newFile("hierarchy.ch");
+        hierarchy.save(file);
+
+        ContractionHierarchy loaded = ContractionHierarchy.load(file);
+        assertEquals(hierarchy.getNodeCount(), loaded.getNodeCount());
+        assertEquals(hierarchy.getArcCount(), loaded.getArcCount());
+        assertEquals(hierarchy.getChecksum(), loaded.getChecksum());
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        File file = folder.newFile("hierarchy.ch");
+        build(new Random(3)).save(file);
+        byte[] bytes = read(file);
+
+        for (int length = 0; length < bytes.length; length++) {
+            write(file, bytes, length);
+            try {
+                ContractionHierarchy.load(file);
+                fail("loaded " + length + " of " + bytes.length + " bytes");
+            } catch (IOException expected) {
+                // truncated
+            }
+        }
+    }
+
+    /**
+     * counts larger than the file are rejected before the arrays are allocated
+     */
+    @Test
+    public void countsBeyondTheFileAreRejected() throws IOException {
+        File file = folder.newFile("hierarchy.ch");
+        build(new Random(3)).save(file);
+        byte[] bytes = read(file);
+        int[][] counts = {{Integer.MAX_VALUE - 1, 0}, {1, Integer.MAX_VALUE},
+                {Integer.MAX_VALUE, Integer.MAX_VALUE}, {bytes.length, bytes.length}};
+        for (int[] count : counts) {
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(12, count[0]);
+            header.putInt(16, count[1]);
+            write(file, bytes, bytes.length);
+            try {
+                ContractionHierarchy.load(file);
+                fail("loaded " + count[0] + " nodes, " + count[1] + " arcs");
+            } catch (IOException expected) {
+                // corrupt
+            }
+        }
+    }
+
+    /**
+     * a corrupted byte is either rejected or loads as some hierarchy, it never fails otherwise
+     */
+    @Test
+    public void corruptedFileFailsWithIOException() throws IOException {
+        Random random = new Random(7);
+        File file = folder.newFile("hierarchy.ch");
+        build(random).save(file);
+        byte[] bytes = read(file);
+
+        int rejected = 0;
+        for (int i = 0; i < 2000; i++) {
+            byte[] corrupted = bytes.clone();
+            corrupted[random.nextInt(corrupted.length)] ^= (byte) (1 << random.nextInt(8));
+            write(file, corrupted, corrupted.length);
+            try {
+                ContractionHierarchy.load(file);
+            } catch (IOException expected) {
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0);
+    }
+
+    private static ContractionHierarchy build(Random random) {
+        TestGraph g = TestGraph.grid(random, 400, 20);
+        return ContractionHierarchy.build(g.nodes, g.nodeCount, g.edges, g.edgeCount);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.geometry.Geometry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * EdgeIndexTest
+ *
+ * @author: onlylemi
+ */
+public class EdgeIndexTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    /**
+     * k nearest against a scan of all edges, on scattered, horizontal, diagonal and self loop
+     * graphs, with query points around the graph too
+     */
+    @Test
+    public void nearestMatchesScan() {
+        Random random = new Random(9);
+        for (int graph = 0; graph < 60; graph++) {
+            int mode = graph % 4;
+            int nodeCount = 1 + random.nextInt(400);
+            float[] nodes = new float[nodeCount * 2];
+            for (int i = 0; i < nodeCount; i++) {
+                nodes[i * 2] = random.nextFloat() * 1000;
+                nodes[i * 2 + 1] = mode == 1 ? 5 : mode == 2 ? nodes[i * 2] * 0.5f
+                        : random.nextFloat() * 300;
+            }
+            int edgeCount = random.nextInt(3 * nodeCount + 1);
+            int[] edges = new int[edgeCount * 2];
+            for (int e = 0; e < edgeCount; e++) {
+                edges[e * 2] = random.nextInt(nodeCount);
+                edges[e * 2 + 1] = mode == 3 && random.nextBoolean() ? edges[e * 2]
+                        : random.nextInt(nodeCount);
+            }
+            EdgeIndex index = new EdgeIndex(nodes, nodeCount, edges, edgeCount);
+            int k = 1 + random.nextInt(6);
+            int[] found = new int[k];
+            float[] distances = new float[k];
+            float[] all = new float[edgeCount];
+            for (int q = 0; q < 300; q++) {
+                float x = random.nextFloat() * 1600 - 300;
+                float y = random.nextFloat() * 900 - 300;
+                for (int e = 0; e < edgeCount; e++) {
+                    int a = edges[e * 2];
+                    int b = edges[e * 2 + 1];
+                    all[e] = (float) Math.sqrt(Geometry.distanceSquaredToSegment(x, y,
+                            nodes[a * 2], nodes[a * 2 + 1], nodes[b * 2], nodes[b * 2 + 1]));
+                }
+                float[] sorted = all.clone();
+                Arrays.sort(sorted);
+
+                int count = index.nearest(x, y, k, found, distances);
+                assertEquals(Math.min(k, edgeCount), count);
+                Set<Integer> seen = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    assertEquals(sorted[i], distances[i], EPSILON);
+                    assertEquals(all[found[i]], distances[i], EPSILON);
+                    assertTrue(seen.add(found[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void projectionIsClampedToTheEdge() {
+        float[] nodes = {0, 0, 10, 0};
+        EdgeIndex index = new EdgeIndex(nodes, 2, new int[]{0, 1}, 1);
+        float[] out = new float[2];
+
+        assertEquals(0, index.nearest(4, 3, out, 0));
+        assertEquals(4, out[0], EPSILON);
+        assertEquals(0, out[1], EPSILON);
+        assertEquals(0, index.nearest(-5, 3, out, 0));
+        assertEquals(0, out[0], EPSILON);
+        assertEquals(-1, new EdgeIndex(nodes, 2, new int[0], 0).nearest(4, 3, out, 0));
+    }
+}
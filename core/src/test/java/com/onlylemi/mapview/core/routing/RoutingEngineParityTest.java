@@ -0,0 +1,139 @@
+package com.onlylemi.mapview.core.routing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RoutingEngineParityTest
+ * <p>
+ * Every engine, and a contraction hierarchy saved and loaded again, must answer node to node,
+ * point to node and point to point queries like the Floyd tables, on random multigraphs.
+ *
+ * @author: onlylemi
+ */
+public class RoutingEngineParityTest {
+
+    private static final int GRAPHS = 300;
+    private static final int QUERIES = 50;
+    private static final float EPSILON = 1e-3f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void enginesAgreeOnMultigraphs() throws Exception {
+        Random random = new Random(23);
+        File file = folder.newFile("hierarchy.ch");
+        for (int i = 0; i < GRAPHS; i++) {
+            TestGraph g = TestGraph.multigraph(random);
+            RoutingGraph floyd = graph(g, RoutingEngine.FLOYD);
+            RoutingGraph hierarchy = graph(g, RoutingEngine.CONTRACTION_HIERARCHY);
+            hierarchy.getHierarchy().save(file);
+            RoutingGraph loaded = graph(g, RoutingEngine.CONTRACTION_HIERARCHY);
+            loaded.setHierarchy(ContractionHierarchy.load(file));
+            RoutingGraph[] engines = {graph(g, RoutingEngine.DIJKSTRA),
+                    graph(g, RoutingEngine.A_STAR), hierarchy, loaded};
+            String[] names = {"DIJKSTRA", "A_STAR", "CONTRACTION_HIERARCHY", "loaded hierarchy"};
+            for (int q = 0; q < QUERIES; q++) {
+                Query query = new Query(random, g);
+                query.run(floyd, g);
+                for (int e = 0; e < engines.length; e++) {
+                    Query other = query.copy();
+                    other.run(engines[e], g);
+                    query.assertSame("graph " + i + " query " + q + " " + names[e], other);
+                }
+            }
+        }
+    }
+
+    private static RoutingGraph graph(TestGraph g, RoutingEngine engine) {
+        return new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount, engine);
+    }
+
+    /**
+     * one query of each kind, with the answers of an engine
+     */
+    private static final class Query {
+
+        final int from;
+        final int to;
+        final float fromX, fromY, toX, toY;
+
+        float distance;
+        float pathLength;
+        float pointToNode;
+        float pointToPoint;
+
+        Query(Random random, TestGraph g) {
+            from = random.nextInt(g.nodeCount);
+            to = random.nextInt(g.nodeCount);
+            fromX = random.nextFloat() * 120 - 10;
+            fromY = random.nextFloat() * 120 - 10;
+            toX = random.nextFloat() * 120 - 10;
+            toY = random.nextFloat() * 120 - 10;
+        }
+
+        private Query(Query query) {
+            from = query.from;
+            to = query.to;
+            fromX = query.fromX;
+            fromY = query.fromY;
+            toX = query.toX;
+            toY = query.toY;
+        }
+
+        Query copy() {
+            return new Query(this);
+        }
+
+        void run(RoutingGraph graph, TestGraph g) {
+            List<Integer> out = new ArrayList<>();
+            float[] projections = new float[4];
+
+            distance = graph.getDistance(from, to);
+            pathLength = RoutingGraph.INF;
+            if (graph.getPath(from, to, out)) {
+                assertEquals(from, (int) out.get(0));
+                assertEquals(to, (int) out.get(out.size() - 1));
+                assertTrue(g.isWalk(out));
+                pathLength = RouteMath.getRouteLength(g.nodes, out);
+            } else {
+                assertTrue(out.isEmpty());
+            }
+
+            pointToNode = graph.getPath(fromX, fromY, to, out, projections);
+            if (pointToNode != RoutingGraph.INF && !out.isEmpty()) {
+                assertEquals(to, (int) out.get(out.size() - 1));
+                assertTrue(g.isWalk(out));
+            }
+            pointToPoint = graph.getPath(fromX, fromY, toX, toY, out, projections);
+            if (pointToPoint != RoutingGraph.INF) {
+                assertTrue(g.isWalk(out));
+            }
+        }
+
+        void assertSame(String message, Query other) {
+            assertLength(message + " distance", distance, other.distance);
+            assertLength(message + " path", pathLength, other.pathLength);
+            assertLength(message + " point to node", pointToNode, other.pointToNode);
+            assertLength(message + " point to point", pointToPoint, other.pointToPoint);
+        }
+
+        private static void assertLength(String message, float expected, float actual) {
+            if (expected == RoutingGraph.INF || actual == RoutingGraph.INF) {
+                assertEquals(message, expected, actual, 0);
+            } else {
+                assertEquals(message, expected, actual, EPSILON * Math.max(1, expected));
+            }
+        }
+    }
+}
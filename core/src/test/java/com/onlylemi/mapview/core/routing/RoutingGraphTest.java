@@ -0,0 +1,120 @@
+package com.onlylemi.mapview.core.routing;
+
+import com.onlylemi.mapview.core.math.FloydAlgorithm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RoutingGraphTest
+ *
+ * @author: onlylemi
+ */
+public class RoutingGraphTest {
+
+    private static final float EPSILON = 1e-2f;
+
+    @Test
+    public void floydTablesMatchFloydAlgorithm() {
+        Random random = new Random(3);
+        // FloydAlgorithm runs in O(n^3) per query
+        TestGraph g = TestGraph.grid(random, 150, 12);
+        float[][] matrix = RouteMath.getAdjacencyMatrix(g.nodes, g.nodeCount, g.edges,
+                g.edgeCount);
+        RoutingGraph graph = new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount);
+        FloydAlgorithm floyd = new FloydAlgorithm();
+        for (int q = 0; q < 200; q++) {
+            int from = random.nextInt(g.nodeCount);
+            int to = random.nextInt(g.nodeCount);
+            if (from == to) {
+                continue;
+            }
+            List<Integer> path = graph.getPath(from, to);
+            if (path.isEmpty()) {
+                assertEquals(RoutingGraph.INF, graph.getDistance(from, to), 0);
+                continue;
+            }
+            List<Integer> expected = floyd.findCheapestPath(from, to, matrix);
+            float length = RouteMath.getRouteLength(g.nodes, path);
+            assertEquals(RouteMath.getRouteLength(g.nodes, expected), length, EPSILON);
+            assertEquals(graph.getDistance(from, to), length, EPSILON);
+            assertEquals(from, (int) path.get(0));
+            assertEquals(to, (int) path.get(path.size() - 1));
+            assertTrue(g.isWalk(path));
+        }
+    }
+
+    @Test
+    public void pointToNodeStartsAtTheProjection() {
+        TestGraph g = TestGraph.grid(new Random(3), 300, 18);
+        RoutingGraph graph = new RoutingGraph(g.nodes, g.nodeCount, g.edges, g.edgeCount);
+        List<Integer> out = new ArrayList<>();
+        float[] projection = new float[2];
+
+        float length = graph.getPath(150, 120, 4, out, projection);
+        assertFalse(out.isEmpty());
+        assertEquals(4, (int) out.get(out.size() - 1));
+        float dx = g.nodes[out.get(0) * 2] - projection[0];
+        float dy = g.nodes[out.get(0) * 2 + 1] - projection[1];
+        assertEquals((float) Math.sqrt(dx * dx + dy * dy)
+                + RouteMath.getRouteLength(g.nodes, out), length, EPSILON);
+    }
+
+    @Test
+    public void pointsOnTheSameEdgeGoDirectly() {
+        float[] nodes = {0, 0, 10, 0, 10, 10};
+        int[] edges = {0, 1, 1, 2};
+        RoutingGraph graph = new RoutingGraph(nodes, 3, edges, 2);
+        List<Integer> out = new ArrayList<>();
+        float[] projections = new float[4];
+
+        assertEquals(4, graph.getPath(3, 1, 7, -1, out, projections), EPSILON);
+        assertTrue(out.isEmpty());
+        assertEquals(3, projections[0], EPSILON);
+        assertEquals(0, projections[1], EPSILON);
+        assertEquals(7, projections[2], EPSILON);
+        assertEquals(0, projections[3], EPSILON);
+
+        // around the corner
+        assertEquals(10, graph.getPath(5, 1, 11, 5, out, projections), EPSILON);
+        assertEquals(1, out.size());
+        assertEquals(1, (int) out.get(0));
+    }
+
+    @Test
+    public void editsReachEveryEngine() {
+        float[] nodes = {0, 0, 3, 4};
+        for (RoutingEngine engine : RoutingEngine.values()) {
+            RoutingGraph graph = new RoutingGraph(nodes, 2, new int[0], 0, engine);
+            assertEquals(RoutingGraph.INF, graph.getDistance(0, 1), 0);
+
+            graph.addEdge(0, 1);
+            assertEquals(engine.name(), 5, graph.getDistance(0, 1), EPSILON);
+
+            int node = graph.addNode(3, 0);
+            graph.addEdge(0, node);
+            graph.addEdge(node, 1);
+            graph.setNode(1, 3, 8);
+            assertEquals(engine.name(), 8, graph.getDistance(node, 1), EPSILON);
+            assertEquals(engine.name(), 8.544f, graph.getDistance(0, 1), EPSILON);
+        }
+    }
+
+    @Test
+    public void bestPathVisitsEveryPoint() {
+        TestGraph g = TestGraph.grid(new Random(3), 300, 18);
+        int[] points = {0, 50, 100, 150, 200};
+        List<Integer> path = RouteMath.getBestPath(points, g.nodes, g.nodeCount, g.edges,
+                g.edgeCount);
+        for (int point : points) {
+            assertTrue(path.contains(point));
+        }
+    }
+}
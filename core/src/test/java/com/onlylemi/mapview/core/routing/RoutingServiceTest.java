@@ -0,0 +1,83 @@
+package com.onlylemi.mapview.core.routing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * RoutingServiceTest
+ *
+ * @author: onlylemi
+ */
+public class RoutingServiceTest {
+
+    private static final int THREADS = 8;
+    private static final int QUERIES = 4000;
+    private static final float EPSILON = 1e-2f;
+
+    @Test
+    public void concurrentQueriesMatchSerialOnes() throws Exception {
+        Random random = new Random(5);
+        final TestGraph g = TestGraph.grid(random, 1000, 40);
+        final int[] from = new int[QUERIES];
+        final int[] to = new int[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            from[q] = random.nextInt(g.nodeCount);
+            to[q] = random.nextInt(g.nodeCount);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (RoutingEngine engine : RoutingEngine.values()) {
+                final RoutingService service = new RoutingService(g.nodes, g.nodeCount, g.edges,
+                        g.edgeCount, engine);
+                final float[] expected = new float[QUERIES];
+                for (int q = 0; q < QUERIES; q++) {
+                    expected[q] = service.getDistance(from[q], to[q]);
+                }
+                List<Future<Integer>> results = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    final int first = t;
+                    results.add(pool.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            return countMismatches(service, g, from, to, expected, first);
+                        }
+                    }));
+                }
+                int mismatches = 0;
+                for (Future<Integer> result : results) {
+                    mismatches += result.get();
+                }
+                assertEquals(engine.name(), 0, mismatches);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * every THREADS-th query from first
+     */
+    private static int countMismatches(RoutingService service, TestGraph g, int[] from, int[] to,
+                                       float[] expected, int first) {
+        List<Integer> out = new ArrayList<>();
+        int mismatches = 0;
+        for (int q = first; q < from.length; q += THREADS) {
+            boolean found = service.getPath(from[q], to[q], out);
+            float length = found ? RouteMath.getRouteLength(g.nodes, out) : RouteMath.INF;
+            if (Math.abs(length - expected[q]) > EPSILON || found && (out.get(0) != from[q]
+                    || out.get(out.size() - 1) != to[q])) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,123 @@
+package com.onlylemi.mapview.core.routing;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * TestGraph
+ * <p>
+ * Random graphs for the routing tests, nodes as x, y pairs and edges as index pairs.
+ *
+ * @author: onlylemi
+ */
+final class TestGraph {
+
+    final float[] nodes;
+    final int nodeCount;
+    final int[] edges;
+    final int edgeCount;
+
+    private TestGraph(float[] nodes, int nodeCount, int[] edges, int edgeCount) {
+        this.nodes = nodes;
+        this.nodeCount = nodeCount;
+        this.edges = edges;
+        this.edgeCount = edgeCount;
+    }
+
+    /**
+     * jittered grid with 10 units between columns and rows, most horizontal and some vertical
+     * edges, so a few nodes are unreachable
+     */
+    static TestGraph grid(Random random, int nodeCount, int columns) {
+        float[] nodes = new float[nodeCount * 2];
+        int[] edges = new int[nodeCount * 4];
+        int edgeCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i * 2] = (i % columns) * 10 + random.nextFloat() * 3;
+            nodes[i * 2 + 1] = (i / columns) * 10 + random.nextFloat() * 3;
+            if (i % columns > 0 && random.nextFloat() < 0.9f) {
+                edges[edgeCount * 2] = i - 1;
+                edges[edgeCount * 2 + 1] = i;
+                edgeCount++;
+            }
+            if (i >= columns && random.nextFloat() < 0.4f) {
+                edges[edgeCount * 2] = i - columns;
+                edges[edgeCount * 2 + 1] = i;
+                edgeCount++;
+            }
+        }
+        return new TestGraph(nodes, nodeCount, edges, edgeCount);
+    }
+
+    /**
+     * small multigraph with self loops, parallel edges, coincident nodes and up to three
+     * components without edges between them
+     */
+    static TestGraph multigraph(Random random) {
+        int nodeCount = 1 + random.nextInt(60);
+        int components = 1 + random.nextInt(3);
+        float[] nodes = new float[nodeCount * 2];
+        for (int i = 0; i < nodeCount; i++) {
+            if (i > 0 && random.nextInt(20) == 0) {
+                int other = random.nextInt(i);
+                nodes[i * 2] = nodes[other * 2];
+                nodes[i * 2 + 1] = nodes[other * 2 + 1];
+            } else {
+                nodes[i * 2] = random.nextFloat() * 100;
+                nodes[i * 2 + 1] = random.nextFloat() * 100;
+            }
+        }
+        int edgeCount = random.nextInt(nodeCount * 3 + 1);
+        int[] edges = new int[edgeCount * 2];
+        for (int e = 0; e < edgeCount; e++) {
+            int kind = random.nextInt(10);
+            if (kind == 0 && e > 0) {
+                // parallel, either way round
+                int other = random.nextInt(e);
+                boolean swap = random.nextBoolean();
+                edges[e * 2] = edges[other * 2 + (swap ? 1 : 0)];
+                edges[e * 2 + 1] = edges[other * 2 + (swap ? 0 : 1)];
+            } else {
+                int a = random.nextInt(nodeCount);
+                int b = kind == 1 ? a : random.nextInt(nodeCount);
+                // the component is the node index modulo components, move b towards a into it
+                b -= (b - a) % components;
+                edges[e * 2] = a;
+                edges[e * 2 + 1] = b;
+            }
+        }
+        return new TestGraph(nodes, nodeCount, edges, edgeCount);
+    }
+
+    float getWidth() {
+        float width = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            width = Math.max(width, Math.max(nodes[i * 2], nodes[i * 2 + 1]));
+        }
+        return width;
+    }
+
+    /**
+     * true if every consecutive pair of the path is joined by an edge
+     */
+    boolean isWalk(List<Integer> path) {
+        Set<Long> pairs = new HashSet<>();
+        for (int e = 0; e < edgeCount; e++) {
+            pairs.add(key(edges[e * 2], edges[e * 2 + 1]));
+            pairs.add(key(edges[e * 2 + 1], edges[e * 2]));
+        }
+        for (int i = 1; i < path.size(); i++) {
+            if (path.get(i - 1).intValue() != path.get(i).intValue()
+                    && !pairs.contains(key(path.get(i - 1), path.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long key(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+}
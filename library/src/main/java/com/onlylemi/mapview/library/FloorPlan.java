@@ -8,17 +8,66 @@ package com.onlylemi.mapview.library;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.Log;
 
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * Argo project.
  */
 public class FloorPlan {
+    private static final String TAG = "FloorPlan";
+    // bounded decode pipeline shared by all floor plans, the oldest request is cancelled and
+    // dropped when full, a floor plan queues at most one request
+    private static final int DECODE_THREADS = 2;
+    private static final int DECODE_QUEUE_SIZE = 4;
+    private static final ThreadPoolExecutor DECODE_EXECUTOR = new ThreadPoolExecutor(
+            DECODE_THREADS, DECODE_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(DECODE_QUEUE_SIZE), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG + "-decoder-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }, new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            // cancel the dropped request, so that it is not taken for pending anymore
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest instanceof Future) {
+                ((Future<?>) oldest).cancel(false);
+            }
+            executor.execute(r);
+        }
+    });
+
+    private static final int MAX_SAMPLE_SIZE = 1 << 30;
+
+    static {
+        DECODE_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     private static MapView mapview;
     public int pxCenterX;
     public int pxCenterY;
@@ -26,7 +75,16 @@ public class FloorPlan {
     public int rotation;
     //
     private final String floorPlanFileName;
-    private Bitmap bitmap;
+    private volatile Bitmap bitmap;
+    private volatile int bitmapSampleSize;
+    private Rect bitmapRegion; // null for the whole floor plan
+    // bitmap released by its consumer or never delivered, reused as inBitmap by the next decode
+    private Bitmap reusableBitmap;
+    private BitmapRegionDecoder regionDecoder;
+    private final AtomicInteger requestGeneration = new AtomicInteger();
+    private FutureTask<Void> pendingDecode;
+    private int pendingSampleSize;
+    private Rect pendingRegion;
     // cache
     private Integer bitmapHeight;
     private Integer bitmapWidth;
@@ -41,7 +99,7 @@ public class FloorPlan {
         this.pxCenterY = pxCenterY;
         this.rotation = rotation;
         this.tenMetersInPixels = tenMetersInPixels;
-        this.mapview = mapView;
+        FloorPlan.mapview = mapView;
     }
 
     public FloorPlan(String floorPlanFileName,
@@ -63,28 +121,266 @@ public class FloorPlan {
         return new FloorPlan(other.getFloorPlanFileName(), other.pxCenterX, other.pxCenterY, other.rotation, other.tenMetersInPixels);
     }
 
-    Bitmap getBitmap() {
-        // initialize lazily
-        if (bitmap == null) {
-            bitmap = newBitmapFromFile(getFloorPlanFileName());
+    /**
+     * floor plan (map) x of a position in meters, the floor plan pixel pxCenterX, pxCenterY is
+     * the origin (rotation is not applied, like in GridLayer)
+     *
+     * @param xMeters
+     * @return
+     */
+    public float toMapX(float xMeters) {
+        return pxCenterX + xMeters * tenMetersInPixels / 10f;
+    }
+
+    /**
+     * floor plan (map) y of a position in meters, y grows up in meters and down in pixels
+     *
+     * @param yMeters
+     * @return
+     */
+    public float toMapY(float yMeters) {
+        return pxCenterY - yMeters * tenMetersInPixels / 10f;
+    }
+
+    /**
+     * position in meters of a floor plan (map) x
+     *
+     * @param mapX
+     * @return
+     */
+    public float toMetersX(float mapX) {
+        return (mapX - pxCenterX) * 10f / tenMetersInPixels;
+    }
+
+    /**
+     * position in meters of a floor plan (map) y
+     *
+     * @param mapY
+     * @return
+     */
+    public float toMetersY(float mapY) {
+        return (pxCenterY - mapY) * 10f / tenMetersInPixels;
+    }
+
+    /**
+     * the last bitmap decoded by {@link #requestBitmap}, never decodes on the calling thread
+     *
+     * @return bitmap or null when nothing has been decoded yet
+     */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * the last bitmap decoded by {@link #requestBitmap} together with the floor plan pixels it
+     * covers
+     *
+     * @param outRegion set to the region of the bitmap, the whole floor plan if it has none
+     * @return bitmap or null when nothing has been decoded yet
+     */
+    public synchronized Bitmap getBitmap(Rect outRegion) {
+        if (bitmap != null) {
+            if (bitmapRegion != null) {
+                outRegion.set(bitmapRegion);
+            } else {
+                outRegion.set(0, 0, getBitmapWidth(), getBitmapHeight());
+            }
         }
         return bitmap;
     }
 
-    Integer getBitmapHeight() {
+    /**
+     * sample size of {@link #getBitmap()}, one bitmap pixel covers sampleSize x sampleSize
+     * floor plan pixels
+     *
+     * @return
+     */
+    public int getBitmapSampleSize() {
+        return bitmapSampleSize;
+    }
+
+    /**
+     * floor plan pixels covered by {@link #getBitmap()}
+     *
+     * @return the region or null for the whole floor plan
+     */
+    public synchronized Rect getBitmapRegion() {
+        return bitmapRegion;
+    }
+
+    /**
+     * @return height of the floor plan image in pixels, reads its header once
+     */
+    public Integer getBitmapHeight() {
         if (bitmapHeight == null) {
-            bitmapHeight = getBitmap().getHeight();
+            decodeBounds();
         }
         return bitmapHeight;
     }
 
-    Integer getBitmapWidth() {
+    /**
+     * @return width of the floor plan image in pixels, reads its header once
+     */
+    public Integer getBitmapWidth() {
         if (bitmapWidth == null) {
-            bitmapWidth = getBitmap().getWidth();
+            decodeBounds();
         }
         return bitmapWidth;
     }
 
+    private void decodeBounds() {
+        // reads the image header only
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(getFloorPlanFile().getAbsolutePath(), opts);
+        bitmapWidth = opts.outWidth;
+        bitmapHeight = opts.outHeight;
+    }
+
+    /**
+     * the largest power of two sample size for which the decoded floor plan has still at least
+     * the resolution of the screen
+     *
+     * @param tenMetersInPixels floor plan pixels in 10 meters
+     * @param scaleFactorCmToPx screen pixels in 1 cm (grid scale)
+     * @return 1 for a scale which is not positive and finite
+     */
+    public static int computeSampleSize(int tenMetersInPixels, float scaleFactorCmToPx) {
+        // screen pixels per one floor plan pixel
+        float screenPxPerFloorPlanPx = 1000 * scaleFactorCmToPx / tenMetersInPixels;
+        if (!(screenPxPerFloorPlanPx > 0) || Float.isInfinite(screenPxPerFloorPlanPx)) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while (sampleSize < MAX_SAMPLE_SIZE && sampleSize * 2 * screenPxPerFloorPlanPx <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * decode the floor plan asynchronously with the sample size matching the grid scale,
+     * a previous request which is still pending is cancelled, an equal one is kept
+     * <p>
+     * The listener is called on a decoder thread, also when the bitmap is already decoded.
+     * The delivered bitmap is never reused for decoding until it is handed back with
+     * {@link #releaseBitmap(Bitmap)}, one not handed back is left to the GC. Request only the
+     * visible region, and only when the sample size or the region changes, a whole large floor
+     * plan at sample size 1 may not fit into memory.
+     *
+     * @param scaleFactorCmToPx screen pixels in 1 cm (grid scale)
+     * @param region            floor plan pixels to decode, null for the whole floor plan
+     * @param listener
+     */
+    public synchronized void requestBitmap(float scaleFactorCmToPx, @Nullable Rect region,
+                                           OnBitmapDecodedListener listener) {
+        final int sampleSize = computeSampleSize(tenMetersInPixels, scaleFactorCmToPx);
+        if (pendingDecode != null && !pendingDecode.isDone() && pendingSampleSize == sampleSize
+                && sameRegion(region, pendingRegion)) {
+            // the same request is on its way
+            return;
+        }
+        int generation = requestGeneration.incrementAndGet();
+        // the user zoomed again, the previous result is not needed anymore
+        cancelPendingDecode();
+        pendingSampleSize = sampleSize;
+        pendingRegion = region != null ? new Rect(region) : null;
+        pendingDecode = new FutureTask<Void>(new DecodeTask(generation, sampleSize,
+                pendingRegion, listener), null);
+        DECODE_EXECUTOR.execute(pendingDecode);
+    }
+
+    private void cancelPendingDecode() {
+        if (pendingDecode != null) {
+            pendingDecode.cancel(false);
+            // free its place in the shared queue
+            DECODE_EXECUTOR.remove(pendingDecode);
+            pendingDecode = null;
+        }
+    }
+
+    /**
+     * hand a bitmap delivered by {@link #requestBitmap} back once it is not drawn anymore, it
+     * may be reused by the next decode
+     *
+     * @param released
+     */
+    public synchronized void releaseBitmap(Bitmap released) {
+        if (released != null && released != bitmap && reusableBitmap == null
+                && !released.isRecycled()) {
+            reusableBitmap = released;
+        }
+    }
+
+    private static boolean sameRegion(@Nullable Rect a, @Nullable Rect b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private boolean isStale(int generation) {
+        return generation != requestGeneration.get();
+    }
+
+    /**
+     * @return the current bitmap if it was decoded for this request, otherwise null
+     */
+    private synchronized Bitmap getDecoded(int sampleSize, @Nullable Rect region) {
+        if (bitmap != null && bitmapSampleSize == sampleSize && sameRegion(region, bitmapRegion)) {
+            return bitmap;
+        }
+        return null;
+    }
+
+    private Bitmap decodeRegion(int sampleSize, @Nullable Rect region) throws IOException {
+        BitmapRegionDecoder decoder;
+        Bitmap reuse;
+        synchronized (this) {
+            if (regionDecoder == null) {
+                regionDecoder = BitmapRegionDecoder.newInstance(
+                        getFloorPlanFile().getAbsolutePath(), false);
+            }
+            decoder = regionDecoder;
+            reuse = reusableBitmap;
+            reusableBitmap = null;
+        }
+        Rect decodedRegion = region != null ? region
+                : new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inScaled = false;
+        opts.inSampleSize = sampleSize;
+        opts.inMutable = true;
+        int width = (decodedRegion.width() + sampleSize - 1) / sampleSize;
+        int height = (decodedRegion.height() + sampleSize - 1) / sampleSize;
+        if (reuse != null && !reuse.isRecycled() && reuse.getWidth() == width
+                && reuse.getHeight() == height
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            opts.inBitmap = reuse;
+        }
+        try {
+            return decoder.decodeRegion(decodedRegion, opts);
+        } catch (IllegalArgumentException e) {
+            // the buffer could not be reused, decode into a new one
+            opts.inBitmap = null;
+            return decoder.decodeRegion(decodedRegion, opts);
+        }
+    }
+
+    private synchronized void publish(Bitmap decoded, int sampleSize, @Nullable Rect region) {
+        // the previous bitmap may still be drawn, it is reused only after releaseBitmap
+        bitmap = decoded;
+        bitmapSampleSize = sampleSize;
+        bitmapRegion = region;
+    }
+
+    private synchronized void offerReusable(Bitmap decoded) {
+        if (reusableBitmap == null && decoded != bitmap) {
+            reusableBitmap = decoded;
+        }
+    }
+
+    private File getFloorPlanFile() {
+        return new File(mapview.getContext().getFilesDir(), getFloorPlanFileName());
+    }
+
     public static Bitmap newBitmapFromFile(String floorPlanFileName) {
         BitmapFactory.Options opts = new BitmapFactory.Options();
         opts.inScaled = false;
@@ -95,13 +391,21 @@ public class FloorPlan {
         return BitmapFactory.decodeFile(file.getAbsolutePath(), opts);
     }
 
-    public void recycleBitmap() {
+    public synchronized void recycleBitmap() {
+        requestGeneration.incrementAndGet();
+        cancelPendingDecode();
         if (bitmap != null && !bitmap.isRecycled()) {
             bitmap.recycle();
             bitmap = null;
             bitmapHeight = null;
             bitmapWidth = null;
         }
+        if (reusableBitmap != null && !reusableBitmap.isRecycled()) {
+            reusableBitmap.recycle();
+        }
+        reusableBitmap = null;
+        // the decoder may still be used by a decode in progress, leave it to the GC
+        regionDecoder = null;
     }
 
     @Override
@@ -144,4 +448,51 @@ public class FloorPlan {
         return floorPlanFileName;
     }
 
+    private class DecodeTask implements Runnable {
+
+        private final int generation;
+        private final int sampleSize;
+        private final Rect region;
+        private final OnBitmapDecodedListener listener;
+
+        DecodeTask(int generation, int sampleSize, Rect region, OnBitmapDecodedListener listener) {
+            this.generation = generation;
+            this.sampleSize = sampleSize;
+            this.region = region;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (isStale(generation)) {
+                return;
+            }
+            Bitmap decoded = getDecoded(sampleSize, region);
+            if (decoded != null) {
+                // already have it
+                listener.onBitmapDecoded(FloorPlan.this, decoded);
+                return;
+            }
+            try {
+                decoded = decodeRegion(sampleSize, region);
+            } catch (IOException e) {
+                Log.e(TAG, "can not decode floor plan " + getFloorPlanFileName(), e);
+            }
+            if (decoded == null) {
+                return;
+            }
+            if (isStale(generation)) {
+                // keep the buffer for the request which made this one stale
+                offerReusable(decoded);
+                return;
+            }
+            publish(decoded, sampleSize, region);
+            listener.onBitmapDecoded(FloorPlan.this, decoded);
+        }
+    }
+
+    public interface OnBitmapDecodedListener {
+        void onBitmapDecoded(FloorPlan floorPlan, Bitmap bitmap);
+    }
+
 }
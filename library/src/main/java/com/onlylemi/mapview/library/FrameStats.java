@@ -0,0 +1,75 @@
+package com.onlylemi.mapview.library;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * FrameStats
+ * <p>
+ * Snapshot of the frame timing of {@link MapView}: the whole lockCanvas / unlockCanvasAndPost
+ * cycle and every {@code layer.draw(...)} call, over the recent rolling window.
+ *
+ * @author: onlylemi
+ */
+public final class FrameStats {
+
+    // frames drawn since the stats were reset
+    public final long frameCount;
+    // the whole lockCanvas / unlockCanvasAndPost cycle
+    public final Timing frame;
+    // one entry per drawn layer, in drawing order
+    public final List<Timing> layers;
+
+    FrameStats(long frameCount, Timing frame, List<Timing> layers) {
+        this.frameCount = frameCount;
+        this.frame = frame;
+        this.layers = Collections.unmodifiableList(layers);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameStats{" +
+                "frameCount=" + frameCount +
+                ", frame=" + frame +
+                ", layers=" + layers +
+                '}';
+    }
+
+    /**
+     * Timing percentiles of one measured section, in nanoseconds
+     */
+    public static final class Timing {
+
+        // layer class name, or "frame"
+        public final String name;
+        public final int level;
+        public final long count;
+        public final long p50Nanos;
+        public final long p95Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        Timing(String name, int level, LatencyHistogram histogram) {
+            this.name = name;
+            this.level = level;
+            this.count = histogram.getTotalCount();
+            this.p50Nanos = histogram.getPercentileNanos(50);
+            this.p95Nanos = histogram.getPercentileNanos(95);
+            this.p99Nanos = histogram.getPercentileNanos(99);
+            this.maxNanos = histogram.getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return "Timing{" +
+                    "name='" + name + '\'' +
+                    ", level=" + level +
+                    ", count=" + count +
+                    ", p50Nanos=" + p50Nanos +
+                    ", p95Nanos=" + p95Nanos +
+                    ", p99Nanos=" + p99Nanos +
+                    ", maxNanos=" + maxNanos +
+                    '}';
+        }
+    }
+}
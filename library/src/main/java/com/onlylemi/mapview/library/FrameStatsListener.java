@@ -0,0 +1,16 @@
+package com.onlylemi.mapview.library;
+
+/**
+ * FrameStatsListener
+ *
+ * @author: onlylemi
+ */
+public interface FrameStatsListener {
+
+    /**
+     * called on the render thread every few frames with the current frame timing
+     *
+     * @param stats
+     */
+    void onFrameStats(FrameStats stats);
+}
@@ -0,0 +1,111 @@
+package com.onlylemi.mapview.library;
+
+import com.onlylemi.mapview.library.layer.MapBaseLayer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FrameStatsRecorder
+ * <p>
+ * Records the frame and per-layer draw times of {@link MapView} into rolling histograms.
+ * Recording happens on the render thread, snapshots may be taken from any thread.
+ *
+ * @author: onlylemi
+ */
+final class FrameStatsRecorder {
+
+    private static final int DEFAULT_WINDOW_SIZE = 600; // ~10 s at 60 fps
+    private static final String FRAME_NAME = "frame";
+
+    private final LatencyHistogram frameHistogram = new LatencyHistogram(DEFAULT_WINDOW_SIZE);
+    private final Map<MapBaseLayer, LatencyHistogram> layerHistograms = new IdentityHashMap<>();
+    // layers in the order they were first drawn
+    private final List<MapBaseLayer> layerOrder = new ArrayList<>();
+    private MapBaseLayer[] retainedLayers; // layer array of the last prune
+    private long frameCount;
+
+    private volatile FrameStatsListener listener;
+    private volatile int listenerIntervalFrames;
+
+    void setListener(FrameStatsListener listener, int intervalFrames) {
+        this.listenerIntervalFrames = Math.max(1, intervalFrames);
+        this.listener = listener;
+    }
+
+    synchronized void recordLayer(MapBaseLayer layer, long nanos) {
+        LatencyHistogram histogram = layerHistograms.get(layer);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(DEFAULT_WINDOW_SIZE);
+            layerHistograms.put(layer, histogram);
+            layerOrder.add(layer);
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * forget the layers which are not in the layer array of the frame anymore, so removed
+     * layers are neither kept alive nor reported; only scans when the array changed
+     *
+     * @param layers layers of the current frame
+     */
+    synchronized void retainLayers(MapBaseLayer[] layers) {
+        if (layers == retainedLayers) {
+            return;
+        }
+        retainedLayers = layers;
+        for (int i = layerOrder.size() - 1; i >= 0; i--) {
+            MapBaseLayer layer = layerOrder.get(i);
+            if (!contains(layers, layer)) {
+                layerOrder.remove(i);
+                layerHistograms.remove(layer);
+            }
+        }
+    }
+
+    private static boolean contains(MapBaseLayer[] layers, MapBaseLayer layer) {
+        for (MapBaseLayer l : layers) {
+            if (l == layer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * record the whole frame and notify the listener when its interval elapsed
+     *
+     * @param nanos
+     */
+    void recordFrame(long nanos) {
+        long frames;
+        synchronized (this) {
+            frameHistogram.record(nanos);
+            frames = ++frameCount;
+        }
+        FrameStatsListener l = listener;
+        if (l != null && frames % listenerIntervalFrames == 0) {
+            l.onFrameStats(snapshot());
+        }
+    }
+
+    synchronized FrameStats snapshot() {
+        List<FrameStats.Timing> layers = new ArrayList<>(layerOrder.size());
+        for (MapBaseLayer layer : layerOrder) {
+            layers.add(new FrameStats.Timing(layer.getClass().getSimpleName(), layer.level,
+                    layerHistograms.get(layer)));
+        }
+        return new FrameStats(frameCount, new FrameStats.Timing(FRAME_NAME, -1, frameHistogram),
+                layers);
+    }
+
+    synchronized void reset() {
+        frameHistogram.reset();
+        layerHistograms.clear();
+        layerOrder.clear();
+        retainedLayers = null;
+        frameCount = 0;
+    }
+}
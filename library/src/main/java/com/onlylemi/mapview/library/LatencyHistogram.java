@@ -0,0 +1,118 @@
+package com.onlylemi.mapview.library;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram
+ * <p>
+ * Rolling log-linear histogram of durations. Values are counted in microsecond buckets, exact
+ * below 8 us and with 8 sub-buckets per power of two above (about 12 % resolution). The window
+ * rolls over every {@code windowSize} samples: percentiles are computed over the current and the
+ * previous window, so they always cover between {@code windowSize} and {@code 2 * windowSize}
+ * most recent samples. Recording is O(1) and does not allocate.
+ *
+ * @author: onlylemi
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 30; // ~17 minutes, anything longer is clamped
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1)
+            * SUB_BUCKETS;
+
+    private final int windowSize;
+    private long[] current = new long[BUCKETS];
+    private long[] previous = new long[BUCKETS];
+    private int currentCount;
+    private int previousCount;
+    private long currentMaxNanos;
+    private long previousMaxNanos;
+    private long totalCount;
+
+    LatencyHistogram(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    void record(long nanos) {
+        if (currentCount == windowSize) {
+            // roll the window
+            long[] swap = previous;
+            previous = current;
+            current = swap;
+            Arrays.fill(current, 0);
+            previousCount = currentCount;
+            previousMaxNanos = currentMaxNanos;
+            currentCount = 0;
+            currentMaxNanos = 0;
+        }
+        current[bucketOf(nanos)]++;
+        currentCount++;
+        totalCount++;
+        if (nanos > currentMaxNanos) {
+            currentMaxNanos = nanos;
+        }
+    }
+
+    void reset() {
+        Arrays.fill(current, 0);
+        Arrays.fill(previous, 0);
+        currentCount = previousCount = 0;
+        currentMaxNanos = previousMaxNanos = 0;
+        totalCount = 0;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMaxNanos() {
+        return Math.max(currentMaxNanos, previousMaxNanos);
+    }
+
+    /**
+     * value at the given percentile of the rolling window
+     *
+     * @param percentile 0 - 100
+     * @return upper bound of the bucket in nanoseconds, 0 when empty
+     */
+    long getPercentileNanos(double percentile) {
+        long count = currentCount + previousCount;
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += current[i] + previous[i];
+            if (seen >= rank) {
+                // largest value of the bucket, but never more than the real maximum
+                return Math.min((bucketUpperBoundMicros(i) + 1) * 1000 - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    private static long bucketUpperBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,92 @@
+package com.onlylemi.mapview.library;
+
+import com.onlylemi.mapview.library.layer.MapBaseLayer;
+
+import java.util.AbstractList;
+
+/**
+ * LayerList
+ * <p>
+ * Copy-on-write list of layers sorted by {@link MapBaseLayer#level}. Layers are added from any
+ * thread while the render thread draws them; the render thread iterates over {@link #array()},
+ * which neither allocates nor fails on concurrent modification.
+ *
+ * @author: onlylemi
+ */
+final class LayerList extends AbstractList<MapBaseLayer> {
+
+    private static final MapBaseLayer[] EMPTY = new MapBaseLayer[0];
+
+    private volatile MapBaseLayer[] layers = EMPTY;
+
+    /**
+     * current layers, must not be modified
+     *
+     * @return
+     */
+    MapBaseLayer[] array() {
+        return layers;
+    }
+
+    @Override
+    public MapBaseLayer get(int index) {
+        return layers[index];
+    }
+
+    @Override
+    public int size() {
+        return layers.length;
+    }
+
+    /**
+     * add layer after all layers with the same or lower level
+     *
+     * @param layer
+     * @return
+     */
+    @Override
+    public synchronized boolean add(MapBaseLayer layer) {
+        MapBaseLayer[] current = layers;
+        int index = current.length;
+        while (index > 0 && layer.level < current[index - 1].level) {
+            index--;
+        }
+        add(index, layer);
+        return true;
+    }
+
+    @Override
+    public synchronized void add(int index, MapBaseLayer layer) {
+        MapBaseLayer[] current = layers;
+        if (index < 0 || index > current.length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + current.length);
+        }
+        MapBaseLayer[] updated = new MapBaseLayer[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        updated[index] = layer;
+        System.arraycopy(current, index, updated, index + 1, current.length - index);
+        layers = updated;
+        modCount++;
+    }
+
+    @Override
+    public synchronized MapBaseLayer set(int index, MapBaseLayer layer) {
+        MapBaseLayer[] updated = layers.clone();
+        MapBaseLayer old = updated[index];
+        updated[index] = layer;
+        layers = updated;
+        return old;
+    }
+
+    @Override
+    public synchronized MapBaseLayer remove(int index) {
+        MapBaseLayer[] current = layers;
+        MapBaseLayer old = current[index];
+        MapBaseLayer[] updated = new MapBaseLayer[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        layers = updated;
+        modCount++;
+        return old;
+    }
+}
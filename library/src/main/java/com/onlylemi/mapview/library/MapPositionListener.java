@@ -0,0 +1,63 @@
+package com.onlylemi.mapview.library;
+
+import android.graphics.PointF;
+
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.PositionListener;
+import com.onlylemi.mapview.library.layer.LocationLayer;
+
+/**
+ * MapPositionListener
+ * <p>
+ * Publishes the fixes of a positioning engine to the map: every fix is converted from meters to
+ * floor plan pixels and stored in a {@link TagPositionStore} (drawn by a TagLayer); one
+ * followed tag may also move a {@link LocationLayer}. May be called from several engine
+ * threads, does not allocate per fix.
+ *
+ * @author: onlylemi
+ */
+public class MapPositionListener implements PositionListener {
+
+    private final MapView mapView;
+    private final FloorPlan floorPlan;
+    private final TagPositionStore store;
+
+    private volatile long followedTagId;
+    private volatile LocationLayer locationLayer;
+    private final PointF locationPosition = new PointF();
+
+    public MapPositionListener(MapView mapView, FloorPlan floorPlan, TagPositionStore store) {
+        this.mapView = mapView;
+        this.floorPlan = floorPlan;
+        this.store = store;
+    }
+
+    /**
+     * show the fixes of a tag in a location layer
+     *
+     * @param tagId
+     * @param locationLayer null to stop following
+     */
+    public void follow(long tagId, LocationLayer locationLayer) {
+        this.followedTagId = tagId;
+        this.locationLayer = locationLayer;
+        if (locationLayer != null) {
+            locationLayer.setCurrentPosition(locationPosition);
+        }
+    }
+
+    @Override
+    public void onFix(Fix fix) {
+        float x = floorPlan.toMapX(fix.x);
+        float y = floorPlan.toMapY(fix.y);
+        // the store triggers the refresh of its TagLayer
+        store.update(fix.tagId, x, y);
+
+        LocationLayer layer = locationLayer;
+        if (layer != null && fix.tagId == followedTagId) {
+            // the render thread may see x and y of different fixes for one frame
+            locationPosition.set(x, y);
+            mapView.refresh();
+        }
+    }
+}
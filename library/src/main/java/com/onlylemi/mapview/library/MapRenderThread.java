@@ -0,0 +1,127 @@
+package com.onlylemi.mapview.library;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * MapRenderThread
+ * <p>
+ * Dedicated render thread of {@link MapView}. Refresh requests only mark the scene dirty, the
+ * actual drawing happens once per vsync (Choreographer frame callback), so any number of
+ * requests between two frames collapse into a single draw. Choreographer is only referenced by
+ * {@link VsyncCallback}, which is loaded from API 16, below that frames are posted every 16 ms.
+ *
+ * @author: onlylemi
+ */
+final class MapRenderThread extends HandlerThread {
+
+    private static final String TAG = "MapRenderThread";
+    // used when Choreographer is not available (API < 16)
+    private static final long FALLBACK_FRAME_INTERVAL_MS = 16;
+
+    private final MapView mapView;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private volatile Handler handler;
+    private VsyncCallback vsyncCallback; // accessed on the render thread only
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                if (vsyncCallback == null) {
+                    // the Choreographer of the render thread looper
+                    vsyncCallback = new VsyncCallback(MapRenderThread.this);
+                }
+                vsyncCallback.post();
+            } else {
+                handler.postAtTime(fallbackFrame, nextFallbackFrameTime());
+            }
+        }
+    };
+
+    private final Runnable fallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+
+    MapRenderThread(MapView mapView) {
+        super(TAG, Process.THREAD_PRIORITY_DISPLAY);
+        this.mapView = mapView;
+    }
+
+    /**
+     * start the thread and prepare the handler of its looper
+     */
+    void startRendering() {
+        start();
+        handler = new Handler(getLooper());
+    }
+
+    /**
+     * stop rendering, pending frames are dropped
+     */
+    void stopRendering() {
+        if (handler != null) {
+            handler.removeCallbacksAndMessages(null);
+        }
+        quit();
+    }
+
+    /**
+     * mark the scene dirty and make sure a frame is scheduled, may be called from any thread
+     */
+    void requestRender() {
+        dirty.set(true);
+        if (handler != null && frameScheduled.compareAndSet(false, true)) {
+            handler.post(scheduleFrame);
+        }
+    }
+
+    private void doFrame() {
+        // allow the next request (possibly issued while drawing) to schedule a new frame
+        frameScheduled.set(false);
+        if (dirty.getAndSet(false)) {
+            mapView.drawFrame();
+        }
+    }
+
+    private static long nextFallbackFrameTime() {
+        long now = SystemClock.uptimeMillis();
+        return now - now % FALLBACK_FRAME_INTERVAL_MS + FALLBACK_FRAME_INTERVAL_MS;
+    }
+
+    /**
+     * vsync frame callback, a class of its own so that MapRenderThread loads below API 16
+     */
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class VsyncCallback implements Choreographer.FrameCallback {
+
+        private final MapRenderThread thread;
+        private final Choreographer choreographer;
+
+        VsyncCallback(MapRenderThread thread) {
+            this.thread = thread;
+            this.choreographer = Choreographer.getInstance();
+        }
+
+        void post() {
+            choreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            thread.doFrame();
+        }
+    }
+}
@@ -7,16 +7,18 @@ import android.graphics.Matrix;
 import android.graphics.Picture;
 import android.graphics.PointF;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
 import com.onlylemi.mapview.library.layer.MapBaseLayer;
 import com.onlylemi.mapview.library.layer.MapLayer;
+import com.onlylemi.mapview.library.tile.TilePyramid;
 import com.onlylemi.mapview.library.utils.MapMath;
 import com.onlylemi.mapview.library.utils.MapUtils;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -33,9 +35,11 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
     private static final int TOUCH_STATE_ROTATE = 3; // rotate(two points)
     private static final int TOUCH_STATE_TWO_POINTED = 4; // two points touch
     private SurfaceHolder holder;
+    private final Object surfaceLock = new Object(); // guards holder while a frame is drawn
+    private volatile MapRenderThread renderThread;
     private MapViewListener mapViewListener = null;
-    private boolean isMapLoadFinish = false;
-    private List<MapBaseLayer> layers; // all layers
+    private volatile boolean isMapLoadFinish = false;
+    private LayerList layers; // all layers
     private MapLayer mapLayer;
     private float minZoom = 0.5f;
     private float maxZoom = 3.0f;
@@ -43,7 +47,14 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
     private PointF lastMove = new PointF();
     private PointF mid = new PointF();
     private Matrix saveMatrix = new Matrix();
+    // guards currentMatrix, currentZoom, currentRotateDegrees and invertMatrix
+    private final Object matrixLock = new Object();
     private Matrix currentMatrix = new Matrix();
+    private final Matrix touchMatrix = new Matrix(); // next matrix of a gesture, UI thread only
+    private Matrix frameMatrix = new Matrix(); // snapshot of currentMatrix, render thread only
+    private final Matrix invertMatrix = new Matrix(); // scratch of convertMapXYToScreenXY
+    private final StaticLayerCache staticLayerCache = new StaticLayerCache();
+    private final FrameStatsRecorder frameStats = new FrameStatsRecorder();
     private float currentZoom = 1.0f;
     private float saveZoom = 0f;
     private float currentRotateDegrees = 0.0f;
@@ -72,64 +83,137 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
     private void initMapView() {
         getHolder().addCallback(this);
 
-        layers = new ArrayList<MapBaseLayer>() {
-            @Override
-            public boolean add(MapBaseLayer layer) {
-                if (layers.size() != 0) {
-                    if (layer.level >= this.get(this.size() - 1).level) {
-                        super.add(layer);
-                    } else {
-                        for (int i = 0; i < layers.size(); i++) {
-                            if (layer.level < this.get(i).level) {
-                                super.add(i, layer);
-                                break;
-                            }
-                        }
-                    }
-                } else {
-                    super.add(layer);
-                }
-                return true;
-            }
-        };
+        // layers are drawn on the render thread while being added from other threads
+        layers = new LayerList();
     }
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
-        this.holder = holder;
+        synchronized (surfaceLock) {
+            this.holder = holder;
+        }
+        MapRenderThread thread = new MapRenderThread(this);
+        thread.startRendering();
+        renderThread = thread;
         refresh();
     }
 
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-
+        refresh();
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
-
+        MapRenderThread thread = renderThread;
+        renderThread = null;
+        if (thread != null) {
+            thread.stopRendering();
+        }
+        // wait for the frame in progress, the surface must not be used after we return
+        synchronized (surfaceLock) {
+            this.holder = null;
+            staticLayerCache.release();
+        }
     }
 
     /**
      * reload mapview
+     * <p>
+     * Only marks the scene dirty, the layers are drawn on the render thread at the next vsync.
+     * Can be called from any thread and any number of times per frame.
      */
     public void refresh() {
-        if (holder != null) {
+        MapRenderThread thread = renderThread;
+        if (thread != null) {
+            thread.requestRender();
+        }
+    }
+
+    /**
+     * draw all layers, called on the render thread once per dirty frame
+     */
+    void drawFrame() {
+        synchronized (surfaceLock) {
+            if (holder == null) {
+                return;
+            }
+            long frameStart = System.nanoTime();
             Canvas canvas = holder.lockCanvas();
-            if (canvas != null) {
-                canvas.drawColor(-1);
+            if (canvas == null) {
+                return;
+            }
+            try {
                 if (isMapLoadFinish) {
-                    for (MapBaseLayer layer : layers) {
+                    // the matrix may be changed by touch while the layers are drawn
+                    float zoom;
+                    float rotateDegrees;
+                    synchronized (matrixLock) {
+                        frameMatrix.set(currentMatrix);
+                        zoom = currentZoom;
+                        rotateDegrees = currentRotateDegrees;
+                    }
+                    // static layers come from the cached bitmap, dynamic ones are drawn on top
+                    MapBaseLayer[] frameLayers = layers.array();
+                    frameStats.retainLayers(frameLayers);
+                    int staticCount = StaticLayerCache.countStaticLayers(frameLayers);
+                    if (staticCount > 0) {
+                        staticLayerCache.draw(canvas, frameLayers, staticCount, frameMatrix, zoom,
+                                rotateDegrees, frameStats);
+                    } else {
+                        canvas.drawColor(-1);
+                    }
+                    for (int i = staticCount; i < frameLayers.length; i++) {
+                        MapBaseLayer layer = frameLayers[i];
                         if (layer.isVisible) {
-                            layer.draw(canvas, currentMatrix, currentZoom, currentRotateDegrees);
+                            long layerStart = System.nanoTime();
+                            layer.draw(canvas, frameMatrix, zoom, rotateDegrees);
+                            frameStats.recordLayer(layer, System.nanoTime() - layerStart);
                         }
                     }
+                } else {
+                    canvas.drawColor(-1);
                 }
+            } finally {
                 holder.unlockCanvasAndPost(canvas);
             }
+            frameStats.recordFrame(System.nanoTime() - frameStart);
         }
     }
 
+    /**
+     * re-render the static layers at the next frame, for static layers whose content changed
+     * without a change of the map matrix, zoom or rotation
+     */
+    public void invalidateStaticLayers() {
+        staticLayerCache.invalidate();
+        refresh();
+    }
+
+    /**
+     * set frame stats listener, called on the render thread every {@code intervalFrames} frames
+     * with the frame and per-layer draw time percentiles
+     *
+     * @param listener       listener or null to stop notifications
+     * @param intervalFrames
+     */
+    public void setFrameStatsListener(FrameStatsListener listener, int intervalFrames) {
+        frameStats.setListener(listener, intervalFrames);
+    }
+
+    /**
+     * snapshot of the frame and per-layer draw times over the recent frames
+     *
+     * @return
+     */
+    public FrameStats getFrameStats() {
+        return frameStats.snapshot();
+    }
+
+    public void resetFrameStats() {
+        frameStats.reset();
+    }
+
     public void loadMap(Bitmap bitmap) {
         loadMap(MapUtils.getPictureFromBitmap(bitmap));
     }
@@ -146,27 +230,89 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
             @Override
             public void run() {
                 if (picture != null) {
-                    if (mapLayer == null) {
-                        mapLayer = new MapLayer(MapView.this);
-                        // add map image layer
-                        layers.add(mapLayer);
-                    }
-                    mapLayer.setImage(picture);
-                    if (mapViewListener != null) {
-                        // load map success, and callback
-                        mapViewListener.onMapLoadSuccess();
-                    }
-                    isMapLoadFinish = true;
-                    refresh();
+                    obtainMapLayer().setImage(picture);
+                    onMapLoadSuccess();
                 } else {
-                    if (mapViewListener != null) {
-                        mapViewListener.onMapLoadFail();
-                    }
+                    onMapLoadFail();
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * load large map image as a tile pyramid, only the tiles visible at the current zoom are
+     * decoded and kept in memory
+     *
+     * @param imagePath path of the image file
+     */
+    public void loadMap(final String imagePath) {
+        isMapLoadFinish = false;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                TilePyramid tiles = null;
+                try {
+                    tiles = TilePyramid.newInstance(imagePath);
+                } catch (IOException e) {
+                    Log.e(TAG, "can not open map image " + imagePath, e);
+                }
+                if (tiles != null) {
+                    obtainMapLayer().setTiles(tiles);
+                    onMapLoadSuccess();
+                } else {
+                    onMapLoadFail();
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * load a floor plan, only its visible region is decoded, at the resolution of the current
+     * zoom
+     *
+     * @param floorPlan
+     */
+    public void loadMap(final FloorPlan floorPlan) {
+        isMapLoadFinish = false;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (floorPlan != null && floorPlan.getBitmapWidth() > 0) {
+                    obtainMapLayer().setFloorPlan(floorPlan);
+                    onMapLoadSuccess();
+                } else {
+                    onMapLoadFail();
                 }
             }
         }).start();
     }
 
+    private MapLayer obtainMapLayer() {
+        if (mapLayer == null) {
+            mapLayer = new MapLayer(MapView.this);
+            // add map image layer
+            layers.add(mapLayer);
+        }
+        return mapLayer;
+    }
+
+    private void onMapLoadSuccess() {
+        if (mapViewListener != null) {
+            // load map success, and callback
+            mapViewListener.onMapLoadSuccess();
+        }
+        isMapLoadFinish = true;
+        refresh();
+    }
+
+    private void onMapLoadFail() {
+        if (mapViewListener != null) {
+            mapViewListener.onMapLoadFail();
+        }
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         if (!isMapLoadFinish) {
@@ -178,16 +324,20 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
 
         switch (event.getAction() & MotionEvent.ACTION_MASK) {
             case MotionEvent.ACTION_DOWN:
-                saveMatrix.set(currentMatrix);
+                synchronized (matrixLock) {
+                    saveMatrix.set(currentMatrix);
+                }
                 startTouch.set(event.getX(), event.getY());
                 lastMove.set(event.getX(), event.getY());
                 currentTouchState = MapView.TOUCH_STATE_SCROLL;
                 break;
             case MotionEvent.ACTION_POINTER_DOWN:
                 if (event.getPointerCount() == 2) {
-                    saveMatrix.set(currentMatrix);
-                    saveZoom = currentZoom;
-                    saveRotateDegrees = currentRotateDegrees;
+                    synchronized (matrixLock) {
+                        saveMatrix.set(currentMatrix);
+                        saveZoom = currentZoom;
+                        saveRotateDegrees = currentRotateDegrees;
+                    }
                     startTouch.set(event.getX(0), event.getY(0));
                     currentTouchState = MapView.TOUCH_STATE_TWO_POINTED;
 
@@ -214,10 +364,10 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
                         && Math.abs(event.getY() - lastMove.y) > 0) {
                     switch (currentTouchState) {
                         case MapView.TOUCH_STATE_SCROLL:
-                            currentMatrix.set(saveMatrix);
-                            currentMatrix.postTranslate(event.getX() - startTouch.x, event.getY() -
+                            touchMatrix.set(saveMatrix);
+                            touchMatrix.postTranslate(event.getX() - startTouch.x, event.getY() -
                                     startTouch.y);
-                            refresh();
+                            publishMatrix(touchMatrix, currentZoom, currentRotateDegrees);
                             break;
                         case MapView.TOUCH_STATE_TWO_POINTED:
                             if (!isScaleAndRotateTogether) {
@@ -236,7 +386,7 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
                                     currentTouchState = MapView.TOUCH_STATE_SCALE;
                                 }
                             } else {
-                                currentMatrix.set(saveMatrix);
+                                touchMatrix.set(saveMatrix);
                                 newDist = distance(event, mid);
                                 newDegree = rotation(event, mid);
 
@@ -247,16 +397,14 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
                                 } else if (scale * saveZoom > maxZoom) {
                                     scale = maxZoom / saveZoom;
                                 }
-                                currentZoom = scale * saveZoom;
-                                currentRotateDegrees = (newDegree - oldDegree + currentRotateDegrees)
-                                        % 360;
-                                currentMatrix.postScale(scale, scale, mid.x, mid.y);
-                                currentMatrix.postRotate(rotate, mid.x, mid.y);
-                                refresh();
+                                touchMatrix.postScale(scale, scale, mid.x, mid.y);
+                                touchMatrix.postRotate(rotate, mid.x, mid.y);
+                                publishMatrix(touchMatrix, scale * saveZoom,
+                                        (newDegree - oldDegree + currentRotateDegrees) % 360);
                             }
                             break;
                         case MapView.TOUCH_STATE_SCALE:
-                            currentMatrix.set(saveMatrix);
+                            touchMatrix.set(saveMatrix);
                             newDist = distance(event, mid);
 //                            newDegree = rotation(event, mid);
 //                            float rotate = newDegree - oldDegree;
@@ -266,19 +414,17 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
                             } else if (scale * saveZoom > maxZoom) {
                                 scale = maxZoom / saveZoom;
                             }
-                            currentZoom = scale * saveZoom;
-                            currentMatrix.postScale(scale, scale, mid.x, mid.y);
-                            refresh();
+                            touchMatrix.postScale(scale, scale, mid.x, mid.y);
+                            publishMatrix(touchMatrix, scale * saveZoom, currentRotateDegrees);
                             break;
                         case MapView.TOUCH_STATE_ROTATE:
-                            currentMatrix.set(saveMatrix);
+                            touchMatrix.set(saveMatrix);
                             newDegree = rotation(event, mid);
                             float rotate = newDegree - oldDegree;
-                            currentRotateDegrees = (rotate + saveRotateDegrees) % 360;
-                            currentRotateDegrees = currentRotateDegrees > 0 ? currentRotateDegrees :
-                                    currentRotateDegrees + 360;
-                            currentMatrix.postRotate(rotate, mid.x, mid.y);
-                            refresh();
+                            float degrees = (rotate + saveRotateDegrees) % 360;
+                            touchMatrix.postRotate(rotate, mid.x, mid.y);
+                            publishMatrix(touchMatrix, currentZoom,
+                                    degrees > 0 ? degrees : degrees + 360);
 //                        Log.i(TAG, "rotate:" + currentRotateDegrees);
                             break;
                         default:
@@ -293,6 +439,23 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
         return true;
     }
 
+    /**
+     * replace the map matrix, zoom and rotation at once, a frame never sees only a part of a
+     * gesture step
+     *
+     * @param matrix        copied
+     * @param zoom
+     * @param rotateDegrees
+     */
+    private void publishMatrix(Matrix matrix, float zoom, float rotateDegrees) {
+        synchronized (matrixLock) {
+            currentMatrix.set(matrix);
+            currentZoom = zoom;
+            currentRotateDegrees = rotateDegrees;
+        }
+        refresh();
+    }
+
     /**
      * set mapview listener
      *
@@ -310,11 +473,25 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
      * @return
      */
     public float[] convertMapXYToScreenXY(float x, float y) {
-        Matrix invertMatrix = new Matrix();
-        float[] value = {x, y};
-        currentMatrix.invert(invertMatrix);
-        invertMatrix.mapPoints(value);
-        return value;
+        return convertMapXYToScreenXY(x, y, new float[2]);
+    }
+
+    /**
+     * convert coordinate of map to coordinate of screen, without allocation
+     *
+     * @param x
+     * @param y
+     * @param out receives the converted x, y
+     * @return out
+     */
+    public float[] convertMapXYToScreenXY(float x, float y, float[] out) {
+        synchronized (matrixLock) {
+            out[0] = x;
+            out[1] = y;
+            currentMatrix.invert(invertMatrix);
+            invertMatrix.mapPoints(out);
+        }
+        return out;
     }
 
     /**
@@ -347,7 +524,9 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
     }
 
     public void translate(float x, float y) {
-        currentMatrix.postTranslate(x, y);
+        synchronized (matrixLock) {
+            currentMatrix.postTranslate(x, y);
+        }
     }
 
     /**
@@ -358,11 +537,13 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
      */
     public void mapCenterWithPoint(float x, float y) {
         float[] goal = {x, y};
-        currentMatrix.mapPoints(goal);
+        synchronized (matrixLock) {
+            currentMatrix.mapPoints(goal);
 
-        float deltaX = getWidth() / 2 - goal[0];
-        float deltaY = getHeight() / 2 - goal[1];
-        currentMatrix.postTranslate(deltaX, deltaY);
+            float deltaX = getWidth() / 2 - goal[0];
+            float deltaY = getHeight() / 2 - goal[1];
+            currentMatrix.postTranslate(deltaX, deltaY);
+        }
     }
 
     public float getCurrentRotateDegrees() {
@@ -375,8 +556,10 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
      * @param degrees
      */
     public void setCurrentRotateDegrees(float degrees) {
-        mapCenterWithPoint(getMapWidth() / 2, getMapHeight() / 2);
-        setCurrentRotateDegrees(degrees, getWidth() / 2, getHeight() / 2);
+        synchronized (matrixLock) {
+            mapCenterWithPoint(getMapWidth() / 2, getMapHeight() / 2);
+            setCurrentRotateDegrees(degrees, getWidth() / 2, getHeight() / 2);
+        }
     }
 
     /**
@@ -387,11 +570,13 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
      * @param y
      */
     public void setCurrentRotateDegrees(float degrees, float x, float y) {
-        currentMatrix.postRotate(degrees - currentRotateDegrees, x, y);
+        synchronized (matrixLock) {
+            currentMatrix.postRotate(degrees - currentRotateDegrees, x, y);
 
-        currentRotateDegrees = degrees % 360;
-        currentRotateDegrees = currentRotateDegrees > 0 ? currentRotateDegrees :
-                currentRotateDegrees + 360;
+            currentRotateDegrees = degrees % 360;
+            currentRotateDegrees = currentRotateDegrees > 0 ? currentRotateDegrees :
+                    currentRotateDegrees + 360;
+        }
     }
 
     public float getCurrentZoom() {
@@ -424,8 +609,10 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
     }
 
     public void setCurrentZoom(float zoom, float x, float y) {
-        currentMatrix.postScale(zoom / this.currentZoom, zoom / this.currentZoom, x, y);
-        this.currentZoom = zoom;
+        synchronized (matrixLock) {
+            currentMatrix.postScale(zoom / this.currentZoom, zoom / this.currentZoom, x, y);
+            this.currentZoom = zoom;
+        }
     }
 
     private PointF midPoint(MotionEvent event) {
@@ -452,16 +639,16 @@ public class MapView extends SurfaceView implements SurfaceHolder.Callback {
      */
     public boolean withFloorPlan(float x, float y) {
         float[] goal = convertMapXYToScreenXY(x, y);
-        return goal[0] > 0 && goal[0] < mapLayer.getImage().getWidth() && goal[1] > 0
-                && goal[1] < mapLayer.getImage().getHeight();
+        return goal[0] > 0 && goal[0] < mapLayer.getWidth() && goal[1] > 0
+                && goal[1] < mapLayer.getHeight();
     }
 
     public float getMapWidth() {
-        return mapLayer.getImage().getWidth();
+        return mapLayer.getWidth();
     }
 
     public float getMapHeight() {
-        return mapLayer.getImage().getHeight();
+        return mapLayer.getHeight();
     }
 
 
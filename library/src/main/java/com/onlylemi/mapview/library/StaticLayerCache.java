@@ -0,0 +1,133 @@
+package com.onlylemi.mapview.library;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+
+import com.onlylemi.mapview.library.layer.MapBaseLayer;
+
+import java.util.Arrays;
+
+/**
+ * StaticLayerCache
+ * <p>
+ * Offscreen bitmap holding the leading run of static layers (see {@link MapBaseLayer#isStatic()}).
+ * The bitmap is re-rendered only when the matrix, zoom, rotation, the set of cached layers or the
+ * surface size changes, or after {@link #invalidate()}. Accessed on the render thread only,
+ * except {@link #invalidate()}.
+ *
+ * @author: onlylemi
+ */
+final class StaticLayerCache {
+
+    private static final int BACKGROUND_COLOR = -1;
+
+    private Bitmap bitmap;
+    private Canvas bitmapCanvas;
+
+    private final float[] matrixValues = new float[9];
+    private final float[] cachedMatrixValues = new float[9];
+    private float cachedZoom;
+    private float cachedRotateDegrees;
+    private int cachedLayersSignature;
+    private boolean valid = false;
+    private volatile boolean invalidated = false;
+
+    /**
+     * count the static layers at the bottom of the layers list, they can be cached without
+     * changing the drawing order
+     *
+     * @param layers
+     * @return
+     */
+    static int countStaticLayers(MapBaseLayer[] layers) {
+        int count = 0;
+        while (count < layers.length && layers[count].isStatic()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * force re-render of the cached layers at the next frame, may be called from any thread
+     */
+    void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * draw background and the first {@code count} layers, re-rendering the cache if needed
+     *
+     * @param canvas
+     * @param layers
+     * @param count                number of static layers (see {@link #countStaticLayers(MapBaseLayer[])})
+     * @param currentMatrix
+     * @param currentZoom
+     * @param currentRotateDegrees
+     * @param frameStats           receives the draw time of re-rendered layers
+     */
+    void draw(Canvas canvas, MapBaseLayer[] layers, int count, Matrix currentMatrix,
+              float currentZoom, float currentRotateDegrees, FrameStatsRecorder frameStats) {
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            release();
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmapCanvas = new Canvas(bitmap);
+        }
+
+        currentMatrix.getValues(matrixValues);
+        int layersSignature = getLayersSignature(layers, count);
+        if (invalidated || !valid
+                || !Arrays.equals(matrixValues, cachedMatrixValues)
+                || currentZoom != cachedZoom
+                || currentRotateDegrees != cachedRotateDegrees
+                || layersSignature != cachedLayersSignature) {
+            // clear the flag first, invalidation during rendering triggers another one
+            invalidated = false;
+            render(layers, count, currentMatrix, currentZoom, currentRotateDegrees, frameStats);
+            System.arraycopy(matrixValues, 0, cachedMatrixValues, 0, matrixValues.length);
+            cachedZoom = currentZoom;
+            cachedRotateDegrees = currentRotateDegrees;
+            cachedLayersSignature = layersSignature;
+            valid = true;
+        }
+        canvas.drawBitmap(bitmap, 0, 0, null);
+    }
+
+    /**
+     * drop the bitmap, called when the surface is destroyed
+     */
+    void release() {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            bitmap.recycle();
+        }
+        bitmap = null;
+        bitmapCanvas = null;
+        valid = false;
+    }
+
+    private void render(MapBaseLayer[] layers, int count, Matrix currentMatrix,
+                        float currentZoom, float currentRotateDegrees,
+                        FrameStatsRecorder frameStats) {
+        bitmapCanvas.drawColor(BACKGROUND_COLOR);
+        for (int i = 0; i < count; i++) {
+            MapBaseLayer layer = layers[i];
+            if (layer.isVisible) {
+                long layerStart = System.nanoTime();
+                layer.draw(bitmapCanvas, currentMatrix, currentZoom, currentRotateDegrees);
+                frameStats.recordLayer(layer, System.nanoTime() - layerStart);
+            }
+        }
+    }
+
+    private static int getLayersSignature(MapBaseLayer[] layers, int count) {
+        int signature = count;
+        for (int i = 0; i < count; i++) {
+            MapBaseLayer layer = layers[i];
+            signature = 31 * signature + System.identityHashCode(layer);
+            signature = 31 * signature + (layer.isVisible ? 1 : 0);
+        }
+        return signature;
+    }
+}
@@ -0,0 +1,242 @@
+package com.onlylemi.mapview.library;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * TagPositionStore
+ * <p>
+ * Lock-free store of the last known position of up to {@code capacity} tags, in map coordinates.
+ * Any number of ingest threads may {@link #update} concurrently while the render thread reads.
+ * <p>
+ * Every tag gets a dense index in the order it was first seen, readers iterate
+ * {@code 0 .. size() - 1}. The x, y pair of a tag is packed into one long, so a reader never sees
+ * a torn position; its timestamp is written after the position, a reader may see a position that
+ * is newer than the timestamp but never older. Updates and reads do not allocate, except the
+ * first update of a tag.
+ *
+ * @author: onlylemi
+ */
+public final class TagPositionStore {
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+
+    // open addressing id -> index + 1 (0 while the index is being assigned)
+    private final int hashMask;
+    private final AtomicLongArray hashKeys;
+    private final AtomicIntegerArray hashValues;
+
+    // per index state
+    private final AtomicLongArray ids;
+    private final AtomicLongArray positions; // float x bits << 32 | float y bits
+    private final AtomicLongArray timestamps; // SystemClock.uptimeMillis(), 0 before the first fix
+    private final AtomicReferenceArray<String> labels;
+
+    private volatile OnTagsUpdatedListener listener;
+
+    /**
+     * @param capacity max number of distinct tags, later tags are dropped
+     */
+    public TagPositionStore(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        // keep the hash table at most half full
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.hashMask = tableSize - 1;
+        this.hashKeys = new AtomicLongArray(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            hashKeys.set(i, EMPTY_KEY);
+        }
+        this.hashValues = new AtomicIntegerArray(tableSize);
+        this.ids = new AtomicLongArray(capacity);
+        this.positions = new AtomicLongArray(capacity);
+        this.timestamps = new AtomicLongArray(capacity);
+        this.labels = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * update the position of a tag now
+     *
+     * @param id tag id, must not be {@link Long#MIN_VALUE}
+     * @param x  map x
+     * @param y  map y
+     * @return false if the store is full and the tag is unknown
+     */
+    public boolean update(long id, float x, float y) {
+        return update(id, x, y, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * update the position of a tag
+     *
+     * @param id         tag id, must not be {@link Long#MIN_VALUE}
+     * @param x          map x
+     * @param y          map y
+     * @param timeMillis time of the fix in the {@link SystemClock#uptimeMillis()} time base
+     * @return false if the store is full and the tag is unknown
+     */
+    public boolean update(long id, float x, float y, long timeMillis) {
+        int index = indexOf(id, true);
+        if (index < 0) {
+            return false;
+        }
+        positions.set(index, pack(x, y));
+        timestamps.set(index, Math.max(1, timeMillis));
+        OnTagsUpdatedListener l = listener;
+        if (l != null) {
+            l.onTagsUpdated();
+        }
+        return true;
+    }
+
+    /**
+     * set the label shown for a tag, by default its id
+     *
+     * @param id
+     * @param label
+     */
+    public void setLabel(long id, String label) {
+        int index = indexOf(id, true);
+        if (index >= 0) {
+            labels.set(index, label);
+        }
+    }
+
+    /**
+     * index of a tag
+     *
+     * @param id
+     * @return -1 if the tag was never updated
+     */
+    public int indexOf(long id) {
+        return indexOf(id, false);
+    }
+
+    /**
+     * number of tags, indexes below it are valid
+     *
+     * @return
+     */
+    public int size() {
+        return Math.min(size.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getId(int index) {
+        return ids.get(index);
+    }
+
+    public float getX(int index) {
+        return Float.intBitsToFloat((int) (positions.get(index) >>> 32));
+    }
+
+    public float getY(int index) {
+        return Float.intBitsToFloat((int) positions.get(index));
+    }
+
+    /**
+     * read x and y of a tag at once
+     *
+     * @param index
+     * @param out   receives x, y at out[offset], out[offset + 1]
+     * @param offset
+     * @return time of the position, 0 if the tag has no position yet
+     */
+    public long getPosition(int index, float[] out, int offset) {
+        long timeMillis = timestamps.get(index);
+        long packed = positions.get(index);
+        out[offset] = Float.intBitsToFloat((int) (packed >>> 32));
+        out[offset + 1] = Float.intBitsToFloat((int) packed);
+        return timeMillis;
+    }
+
+    /**
+     * @param index
+     * @return time of the last update, 0 if the tag has no position yet
+     */
+    public long getTimestamp(int index) {
+        return timestamps.get(index);
+    }
+
+    public String getLabel(int index) {
+        return labels.get(index);
+    }
+
+    /**
+     * listener called on the updating thread after every update, must be cheap
+     *
+     * @param listener
+     */
+    public void setOnTagsUpdatedListener(OnTagsUpdatedListener listener) {
+        this.listener = listener;
+    }
+
+    private int indexOf(long id, boolean create) {
+        if (id == EMPTY_KEY) {
+            throw new IllegalArgumentException("invalid tag id: " + id);
+        }
+        int slot = hash(id) & hashMask;
+        while (true) {
+            long key = hashKeys.get(slot);
+            if (key == id) {
+                return awaitIndex(slot);
+            }
+            if (key == EMPTY_KEY) {
+                if (!create || size.get() >= capacity) {
+                    // don't reserve keys for tags that will not be stored
+                    return -1;
+                }
+                if (hashKeys.compareAndSet(slot, EMPTY_KEY, id)) {
+                    int index = size.getAndIncrement();
+                    if (index >= capacity) {
+                        // full, the key stays reserved so later updates fail fast
+                        hashValues.set(slot, -1);
+                        return -1;
+                    }
+                    ids.set(index, id);
+                    labels.set(index, Long.toString(id));
+                    hashValues.set(slot, index + 1);
+                    return index;
+                }
+                // lost the race, the slot may now hold this id
+                continue;
+            }
+            slot = (slot + 1) & hashMask;
+        }
+    }
+
+    private int awaitIndex(int slot) {
+        int value;
+        while ((value = hashValues.get(slot)) == 0) {
+            // another thread is assigning the index
+            Thread.yield();
+        }
+        return value < 0 ? -1 : value - 1;
+    }
+
+    private static long pack(float x, float y) {
+        return ((long) Float.floatToRawIntBits(x) << 32)
+                | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public interface OnTagsUpdatedListener {
+        void onTagsUpdated();
+    }
+}
@@ -23,6 +23,10 @@ public class BitmapLayer extends MapBaseLayer {
 
     private boolean autoScale = false;
 
+    // drawing scratch
+    private final float[] goal = new float[2];
+    private final float[] touchGoal = new float[2];
+
     private OnBitmapClickListener onBitmapClickListener;
 
     public BitmapLayer(MapView mapView, Bitmap bitmap) {
@@ -40,7 +44,8 @@ public class BitmapLayer extends MapBaseLayer {
     @Override
     public boolean onTouch(MotionEvent event) {
         if (onBitmapClickListener != null) {
-            float[] goal = mapView.convertMapXYToScreenXY(event.getX(), event.getY());
+            float[] goal = mapView.convertMapXYToScreenXY(event.getX(), event.getY(),
+                    touchGoal);
             Log.i("BitmapLayer", "goal: " + goal[0] + ", " + goal[1]);
             if (goal[0] > location.x - bitmap.getWidth() / 2 &&
                     goal[0] < location.x + bitmap.getWidth() / 2 &&
@@ -57,7 +62,8 @@ public class BitmapLayer extends MapBaseLayer {
             currentRotateDegrees) {
         if (isVisible && bitmap != null) {
             canvas.save();
-            float[] goal = {location.x, location.y};
+            goal[0] = location.x;
+            goal[1] = location.y;
             if (!autoScale) {
                 currentMatrix.mapPoints(goal);
             } else {
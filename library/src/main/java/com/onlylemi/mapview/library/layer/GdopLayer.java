@@ -0,0 +1,244 @@
+package com.onlylemi.mapview.library.layer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.view.MotionEvent;
+
+import com.onlylemi.mapview.core.coverage.GdopMap;
+import com.onlylemi.mapview.library.FloorPlan;
+import com.onlylemi.mapview.library.MapView;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GdopLayer
+ * <p>
+ * Heatmap of the dilution of precision of a {@link GdopMap}, for planning anchor placements on a
+ * {@link FloorPlan}: green where the anchor geometry is good, red where it is poor and a gray
+ * veil where too few anchors are in range. The grid is in meters and placed on the map through
+ * the floor plan calibration (pxCenterX/Y, tenMetersInPixels), like the GridLayer.
+ * <p>
+ * After moving anchors call {@link #update()}: the map recomputes the affected cells on an
+ * executor and only those pixels of the cached color bitmap are rewritten, the next frame draws
+ * the bitmap scaled to the map. Configure the GdopMap before adding the layer.
+ *
+ * @author: onlylemi
+ */
+public class GdopLayer extends MapBaseLayer {
+
+    private static final int DEFAULT_ALPHA = 0x90;
+    private static final int NO_COVERAGE_COLOR = 0x60808080;
+    private static final float DEFAULT_MAX_GDOP = 5;
+    private static final int COLOR_STEPS = 256;
+
+    private static ThreadPoolExecutor sharedExecutor;
+
+    private final GdopMap map;
+    private final FloorPlan floorPlan;
+    private final Executor executor;
+
+    // DOP 1 .. maxGdop to green .. yellow .. red
+    private final int[] colors = new int[COLOR_STEPS];
+    private volatile float maxGdop = DEFAULT_MAX_GDOP;
+    private volatile boolean recolor;
+
+    // written by the update task, copied to the bitmap on the render thread, guarded by itself
+    private final int[] pixels;
+    private int dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile boolean updatePending;
+    private final Runnable updateTask = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                updatePending = false;
+                boolean all = recolor;
+                recolor = false;
+                if (map.update(executor) > 0 || all) {
+                    render(all);
+                    mapView.invalidateStaticLayers();
+                }
+                updating.set(false);
+            } while (updatePending && updating.compareAndSet(false, true));
+        }
+    };
+
+    private Bitmap bitmap;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix drawMatrix = new Matrix();
+
+    public GdopLayer(MapView mapView, GdopMap map, FloorPlan floorPlan) {
+        this(mapView, map, floorPlan, getSharedExecutor());
+    }
+
+    /**
+     * @param mapView
+     * @param map
+     * @param floorPlan calibration of the map in meters
+     * @param executor  computes the cells, runs the update and chunks of its rows
+     */
+    public GdopLayer(MapView mapView, GdopMap map, FloorPlan floorPlan, Executor executor) {
+        super(mapView);
+        this.map = map;
+        this.floorPlan = floorPlan;
+        this.executor = executor;
+        this.pixels = new int[map.getCols() * map.getRows()];
+        level = MAP_LEVEL + 1;
+        initColors();
+        update();
+    }
+
+    private static synchronized Executor getSharedExecutor() {
+        if (sharedExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            sharedExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "GdopLayer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+            sharedExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sharedExecutor;
+    }
+
+    private void initColors() {
+        for (int i = 0; i < COLOR_STEPS; i++) {
+            float t = i / (float) (COLOR_STEPS - 1);
+            int red = t < 0.5f ? (int) (t * 2 * 255) : 255;
+            int green = t < 0.5f ? 255 : (int) ((1 - t) * 2 * 255);
+            colors[i] = DEFAULT_ALPHA << 24 | red << 16 | green << 8 | 0x20;
+        }
+    }
+
+    /**
+     * recompute the cells of the anchors moved since the last update, asynchronously; calls
+     * while an update runs are coalesced into one more update
+     */
+    public void update() {
+        updatePending = true;
+        if (updating.compareAndSet(false, true)) {
+            executor.execute(updateTask);
+        }
+    }
+
+    /**
+     * DOP shown in full red, lower values fade to green at 1
+     *
+     * @param maxGdop
+     */
+    public void setMaxGdop(float maxGdop) {
+        if (!(maxGdop > 1)) {
+            throw new IllegalArgumentException("max GDOP must be above 1: " + maxGdop);
+        }
+        this.maxGdop = maxGdop;
+        recolor = true;
+        update();
+    }
+
+    public GdopMap getMap() {
+        return map;
+    }
+
+    /**
+     * color the cells of the last update, or all cells, into the pixels
+     */
+    private void render(boolean all) {
+        int cols = map.getCols();
+        int rows = map.getRows();
+        int left = all ? 0 : map.getUpdatedLeft();
+        int top = all ? 0 : map.getUpdatedTop();
+        int right = all ? cols : map.getUpdatedRight();
+        int bottom = all ? rows : map.getUpdatedBottom();
+        float[] values = map.getValues();
+        float scale = (COLOR_STEPS - 1) / (maxGdop - 1);
+        synchronized (pixels) {
+            for (int row = top; row < bottom; row++) {
+                // rows grow up in meters and down in the bitmap
+                int offset = (rows - 1 - row) * cols;
+                for (int col = left; col < right; col++) {
+                    float value = values[row * cols + col];
+                    int color;
+                    if (value != value) {
+                        color = NO_COVERAGE_COLOR;
+                    } else {
+                        // infinite for collinear anchors, clamped to red
+                        color = colors[(int) Math.min(COLOR_STEPS - 1,
+                                Math.max(0, (value - 1) * scale))];
+                    }
+                    pixels[offset + col] = color;
+                }
+            }
+            if (dirtyLeft >= dirtyRight) {
+                dirtyLeft = left;
+                dirtyRight = right;
+                dirtyTop = rows - bottom;
+                dirtyBottom = rows - top;
+            } else {
+                dirtyLeft = Math.min(dirtyLeft, left);
+                dirtyRight = Math.max(dirtyRight, right);
+                dirtyTop = Math.min(dirtyTop, rows - bottom);
+                dirtyBottom = Math.max(dirtyBottom, rows - top);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouch(MotionEvent event) {
+
+        return false;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix currentMatrix, float currentZoom, float
+            currentRotateDegrees) {
+        if (!isVisible) {
+            return;
+        }
+        int cols = map.getCols();
+        int rows = map.getRows();
+        synchronized (pixels) {
+            if (dirtyLeft >= dirtyRight) {
+                if (bitmap == null) {
+                    // nothing computed yet
+                    return;
+                }
+            } else {
+                if (bitmap == null) {
+                    bitmap = Bitmap.createBitmap(cols, rows, Bitmap.Config.ARGB_8888);
+                }
+                bitmap.setPixels(pixels, dirtyTop * cols + dirtyLeft, cols, dirtyLeft, dirtyTop,
+                        dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+                dirtyLeft = dirtyRight = 0;
+            }
+        }
+
+        // one bitmap pixel is one cell, placed by the floor plan calibration
+        float cellPx = map.getCellSize() * floorPlan.tenMetersInPixels / 10f;
+        drawMatrix.setScale(cellPx, cellPx);
+        drawMatrix.postTranslate(floorPlan.toMapX(map.getOriginX()),
+                floorPlan.toMapY(map.getOriginY() + rows * map.getCellSize()));
+        drawMatrix.postConcat(currentMatrix);
+        canvas.drawBitmap(bitmap, drawMatrix, paint);
+    }
+
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+}
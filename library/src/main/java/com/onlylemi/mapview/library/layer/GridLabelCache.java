@@ -0,0 +1,121 @@
+package com.onlylemi.mapview.library.layer;
+
+import com.onlylemi.mapview.library.LengthUnit;
+
+import java.util.Arrays;
+
+/**
+ * GridLabelCache
+ * <p>
+ * Bounded cache of grid labels keyed by distance and {@link LengthUnit}, holding the formatted
+ * string and its measured width. Keys are primitives in an open addressing table, so lookups do
+ * not allocate. When full, the cache is cleared; a grid shows far fewer labels than it holds.
+ * Not thread safe, used on the render thread only.
+ *
+ * @author: onlylemi
+ */
+final class GridLabelCache {
+
+    private final int capacity;
+    private final int mask;
+    private final long[] keys;
+    private final boolean[] used;
+    private final String[] labels;
+    private final float[] widths;
+    private int size;
+    private float textSize;
+
+    /**
+     * @param capacity max number of labels
+     */
+    GridLabelCache(int capacity) {
+        this.capacity = capacity;
+        // keep the table at most half full
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.keys = new long[tableSize];
+        this.used = new boolean[tableSize];
+        this.labels = new String[tableSize];
+        this.widths = new float[tableSize];
+    }
+
+    /**
+     * drop the labels if they were measured with another text size
+     *
+     * @param textSize text size of the paint the labels are measured with
+     */
+    void setTextSize(float textSize) {
+        if (textSize != this.textSize) {
+            clear();
+            this.textSize = textSize;
+        }
+    }
+
+    /**
+     * @param distance
+     * @param unit
+     * @return slot of the label, -1 if it is not cached
+     */
+    int indexOf(int distance, LengthUnit unit) {
+        long key = key(distance, unit);
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * cache a label, may invalidate the slots returned before
+     *
+     * @param distance
+     * @param unit
+     * @param label
+     * @param width    measured width of the label
+     * @return slot of the label
+     */
+    int put(int distance, LengthUnit unit, String label, float width) {
+        if (size >= capacity) {
+            clear();
+        }
+        long key = key(distance, unit);
+        int slot = hash(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        labels[slot] = label;
+        widths[slot] = width;
+        return slot;
+    }
+
+    String getLabel(int slot) {
+        return labels[slot];
+    }
+
+    float getWidth(int slot) {
+        return widths[slot];
+    }
+
+    void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(labels, null);
+        size = 0;
+    }
+
+    private static long key(int distance, LengthUnit unit) {
+        return ((long) unit.ordinal() << 32) | (distance & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -60,14 +60,16 @@ public class GridLayer extends MapBaseLayer {
     private static final int ANCHOR_LABEL_TEXT_SIZE = 12;
     private static final int NODE_SUBINFO_TEXT_SIZE = 10;
     private static final int RANGING_ANCHOR_DISTANCE_LABEL_TEXT_SIZE = 10;
-    private static final int TAG_LABEL_TEXT_SIZE = 13;
+    static final int TAG_LABEL_TEXT_SIZE = 13;
+    private static final int GRID_LABEL_CACHE_SIZE = 512;
     private static final int GRID_LABEL_TEXT_SIZE = 10;
     private static final int ANCHOR_MIN_TRIANGLE_SIZE = 2;
     private static final int ANCHOR_MAX_TRIANGLE_SIZE = 7;
 
-    private static final int FADE_OUT_MISSING_TAGS_BEFORE = 7500;
-    private static final int FADE_OUT_MISSING_TAGS_AFTER = 5000;
-    private static final int FADE_OUT_MISSING_TAGS_DURATION = FADE_OUT_MISSING_TAGS_BEFORE - FADE_OUT_MISSING_TAGS_AFTER;
+    // missing tags fade out between AFTER and BEFORE ms, shared with TagLayer
+    static final int FADE_OUT_MISSING_TAGS_BEFORE = 7500;
+    static final int FADE_OUT_MISSING_TAGS_AFTER = 5000;
+    static final int FADE_OUT_MISSING_TAGS_DURATION = FADE_OUT_MISSING_TAGS_BEFORE - FADE_OUT_MISSING_TAGS_AFTER;
 
     public static final int FLOORPLAN_MIN_PIXELS_IN_TEN_METERS = 200;
     public static final int FLOORPLAN_MAX_PIXELS_IN_TEN_METERS = 10000;
@@ -150,6 +152,7 @@ public class GridLayer extends MapBaseLayer {
     private Paint[] gridPaint = new Paint[GRID_LINES_MAX_LEVELS];
     private ArrayList<GridLine> shownGridLines = new ArrayList<>(GRID_LINES_MAX_LEVELS);
     private Paint gridLabelPaint;
+    private final GridLabelCache gridLabelCache = new GridLabelCache(GRID_LABEL_CACHE_SIZE);
     // GRID_LINE_STEP_CM transformed to scale factor
     private float[] gridLinesMinimalScaleFactor;
 
@@ -170,6 +173,14 @@ public class GridLayer extends MapBaseLayer {
         mFpRotator = new Animator(mapView.getContext(), new AccelerateDecelerateInterpolator());
     }
 
+    /**
+     * the grid depends on its own draw matrix, every change of it invalidates the cache
+     */
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public boolean onTouch(MotionEvent event) {
@@ -200,7 +211,7 @@ public class GridLayer extends MapBaseLayer {
                         log.d("Zoom:drawMatrix = " + drawMatrix);
                     }*/
                     // draw again
-                    mapView.refresh();
+                    mapView.invalidateStaticLayers();
                     //invalidate();
                     return true;
                 }
@@ -218,7 +229,7 @@ public class GridLayer extends MapBaseLayer {
                         // notify callback
                         if (floorPlanChangedCallback != null) floorPlanChangedCallback.call(floorPlan);
                     }
-                    mapView.refresh();
+                    mapView.invalidateStaticLayers();
                     //invalidate();
                     return true;
                 }
@@ -280,7 +291,7 @@ public class GridLayer extends MapBaseLayer {
                 setupZoomAnimation(x, y, ZOOM_FACTOR_ON_DOUBLE_TAP, ZOOM_IN_ON_DOUBLE_TAP_DURATION);
                 ignoreNextAbort = true;
 
-                mapView.refresh();
+                mapView.invalidateStaticLayers();
                 //invalidate();
                 return true;
             }
@@ -306,7 +317,7 @@ public class GridLayer extends MapBaseLayer {
                     if (floorPlanChangedCallback != null) floorPlanChangedCallback.call(floorPlan);
                 }
             }
-            mapView.refresh();
+            mapView.invalidateStaticLayers();
             //invalidate();
             return true;
         }
@@ -328,7 +339,7 @@ public class GridLayer extends MapBaseLayer {
                         Integer.MIN_VALUE, Integer.MAX_VALUE
                 );
                 // draw again
-                mapView.refresh();
+                mapView.invalidateStaticLayers();
                 //invalidate();
             } // else: do not allow fling when adjusting floorplan
             return true;
@@ -436,10 +447,11 @@ public class GridLayer extends MapBaseLayer {
         if (firstShowSysTime + FADE_OUT_MISSING_TAGS_BEFORE > SystemClock.uptimeMillis()) {
             redraw = true;
         }
+        canvas.restore();
         if (redraw) {
-            canvas.restore();
+            // animation in progress, ask for the next frame
+            mapView.invalidateStaticLayers();
         }
-
     }
 
     float matrixAsFloat[] = new float[9];
@@ -676,8 +688,8 @@ public class GridLayer extends MapBaseLayer {
 
     
     private void drawGrid(Canvas canvas) {
-        int i = 0;
-        for (GridLine gridLine : shownGridLines) {
+        for (int i = 0; i < shownGridLines.size(); i++) {
+            GridLine gridLine = shownGridLines.get(i);
             // determine whether we should draw labels
             DrawLabels drawLabels = DrawLabels.NO;
             // check if it is time to draw labels
@@ -688,7 +700,7 @@ public class GridLayer extends MapBaseLayer {
                 drawLabels = DrawLabels.EVERY_OTHER;
             }
             drawSingleGrid(canvas,
-                    gridPaint[i++],
+                    gridPaint[i],
                     gridLine.stepInPx,
                     gridLine.stepInNaturalUnits,
                     drawLabels);
@@ -696,7 +708,6 @@ public class GridLayer extends MapBaseLayer {
                 // once we have drawn the labels, we will not draw any other grid
                 break;
             }
-            mapView.refresh();
         }
     }
 
@@ -740,7 +751,8 @@ public class GridLayer extends MapBaseLayer {
         float labelRealStep = gridLineStepInCm;
 
         if (drawLabels != DrawLabels.NO) {
-            // draw labels
+            // draw labels, the cached widths depend on the text size
+            gridLabelCache.setTextSize(gridLabelPaint.getTextSize());
             pxPosY = fOut[1];
             float pxStartX = fOut[0];
             if (drawLabels == DrawLabels.EVERY_OTHER) {
@@ -772,16 +784,32 @@ public class GridLayer extends MapBaseLayer {
     }
 
     private void drawGridLabel(Canvas canvas, int realPosX, int realPosY, float pxPosX, float pxPosY) {
-        gridLabelPaint.setTextAlign(Paint.Align.RIGHT);
-        //
-        String x = getHumanReadableDistance(realPosX);
-        String y = getHumanReadableDistance(realPosY);
+        // the x label is right aligned using its cached width, so the paint alignment stays LEFT
+        int xSlot = getGridLabel(realPosX);
+        String x = gridLabelCache.getLabel(xSlot);
+        float xWidth = gridLabelCache.getWidth(xSlot);
+        String y = gridLabelCache.getLabel(getGridLabel(realPosY));
         // draw label
-        canvas.drawText(x, pxPosX - 0.4f * GRID_LABEL_TEXT_SIZE * LCD_DIP_SCALING_FACTOR, pxPosY - 0.5f * GRID_LABEL_TEXT_SIZE * LCD_DIP_SCALING_FACTOR, gridLabelPaint);
-        gridLabelPaint.setTextAlign(Paint.Align.LEFT);
+        canvas.drawText(x, pxPosX - 0.4f * GRID_LABEL_TEXT_SIZE * LCD_DIP_SCALING_FACTOR - xWidth, pxPosY - 0.5f * GRID_LABEL_TEXT_SIZE * LCD_DIP_SCALING_FACTOR, gridLabelPaint);
         canvas.drawText(y, pxPosX + 0.4f * GRID_LABEL_TEXT_SIZE * LCD_DIP_SCALING_FACTOR, pxPosY + 1.2f * GRID_LABEL_TEXT_SIZE * LCD_DIP_SCALING_FACTOR, gridLabelPaint);
     }
 
+    /**
+     * cached label of a distance in the current length unit, formatted and measured on a miss
+     *
+     * @param realDistance
+     * @return slot in gridLabelCache, valid until the next call
+     */
+    private int getGridLabel(int realDistance) {
+        int slot = gridLabelCache.indexOf(realDistance, lengthUnit);
+        if (slot < 0) {
+            String label = getHumanReadableDistance(realDistance);
+            slot = gridLabelCache.put(realDistance, lengthUnit, label,
+                    gridLabelPaint.measureText(label));
+        }
+        return slot;
+    }
+
     private String getHumanReadableDistance(int realDistance) {
         if (lengthUnit == LengthUnit.METRIC) {
             return getHumanReadableMetricDistance(realDistance);
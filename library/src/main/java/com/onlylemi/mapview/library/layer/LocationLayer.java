@@ -46,9 +46,15 @@ public class LocationLayer extends MapBaseLayer {
     private Paint locationPaint;
     private Paint indicatorCirclePaint;
     private Paint indicatorArcPaint;
+    private Paint compassDotPaint;
+    private Paint compassArrowPaint;
 
     private PointF currentPosition = null;
 
+    // drawing scratch
+    private final float[] goal = new float[2];
+    private final RectF compassArcRect = new RectF();
+
     public LocationLayer(MapView mapView) {
         this(mapView, null);
     }
@@ -101,6 +107,9 @@ public class LocationLayer extends MapBaseLayer {
         indicatorArcPaint.setStyle(Paint.Style.STROKE);
         indicatorArcPaint.setColor(DEFAULT_INDICATOR_ARC_COLOR);
         indicatorArcPaint.setStrokeWidth(compassArcWidth);
+        // compass dots and arrow
+        compassDotPaint = new Paint();
+        compassArrowPaint = new Paint();
 
         compassIndicatorArrowBitmap = BitmapFactory.decodeResource(mapView.getResources(),
                 R.mipmap.compass);
@@ -118,7 +127,8 @@ public class LocationLayer extends MapBaseLayer {
             currentRotateDegrees) {
         if (isVisible && currentPosition != null) {
             canvas.save();
-            float[] goal = {currentPosition.x, currentPosition.y};
+            goal[0] = currentPosition.x;
+            goal[1] = currentPosition.y;
             currentMatrix.mapPoints(goal);
 
             canvas.drawCircle(goal[0], goal[1], defaultLocationCircleRadius,
@@ -138,7 +148,7 @@ public class LocationLayer extends MapBaseLayer {
                                 - compassLineLength, compassLinePaint);
                     } else {
                         canvas.drawCircle(goal[0], goal[1] - compassRadius,
-                                compassLocationCircleRadius, new Paint());
+                                compassLocationCircleRadius, compassDotPaint);
                     }
                     canvas.restore();
                 }
@@ -149,28 +159,24 @@ public class LocationLayer extends MapBaseLayer {
                     canvas.drawBitmap(compassIndicatorArrowBitmap, goal[0]
                                     - compassIndicatorArrowBitmap.getWidth() / 2,
                             goal[1] - defaultLocationCircleRadius
-                                    - compassIndicatorGap, new Paint());
+                                    - compassIndicatorGap, compassArrowPaint);
 //                    compassBitmapLayer.setLocation(currentPosition);
 //                    compassBitmapLayer.draw(canvas, currentMatrix, currentZoom,
 //                            currentRotateDegrees);
                     canvas.restore();
+                    compassArcRect.set(goal[0] - compassRadius, goal[1] - compassRadius,
+                            goal[0] + compassRadius, goal[1] + compassRadius);
                     if (360 - (this.compassIndicatorArrowRotateDegree - this
                             .compassIndicatorCircleRotateDegree) > 180) {
                         canvas.drawArc(
-                                new RectF(goal[0] - compassRadius, goal[1]
-                                        - compassRadius, goal[0]
-                                        + compassRadius, goal[1]
-                                        + compassRadius),
+                                compassArcRect,
                                 -90 + this.compassIndicatorCircleRotateDegree,
                                 (this.compassIndicatorArrowRotateDegree - this
                                         .compassIndicatorCircleRotateDegree),
                                 false, indicatorArcPaint);
                     } else {
                         canvas.drawArc(
-                                new RectF(goal[0] - compassRadius, goal[1]
-                                        - compassRadius, goal[0]
-                                        + compassRadius, goal[1]
-                                        + compassRadius),
+                                compassArcRect,
                                 -90 + this.compassIndicatorArrowRotateDegree,
                                 360 - (this.compassIndicatorArrowRotateDegree - this
                                         .compassIndicatorCircleRotateDegree),
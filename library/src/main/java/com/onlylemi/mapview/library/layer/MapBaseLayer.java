@@ -16,6 +16,8 @@ public abstract class MapBaseLayer {
 
     // map layer level
     protected static final int MAP_LEVEL = 0;
+    // tag layer level
+    protected static final int TAG_LEVEL = Integer.MAX_VALUE - 1;
     // location layer level
     protected static final int LOCATION_LEVEL = Integer.MAX_VALUE;
 
@@ -40,6 +42,9 @@ public abstract class MapBaseLayer {
 
     /**
      * draw event
+     * <p>
+     * Called on the render thread every frame, implementations must not allocate once the layer
+     * content is set up (use preallocated scratch objects).
      *
      * @param canvas
      * @param currentMatrix
@@ -49,6 +54,17 @@ public abstract class MapBaseLayer {
     public abstract void draw(Canvas canvas, Matrix currentMatrix, float currentZoom,
                               float currentRotateDegrees);
 
+    /**
+     * static layer depends only on the map matrix, zoom and rotation, it is rendered into the
+     * cached bitmap of the mapview and redrawn only when one of them changes (or when
+     * {@link MapView#invalidateStaticLayers()} is called), dynamic layer is drawn every frame
+     *
+     * @return
+     */
+    public boolean isStatic() {
+        return false;
+    }
+
     public void setLevel(int level) {
         this.level = level;
     }
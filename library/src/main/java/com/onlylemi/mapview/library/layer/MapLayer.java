@@ -1,13 +1,19 @@
 package com.onlylemi.mapview.library.layer;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.ViewTreeObserver;
 
+import com.onlylemi.mapview.library.FloorPlan;
 import com.onlylemi.mapview.library.MapView;
+import com.onlylemi.mapview.library.tile.TilePyramid;
 
 /**
  * MapLayer
@@ -17,18 +23,116 @@ import com.onlylemi.mapview.library.MapView;
 public class MapLayer extends MapBaseLayer {
 
     private static final String TAG = "MapLayer";
+    // floor plan regions are requested in steps of this many decoded pixels, so that small
+    // moves do not decode again and regions of the same size reuse their buffers
+    private static final int FLOOR_PLAN_REGION_STEP = 256;
 
     private Picture image;
+    private TilePyramid tiles;
+    private FloorPlan floorPlan;
     private boolean hasMeasured;
 
+    // tiles drawing
+    private Paint tilePaint;
+    private Matrix invertMatrix = new Matrix();
+    private RectF viewport = new RectF();
+    private Rect tileSrc = new Rect();
+    private RectF tileDst = new RectF();
+
+    // floor plan drawing
+    private int floorPlanWidth;
+    private int floorPlanHeight;
+    private Paint floorPlanPaint;
+    private Bitmap floorPlanBitmap; // drawn by the last frame
+    private Rect floorPlanRegion = new Rect();
+    private RectF floorPlanDst = new RectF();
+    private Rect visibleRegion = new Rect();
+    private Rect requestedRegion = new Rect();
+    private int requestedSampleSize;
+    private final FloorPlan.OnBitmapDecodedListener floorPlanListener =
+            new FloorPlan.OnBitmapDecodedListener() {
+        @Override
+        public void onBitmapDecoded(FloorPlan floorPlan, Bitmap bitmap) {
+            mapView.invalidateStaticLayers();
+        }
+    };
+
     public MapLayer(MapView mapView) {
         super(mapView);
         level = MAP_LEVEL;
     }
 
     public void setImage(Picture image) {
+        releaseTiles();
+        releaseFloorPlan();
         this.image = image;
+        mapView.invalidateStaticLayers();
+        initWhenMeasured();
+    }
+
+    /**
+     * use tiled image instead of a picture, only tiles visible at the current zoom are drawn
+     *
+     * @param tiles
+     */
+    public void setTiles(TilePyramid tiles) {
+        releaseTiles();
+        releaseFloorPlan();
+        this.image = null;
+        this.tiles = tiles;
+        tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        tiles.setOnTileLoadedListener(new TilePyramid.OnTileLoadedListener() {
+            @Override
+            public void onTileLoaded(TilePyramid pyramid) {
+                mapView.invalidateStaticLayers();
+            }
+        });
+        mapView.invalidateStaticLayers();
+        initWhenMeasured();
+    }
+
+    /**
+     * use a floor plan instead of a picture, map coordinates are its pixels. Only the visible
+     * region is decoded, asynchronously, at the sample size of the current zoom (see
+     * {@link FloorPlan#requestBitmap}); until it arrives the previous one is drawn.
+     * <p>
+     * The bitmaps of the floor plan are not recycled when it is replaced, see
+     * {@link FloorPlan#recycleBitmap()}.
+     *
+     * @param floorPlan
+     */
+    public void setFloorPlan(FloorPlan floorPlan) {
+        releaseTiles();
+        releaseFloorPlan();
+        this.image = null;
+        // reads the image header
+        floorPlanWidth = floorPlan.getBitmapWidth();
+        floorPlanHeight = floorPlan.getBitmapHeight();
+        floorPlanPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        requestedSampleSize = 0;
+        this.floorPlan = floorPlan;
+        mapView.invalidateStaticLayers();
+        initWhenMeasured();
+    }
+
+    private void releaseFloorPlan() {
+        if (floorPlan != null) {
+            if (floorPlanBitmap != null) {
+                floorPlan.releaseBitmap(floorPlanBitmap);
+                floorPlanBitmap = null;
+            }
+            floorPlan = null;
+        }
+    }
 
+    private void releaseTiles() {
+        if (tiles != null) {
+            tiles.release();
+            tiles = null;
+        }
+    }
+
+    private void initWhenMeasured() {
         if (mapView.getWidth() == 0) {
             ViewTreeObserver vto = mapView.getViewTreeObserver();
             vto.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -50,13 +154,13 @@ public class MapLayer extends MapBaseLayer {
      * init map image layer
      */
     private void initMapLayer() {
-        float zoom = getInitZoom(mapView.getWidth(), mapView.getHeight(), image.getWidth(), image
-                .getHeight());
+        float zoom = getInitZoom(mapView.getWidth(), mapView.getHeight(), getWidth(),
+                getHeight());
         Log.i(TAG, Float.toString(zoom));
         mapView.setCurrentZoom(zoom, 0, 0);
 
-        float width = mapView.getWidth() - zoom * image.getWidth();
-        float height = mapView.getHeight() - zoom * image.getHeight();
+        float width = mapView.getWidth() - zoom * getWidth();
+        float height = mapView.getHeight() - zoom * getHeight();
 
         mapView.translate(width / 2, height / 2);
     }
@@ -86,6 +190,11 @@ public class MapLayer extends MapBaseLayer {
         return 0;
     }
 
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     @Override
     public boolean onTouch(MotionEvent event) {
 
@@ -97,13 +206,158 @@ public class MapLayer extends MapBaseLayer {
             currentRotateDegrees) {
         canvas.save();
         canvas.setMatrix(currentMatrix);
-        if (image != null) {
+        if (tiles != null) {
+            drawTiles(canvas, currentMatrix);
+        } else if (floorPlan != null) {
+            drawFloorPlan(canvas, currentMatrix);
+        } else if (image != null) {
             canvas.drawPicture(image);
         }
         canvas.restore();
     }
 
+    /**
+     * draw the tiles of the current level intersecting the viewport, a missing tile is
+     * replaced by the part of a decoded tile of a coarser level
+     *
+     * @param canvas
+     * @param currentMatrix
+     */
+    private void drawTiles(Canvas canvas, Matrix currentMatrix) {
+        // viewport in image coordinates (bounding box when rotated)
+        currentMatrix.invert(invertMatrix);
+        viewport.set(0, 0, canvas.getWidth(), canvas.getHeight());
+        invertMatrix.mapRect(viewport);
+        if (!viewport.intersect(0, 0, tiles.getWidth(), tiles.getHeight())) {
+            return;
+        }
+
+        int level = tiles.getLevelForScale(currentMatrix.mapRadius(1f));
+        int span = tiles.getTileSize() << level;
+        int firstColumn = (int) (viewport.left / span);
+        int lastColumn = Math.min((int) (viewport.right / span), tiles.getColumns(level) - 1);
+        int firstRow = (int) (viewport.top / span);
+        int lastRow = Math.min((int) (viewport.bottom / span), tiles.getRows(level) - 1);
+
+        tiles.beginFrame();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                float left = column * span;
+                float top = row * span;
+                tileDst.set(left, top, Math.min(left + span, tiles.getWidth()),
+                        Math.min(top + span, tiles.getHeight()));
+                Bitmap tile = tiles.getTile(level, column, row);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, tileDst, tilePaint);
+                } else {
+                    drawCoarserTile(canvas, level, column, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * request the visible region of the floor plan when it or the sample size changed and draw
+     * the last decoded bitmap, which may cover another region
+     *
+     * @param canvas
+     * @param currentMatrix
+     */
+    private void drawFloorPlan(Canvas canvas, Matrix currentMatrix) {
+        // viewport in floor plan pixels (bounding box when rotated)
+        currentMatrix.invert(invertMatrix);
+        viewport.set(0, 0, canvas.getWidth(), canvas.getHeight());
+        invertMatrix.mapRect(viewport);
+        if (viewport.intersect(0, 0, floorPlanWidth, floorPlanHeight)) {
+            // screen pixels in 1 cm
+            float scaleFactorCmToPx = currentMatrix.mapRadius(1f) * floorPlan.tenMetersInPixels
+                    / 1000f;
+            int sampleSize = FloorPlan.computeSampleSize(floorPlan.tenMetersInPixels,
+                    scaleFactorCmToPx);
+            int step = FLOOR_PLAN_REGION_STEP * sampleSize;
+            visibleRegion.set((int) (viewport.left / step) * step,
+                    (int) (viewport.top / step) * step,
+                    Math.min((int) Math.ceil(viewport.right / step) * step, floorPlanWidth),
+                    Math.min((int) Math.ceil(viewport.bottom / step) * step, floorPlanHeight));
+            if (sampleSize != requestedSampleSize || !visibleRegion.equals(requestedRegion)) {
+                requestedSampleSize = sampleSize;
+                requestedRegion.set(visibleRegion);
+                floorPlan.requestBitmap(scaleFactorCmToPx, visibleRegion, floorPlanListener);
+            }
+        }
+
+        Bitmap bitmap = floorPlan.getBitmap(floorPlanRegion);
+        if (bitmap != floorPlanBitmap) {
+            // the previous one is not drawn anymore, it may be decoded into
+            if (floorPlanBitmap != null) {
+                floorPlan.releaseBitmap(floorPlanBitmap);
+            }
+            floorPlanBitmap = bitmap;
+        }
+        if (bitmap != null && !bitmap.isRecycled()) {
+            floorPlanDst.set(floorPlanRegion);
+            canvas.drawBitmap(bitmap, null, floorPlanDst, floorPlanPaint);
+        }
+    }
+
+    private void drawCoarserTile(Canvas canvas, int level, int column, int row) {
+        for (int coarser = level + 1; coarser < tiles.getLevelCount(); coarser++) {
+            int shift = coarser - level;
+            Bitmap tile = tiles.peekTile(coarser, column >> shift, row >> shift);
+            if (tile != null) {
+                // part of the coarser tile covering tileDst, in its pixels
+                float scale = 1f / (1 << coarser);
+                float originX = (column >> shift) * (tiles.getTileSize() << coarser);
+                float originY = (row >> shift) * (tiles.getTileSize() << coarser);
+                tileSrc.set((int) ((tileDst.left - originX) * scale),
+                        (int) ((tileDst.top - originY) * scale),
+                        (int) Math.ceil((tileDst.right - originX) * scale),
+                        (int) Math.ceil((tileDst.bottom - originY) * scale));
+                canvas.drawBitmap(tile, tileSrc, tileDst, tilePaint);
+                return;
+            }
+        }
+    }
+
     public Picture getImage() {
         return image;
     }
+
+    public TilePyramid getTiles() {
+        return tiles;
+    }
+
+    public FloorPlan getFloorPlan() {
+        return floorPlan;
+    }
+
+    /**
+     * width of the map image in map coordinates
+     *
+     * @return
+     */
+    public float getWidth() {
+        if (tiles != null) {
+            return tiles.getWidth();
+        }
+        if (floorPlan != null) {
+            return floorPlanWidth;
+        }
+        return image != null ? image.getWidth() : 0;
+    }
+
+    /**
+     * height of the map image in map coordinates
+     *
+     * @return
+     */
+    public float getHeight() {
+        if (tiles != null) {
+            return tiles.getHeight();
+        }
+        if (floorPlan != null) {
+            return floorPlanHeight;
+        }
+        return image != null ? image.getHeight() : 0;
+    }
 }
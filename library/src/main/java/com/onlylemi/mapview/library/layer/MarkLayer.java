@@ -7,10 +7,12 @@ import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PointF;
+import android.graphics.RectF;
 import android.view.MotionEvent;
 
 import com.onlylemi.mapview.library.MapView;
 import com.onlylemi.mapview.library.utils.MapMath;
+import com.onlylemi.mapview.core.index.PointGridIndex;
 import com.onlylemi.mapview.library.R;
 
 import java.util.List;
@@ -34,6 +36,19 @@ public class MarkLayer extends MapBaseLayer {
 
     private Paint paint;
 
+    // spatial index of marks in map coordinates, rebuilt lazily after the marks changed
+    private PointGridIndex markIndex;
+    private volatile boolean marksChanged = true;
+    private float touchTolerance; // px
+
+    // drawing scratch
+    private final float[] goal = new float[2];
+    private final float[] touchGoal = new float[2];
+    private final float[] touchEdge = new float[2];
+    private final Matrix invertMatrix = new Matrix();
+    private final RectF viewport = new RectF();
+    private int[] visibleMarks = new int[0];
+
     public MarkLayer(MapView mapView) {
         this(mapView, null, null);
     }
@@ -48,6 +63,7 @@ public class MarkLayer extends MapBaseLayer {
 
     private void initLayer() {
         radiusMark = setValue(10f);
+        touchTolerance = setValue(24f);
 
         bmpMark = BitmapFactory.decodeResource(mapView.getResources(), R.mipmap.mark);
         bmpMarkTouch = BitmapFactory.decodeResource(mapView.getResources(), R.mipmap.mark_touch);
@@ -61,19 +77,20 @@ public class MarkLayer extends MapBaseLayer {
     public boolean onTouch(MotionEvent event) {
         if (marks != null) {
             if (!marks.isEmpty()) {
-                float[] goal = mapView.convertMapXYToScreenXY(event.getX(), event.getY());
-                for (int i = 0; i < marks.size(); i++) {
-                    if (MapMath.getDistanceBetweenTwoPoints(goal[0], goal[1],
-                            marks.get(i).x - bmpMark.getWidth() / 2, marks.get(i).y - bmpMark
-                                    .getHeight() / 2) <= 50) {
-                        num = i;
-                        isClickMark = true;
-                        break;
-                    }
-
-                    if (i == marks.size() - 1) {
-                        isClickMark = false;
-                    }
+                // touch tolerance measured on the screen, converted to map coordinates
+                float[] goal = mapView.convertMapXYToScreenXY(event.getX(), event.getY(),
+                        touchGoal);
+                float[] edge = mapView.convertMapXYToScreenXY(event.getX() + touchTolerance,
+                        event.getY(), touchEdge);
+                float tolerance = MapMath.getDistanceBetweenTwoPoints(goal[0], goal[1],
+                        edge[0], edge[1]);
+
+                int nearest = getMarkIndex().nearest(goal[0], goal[1], tolerance);
+                if (nearest != -1) {
+                    num = nearest;
+                    isClickMark = true;
+                } else {
+                    isClickMark = false;
                 }
             }
 
@@ -91,16 +108,33 @@ public class MarkLayer extends MapBaseLayer {
         if (isVisible && marks != null) {
             canvas.save();
             if (!marks.isEmpty()) {
-                for (int i = 0; i < marks.size(); i++) {
-                    PointF mark = marks.get(i);
-                    float[] goal = {mark.x, mark.y};
+                PointGridIndex index = getMarkIndex();
+                if (visibleMarks.length < index.size()) {
+                    visibleMarks = new int[index.size()];
+                }
+
+                // bounds of the (rotated) screen in map coordinates, padded by the icon size
+                currentMatrix.invert(invertMatrix);
+                viewport.set(0, 0, canvas.getWidth(), canvas.getHeight());
+                invertMatrix.mapRect(viewport);
+                float padding = invertMatrix.mapRadius(Math.max(
+                        Math.max(bmpMark.getWidth(), bmpMark.getHeight()),
+                        Math.max(bmpMarkTouch.getWidth(), bmpMarkTouch.getHeight())));
+                int visibleCount = index.query(viewport.left - padding, viewport.top - padding,
+                        viewport.right + padding, viewport.bottom + padding, visibleMarks);
+
+                paint.setColor(Color.BLACK);
+                paint.setTextSize(radiusMark);
+                boolean drawNames = mapView.getCurrentZoom() > 1.0 && marksName != null
+                        && marksName.size() == index.size();
+                for (int j = 0; j < visibleCount; j++) {
+                    int i = visibleMarks[j];
+                    goal[0] = index.getX(i);
+                    goal[1] = index.getY(i);
                     currentMatrix.mapPoints(goal);
 
-                    paint.setColor(Color.BLACK);
-                    paint.setTextSize(radiusMark);
                     //mark name
-                    if (mapView.getCurrentZoom() > 1.0 && marksName != null
-                            && marksName.size() == marks.size()) {
+                    if (drawNames) {
                         canvas.drawText(marksName.get(i), goal[0] - radiusMark, goal[1] -
                                 radiusMark / 2, paint);
                     }
@@ -117,6 +151,27 @@ public class MarkLayer extends MapBaseLayer {
         }
     }
 
+    /**
+     * index of the current marks, rebuilt if they changed
+     *
+     * @return
+     */
+    private synchronized PointGridIndex getMarkIndex() {
+        if (marksChanged || markIndex == null) {
+            marksChanged = false;
+            List<PointF> marks = this.marks;
+            int count = marks.size();
+            float[] xs = new float[count];
+            float[] ys = new float[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = marks.get(i).x;
+                ys[i] = marks.get(i).y;
+            }
+            markIndex = new PointGridIndex(xs, ys, count);
+        }
+        return markIndex;
+    }
+
     public int getNum() {
         return num;
     }
@@ -131,6 +186,23 @@ public class MarkLayer extends MapBaseLayer {
 
     public void setMarks(List<PointF> marks) {
         this.marks = marks;
+        this.marksChanged = true;
+    }
+
+    /**
+     * rebuild the spatial index after the marks list was modified in place
+     */
+    public void notifyMarksChanged() {
+        this.marksChanged = true;
+    }
+
+    /**
+     * the max distance between a touch and a mark to click it
+     *
+     * @param dp
+     */
+    public void setTouchTolerance(float dp) {
+        this.touchTolerance = setValue(dp);
     }
 
     public List<String> getMarksName() {
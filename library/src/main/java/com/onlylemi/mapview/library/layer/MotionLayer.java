@@ -3,158 +3,219 @@ package com.onlylemi.mapview.library.layer;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Point;
-import android.util.Log;
+import android.graphics.RectF;
+import android.os.SystemClock;
 import android.view.MotionEvent;
-import android.view.SurfaceHolder;
 
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+import com.onlylemi.mapview.library.FloorPlan;
 import com.onlylemi.mapview.library.MapView;
 
-import java.util.Random;
-
+/**
+ * MotionLayer
+ * <p>
+ * Draws the tracks of a {@link TagKalmanFilter}: every tag at its filtered position extrapolated
+ * to the current frame, with its velocity as a line to where it will be in one second and its
+ * position uncertainty (one standard deviation) as a circle. Between fixes the layer keeps
+ * requesting frames while tags move, so motion is smooth without a thread of its own; the first
+ * frame after a fix is requested by whoever publishes the fixes (e.g. a TagLayer store).
+ * <p>
+ * Filter coordinates are meters converted through a {@link FloorPlan}, or map coordinates
+ * without one.
+ *
+ * @author: onlylemi
+ */
 public class MotionLayer extends MapBaseLayer {
 
-    private Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-
-    int chainlength = 4;
-    int range = 100;
-    int MAX_SIZE_X;
-    int MAX_SIZE_Y;
-    float weightCoefficient = 0.1f;
-    Point[] chain = new Point[chainlength];
-    Point target = new Point();
-    Point fly = new Point();
-    Point point = new Point();
-    Random r = new Random();
-    private MySurfaceThread thread;
-    private MapView mapView;
-
-    public MotionLayer(MapView mapView) {
+    private static final int DEFAULT_TRACK_COLOR = 0xFFF46A2E;
+    private static final int UNCERTAINTY_ALPHA = 0x40;
+    private static final long DEFAULT_MAX_PREDICTION_MICROS = 500000; // 0.5 s
+    private static final float VELOCITY_LOOKAHEAD = 1f; // s
+    private static final float MIN_ANIMATED_SPEED = 0.01f; // m/s
+    private static final int MAX_DETAILED_TRACKS = 200;
+
+    private final TagKalmanFilter filter;
+    private FloorPlan floorPlan;
+    private long maxPredictionMicros = DEFAULT_MAX_PREDICTION_MICROS;
+
+    private float trackRadius;
+    private Paint trackPaint;
+    private Paint velocityPaint;
+    private Paint uncertaintyPaint;
+
+    // filter clock: newest fix seen and the uptime it was seen at
+    private long latestMicros;
+    private long latestUptimeMicros;
+
+    // drawing scratch, sized to the filter capacity
+    private final float[] mapPoints; // position and velocity end of the visible tracks
+    private final float[] screenPoints;
+    private final float[] uncertainties; // map radius of the visible tracks
+    private final float[] values = new float[3];
+    private final float[] velocity = new float[3];
+    private final float[] variance = new float[3];
+    private final Matrix invertMatrix = new Matrix();
+    private final RectF viewport = new RectF();
+
+    public MotionLayer(MapView mapView, TagKalmanFilter filter) {
         super(mapView);
-        this.mapView = mapView;
-        for(int i=0;i<chainlength;i++)
-        {
-            chain[i] = new Point();
-        }
-        thread = new MySurfaceThread(mapView.getHolder());
-        thread.setRunning(true);
-        thread.start();
+        this.filter = filter;
+        this.mapPoints = new float[filter.getCapacity() * 4];
+        this.screenPoints = new float[filter.getCapacity() * 4];
+        this.uncertainties = new float[filter.getCapacity()];
+
+        level = TAG_LEVEL;
+        initLayer();
     }
 
-    public class MySurfaceThread extends Thread {
+    private void initLayer() {
+        trackRadius = setValue(5f);
+
+        trackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        trackPaint.setStyle(Paint.Style.STROKE);
+        trackPaint.setStrokeCap(Paint.Cap.ROUND);
+        trackPaint.setStrokeWidth(trackRadius * 2);
+        trackPaint.setColor(DEFAULT_TRACK_COLOR);
+
+        velocityPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        velocityPaint.setStyle(Paint.Style.STROKE);
+        velocityPaint.setStrokeCap(Paint.Cap.ROUND);
+        velocityPaint.setStrokeWidth(setValue(2f));
+        velocityPaint.setColor(DEFAULT_TRACK_COLOR);
+
+        uncertaintyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        uncertaintyPaint.setStyle(Paint.Style.FILL);
+        uncertaintyPaint.setColor(DEFAULT_TRACK_COLOR);
+        uncertaintyPaint.setAlpha(UNCERTAINTY_ALPHA);
+    }
 
-        private SurfaceHolder myThreadSurfaceHolder;
-        //private MySurfaceView myThreadSurfaceView;
-        private boolean myThreadRun = false;
+    @Override
+    public boolean onTouch(MotionEvent event) {
 
-        public MySurfaceThread(SurfaceHolder surfaceHolder) {
-            myThreadSurfaceHolder = surfaceHolder;
+        return false;
+    }
 
-            MAX_SIZE_X = (int) mapView.getMapWidth();
-            MAX_SIZE_Y = (int) mapView.getMapHeight();
-            Log.d("ArTack", String.valueOf(mapView.getMapWidth()));
-            Log.d("ArTack", String.valueOf(mapView.getMapHeight()));
-            //myThreadSurfaceView = surfaceView;
-            target.x = r.nextInt(MAX_SIZE_X);
-            target.y = r.nextInt(MAX_SIZE_Y);
+    @Override
+    public void draw(Canvas canvas, Matrix currentMatrix, float currentZoom, float
+            currentRotateDegrees) {
+        if (!isVisible) {
+            return;
         }
-
-        public void setRunning(boolean b) {
-            myThreadRun = b;
+        long nowMicros = getFilterNowMicros();
+
+        currentMatrix.invert(invertMatrix);
+        viewport.set(0, 0, canvas.getWidth(), canvas.getHeight());
+        invertMatrix.mapRect(viewport);
+        float padding = invertMatrix.mapRadius(trackRadius);
+        viewport.inset(-padding, -padding);
+
+        boolean moving = false;
+        int visibleCount = 0;
+        int size = filter.size();
+        for (int i = 0; i < size; i++) {
+            long timestamp = filter.getTimestampMicros(i);
+            long age = nowMicros - timestamp;
+            if (timestamp == 0 || age >= GridLayer.FADE_OUT_MISSING_TAGS_BEFORE * 1000L) {
+                continue;
+            }
+            // stop extrapolating tracks that lost their fixes
+            filter.getPosition(i, timestamp + Math.min(Math.max(0, age), maxPredictionMicros),
+                    values, 0);
+            float x = toMapX(values[0]);
+            float y = toMapY(values[1]);
+            if (!viewport.contains(x, y)) {
+                continue;
+            }
+            filter.getVelocity(i, velocity, 0);
+            filter.getPositionVariance(i, variance, 0);
+            int j = visibleCount * 4;
+            mapPoints[j] = x;
+            mapPoints[j + 1] = y;
+            mapPoints[j + 2] = toMapX(values[0] + velocity[0] * VELOCITY_LOOKAHEAD);
+            mapPoints[j + 3] = toMapY(values[1] + velocity[1] * VELOCITY_LOOKAHEAD);
+            float sigma = (float) Math.sqrt(Math.max(variance[0], variance[1]));
+            uncertainties[visibleCount] = Math.abs(toMapX(values[0] + sigma) - x);
+            moving |= age < maxPredictionMicros
+                    && Math.abs(velocity[0]) + Math.abs(velocity[1]) > MIN_ANIMATED_SPEED;
+            visibleCount++;
         }
-
-        @Override
-        public void run() {
-            // super.run();
-
-            while (myThreadRun) {
-                chain[0] = target;
-                for (int i = 1; i < chain.length; i++) {
-                    point = chain[i];
-                    target = chain[i-1];
-                    point.x += weightCoefficient*(target.x - point.x);
-                    point.y += weightCoefficient*(target.y - point.y);
-                    //chain[i].x =  (weightCoefficient * chain[i].x + (1 - weightCoefficient) * chain[i - 1].x);
-                    //chain[i].y =  (weightCoefficient * chain[i].y + (1 - weightCoefficient) * chain[i - 1].y);
-                }
-                target = chain[0];
-                //target.x = chain[0].x;
-                //target.y = chain[0].y;
-                fly.x = chain[chainlength-1].x;
-                fly.y = chain[chainlength-1].y;
-                float dx = target.x - fly.x;
-                float dy = target.y - fly.y;
-                if (Math.sqrt(dx * dx + dy * dy) <= range) {
-                    while (Math.sqrt(dx * dx + dy * dy) <= range) {
-                        target.x = r.nextInt(MAX_SIZE_X);
-                        target.y = r.nextInt(MAX_SIZE_Y);
-                        dx = target.x - fly.x;
-                        dy = target.y - fly.y;
+        if (visibleCount > 0) {
+            currentMatrix.mapPoints(screenPoints, 0, mapPoints, 0, visibleCount * 2);
+
+            canvas.save();
+            if (visibleCount <= MAX_DETAILED_TRACKS) {
+                for (int j = 0; j < visibleCount; j++) {
+                    float radius = currentMatrix.mapRadius(uncertainties[j]);
+                    if (radius > trackRadius) {
+                        canvas.drawCircle(screenPoints[j * 4], screenPoints[j * 4 + 1], radius,
+                                uncertaintyPaint);
                     }
                 }
-
-                mapView.refresh();
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                /*Canvas c = null;
-                try {
-                    c = myThreadSurfaceHolder.lockCanvas(null);
-                    chain[0] = target;
-                    for (int i = 1; i < chain.length; i++) {
-                        point = chain[i];
-                        target = chain[i-1];
-                        point.x += weightCoefficient*(target.x - point.x);
-                        point.y += weightCoefficient*(target.y - point.y);
-                        //chain[i].x =  (weightCoefficient * chain[i].x + (1 - weightCoefficient) * chain[i - 1].x);
-                        //chain[i].y =  (weightCoefficient * chain[i].y + (1 - weightCoefficient) * chain[i - 1].y);
-                    }
-                    target = chain[0];
-                    //target.x = chain[0].x;
-                    //target.y = chain[0].y;
-                    fly.x = chain[chainlength-1].x;
-                    fly.y = chain[chainlength-1].y;
-                    float dx = target.x - fly.x;
-                    float dy = target.y - fly.y;
-                    if (Math.sqrt(dx * dx + dy * dy) <= range) {
-                        while (Math.sqrt(dx * dx + dy * dy) <= range) {
-                            target.x = r.nextInt(1000);
-                            target.y = r.nextInt(1000);
-                            dx = target.x - fly.x;
-                            dy = target.y - fly.y;
-                        }
-                    }
-                    synchronized (myThreadSurfaceHolder) {
-                        mapView.refresh();
-                       // draw(c,mapView.getMatrix(),mapView.getCurrentZoom(),mapView.getCurrentRotateDegrees());
-                    }
-                } finally {
-                    // do this in a finally so that if an exception is thrown
-                    // during the above, we don't leave the Surface in an
-                    // inconsistent state
-                    if (c != null) {
-                       myThreadSurfaceHolder.unlockCanvasAndPost(c);
-                    }
-                }*/
+                canvas.drawLines(screenPoints, 0, visibleCount * 4, velocityPaint);
+            }
+            // compact the positions at the start, 2 j <= 4 j, and draw them in one batch
+            for (int j = 0; j < visibleCount; j++) {
+                screenPoints[j * 2] = screenPoints[j * 4];
+                screenPoints[j * 2 + 1] = screenPoints[j * 4 + 1];
             }
+            canvas.drawPoints(screenPoints, 0, visibleCount * 2, trackPaint);
+            canvas.restore();
+        }
+        if (moving) {
+            // keep animating the extrapolation until the next fix
+            mapView.refresh();
         }
     }
 
-    @Override
-    public boolean onTouch(MotionEvent event) {
+    /**
+     * current time on the clock of the fixes, the newest fix plus the uptime since it was seen
+     */
+    private long getFilterNowMicros() {
+        long uptimeMicros = SystemClock.uptimeMillis() * 1000;
+        long latest = filter.getLatestMicros();
+        if (latest != latestMicros) {
+            latestMicros = latest;
+            latestUptimeMicros = uptimeMicros;
+        }
+        return latestMicros + (uptimeMicros - latestUptimeMicros);
+    }
 
-        return false;
+    private float toMapX(float x) {
+        FloorPlan plan = floorPlan;
+        return plan == null ? x : plan.toMapX(x);
     }
 
-    @Override
-    public void draw(Canvas canvas, Matrix currentMatrix, float currentZoom, float currentRotateDegrees) {
-        canvas.save();
-        canvas.setMatrix(currentMatrix);
-        //canvas.drawColor(Color.BLACK);
-        canvas.drawCircle(fly.x, fly.y, 10, paint);
-        canvas.drawCircle(target.x, target.y, 5, paint);
-        canvas.restore();
+    private float toMapY(float y) {
+        FloorPlan plan = floorPlan;
+        return plan == null ? y : plan.toMapY(y);
+    }
+
+    public TagKalmanFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * floor plan converting the filter meters to map coordinates
+     *
+     * @param floorPlan null if the filter works in map coordinates
+     */
+    public void setFloorPlan(FloorPlan floorPlan) {
+        this.floorPlan = floorPlan;
+    }
+
+    /**
+     * max time a track is extrapolated past its last fix
+     *
+     * @param maxPredictionMicros
+     */
+    public void setMaxPredictionMicros(long maxPredictionMicros) {
+        this.maxPredictionMicros = maxPredictionMicros;
+    }
+
+    public void setTrackColor(int color) {
+        trackPaint.setColor(color);
+        velocityPaint.setColor(color);
+        uncertaintyPaint.setColor(color);
+        uncertaintyPaint.setAlpha(UNCERTAINTY_ALPHA);
     }
 }
@@ -12,6 +12,8 @@ import android.view.MotionEvent;
 import com.onlylemi.mapview.library.MapView;
 import com.onlylemi.mapview.library.R;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -31,6 +33,21 @@ public class RouteLayer extends MapBaseLayer {
 
     private Paint paint;
 
+    // route segments in map coordinates, packed as x0, y0, x1, y1 for Canvas.drawLines
+    private float[] routePoints = new float[0];
+    private int routePointsCount = 0; // number of floats used in routePoints
+    private boolean routeValid = false;
+    private volatile boolean routeChanged = true;
+    // list sizes routePoints was built from, so that adds and removes in place are picked up
+    private int builtRouteSize = -1;
+    private int builtNodeSize = -1;
+
+    // routePoints mapped to the screen, valid while the matrix is unchanged
+    private float[] screenPoints = new float[0];
+    private final float[] matrixValues = new float[9];
+    private final float[] cachedMatrixValues = new float[9];
+    private boolean screenPointsValid = false;
+
     public RouteLayer(MapView mapView) {
         this(mapView, null, null);
     }
@@ -50,6 +67,7 @@ public class RouteLayer extends MapBaseLayer {
         paint.setAntiAlias(true);
         paint.setColor(Color.BLUE);
         paint.setStyle(Paint.Style.FILL_AND_STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND); // close the gaps between segments
 
         routeStartBmp = BitmapFactory.decodeResource(mapView.getResources(),
                 R.mipmap.start_point);
@@ -67,55 +85,115 @@ public class RouteLayer extends MapBaseLayer {
     public void draw(Canvas canvas, Matrix currentMatrix, float currentZoom, float
             currentRotateDegrees) {
         if (isVisible && routeList != null && nodeList != null) {
-            canvas.save();
+            if (routeChanged || routeList.size() != builtRouteSize
+                    || nodeList.size() != builtNodeSize) {
+                routeChanged = false;
+                buildRoutePoints();
+                screenPointsValid = false;
+            }
+            if (!routeValid) {
+                return;
+            }
 
-            drawing:
-            if (!routeList.isEmpty() && !nodeList.isEmpty()) {
-                // draw route
-                for (int i = 0; i < routeList.size() - 1; i++) {
-
-                    if (routeList.get(i) >= nodeList.size() ||
-                            routeList.get(i + 1) >= nodeList.size()) {
-                        break drawing;
-                    }
-
-                    float[] goal1 = {nodeList.get(routeList.get(i)).x,
-                            nodeList.get(routeList.get(i)).y};
-                    float[] goal2 = {nodeList.get(routeList.get(i + 1)).x,
-                            nodeList.get(routeList.get(i + 1)).y};
-                    currentMatrix.mapPoints(goal1);
-                    currentMatrix.mapPoints(goal2);
-                    //For test
-                    paint.setColor(Color.rgb((int) (Math.random() * 255d), (int) (Math.random() * 255d), (int) (Math.random() * 255d)));
-                    paint.setStrokeWidth(routeWidth);
-                    canvas.drawLine(goal1[0], goal1[1], goal2[0], goal2[1], paint);
-                }
-
-                // draw bmp
-                float[] goal1 = {nodeList.get(routeList.get(0)).x,
-                        nodeList.get(routeList.get(0)).y};
-                float[]  goal2 = {
-                        nodeList.get(routeList.get(routeList.size() - 1)).x,
-                        nodeList.get(routeList.get(routeList.size() - 1)).y};
-                currentMatrix.mapPoints(goal1);
-                currentMatrix.mapPoints(goal2);
-                canvas.drawBitmap(routeStartBmp,
-                        goal1[0] - routeStartBmp.getWidth() / 2, goal1[1]
-                                - routeStartBmp.getHeight(), paint);
-                canvas.drawBitmap(routeEndBmp,
-                        goal2[0] - routeEndBmp.getWidth() / 2, goal2[1]
-                                - routeEndBmp.getHeight(), paint);
+            currentMatrix.getValues(matrixValues);
+            if (!screenPointsValid || !Arrays.equals(matrixValues, cachedMatrixValues)) {
+                currentMatrix.mapPoints(screenPoints, 0, routePoints, 0, routePointsCount / 2);
+                System.arraycopy(matrixValues, 0, cachedMatrixValues, 0, matrixValues.length);
+                screenPointsValid = true;
             }
 
+            canvas.save();
+            // draw route
+            paint.setStrokeWidth(routeWidth);
+            canvas.drawLines(screenPoints, 0, routePointsCount, paint);
+
+            // draw bmp, the route starts at the first and ends at the last point
+            canvas.drawBitmap(routeStartBmp,
+                    screenPoints[0] - routeStartBmp.getWidth() / 2, screenPoints[1]
+                            - routeStartBmp.getHeight(), paint);
+            canvas.drawBitmap(routeEndBmp,
+                    screenPoints[routePointsCount - 2] - routeEndBmp.getWidth() / 2,
+                    screenPoints[routePointsCount - 1] - routeEndBmp.getHeight(), paint);
             canvas.restore();
         }
     }
 
+    /**
+     * pack the route into routePoints, segments to a missing node are skipped and the route is
+     * not drawn if no segment is left
+     */
+    private void buildRoutePoints() {
+        routeValid = false;
+        routePointsCount = 0;
+        builtRouteSize = routeList.size();
+        builtNodeSize = nodeList.size();
+        if (routeList.isEmpty() || nodeList.isEmpty()) {
+            return;
+        }
+
+        // a single node route is drawn as a zero length segment
+        int segments = Math.max(1, routeList.size() - 1);
+        if (routePoints.length < segments * 4) {
+            routePoints = new float[segments * 4];
+            screenPoints = new float[segments * 4];
+        }
+        int count = 0;
+        for (int i = 0; i < segments; i++) {
+            int start = routeList.get(i);
+            int end = routeList.get(Math.min(i + 1, routeList.size() - 1));
+            if (start < 0 || start >= nodeList.size() || end < 0 || end >= nodeList.size()) {
+                continue;
+            }
+            PointF startPoint = nodeList.get(start);
+            PointF endPoint = nodeList.get(end);
+            routePoints[count++] = startPoint.x;
+            routePoints[count++] = startPoint.y;
+            routePoints[count++] = endPoint.x;
+            routePoints[count++] = endPoint.y;
+        }
+        routePointsCount = count;
+        routeValid = count > 0;
+    }
+
+    /**
+     * @param nodeList nodes of the route, call {@link #notifyRouteChanged()} after moving a node
+     *                 in place
+     */
     public void setNodeList(List<PointF> nodeList) {
         this.nodeList = nodeList;
+        this.routeChanged = true;
     }
 
+    /**
+     * @param routeList node indices in order, adding or removing elements in place is picked up
+     *                  on the next frame, after replacing an element call
+     *                  {@link #notifyRouteChanged()}
+     */
     public void setRouteList(List<Integer> routeList) {
         this.routeList = routeList;
+        this.routeChanged = true;
+    }
+
+    /**
+     * draw a route given as points, e.g. from {@code MapUtils.getShortestRoute}
+     *
+     * @param points route points in order
+     */
+    public void setRoute(List<PointF> points) {
+        List<Integer> order = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            order.add(i);
+        }
+        this.nodeList = points;
+        this.routeList = order;
+        this.routeChanged = true;
+    }
+
+    /**
+     * rebuild the route geometry after the node or route list was modified in place, needed
+     * when the list sizes stay the same
+     */
+    public void notifyRouteChanged() {
+        this.routeChanged = true;
     }
 }
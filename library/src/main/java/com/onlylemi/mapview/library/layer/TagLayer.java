@@ -0,0 +1,224 @@
+package com.onlylemi.mapview.library.layer;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import com.onlylemi.mapview.library.MapView;
+import com.onlylemi.mapview.library.TagPositionStore;
+
+/**
+ * TagLayer
+ * <p>
+ * Draws the live tags of a {@link TagPositionStore}. Tags outside the screen are culled, tags
+ * are drawn as plain dots in one batch when zoomed out or when too many are visible, as circles
+ * with labels otherwise. Tags without an update fade out like in {@link GridLayer}.
+ *
+ * @author: onlylemi
+ */
+public class TagLayer extends MapBaseLayer {
+
+    private static final int DEFAULT_TAG_COLOR = 0xFF3EBFC9;
+    private static final int DEFAULT_LABEL_COLOR = 0xFF000000;
+    private static final float DEFAULT_LABEL_ZOOM = 1.0f;
+    private static final int MAX_LABELED_TAGS = 200;
+
+    private final TagPositionStore store;
+
+    private float dotRadius;
+    private float tagRadius;
+    private float labelZoom = DEFAULT_LABEL_ZOOM;
+
+    private Paint dotPaint;
+    private Paint tagPaint;
+    private Paint labelPaint;
+    // colors as set, faded with setColor as Paint.setAlpha allocates on API 26 - 29
+    private int tagColor = DEFAULT_TAG_COLOR;
+    private int labelColor = DEFAULT_LABEL_COLOR;
+
+    // drawing scratch, sized to the store capacity
+    private final float[] mapPoints; // visible tags in map coordinates
+    private final float[] screenPoints;
+    private final int[] visibleTags;
+    private final Matrix invertMatrix = new Matrix();
+    private final RectF viewport = new RectF();
+
+    public TagLayer(MapView mapView, TagPositionStore store) {
+        super(mapView);
+        this.store = store;
+        this.mapPoints = new float[store.getCapacity() * 2];
+        this.screenPoints = new float[store.getCapacity() * 2];
+        this.visibleTags = new int[store.getCapacity()];
+
+        level = TAG_LEVEL;
+        initLayer();
+    }
+
+    private void initLayer() {
+        dotRadius = setValue(3f);
+        tagRadius = setValue(6f);
+
+        // dots are drawn as round points
+        dotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        dotPaint.setStyle(Paint.Style.STROKE);
+        dotPaint.setStrokeCap(Paint.Cap.ROUND);
+        dotPaint.setStrokeWidth(dotRadius * 2);
+        dotPaint.setColor(DEFAULT_TAG_COLOR);
+
+        tagPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        tagPaint.setStyle(Paint.Style.FILL);
+        tagPaint.setColor(DEFAULT_TAG_COLOR);
+
+        labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        labelPaint.setColor(DEFAULT_LABEL_COLOR);
+        labelPaint.setTextSize(setValue(GridLayer.TAG_LABEL_TEXT_SIZE));
+
+        store.setOnTagsUpdatedListener(new TagPositionStore.OnTagsUpdatedListener() {
+            @Override
+            public void onTagsUpdated() {
+                if (isVisible) {
+                    mapView.refresh();
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean onTouch(MotionEvent event) {
+
+        return false;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix currentMatrix, float currentZoom, float
+            currentRotateDegrees) {
+        if (!isVisible) {
+            return;
+        }
+
+        // bounds of the (rotated) screen in map coordinates, padded by the tag size
+        currentMatrix.invert(invertMatrix);
+        viewport.set(0, 0, canvas.getWidth(), canvas.getHeight());
+        invertMatrix.mapRect(viewport);
+        float padding = invertMatrix.mapRadius(tagRadius);
+        viewport.inset(-padding, -padding);
+
+        // cull, fully faded tags are dropped
+        long now = SystemClock.uptimeMillis();
+        boolean fading = false;
+        int visibleCount = 0;
+        int size = store.size();
+        for (int i = 0; i < size; i++) {
+            long timestamp = store.getPosition(i, mapPoints, visibleCount * 2);
+            if (timestamp == 0 || now - timestamp >= GridLayer.FADE_OUT_MISSING_TAGS_BEFORE) {
+                continue;
+            }
+            if (viewport.contains(mapPoints[visibleCount * 2], mapPoints[visibleCount * 2 + 1])) {
+                fading |= now - timestamp > GridLayer.FADE_OUT_MISSING_TAGS_AFTER;
+                visibleTags[visibleCount++] = i;
+            }
+        }
+        if (visibleCount > 0) {
+            currentMatrix.mapPoints(screenPoints, 0, mapPoints, 0, visibleCount);
+
+            canvas.save();
+            if (currentZoom < labelZoom || visibleCount > MAX_LABELED_TAGS) {
+                drawDots(canvas, visibleCount, now);
+            } else {
+                drawLabeledTags(canvas, visibleCount, now);
+            }
+            canvas.restore();
+        }
+        if (fading) {
+            // keep animating the fade out
+            mapView.refresh();
+        }
+    }
+
+    /**
+     * fresh tags in one batch, fading tags one by one
+     */
+    private void drawDots(Canvas canvas, int visibleCount, long now) {
+        int fresh = 0;
+        for (int j = 0; j < visibleCount; j++) {
+            int alpha = getAlpha(now - store.getTimestamp(visibleTags[j]));
+            if (alpha == 255) {
+                // compact the fresh tags at the start, j >= fresh
+                screenPoints[fresh * 2] = screenPoints[j * 2];
+                screenPoints[fresh * 2 + 1] = screenPoints[j * 2 + 1];
+                fresh++;
+            } else {
+                tagPaint.setColor(withAlpha(tagColor, alpha));
+                canvas.drawCircle(screenPoints[j * 2], screenPoints[j * 2 + 1], dotRadius,
+                        tagPaint);
+            }
+        }
+        tagPaint.setColor(tagColor);
+        canvas.drawPoints(screenPoints, 0, fresh * 2, dotPaint);
+    }
+
+    private void drawLabeledTags(Canvas canvas, int visibleCount, long now) {
+        for (int j = 0; j < visibleCount; j++) {
+            int i = visibleTags[j];
+            float x = screenPoints[j * 2];
+            float y = screenPoints[j * 2 + 1];
+            int alpha = getAlpha(now - store.getTimestamp(i));
+            tagPaint.setColor(withAlpha(tagColor, alpha));
+            labelPaint.setColor(withAlpha(labelColor, alpha));
+            canvas.drawCircle(x, y, tagRadius, tagPaint);
+            String label = store.getLabel(i);
+            if (label != null) {
+                canvas.drawText(label, x + tagRadius * 1.5f, y - tagRadius, labelPaint);
+            }
+        }
+        tagPaint.setColor(tagColor);
+        labelPaint.setColor(labelColor);
+    }
+
+    /**
+     * @param color
+     * @param alpha staleness alpha, combined with the alpha of the color
+     * @return
+     */
+    private static int withAlpha(int color, int alpha) {
+        return (color & 0x00FFFFFF) | (Color.alpha(color) * alpha / 255 << 24);
+    }
+
+    /**
+     * alpha of a tag, fading out linearly between FADE_OUT_MISSING_TAGS_AFTER and
+     * FADE_OUT_MISSING_TAGS_BEFORE
+     *
+     * @param age ms since the last update
+     * @return
+     */
+    private static int getAlpha(long age) {
+        if (age <= GridLayer.FADE_OUT_MISSING_TAGS_AFTER) {
+            return 255;
+        }
+        long left = GridLayer.FADE_OUT_MISSING_TAGS_BEFORE - age;
+        return (int) Math.max(0, 255 * left / GridLayer.FADE_OUT_MISSING_TAGS_DURATION);
+    }
+
+    public TagPositionStore getStore() {
+        return store;
+    }
+
+    /**
+     * zoom from which tags are drawn with labels
+     *
+     * @param labelZoom
+     */
+    public void setLabelZoom(float labelZoom) {
+        this.labelZoom = labelZoom;
+    }
+
+    public void setTagColor(int color) {
+        tagColor = color;
+        dotPaint.setColor(color);
+        tagPaint.setColor(color);
+    }
+}
@@ -0,0 +1,369 @@
+package com.onlylemi.mapview.library.tile;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TilePyramid
+ * <p>
+ * Multi-resolution tiled view of a large floor plan image. Level 0 is the full resolution, every
+ * next level halves it, down to the level where the whole image fits into a single tile. The
+ * layout of all levels is precomputed, tiles are decoded on demand with
+ * {@link BitmapRegionDecoder} on a background thread and kept in a LRU cache bounded in bytes.
+ * <p>
+ * Every tile has a fixed index into flat arrays, so lookups and cache bookkeeping do not allocate.
+ * A tile whose decoding failed, e.g. on a transient out of memory, is retried when it is asked
+ * for again after a back-off that doubles with every failure in a row.
+ *
+ * @author: onlylemi
+ */
+public class TilePyramid {
+
+    private static final String TAG = "TilePyramid";
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final int DEFAULT_CACHE_SIZE_BYTES = 32 * 1024 * 1024;
+
+    private static final byte STATE_EMPTY = 0;
+    private static final byte STATE_PENDING = 1;
+    private static final byte STATE_READY = 2;
+    private static final byte STATE_FAILED = 3;
+    private static final int NONE = -1;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final int MAX_RETRY_SHIFT = 6; // 32s
+
+    private final BitmapRegionDecoder decoder;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int levelCount;
+    // per level layout
+    private final int[] levelColumns;
+    private final int[] levelRows;
+    private final int[] levelOffset;
+
+    // per tile state, guarded by this
+    private final Bitmap[] tiles;
+    private final byte[] states;
+    private final int[] lastWantedFrame;
+    private final long[] failedAt; // SystemClock.uptimeMillis() of the last failure
+    private final byte[] failures; // failures in a row
+    private final int[] lruPrev;
+    private final int[] lruNext;
+    private int lruHead = NONE; // most recently used
+    private int lruTail = NONE; // least recently used
+    private long cachedBytes;
+    private final long maxCachedBytes;
+    private int frame;
+
+    private final ExecutorService decodeExecutor;
+    private volatile OnTileLoadedListener onTileLoadedListener;
+    private volatile boolean released = false;
+
+    public TilePyramid(BitmapRegionDecoder decoder, int tileSize, long maxCachedBytes) {
+        this.decoder = decoder;
+        this.width = decoder.getWidth();
+        this.height = decoder.getHeight();
+        this.tileSize = tileSize;
+        this.maxCachedBytes = maxCachedBytes;
+
+        // levels down to a single tile
+        int levels = 1;
+        while ((width >> (levels - 1)) > tileSize || (height >> (levels - 1)) > tileSize) {
+            levels++;
+        }
+        levelCount = levels;
+        levelColumns = new int[levelCount];
+        levelRows = new int[levelCount];
+        levelOffset = new int[levelCount];
+        int tileCount = 0;
+        for (int level = 0; level < levelCount; level++) {
+            int levelTileSpan = tileSize << level;
+            levelColumns[level] = (width + levelTileSpan - 1) / levelTileSpan;
+            levelRows[level] = (height + levelTileSpan - 1) / levelTileSpan;
+            levelOffset[level] = tileCount;
+            tileCount += levelColumns[level] * levelRows[level];
+        }
+        tiles = new Bitmap[tileCount];
+        states = new byte[tileCount];
+        lastWantedFrame = new int[tileCount];
+        failedAt = new long[tileCount];
+        failures = new byte[tileCount];
+        lruPrev = new int[tileCount];
+        lruNext = new int[tileCount];
+
+        decodeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * open a tile pyramid over an image file with the default tile and cache size
+     *
+     * @param imagePath
+     * @return
+     * @throws IOException if the image can not be opened
+     */
+    public static TilePyramid newInstance(String imagePath) throws IOException {
+        return new TilePyramid(BitmapRegionDecoder.newInstance(imagePath, false),
+                DEFAULT_TILE_SIZE, DEFAULT_CACHE_SIZE_BYTES);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public int getColumns(int level) {
+        return levelColumns[level];
+    }
+
+    public int getRows(int level) {
+        return levelRows[level];
+    }
+
+    /**
+     * the level whose resolution is the closest one not lower than the screen resolution
+     *
+     * @param scale screen pixels per image pixel
+     * @return
+     */
+    public int getLevelForScale(float scale) {
+        int level = 0;
+        while (level < levelCount - 1 && (2 << level) * scale <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * start a new frame, tiles not asked for in the current or previous frame will not be
+     * decoded anymore
+     */
+    public synchronized void beginFrame() {
+        frame++;
+    }
+
+    /**
+     * get the tile if it is decoded, otherwise schedule its decoding
+     *
+     * @param level
+     * @param column
+     * @param row
+     * @return bitmap or null when the tile is not ready yet
+     */
+    public synchronized Bitmap getTile(int level, int column, int row) {
+        int index = levelOffset[level] + row * levelColumns[level] + column;
+        lastWantedFrame[index] = frame;
+        if (states[index] == STATE_READY) {
+            touch(index);
+            return tiles[index];
+        }
+        if (states[index] == STATE_FAILED && SystemClock.uptimeMillis() - failedAt[index]
+                >= RETRY_DELAY_MILLIS << Math.min(failures[index] - 1, MAX_RETRY_SHIFT)) {
+            states[index] = STATE_EMPTY;
+        }
+        if (states[index] == STATE_EMPTY && !released) {
+            states[index] = STATE_PENDING;
+            decodeExecutor.execute(new DecodeTask(level, column, row, index));
+        }
+        return null;
+    }
+
+    /**
+     * get the tile only if it is already decoded
+     *
+     * @param level
+     * @param column
+     * @param row
+     * @return
+     */
+    public synchronized Bitmap peekTile(int level, int column, int row) {
+        int index = levelOffset[level] + row * levelColumns[level] + column;
+        if (states[index] == STATE_READY) {
+            touch(index);
+            return tiles[index];
+        }
+        return null;
+    }
+
+    public void setOnTileLoadedListener(OnTileLoadedListener onTileLoadedListener) {
+        this.onTileLoadedListener = onTileLoadedListener;
+    }
+
+    /**
+     * stop decoding and drop the cache
+     */
+    public void release() {
+        released = true;
+        decodeExecutor.shutdownNow();
+        synchronized (this) {
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = null;
+                states[i] = STATE_EMPTY;
+                failures[i] = 0;
+            }
+            lruHead = lruTail = NONE;
+            cachedBytes = 0;
+        }
+        // the decoder may still be used by a decode in progress, leave it to the GC
+    }
+
+    private Bitmap decode(int level, int column, int row) {
+        int span = tileSize << level;
+        int left = column * span;
+        int top = row * span;
+        Rect region = new Rect(left, top, Math.min(left + span, width), Math.min(top + span,
+                height));
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1 << level;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return decoder.decodeRegion(region, options);
+    }
+
+    private synchronized boolean isStillWanted(int index) {
+        return !released && frame - lastWantedFrame[index] <= 1;
+    }
+
+    private synchronized void setState(int index, byte state) {
+        states[index] = state;
+    }
+
+    private synchronized void fail(int index) {
+        states[index] = STATE_FAILED;
+        failedAt[index] = SystemClock.uptimeMillis();
+        if (failures[index] < Byte.MAX_VALUE) {
+            failures[index]++;
+        }
+    }
+
+    private synchronized void put(int index, Bitmap bitmap) {
+        if (released) {
+            return;
+        }
+        tiles[index] = bitmap;
+        states[index] = STATE_READY;
+        failures[index] = 0;
+        cachedBytes += bitmap.getRowBytes() * bitmap.getHeight();
+        linkFirst(index);
+        // evict least recently used tiles, never the one just decoded
+        while (cachedBytes > maxCachedBytes && lruTail != index) {
+            int evicted = lruTail;
+            unlink(evicted);
+            Bitmap evictedBitmap = tiles[evicted];
+            cachedBytes -= evictedBitmap.getRowBytes() * evictedBitmap.getHeight();
+            // not recycled, it may be drawn right now on the render thread
+            tiles[evicted] = null;
+            states[evicted] = STATE_EMPTY;
+        }
+    }
+
+    private void touch(int index) {
+        if (lruHead != index) {
+            unlink(index);
+            linkFirst(index);
+        }
+    }
+
+    private void linkFirst(int index) {
+        lruPrev[index] = NONE;
+        lruNext[index] = lruHead;
+        if (lruHead != NONE) {
+            lruPrev[lruHead] = index;
+        }
+        lruHead = index;
+        if (lruTail == NONE) {
+            lruTail = index;
+        }
+    }
+
+    private void unlink(int index) {
+        int prev = lruPrev[index];
+        int next = lruNext[index];
+        if (prev != NONE) {
+            lruNext[prev] = next;
+        } else {
+            lruHead = next;
+        }
+        if (next != NONE) {
+            lruPrev[next] = prev;
+        } else {
+            lruTail = prev;
+        }
+    }
+
+    private class DecodeTask implements Runnable {
+
+        private final int level;
+        private final int column;
+        private final int row;
+        private final int index;
+
+        DecodeTask(int level, int column, int row, int index) {
+            this.level = level;
+            this.column = column;
+            this.row = row;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            if (!isStillWanted(index)) {
+                // scrolled or zoomed away before we got to it
+                setState(index, STATE_EMPTY);
+                return;
+            }
+            Bitmap bitmap = null;
+            try {
+                bitmap = decode(level, column, row);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "tile decoding failed", e);
+            } catch (OutOfMemoryError e) {
+                // evictions or a smaller level may free enough memory for the retry
+                Log.w(TAG, "tile decoding out of memory", e);
+            }
+            if (bitmap == null) {
+                // retried after a back-off, not every frame
+                fail(index);
+                return;
+            }
+            put(index, bitmap);
+            OnTileLoadedListener listener = onTileLoadedListener;
+            if (listener != null) {
+                listener.onTileLoaded(TilePyramid.this);
+            }
+        }
+    }
+
+    public interface OnTileLoadedListener {
+        void onTileLoaded(TilePyramid pyramid);
+    }
+}
@@ -1,18 +1,17 @@
 package com.onlylemi.mapview.library.utils;
 
 import android.graphics.PointF;
-import android.util.Log;
 
-import com.onlylemi.mapview.library.utils.math.FloydAlgorithm;
-import com.onlylemi.mapview.library.utils.math.GeneticAlgorithm;
-import com.onlylemi.mapview.library.utils.math.TSPNearestNeighbour;
+import com.onlylemi.mapview.core.geometry.Geometry;
+import com.onlylemi.mapview.core.math.TSPNearestNeighbour;
+import com.onlylemi.mapview.core.routing.RouteMath;
 
-import java.lang.annotation.Target;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * MapMath
+ * <p>
+ * PointF adapters of the geometry and routing math in the core module.
  *
  * @author onlylemi
  */
@@ -31,7 +30,7 @@ public final class MapMath {
      */
     public static float getDistanceBetweenTwoPoints(float x1, float y1,
                                                     float x2, float y2) {
-        return (float) Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));
+        return Geometry.distance(x1, y1, x2, y2);
     }
 
     /**
@@ -42,8 +41,7 @@ public final class MapMath {
      * @return
      */
     public static float getDistanceBetweenTwoPoints(PointF start, PointF end) {
-        return (float) Math.sqrt(Math.pow(end.x - start.x, 2)
-                + Math.pow(end.y - start.y, 2));
+        return Geometry.distance(start.x, start.y, end.x, end.y);
     }
 
 
@@ -57,7 +55,7 @@ public final class MapMath {
      */
     public static List<Integer> getShortestPathBetweenTwoPoints(int begin,
                                                                 int end, float[][] matrix) {
-        return FloydAlgorithm.getInstance().findCheapestPath(begin, end, matrix);
+        return RouteMath.getShortestPath(begin, end, matrix);
     }
 
     /**
@@ -67,7 +65,7 @@ public final class MapMath {
      * @return
      */
     public static List<Integer> getBestPathBetweenPointsByNearestNeighbour(float[][] matrix) {
-        return TSPNearestNeighbour.getInstance().tsp(matrix);
+        return new TSPNearestNeighbour().tsp(matrix);
     }
 
     /**
@@ -77,16 +75,7 @@ public final class MapMath {
      * @return
      */
     public static List<Integer> getBestPathBetweenPointsByGeneticAlgorithm(float[][] matrix) {
-        GeneticAlgorithm ga = GeneticAlgorithm.getInstance();
-        ga.setAutoNextGeneration(true);
-        ga.setMaxGeneration(200);
-        int[] best = ga.tsp(matrix);
-
-        List<Integer> result = new ArrayList<>(best.length);
-        for (int i = 0; i < best.length; i++) {
-            result.add(best[i]);
-        }
-        return result;
+        return RouteMath.getBestOrderByGeneticAlgorithm(matrix);
     }
 
 
@@ -98,23 +87,7 @@ public final class MapMath {
      * @return
      */
     public static float getDegreeBetweenTwoPointsWithHorizontal(PointF start, PointF end) {
-        float angle = 90.0f;
-        if (start.x != end.x) {
-            angle = (float) Math.toDegrees(Math.atan((end.y - start.y)
-                    / (end.x - start.x)));
-            if (end.x < start.x && end.y >= start.y) {
-                angle = angle + 180.0f;
-            } else if (end.x < start.x && end.y > start.y) {
-                angle = angle - 180.f;
-            }
-        } else {
-            if (start.y < end.y) {
-                angle = 90.0f;
-            } else if (start.y > end.y) {
-                angle = -90.0f;
-            }
-        }
-        return angle;
+        return Geometry.degreeWithHorizontal(start.x, start.y, end.x, end.y);
     }
 
     /**
@@ -125,23 +98,7 @@ public final class MapMath {
      * @return
      */
     public static float getDegreeBetweenTwoPointsWithVertical(PointF start, PointF end) {
-        float angle = 90.0f;
-        if (start.y != end.y) {
-            angle = -(float) Math.toDegrees(Math.atan((end.x - start.x)
-                    / (end.y - start.y)));
-            if (end.y > start.y && end.x >= start.x) {
-                angle = angle + 180.0f;
-            } else if (end.y > start.y && end.x > start.x) {
-                angle = angle - 180.f;
-            }
-        } else {
-            if (start.x < end.x) {
-                angle = 90.0f;
-            } else if (start.x > end.x) {
-                angle = -90.0f;
-            }
-        }
-        return angle;
+        return Geometry.degreeWithVertical(start.x, start.y, end.x, end.y);
     }
 
     /**
@@ -154,8 +111,7 @@ public final class MapMath {
      * @return
      */
     public static float getDegreeBetweenTwoPoints(float x1, float y1, float x2, float y2) {
-        double radians = Math.atan2(y1 - y2, x1 - x2);
-        return (float) Math.toDegrees(radians);
+        return Geometry.degree(x1, y1, x2, y2);
     }
 
     /**
@@ -198,32 +154,13 @@ public final class MapMath {
      *
      * @param start
      * @param end
-     * @param value
+     * @param value 0 - 1
      * @return
      */
     public static PointF getEveryPointBetweenTwoPoints(PointF start, PointF end, float value) {
-        // y=kx+b
-        float x, y;
-        // with slope
-        if (start.x != end.x) {
-            float k = (end.y - start.y) / (end.x - start.x);
-            float b = end.y - k * end.x;
-
-            if (end.x > start.x) {
-                x = Math.min(end.x, start.x) + (end.x - start.x) * value;
-            } else {
-                x = Math.max(end.x, start.x) + (end.x - start.x) * value;
-            }
-            y = k * x + b;
-        } else { // no slope
-            x = start.x;
-            if (end.y > start.y) {
-                y = Math.min(end.y, start.y) + (end.y - start.y) * value;
-            } else {
-                y = Math.max(end.y, start.y) + (end.y - start.y) * value;
-            }
-        }
-        return new PointF(x, y);
+        float[] out = new float[2];
+        Geometry.interpolate(start.x, start.y, end.x, end.y, value, out, 0);
+        return new PointF(out[0], out[1]);
     }
 
 
@@ -237,17 +174,8 @@ public final class MapMath {
      */
     public static float getDistanceFromPointToLine(PointF point, PointF linePoint1, PointF
             linePoint2) {
-        // y = kx + b;
-        // d = |kx-y+b| / √(k^2+1)
-        float d;
-        if (linePoint1.x != linePoint2.x) { // with slope
-            float k = (linePoint2.y - linePoint1.y) / (linePoint2.x - linePoint1.x);
-            float b = linePoint2.y - k * linePoint2.x;
-            d = Math.abs(k * point.x - point.y + b) / (float) Math.sqrt(k * k + 1);
-        } else { // no slope
-            d = Math.abs(point.x - linePoint1.x);
-        }
-        return d;
+        return Geometry.distanceFromPointToLine(point.x, point.y, linePoint1.x, linePoint1.y,
+                linePoint2.x, linePoint2.y);
     }
 
     /**
@@ -260,26 +188,10 @@ public final class MapMath {
      */
     public static PointF getIntersectionCoordinatesFromPointToLine(PointF point, PointF linePoint1, PointF
             linePoint2) {
-        // y = kx + b;
-        float x, y;
-        if (linePoint1.x != linePoint2.x) { // with slope
-            float k = (linePoint2.y - linePoint1.y) / (linePoint2.x - linePoint1.x);
-            float b = linePoint2.y - k * linePoint2.x;
-            // The equation of point
-            if (k != 0) {
-                float kV = -1 / k;
-                float bV = point.y - kV * point.x;
-                x = (b - bV) / (kV - k);
-                y = kV * x + bV;
-            } else {
-                x = point.x;
-                y = linePoint1.y;
-            }
-        } else { // no slope
-            x = linePoint1.x;
-            y = point.y;
-        }
-        return new PointF(x, y);
+        float[] out = new float[2];
+        Geometry.projectPointToLine(point.x, point.y, linePoint1.x, linePoint1.y,
+                linePoint2.x, linePoint2.y, out, 0);
+        return new PointF(out[0], out[1]);
     }
 
     /**
@@ -292,14 +204,8 @@ public final class MapMath {
      */
     public static boolean isObtuseAnglePointAndLine(PointF point, PointF linePoint1, PointF
             linePoint2) {
-        // A*A + B*B < C*C
-        float p_l1, p_l2, l1_l2;
-        p_l1 = getDistanceBetweenTwoPoints(point, linePoint1);
-        p_l2 = getDistanceBetweenTwoPoints(point, linePoint2);
-        l1_l2 = getDistanceBetweenTwoPoints(linePoint1, linePoint2);
-
-        return ((p_l1 * p_l1 + l1_l2 * l1_l2) < p_l2 * p_l2)
-                || ((p_l2 * p_l2 + l1_l2 * l1_l2) < p_l1 * p_l1);
+        return Geometry.isObtuseAnglePointAndLine(point.x, point.y, linePoint1.x, linePoint1.y,
+                linePoint2.x, linePoint2.y);
     }
 
 }
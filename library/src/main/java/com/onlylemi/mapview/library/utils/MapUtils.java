@@ -7,11 +7,23 @@ import android.graphics.PointF;
 import android.graphics.RectF;
 import android.util.Log;
 
+import com.onlylemi.mapview.core.routing.ContractionHierarchy;
+import com.onlylemi.mapview.core.routing.RouteMath;
+import com.onlylemi.mapview.core.routing.RoutingEngine;
+import com.onlylemi.mapview.core.routing.RoutingGraph;
+import com.onlylemi.mapview.core.routing.RoutingService;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * MapUtils
+ * <p>
+ * Stateless: the routing methods never modify the nodes and nodesContact lists passed in, so
+ * they may run on several threads. Points off the graph are returned as route points (see
+ * {@link #getShortestRoute(PointF, PointF, RoutingService)}), not appended to the nodes.
  *
  * @author onlylemi
  */
@@ -19,15 +31,13 @@ public final class MapUtils {
 
     private static final String TAG = "MapUtils: ";
 
-    private static final float INF = Float.MAX_VALUE;
-    private static int nodesSize;
-    private static int nodesContactSize;
-
     private MapUtils() {}
 
+    /**
+     * @deprecated the lists are no longer modified, there are no sizes to restore them to
+     */
+    @Deprecated
     public static void init(int nodessize, int nodescontactsize) {
-        nodesSize = nodessize;
-        nodesContactSize = nodescontactsize;
     }
 
     /**
@@ -39,12 +49,7 @@ public final class MapUtils {
      */
     public static float getDistanceBetweenList(List<PointF> nodes,
                                                List<Integer> list) {
-        float distance = 0;
-        for (int i = 0; i < list.size() - 1; i++) {
-            distance += MapMath.getDistanceBetweenTwoPoints(nodes.get(list.get(i)),
-                    nodes.get(list.get(i + 1)));
-        }
-        return distance;
+        return RouteMath.getRouteLength(toNodeArray(nodes), list);
     }
 
     /**
@@ -84,7 +89,9 @@ public final class MapUtils {
     }
 
     /**
-     * get shortest path between two points
+     * get shortest path between two points, builds the all pairs tables on every call: build
+     * a {@link RoutingGraph} once and use {@link #getShortestPathBetweenTwoPoints(int, int,
+     * RoutingGraph)} for repeated queries
      *
      * @param start        start point
      * @param end          end point
@@ -101,76 +108,297 @@ public final class MapUtils {
     }
 
     /**
-     * get best path between points
+     * routing graph of the nodes, build it once and pass it to the queries; rebuild it when the
+     * nodes or nodesContact change
      *
-     * @param points
      * @param nodes
      * @param nodesContact
      * @return
      */
-    public static List<Integer> getBestPathBetweenPoints(int[] points, List<PointF> nodes,
-                                                         List<PointF> nodesContact) {
-        // adjacency matrix
-        float[][] matrix = new float[points.length][points.length];
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = i; j < matrix[i].length; j++) {
-                if (i == j) {
-                    matrix[i][j] = INF;
-                } else {
-                    matrix[i][j] = getDistanceBetweenList(
-                            nodes, getShortestPathBetweenTwoPoints(points[i],
-                                    points[j], nodes, nodesContact));
-                    matrix[j][i] = matrix[i][j];
-                }
-            }
-        }
+    public static RoutingGraph getRoutingGraph(List<PointF> nodes, List<PointF> nodesContact) {
+        return getRoutingGraph(nodes, nodesContact, RoutingEngine.FLOYD);
+    }
 
-        // TSP to get best path
-        List<Integer> routeList = new ArrayList<>();
-        List<Integer> result = MapMath.getBestPathBetweenPointsByGeneticAlgorithm(matrix);
-        for (int i = 0; i < result.size() - 1; i++) {
-            int size = routeList.size();
-            routeList.addAll(getShortestPathBetweenTwoPoints(
-                    points[result.get(i)], points[result.get(i + 1)], nodes,
-                    nodesContact));
-            if (i != 0) {
-                routeList.remove(size);
+    /**
+     * routing graph of the nodes with a choice of engine: FLOYD for small graphs, A_STAR or
+     * DIJKSTRA for large building graphs where the n x n tables do not fit in memory,
+     * CONTRACTION_HIERARCHY for the fastest queries on them after preprocessing
+     *
+     * @param nodes
+     * @param nodesContact
+     * @param engine
+     * @return
+     */
+    public static RoutingGraph getRoutingGraph(List<PointF> nodes, List<PointF> nodesContact,
+                                               RoutingEngine engine) {
+        return new RoutingGraph(toNodeArray(nodes), nodes.size(), toEdgeArray(nodesContact),
+                nodesContact.size(), engine);
+    }
+
+    /**
+     * immutable routing service of the nodes, its queries may run in parallel on a worker pool;
+     * the preprocessing of the engine runs here
+     *
+     * @param nodes
+     * @param nodesContact
+     * @param engine
+     * @return
+     */
+    public static RoutingService getRoutingService(List<PointF> nodes, List<PointF> nodesContact,
+                                                   RoutingEngine engine) {
+        return new RoutingService(toNodeArray(nodes), nodes.size(), toEdgeArray(nodesContact),
+                nodesContact.size(), engine);
+    }
+
+    /**
+     * routing graph of the nodes with the CONTRACTION_HIERARCHY engine, its hierarchy loaded
+     * from a file; if the file is missing or was built for other nodes the hierarchy is built,
+     * which takes seconds on large graphs, and saved to the file. Call off the UI thread.
+     *
+     * @param nodes
+     * @param nodesContact
+     * @param hierarchyFile
+     * @return
+     */
+    public static RoutingGraph getRoutingGraph(List<PointF> nodes, List<PointF> nodesContact,
+                                               File hierarchyFile) {
+        RoutingGraph graph = getRoutingGraph(nodes, nodesContact,
+                RoutingEngine.CONTRACTION_HIERARCHY);
+        if (hierarchyFile.exists()) {
+            try {
+                graph.setHierarchy(ContractionHierarchy.load(hierarchyFile));
+                return graph;
+            } catch (IOException e) {
+                Log.w(TAG, "unreadable hierarchy " + hierarchyFile + ": " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                Log.i(TAG, "stale hierarchy " + hierarchyFile + ", rebuilding");
             }
         }
-        return routeList;
+        try {
+            graph.getHierarchy().save(hierarchyFile);
+        } catch (IOException e) {
+            Log.w(TAG, "cannot save hierarchy " + hierarchyFile + ": " + e.getMessage());
+        }
+        return graph;
     }
 
+    /**
+     * get shortest path between two nodes, a lookup in the tables of the graph
+     *
+     * @param start
+     * @param end
+     * @param graph
+     * @return node indexes, empty if end is unreachable
+     */
+    public static List<Integer> getShortestPathBetweenTwoPoints(int start, int end,
+                                                                RoutingGraph graph) {
+        return graph.getPath(start, end);
+    }
+
+    /**
+     * get shortest distance between two nodes
+     *
+     * @param start
+     * @param end
+     * @param graph
+     * @return {@link RoutingGraph#INF} if end is unreachable
+     */
+    public static float getShortestDistanceBetweenTwoPoints(int start, int end,
+                                                            RoutingGraph graph) {
+        return graph.getDistance(start, end);
+    }
 
     /**
      * get best path between points
      *
+     * @param points node indexes
+     * @param graph
+     * @return
+     */
+    public static List<Integer> getBestPathBetweenPoints(int[] points, RoutingGraph graph) {
+        return RouteMath.getBestPath(points, graph);
+    }
+
+    /**
+     * get the shortest route between two points off the graph, each joins it at its projection
+     * on the nearest edge
+     *
+     * @param start
+     * @param end
+     * @param service
+     * @return route points from the projection of start to the projection of end, empty if end
+     * is unreachable; draw it with {@code RouteLayer.setRoute}
+     */
+    public static List<PointF> getShortestRoute(PointF start, PointF end,
+                                                RoutingService service) {
+        List<Integer> path = new ArrayList<>();
+        float[] projections = new float[4];
+        List<PointF> route = new ArrayList<>();
+        if (service.getPath(start.x, start.y, end.x, end.y, path, projections)
+                == RoutingService.INF) {
+            return route;
+        }
+        route.add(new PointF(projections[0], projections[1]));
+        addNodes(service, path, route);
+        route.add(new PointF(projections[2], projections[3]));
+        return route;
+    }
+
+    /**
+     * get the shortest route from the position point to the target node, the position joins
+     * the graph at its projection on the nearest edge
+     *
+     * @param position
+     * @param target
+     * @param service
+     * @return route points from the projection of the position to the target, empty if target
+     * is unreachable
+     */
+    public static List<PointF> getShortestRoute(PointF position, int target,
+                                                RoutingService service) {
+        List<Integer> path = new ArrayList<>();
+        float[] projection = new float[2];
+        List<PointF> route = new ArrayList<>();
+        if (service.getPath(position.x, position.y, target, path, projection)
+                == RoutingService.INF) {
+            return route;
+        }
+        route.add(new PointF(projection[0], projection[1]));
+        addNodes(service, path, route);
+        return route;
+    }
+
+    /**
+     * get the best route visiting points off the graph, each joins it at its projection on the
+     * nearest edge
+     *
      * @param pointList
      * @param nodes
      * @param nodesContact
+     * @return route points
+     */
+    public static List<PointF> getBestRoute(List<PointF> pointList, List<PointF> nodes,
+                                            List<PointF> nodesContact) {
+        // the projections join a private copy of the graph
+        List<PointF> allNodes = new ArrayList<>(nodes);
+        List<PointF> allContacts = new ArrayList<>(nodesContact);
+        int[] points = new int[pointList.size()];
+        for (int i = 0; i < pointList.size(); i++) {
+            addPointToList(pointList.get(i), allNodes, allContacts);
+            points[i] = allNodes.size() - 1;
+        }
+        List<Integer> path = getBestPathBetweenPoints(points, allNodes, allContacts);
+        List<PointF> route = new ArrayList<>(path.size());
+        for (int i = 0; i < path.size(); i++) {
+            PointF node = allNodes.get(path.get(i));
+            route.add(new PointF(node.x, node.y));
+        }
+        return route;
+    }
+
+    /**
+     * get shortest path between two points off the graph
+     *
+     * @param start
+     * @param end
+     * @param graph
+     * @param nodes nodes list of the graph, not modified
+     * @return node indexes of the route between the projections of start and end, empty if end
+     * is unreachable
+     * @deprecated the projections are not nodes, use
+     * {@link #getShortestRoute(PointF, PointF, RoutingService)} to draw them too
+     */
+    @Deprecated
+    public static List<Integer> getShortestDistanceBetweenTwoPoints(PointF start, PointF end,
+                                                                    RoutingGraph graph,
+                                                                    List<PointF> nodes) {
+        List<Integer> route = new ArrayList<>();
+        graph.getPath(start.x, start.y, end.x, end.y, route, new float[4]);
+        return route;
+    }
+
+    /**
+     * get the shortest path from the position point to the target node
+     *
+     * @param position
+     * @param target
+     * @param graph
+     * @param nodes    nodes list of the graph, not modified
+     * @return node indexes of the route after the projection of the position, empty if target
+     * is unreachable
+     * @deprecated the projection is not a node, use
+     * {@link #getShortestRoute(PointF, int, RoutingService)} to draw it too
+     */
+    @Deprecated
+    public static List<Integer> getShortestDistanceBetweenTwoPoints(PointF position, int target,
+                                                                    RoutingGraph graph,
+                                                                    List<PointF> nodes) {
+        List<Integer> route = new ArrayList<>();
+        graph.getPath(position.x, position.y, target, route, new float[2]);
+        return route;
+    }
+
+    /**
+     * snap a position onto the route network, e.g. a live tag position; a grid lookup of the
+     * nearest edges, not a scan of all of them
+     *
+     * @param point
+     * @param service
+     * @return the nearest point of the nearest edge, null without edges
+     */
+    public static PointF getNearestPointOnRoute(PointF point, RoutingService service) {
+        float[] projection = new float[2];
+        if (service.project(point.x, point.y, projection, 0) < 0) {
+            return null;
+        }
+        return new PointF(projection[0], projection[1]);
+    }
+
+    private static void addNodes(RoutingService service, List<Integer> path,
+                                 List<PointF> out) {
+        for (int i = 0; i < path.size(); i++) {
+            int node = path.get(i);
+            out.add(new PointF(service.getNodeX(node), service.getNodeY(node)));
+        }
+    }
+
+    /**
+     * get best path between points
+     *
+     * @param points
+     * @param nodes
+     * @param nodesContact
      * @return
      */
+    public static List<Integer> getBestPathBetweenPoints(int[] points, List<PointF> nodes,
+                                                         List<PointF> nodesContact) {
+        return RouteMath.getBestPath(points, toNodeArray(nodes), nodes.size(),
+                toEdgeArray(nodesContact), nodesContact.size());
+    }
+
+
+    /**
+     * get best path between points
+     *
+     * @param pointList
+     * @param nodes        not modified
+     * @param nodesContact not modified
+     * @return node indexes of the route, the points themselves are not nodes and are left out
+     * @deprecated use {@link #getBestRoute(List, List, List)} to draw the points too
+     */
+    @Deprecated
     public static List<Integer> getBestPathBetweenPoints(List<PointF> pointList,
                                                          List<PointF> nodes, List<PointF>
                                                                  nodesContact) {
-        if (nodesSize != nodes.size()) {
-            int value = nodes.size() - nodesSize;
-            for (int i = 0; i < value; i++) {
-                nodes.remove(nodes.size() - 1);
-            }
-            value = nodesContact.size() - nodesContactSize;
-            for (int i = 0; i < value; i++) {
-                nodesContact.remove(nodesContact.size() - 1);
-            }
-        }
-
-        //find the point on the nearest route
+        List<PointF> allNodes = new ArrayList<>(nodes);
+        List<PointF> allContacts = new ArrayList<>(nodesContact);
         int[] points = new int[pointList.size()];
         for (int i = 0; i < pointList.size(); i++) {
-            addPointToList(pointList.get(i), nodes, nodesContact);
-            points[i] = nodes.size() - 1;
+            addPointToList(pointList.get(i), allNodes, allContacts);
+            points[i] = allNodes.size() - 1;
         }
-
-        return getBestPathBetweenPoints(points, nodes, nodesContact);
+        return graphNodesOnly(getBestPathBetweenPoints(points, allNodes, allContacts),
+                nodes.size());
     }
 
     /**
@@ -199,26 +427,8 @@ public final class MapUtils {
      */
     public static float[][] getMatrixBetweenFloorPlanNodes(List<PointF> nodes, List<PointF>
             nodesContact) {
-        // set default is INF
-        float[][] matrix = new float[nodes.size()][nodes.size()];
-        for (int i = 0; i < matrix.length; i++) {
-            for (int j = 0; j < matrix[i].length; j++) {
-                matrix[i][j] = INF;
-            }
-        }
-
-        // set value for matrix
-        for (int i = 0; i < nodesContact.size(); i++) {
-            matrix[(int) nodesContact.get(i).x][(int) nodesContact.get(i).y] = MapMath
-                    .getDistanceBetweenTwoPoints(nodes.get((int) nodesContact.get(i).x),
-                            nodes.get((int) nodesContact.get(i).y));
-
-            matrix[(int) nodesContact.get(i).y][(int) nodesContact.get(i).x] = matrix[(int)
-                    nodesContact
-                            .get(i).x][(int) nodesContact.get(i).y];
-        }
-
-        return matrix;
+        return RouteMath.getAdjacencyMatrix(toNodeArray(nodes), nodes.size(),
+                toEdgeArray(nodesContact), nodesContact.size());
     }
 
     /**
@@ -226,29 +436,21 @@ public final class MapUtils {
      *
      * @param start
      * @param end
-     * @param nodes
-     * @param nodesContact
-     * @return
+     * @param nodes        not modified
+     * @param nodesContact not modified
+     * @return node indexes of the route, start and end are not nodes and are left out
+     * @deprecated use {@link #getShortestRoute(PointF, PointF, RoutingService)}
      */
+    @Deprecated
     public static List<Integer> getShortestDistanceBetweenTwoPoints(PointF start, PointF end,
                                                                     List<PointF> nodes,
                                                                     List<PointF> nodesContact) {
-        if (nodesSize != nodes.size()) {
-            int value = nodes.size() - nodesSize;
-            for (int i = 0; i < value; i++) {
-                nodes.remove(nodes.size() - 1);
-            }
-            value = nodesContact.size() - nodesContactSize;
-            for (int i = 0; i < value; i++) {
-                nodesContact.remove(nodesContact.size() - 1);
-            }
-        }
-
-        addPointToList(start, nodes, nodesContact);
-        addPointToList(end, nodes, nodesContact);
-
-        return getShortestPathBetweenTwoPoints(nodes.size() - 2, nodes.size() - 1, nodes,
-                nodesContact);
+        List<PointF> allNodes = new ArrayList<>(nodes);
+        List<PointF> allContacts = new ArrayList<>(nodesContact);
+        addPointToList(start, allNodes, allContacts);
+        addPointToList(end, allNodes, allContacts);
+        return graphNodesOnly(getShortestPathBetweenTwoPoints(allNodes.size() - 2,
+                allNodes.size() - 1, allNodes, allContacts), nodes.size());
     }
 
     /**
@@ -256,31 +458,37 @@ public final class MapUtils {
      *
      * @param position
      * @param target
-     * @param nodes
-     * @param nodesContact
-     * @return
+     * @param nodes        not modified
+     * @param nodesContact not modified
+     * @return node indexes of the route, the position is not a node and is left out
+     * @deprecated use {@link #getShortestRoute(PointF, int, RoutingService)}
      */
+    @Deprecated
     public static List<Integer> getShortestDistanceBetweenTwoPoints(PointF position, int target,
                                                                     List<PointF> nodes,
                                                                     List<PointF> nodesContact) {
-        if (nodesSize != nodes.size()) {
-            int value = nodes.size() - nodesSize;
-            for (int i = 0; i < value; i++) {
-                nodes.remove(nodes.size() - 1);
-            }
-            value = nodesContact.size() - nodesContactSize;
-            for (int i = 0; i < value; i++) {
-                nodesContact.remove(nodesContact.size() - 1);
+        List<PointF> allNodes = new ArrayList<>(nodes);
+        List<PointF> allContacts = new ArrayList<>(nodesContact);
+        addPointToList(position, allNodes, allContacts);
+        return graphNodesOnly(getShortestPathBetweenTwoPoints(allNodes.size() - 1, target,
+                allNodes, allContacts), nodes.size());
+    }
+
+    /**
+     * drop the indexes of points added to a copy of the nodes
+     */
+    private static List<Integer> graphNodesOnly(List<Integer> route, int nodeCount) {
+        List<Integer> nodes = new ArrayList<>(route.size());
+        for (int i = 0; i < route.size(); i++) {
+            if (route.get(i) < nodeCount) {
+                nodes.add(route.get(i));
             }
         }
-
-        addPointToList(position, nodes, nodesContact);
-
-        return getShortestPathBetweenTwoPoints(nodes.size() - 1, target, nodes, nodesContact);
+        return nodes;
     }
 
     /**
-     * add point to list
+     * add point to a private copy of the lists
      *
      * @param point
      * @param nodes
@@ -289,28 +497,50 @@ public final class MapUtils {
     private static void addPointToList(PointF point, List<PointF> nodes, List<PointF>
             nodesContact) {
         if (point != null) {
-            PointF pV = null;
-            int po1 = 0, po2 = 0;
-            float min1 = INF;
-            for (int i = 0; i < nodesContact.size() - 1; i++) {
-                PointF p1 = nodes.get((int) nodesContact.get(i).x);
-                PointF p2 = nodes.get((int) nodesContact.get(i).y);
-                if (!MapMath.isObtuseAnglePointAndLine(point, p1, p2)) {
-                    float minDis = MapMath.getDistanceFromPointToLine(point, p1, p2);
-                    if (min1 > minDis) {
-                        pV = MapMath.getIntersectionCoordinatesFromPointToLine(point, p1, p2);
-                        min1 = minDis;
-                        po1 = (int) nodesContact.get(i).x;
-                        po2 = (int) nodesContact.get(i).y;
-                    }
-                }
+            // connect the projection of the point to the nearest edge to both its ends
+            float[] projection = new float[2];
+            int[] edges = toEdgeArray(nodesContact);
+            int edge = RouteMath.findNearestEdge(point.x, point.y, toNodeArray(nodes), edges,
+                    nodesContact.size(), projection);
+            if (edge == -1) {
+                // no edge to project on, the point stays unreachable
+                nodes.add(new PointF(point.x, point.y));
+                return;
             }
-            // get intersection
-            nodes.add(pV);
-            //Log.i(TAG, "node=" + (nodes.size() - 1) + ", po1=" + po1 + ", po2=" + po2);
-            nodesContact.add(new PointF(po1, nodes.size() - 1));
-            nodesContact.add(new PointF(po2, nodes.size() - 1));
+            nodes.add(new PointF(projection[0], projection[1]));
+            nodesContact.add(new PointF(edges[2 * edge], nodes.size() - 1));
+            nodesContact.add(new PointF(edges[2 * edge + 1], nodes.size() - 1));
+        }
+    }
+
+    /**
+     * nodes as packed x, y pairs for the core routing math
+     *
+     * @param nodes
+     * @return
+     */
+    public static float[] toNodeArray(List<PointF> nodes) {
+        float[] array = new float[nodes.size() * 2];
+        for (int i = 0; i < nodes.size(); i++) {
+            array[2 * i] = nodes.get(i).x;
+            array[2 * i + 1] = nodes.get(i).y;
+        }
+        return array;
+    }
+
+    /**
+     * nodesContact (x, y are the node indexes) as packed index pairs for the core routing math
+     *
+     * @param nodesContact
+     * @return
+     */
+    public static int[] toEdgeArray(List<PointF> nodesContact) {
+        int[] array = new int[nodesContact.size() * 2];
+        for (int i = 0; i < nodesContact.size(); i++) {
+            array[2 * i] = (int) nodesContact.get(i).x;
+            array[2 * i + 1] = (int) nodesContact.get(i).y;
         }
+        return array;
     }
 
     /**
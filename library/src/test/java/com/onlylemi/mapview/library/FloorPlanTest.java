@@ -0,0 +1,150 @@
+package com.onlylemi.mapview.library;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FloorPlanTest
+ *
+ * @author: onlylemi
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 29)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class FloorPlanTest {
+
+    private static final int PLANS = 12;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final List<FloorPlan> floorPlans = new ArrayList<>();
+    private final FloorPlan.OnBitmapDecodedListener listener =
+            new FloorPlan.OnBitmapDecodedListener() {
+        @Override
+        public void onBitmapDecoded(FloorPlan floorPlan, Bitmap bitmap) {
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        MapView mapView = new MapView(RuntimeEnvironment.getApplication());
+        for (int i = 0; i < PLANS; i++) {
+            String name = "floor_plan_" + i + ".png";
+            writeImage(new File(RuntimeEnvironment.getApplication().getFilesDir(), name));
+            floorPlans.add(new FloorPlan(name, 0, 0, 0, 100, mapView));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (FloorPlan floorPlan : floorPlans) {
+            floorPlan.recycleBitmap();
+        }
+    }
+
+    @Test
+    public void sampleSize() {
+        // 100 floor plan pixels in 10 m, 1 screen pixel per cm: 10 screen pixels per pixel
+        assertEquals(1, FloorPlan.computeSampleSize(100, 1f));
+        // 0.1 screen pixel per floor plan pixel
+        assertEquals(8, FloorPlan.computeSampleSize(100, 0.01f));
+        assertEquals(1, FloorPlan.computeSampleSize(100, 0));
+        assertEquals(1, FloorPlan.computeSampleSize(100, Float.NaN));
+    }
+
+    @Test
+    public void decodesTheRequestedRegion() {
+        FloorPlan floorPlan = floorPlans.get(0);
+        Rect region = new Rect(100, 200, 300, 300);
+        floorPlan.requestBitmap(0.05f, region, listener);
+        awaitDecoded(floorPlan, 2, region);
+
+        Rect out = new Rect();
+        assertTrue(floorPlan.getBitmap() == floorPlan.getBitmap(out));
+        assertEquals(region, out);
+    }
+
+    @Test
+    public void onlyTheLastRequestIsDecoded() {
+        FloorPlan floorPlan = floorPlans.get(0);
+        for (int i = 0; i < 50; i++) {
+            floorPlan.requestBitmap(1, new Rect(0, 0, 10 + i, 10 + i), listener);
+        }
+        awaitDecoded(floorPlan, 1, new Rect(0, 0, 59, 59));
+    }
+
+    /**
+     * more floor plans than the shared queue holds: requests dropped from it are submitted
+     * again by an equal request, they are not taken for pending forever
+     */
+    @Test
+    public void droppedRequestsAreSubmittedAgain() {
+        Rect region = new Rect(0, 0, 400, 400);
+        for (FloorPlan floorPlan : floorPlans) {
+            floorPlan.requestBitmap(1, region, listener);
+        }
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (FloorPlan floorPlan : floorPlans) {
+            while (!isDecoded(floorPlan, 1, region)) {
+                assertTrue(floorPlan + " not decoded", System.currentTimeMillis() < end);
+                floorPlan.requestBitmap(1, region, listener);
+                sleep();
+            }
+        }
+    }
+
+    private static void awaitDecoded(FloorPlan floorPlan, int sampleSize, Rect region) {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!isDecoded(floorPlan, sampleSize, region)) {
+            assertTrue(floorPlan + " not decoded", System.currentTimeMillis() < end);
+            sleep();
+        }
+    }
+
+    private static boolean isDecoded(FloorPlan floorPlan, int sampleSize, Rect region) {
+        return floorPlan.getBitmap() != null && floorPlan.getBitmapSampleSize() == sampleSize
+                && region.equals(floorPlan.getBitmapRegion());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void writeImage(File file) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(600, 600, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.LTGRAY);
+        new Canvas(bitmap).drawColor(Color.BLUE);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            assertTrue(bitmap.compress(Bitmap.CompressFormat.PNG, 100, out));
+        } finally {
+            out.close();
+        }
+        assertNotNull(file);
+    }
+}
@@ -0,0 +1,154 @@
+package com.onlylemi.mapview.library;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.view.MotionEvent;
+
+import com.onlylemi.mapview.library.layer.MapBaseLayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FrameStatsRecorderTest
+ *
+ * @author: onlylemi
+ */
+public class FrameStatsRecorderTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void layersInDrawingOrder() {
+        FrameStatsRecorder recorder = new FrameStatsRecorder();
+        MapBaseLayer grid = new GridStub();
+        MapBaseLayer tags = new TagsStub();
+        MapBaseLayer[] layers = {grid, tags};
+        for (int i = 1; i <= 100; i++) {
+            recorder.retainLayers(layers);
+            recorder.recordLayer(tags, i * MS);
+            recorder.recordLayer(grid, 2 * MS);
+            recorder.recordFrame(3 * MS + i * MS);
+        }
+
+        FrameStats stats = recorder.snapshot();
+        assertEquals(100, stats.frameCount);
+        assertEquals("frame", stats.frame.name);
+        assertEquals(100, stats.frame.count);
+        assertEquals(103 * MS, stats.frame.maxNanos);
+        assertEquals(2, stats.layers.size());
+        FrameStats.Timing first = stats.layers.get(0);
+        assertEquals("TagsStub", first.name);
+        assertEquals(7, first.level);
+        assertEquals(100, first.count);
+        assertEquals(100 * MS, first.maxNanos);
+        // within a bucket (1/8) above the exact percentile
+        assertBetween(50 * MS, first.p50Nanos, 50 * MS * 9 / 8);
+        assertBetween(95 * MS, first.p95Nanos, 100 * MS);
+        assertBetween(99 * MS, first.p99Nanos, 100 * MS);
+        FrameStats.Timing second = stats.layers.get(1);
+        assertEquals("GridStub", second.name);
+        assertBetween(2 * MS, second.p50Nanos, 2 * MS);
+    }
+
+    @Test
+    public void removedLayersAreForgotten() {
+        FrameStatsRecorder recorder = new FrameStatsRecorder();
+        MapBaseLayer grid = new GridStub();
+        MapBaseLayer tags = new TagsStub();
+        recorder.retainLayers(new MapBaseLayer[]{grid, tags});
+        recorder.recordLayer(grid, MS);
+        recorder.recordLayer(tags, MS);
+        assertEquals(2, recorder.snapshot().layers.size());
+
+        recorder.retainLayers(new MapBaseLayer[]{tags});
+        List<FrameStats.Timing> layers = recorder.snapshot().layers;
+        assertEquals(1, layers.size());
+        assertEquals("TagsStub", layers.get(0).name);
+
+        // added again, with a new histogram
+        recorder.retainLayers(new MapBaseLayer[]{tags, grid});
+        recorder.recordLayer(grid, MS);
+        assertEquals(1, recorder.snapshot().layers.get(1).count);
+    }
+
+    @Test
+    public void listenerEveryIntervalFrames() {
+        FrameStatsRecorder recorder = new FrameStatsRecorder();
+        final List<FrameStats> notified = new ArrayList<>();
+        recorder.setListener(new FrameStatsListener() {
+            @Override
+            public void onFrameStats(FrameStats stats) {
+                notified.add(stats);
+            }
+        }, 10);
+        for (int i = 0; i < 35; i++) {
+            recorder.recordFrame(MS);
+        }
+        assertEquals(3, notified.size());
+        assertEquals(30, notified.get(2).frameCount);
+
+        recorder.setListener(null, 10);
+        for (int i = 0; i < 10; i++) {
+            recorder.recordFrame(MS);
+        }
+        assertEquals(3, notified.size());
+    }
+
+    @Test
+    public void reset() {
+        FrameStatsRecorder recorder = new FrameStatsRecorder();
+        MapBaseLayer grid = new GridStub();
+        recorder.recordLayer(grid, MS);
+        recorder.recordFrame(MS);
+        recorder.reset();
+
+        FrameStats stats = recorder.snapshot();
+        assertEquals(0, stats.frameCount);
+        assertEquals(0, stats.frame.count);
+        assertEquals(0, stats.frame.p99Nanos);
+        assertEquals(0, stats.layers.size());
+    }
+
+    private static void assertBetween(long min, long value, long max) {
+        if (value < min || value > max) {
+            throw new AssertionError(value + " not in " + min + " .. " + max);
+        }
+    }
+
+    private static class StubLayer extends MapBaseLayer {
+
+        StubLayer(int level) {
+            super(null);
+            this.level = level;
+        }
+
+        @Override
+        public boolean onTouch(MotionEvent event) {
+            return false;
+        }
+
+        @Override
+        public void draw(Canvas canvas, Matrix currentMatrix, float currentZoom,
+                         float currentRotateDegrees) {
+        }
+    }
+
+    private static final class GridStub extends StubLayer {
+
+        GridStub() {
+            super(3);
+        }
+    }
+
+    private static final class TagsStub extends StubLayer {
+
+        TagsStub() {
+            super(7);
+        }
+    }
+}
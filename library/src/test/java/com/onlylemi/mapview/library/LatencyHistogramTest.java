@@ -0,0 +1,149 @@
+package com.onlylemi.mapview.library;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LatencyHistogramTest
+ *
+ * @author: onlylemi
+ */
+public class LatencyHistogramTest {
+
+    private static final long US = 1000;
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+
+    /**
+     * exact microseconds below 8 us, then 8 buckets per power of two
+     */
+    @Test
+    public void bucketEdges() {
+        // value, largest value of its bucket
+        long[][] edges = {
+                {0, 999}, {7 * US, 8 * US - 1}, {8 * US - 1, 8 * US - 1}, {8 * US, 9 * US - 1},
+                {15 * US, 16 * US - 1}, {16 * US, 18 * US - 1}, {17 * US + 999, 18 * US - 1},
+                {18 * US, 20 * US - 1}, {1024 * US, 1152 * US - 1},
+                {1152 * US - 1, 1152 * US - 1}, {1152 * US, 1280 * US - 1}};
+        for (long[] edge : edges) {
+            LatencyHistogram histogram = new LatencyHistogram(10);
+            histogram.record(edge[0]);
+            // a larger maximum, so that the bucket bound is not clamped to it
+            histogram.record(1000000 * US);
+            assertEquals("bucket of " + edge[0], edge[1], histogram.getPercentileNanos(50));
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i * US);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(100 * US, histogram.getMaxNanos());
+        assertEquals(2 * US - 1, histogram.getPercentileNanos(0));
+        // 50 us in the bucket of 48 .. 51 us
+        assertEquals(52 * US - 1, histogram.getPercentileNanos(50));
+        // 95 us in the bucket of 88 .. 95 us
+        assertEquals(96 * US - 1, histogram.getPercentileNanos(95));
+        // 99 us in the bucket of 96 .. 103 us, which holds the maximum too
+        assertEquals(100 * US, histogram.getPercentileNanos(99));
+        assertEquals(100 * US, histogram.getPercentileNanos(100));
+    }
+
+    /**
+     * a percentile is never below the exact one and at most one bucket (1/8) above it
+     */
+    @Test
+    public void percentilesOfRandomSamples() {
+        Random random = new Random(5);
+        double[] percentiles = {0, 1, 25, 50, 90, 95, 99, 99.9, 100};
+        for (int round = 0; round < 20; round++) {
+            int n = 1 + random.nextInt(5000);
+            long[] samples = new long[n];
+            LatencyHistogram histogram = new LatencyHistogram(n);
+            for (int i = 0; i < n; i++) {
+                // log-uniform from 1 us to 1 s
+                samples[i] = (long) Math.pow(10, 3 + 6 * random.nextDouble());
+                histogram.record(samples[i]);
+            }
+            Arrays.sort(samples);
+            for (double percentile : percentiles) {
+                long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+                long exact = samples[(int) rank - 1];
+                long value = histogram.getPercentileNanos(percentile);
+                assertTrue(percentile + ": " + value + " < " + exact, value >= exact);
+                assertTrue(percentile + ": " + value + " >> " + exact,
+                        value <= exact + exact / 8 + US);
+            }
+            assertEquals(samples[n - 1], histogram.getMaxNanos());
+        }
+    }
+
+    /**
+     * the percentiles cover the current and the previous window, older samples drop out
+     */
+    @Test
+    public void windowRollsOver() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100 * US);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000 * US);
+        }
+        // both windows
+        assertEquals(104 * US - 1, histogram.getPercentileNanos(50));
+        assertEquals(1000 * US, histogram.getPercentileNanos(51));
+
+        // rolls, the 100 us window drops out
+        histogram.record(10 * US);
+        assertEquals(11 * US - 1, histogram.getPercentileNanos(0));
+        assertEquals(1000 * US, histogram.getPercentileNanos(50));
+        assertEquals(1000 * US, histogram.getMaxNanos());
+
+        // rolls again, so does the maximum
+        for (int i = 0; i < 10; i++) {
+            histogram.record(10 * US);
+        }
+        assertEquals(10 * US, histogram.getMaxNanos());
+        assertEquals(10 * US, histogram.getPercentileNanos(100));
+        assertEquals(31, histogram.getTotalCount());
+    }
+
+    @Test
+    public void longDurationsAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        histogram.record(1 * US);
+        histogram.record(Long.MAX_VALUE / 4);
+        assertEquals(Long.MAX_VALUE / 4, histogram.getMaxNanos());
+        // the last bucket, a lot less than the value
+        long last = histogram.getPercentileNanos(100);
+        assertTrue(last > 60L * 1000000000L && last < Long.MAX_VALUE / 4);
+    }
+
+    @Test
+    public void reset() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        for (int i = 0; i < 25; i++) {
+            histogram.record(i * US);
+        }
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }
+}
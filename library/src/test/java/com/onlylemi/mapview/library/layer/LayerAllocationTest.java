@@ -0,0 +1,311 @@
+package com.onlylemi.mapview.library.layer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Picture;
+import android.graphics.PointF;
+
+import com.onlylemi.mapview.core.coverage.GdopMap;
+import com.onlylemi.mapview.core.positioning.Anchors;
+import com.onlylemi.mapview.core.positioning.Fix;
+import com.onlylemi.mapview.core.positioning.TagKalmanFilter;
+import com.onlylemi.mapview.library.FloorPlan;
+import com.onlylemi.mapview.library.MapView;
+import com.onlylemi.mapview.library.TagPositionStore;
+import com.onlylemi.mapview.library.tile.TilePyramid;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LayerAllocationTest
+ * <p>
+ * Draws every bundled layer for a number of warm frames and fails if one of the following
+ * steady state frames allocates, see {@link MapBaseLayer#draw}. Allocations are counted per
+ * thread by the JVM; the native graphics of Robolectric draw into a real bitmap, so only the
+ * allocations of the layers themselves are counted.
+ *
+ * @author: onlylemi
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 29)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class LayerAllocationTest {
+
+    private static final int WARM_FRAMES = 50;
+    private static final int FRAMES = 200;
+    private static final int ROUNDS = 5;
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+    private static final float ZOOM = 2f;
+    private static final float ROTATE_DEGREES = 15f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MapView mapView;
+    private Canvas canvas;
+    private Matrix matrix;
+
+    @Before
+    public void setUp() {
+        mapView = new MapView(RuntimeEnvironment.getApplication());
+        mapView.setCurrentZoom(ZOOM, 0, 0);
+        canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        matrix = new Matrix();
+        matrix.postScale(ZOOM, ZOOM);
+        matrix.postRotate(ROTATE_DEGREES);
+        matrix.postTranslate(60, 20);
+    }
+
+    @Test
+    public void mapLayerWithPicture() {
+        Picture picture = new Picture();
+        Canvas recording = picture.beginRecording(400, 400);
+        recording.drawColor(Color.LTGRAY);
+        recording.drawLine(0, 0, 400, 400, newPaint());
+        picture.endRecording();
+        MapLayer layer = new MapLayer(mapView);
+        layer.setImage(picture);
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    @Test
+    public void mapLayerWithTiles() throws Exception {
+        TilePyramid tiles = TilePyramid.newInstance(writeImage(600, 600).getAbsolutePath());
+        MapLayer layer = new MapLayer(mapView);
+        layer.setTiles(tiles);
+        // the whole image at level 1, 2 x 2 tiles
+        Matrix tileMatrix = new Matrix();
+        tileMatrix.postScale(0.5f, 0.5f);
+        tileMatrix.postTranslate(10, 10);
+        long end = System.currentTimeMillis() + 5000;
+        while (!hasTiles(tiles, 1)) {
+            assertTrue("tiles not decoded", System.currentTimeMillis() < end);
+            layer.draw(canvas, tileMatrix, 0.5f, 0);
+            Thread.sleep(10);
+        }
+
+        assertDrawDoesNotAllocate(layer, tileMatrix, 0.5f);
+        tiles.release();
+    }
+
+    @Test
+    public void mapLayerWithFloorPlan() throws Exception {
+        File file = new File(RuntimeEnvironment.getApplication().getFilesDir(), "floor_plan.png");
+        writeImage(600, 600, file);
+        FloorPlan floorPlan = new FloorPlan(file.getName(), 0, 0, 0, 100, mapView);
+        MapLayer layer = new MapLayer(mapView);
+        layer.setFloorPlan(floorPlan);
+        long end = System.currentTimeMillis() + 5000;
+        while (floorPlan.getBitmap() == null) {
+            assertTrue("floor plan not decoded", System.currentTimeMillis() < end);
+            layer.draw(canvas, matrix, ZOOM, 0);
+            Thread.sleep(10);
+        }
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+        floorPlan.recycleBitmap();
+    }
+
+    @Test
+    public void bitmapLayer() {
+        Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        BitmapLayer layer = new BitmapLayer(mapView, bitmap, new PointF(100, 120));
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+        layer.setAutoScale(true);
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    @Test
+    public void locationLayer() {
+        LocationLayer layer = new LocationLayer(mapView, new PointF(100, 120), true);
+        layer.setCompassIndicatorArrowRotateDegree(30);
+        layer.setCompassIndicatorCircleRotateDegree(60);
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+        layer.setOpenCompass(false);
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    @Test
+    public void markLayer() {
+        List<PointF> marks = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            marks.add(new PointF(i % 20 * 25, i / 20 * 25));
+            names.add("mark " + i);
+        }
+        MarkLayer layer = new MarkLayer(mapView, marks, names);
+        layer.setNum(3);
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    @Test
+    public void routeLayer() {
+        List<PointF> nodes = new ArrayList<>();
+        List<Integer> route = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nodes.add(new PointF(i * 5, (i % 7) * 10));
+            route.add(i);
+        }
+        RouteLayer layer = new RouteLayer(mapView, nodes, route);
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    @Test
+    public void tagLayer() {
+        TagPositionStore store = new TagPositionStore(64);
+        for (int i = 0; i < 64; i++) {
+            store.update(i, i % 8 * 30, i / 8 * 30);
+            store.setLabel(i, "tag " + i);
+        }
+        TagLayer layer = new TagLayer(mapView, store);
+
+        // labeled tags, then dots when zoomed out
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+        assertDrawDoesNotAllocate(layer, matrix, 0.5f);
+    }
+
+    @Test
+    public void motionLayer() {
+        TagKalmanFilter filter = new TagKalmanFilter(TagKalmanFilter.Model.CONSTANT_VELOCITY, 16);
+        Fix fix = new Fix();
+        for (int step = 0; step < 10; step++) {
+            for (int tag = 0; tag < 16; tag++) {
+                fix.tagId = tag;
+                fix.x = tag + step * 0.1f;
+                fix.y = tag * 0.5f;
+                fix.timestampMicros = step * 100000L;
+                filter.onFix(fix);
+            }
+        }
+        MotionLayer layer = new MotionLayer(mapView, filter);
+        layer.setFloorPlan(new FloorPlan("floor_plan.png", 0, 300, 0, 100));
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    @Test
+    public void gdopLayer() throws Exception {
+        Anchors anchors = new Anchors(4);
+        anchors.set(1, 0, 0, 2);
+        anchors.set(2, 10, 0, 2);
+        anchors.set(3, 10, 10, 2);
+        anchors.set(4, 0, 10, 2);
+        GdopMap map = new GdopMap(anchors, -1, -1, 0.25f, 48, 48);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        GdopLayer layer = new GdopLayer(mapView, map, new FloorPlan("floor_plan.png", 0, 300, 0,
+                100), pool);
+        // queued behind the update
+        pool.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+        pool.shutdown();
+    }
+
+    @Test
+    public void gridLayer() {
+        GridLayer layer = new GridLayer(mapView);
+
+        assertDrawDoesNotAllocate(layer, matrix, ZOOM);
+    }
+
+    /**
+     * draw the warm frames, then count the bytes allocated by the measured ones. The JVM may
+     * allocate once while it compiles a method, so the best of a few rounds is taken.
+     */
+    private void assertDrawDoesNotAllocate(MapBaseLayer layer, Matrix matrix, float zoom) {
+        for (int i = 0; i < WARM_FRAMES; i++) {
+            layer.draw(canvas, matrix, zoom, ROTATE_DEGREES);
+        }
+        // reading the counter may allocate itself
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS && allocated > 0; round++) {
+            long start = allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) {
+                layer.draw(canvas, matrix, zoom, ROTATE_DEGREES);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - start - overhead);
+        }
+        assertEquals(layer.getClass().getSimpleName() + " allocated in " + FRAMES
+                + " steady state frames", 0, allocated);
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean hasTiles(TilePyramid tiles, int level) {
+        for (int row = 0; row < tiles.getRows(level); row++) {
+            for (int column = 0; column < tiles.getColumns(level); column++) {
+                if (tiles.peekTile(level, column, row) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private File writeImage(int width, int height) throws IOException {
+        return writeImage(width, height, folder.newFile("floor_plan.png"));
+    }
+
+    private static File writeImage(int width, int height, File file) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(bitmap).drawLine(0, 0, width, height, newPaint());
+        OutputStream out = new FileOutputStream(file);
+        try {
+            assertTrue(bitmap.compress(Bitmap.CompressFormat.PNG, 100, out));
+        } finally {
+            out.close();
+        }
+        assertNotNull(file);
+        return file;
+    }
+
+    private static android.graphics.Paint newPaint() {
+        android.graphics.Paint paint = new android.graphics.Paint();
+        paint.setColor(Color.BLUE);
+        paint.setStrokeWidth(4);
+        return paint;
+    }
+}
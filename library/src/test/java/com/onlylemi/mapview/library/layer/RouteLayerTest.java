@@ -0,0 +1,113 @@
+package com.onlylemi.mapview.library.layer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.PointF;
+
+import com.onlylemi.mapview.library.MapView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * RouteLayerTest
+ *
+ * @author: onlylemi
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 29)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RouteLayerTest {
+
+    private static final int SIZE = 400;
+
+    private final Matrix matrix = new Matrix();
+    private MapView mapView;
+    private Bitmap bitmap;
+    private Canvas canvas;
+    private List<PointF> nodes;
+
+    @Before
+    public void setUp() {
+        mapView = new MapView(RuntimeEnvironment.getApplication());
+        bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(bitmap);
+        // a horizontal segment from each node to the next, far from the markers
+        nodes = Arrays.asList(new PointF(0, 300), new PointF(100, 300), new PointF(200, 300),
+                new PointF(300, 300), new PointF(400, 300));
+    }
+
+    @Test
+    public void segmentsToMissingNodesAreSkipped() {
+        RouteLayer layer = new RouteLayer(mapView, nodes, Arrays.asList(0, 1, 7, 2, 3, -1, 4));
+        draw(layer);
+
+        assertRoute(50);
+        assertNoRoute(150);
+        assertRoute(250);
+        assertNoRoute(350);
+    }
+
+    @Test
+    public void routeWithoutValidSegmentIsNotDrawn() {
+        RouteLayer layer = new RouteLayer(mapView, nodes, Arrays.asList(5, 6));
+        draw(layer);
+
+        for (int x = 50; x < SIZE; x += 100) {
+            assertNoRoute(x);
+        }
+    }
+
+    @Test
+    public void routeGrownInPlaceIsRedrawn() {
+        List<Integer> route = new ArrayList<>(Arrays.asList(0, 1));
+        RouteLayer layer = new RouteLayer(mapView, nodes, route);
+        draw(layer);
+        assertNoRoute(150);
+
+        route.add(2);
+        draw(layer);
+        assertRoute(150);
+    }
+
+    @Test
+    public void routeReplacedInPlaceIsRedrawnAfterNotify() {
+        List<Integer> route = new ArrayList<>(Arrays.asList(0, 1));
+        RouteLayer layer = new RouteLayer(mapView, nodes, route);
+        draw(layer);
+
+        route.set(0, 2);
+        route.set(1, 3);
+        layer.notifyRouteChanged();
+        draw(layer);
+        assertNoRoute(50);
+        assertRoute(250);
+    }
+
+    private void draw(RouteLayer layer) {
+        bitmap.eraseColor(Color.TRANSPARENT);
+        layer.draw(canvas, matrix, 1, 0);
+    }
+
+    private void assertRoute(int x) {
+        assertEquals("route at " + x, Color.BLUE, bitmap.getPixel(x, 300));
+    }
+
+    private void assertNoRoute(int x) {
+        assertNotEquals("no route at " + x, Color.BLUE, bitmap.getPixel(x, 300));
+    }
+}
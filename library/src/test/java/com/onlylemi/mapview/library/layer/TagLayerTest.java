@@ -0,0 +1,63 @@
+package com.onlylemi.mapview.library.layer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+
+import com.onlylemi.mapview.library.MapView;
+import com.onlylemi.mapview.library.TagPositionStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TagLayerTest
+ *
+ * @author: onlylemi
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 29)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class TagLayerTest {
+
+    private static final int SIZE = 100;
+    private static final int TRANSLUCENT_RED = 0x80FF0000;
+
+    private final Matrix matrix = new Matrix();
+    private Bitmap bitmap;
+    private Canvas canvas;
+    private TagLayer layer;
+
+    @Before
+    public void setUp() {
+        MapView mapView = new MapView(RuntimeEnvironment.getApplication());
+        bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(bitmap);
+        TagPositionStore store = new TagPositionStore(1);
+        store.update(0, SIZE / 2, SIZE / 2);
+        layer = new TagLayer(mapView, store);
+        layer.setTagColor(TRANSLUCENT_RED);
+    }
+
+    @Test
+    public void freshLabeledTagKeepsTheAlphaOfItsColor() {
+        layer.draw(canvas, matrix, 10, 0);
+
+        assertEquals(0x80, Color.alpha(bitmap.getPixel(SIZE / 2, SIZE / 2)), 1);
+    }
+
+    @Test
+    public void freshDotKeepsTheAlphaOfItsColor() {
+        layer.draw(canvas, matrix, 0.1f, 0);
+
+        assertEquals(0x80, Color.alpha(bitmap.getPixel(SIZE / 2, SIZE / 2)), 1);
+    }
+}